@@ -0,0 +1,32 @@
+package com.myfarmer.provman.api;
+
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+
+import lombok.Value;
+
+/**
+ * Inclusive range of UTC days. Missing ends default to the year up to today.
+ */
+@Value
+public class DateRange {
+
+	public static final int DEFAULT_DAYS = 365;
+	public static final int MAX_DAYS = 3660;
+
+	LocalDate from;
+	LocalDate to;
+
+	public static DateRange of(LocalDate from, LocalDate to) {
+		LocalDate end = to != null ? to : from != null ? from.plusDays(DEFAULT_DAYS) : LocalDate.now(ZoneOffset.UTC);
+		LocalDate start = from != null ? from : end.minusDays(DEFAULT_DAYS);
+		if (start.isAfter(end)) {
+			throw new InvalidDateRangeException("from " + start + " is after to " + end);
+		}
+		if (ChronoUnit.DAYS.between(start, end) > MAX_DAYS) {
+			throw new InvalidDateRangeException("Ranges are limited to " + MAX_DAYS + " days");
+		}
+		return new DateRange(start, end);
+	}
+}
@@ -0,0 +1,14 @@
+package com.myfarmer.provman.api;
+
+import java.io.IOException;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+
+/**
+ * API representations write their own fields, so responses are streamed
+ * without reflection-based serialization.
+ */
+public interface JsonWritable {
+
+	void writeJson(JsonGenerator json) throws IOException;
+}
@@ -0,0 +1,37 @@
+package com.myfarmer.provman.api;
+
+import java.io.IOException;
+import java.time.LocalDate;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Price per kg over one day of price history: lowest, highest and mean of the
+ * prices per kg written that day, and how many writes there were.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PricePoint implements JsonWritable {
+
+	private LocalDate day;
+	private double minPricePerKg;
+	private double maxPricePerKg;
+	private double avgPricePerKg;
+	private int changes;
+
+	@Override
+	public void writeJson(JsonGenerator json) throws IOException {
+		json.writeStartObject();
+		json.writeStringField("day", day.toString());
+		json.writeNumberField("min", minPricePerKg);
+		json.writeNumberField("max", maxPricePerKg);
+		json.writeNumberField("avg", avgPricePerKg);
+		json.writeNumberField("changes", changes);
+		json.writeEndObject();
+	}
+}
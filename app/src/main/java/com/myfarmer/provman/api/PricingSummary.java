@@ -0,0 +1,30 @@
+package com.myfarmer.provman.api;
+
+import java.io.IOException;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PricingSummary implements JsonWritable {
+
+	private int id;
+	private int productId;
+	private float weight;
+	private float price;
+
+	@Override
+	public void writeJson(JsonGenerator json) throws IOException {
+		json.writeStartObject();
+		json.writeNumberField("id", id);
+		json.writeNumberField("productId", productId);
+		json.writeNumberField("weight", weight);
+		json.writeNumberField("price", price);
+		json.writeEndObject();
+	}
+}
@@ -0,0 +1,30 @@
+package com.myfarmer.provman.api;
+
+import java.io.IOException;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ProductSummary implements JsonWritable {
+
+	private int id;
+	private int farmId;
+	private String name;
+	private String description;
+
+	@Override
+	public void writeJson(JsonGenerator json) throws IOException {
+		json.writeStartObject();
+		json.writeNumberField("id", id);
+		json.writeNumberField("farmId", farmId);
+		json.writeStringField("name", name);
+		json.writeStringField("description", description);
+		json.writeEndObject();
+	}
+}
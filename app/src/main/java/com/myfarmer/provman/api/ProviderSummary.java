@@ -0,0 +1,33 @@
+package com.myfarmer.provman.api;
+
+import java.io.IOException;
+import java.time.LocalDate;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ProviderSummary implements JsonWritable {
+
+	private int id;
+	private String name;
+	private String code;
+	private String nationality;
+	private LocalDate enteringDate;
+
+	@Override
+	public void writeJson(JsonGenerator json) throws IOException {
+		json.writeStartObject();
+		json.writeNumberField("id", id);
+		json.writeStringField("name", name);
+		json.writeStringField("code", code);
+		json.writeStringField("nationality", nationality);
+		json.writeStringField("enteringDate", enteringDate == null ? null : enteringDate.toString());
+		json.writeEndObject();
+	}
+}
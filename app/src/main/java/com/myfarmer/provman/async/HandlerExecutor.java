@@ -0,0 +1,174 @@
+package com.myfarmer.provman.async;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Semaphore;
+import java.util.function.ToDoubleFunction;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.async.CallableProcessingInterceptor;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+
+/**
+ * The bounded pool offloaded handlers run on (see OffloadingHandlerAdapter).
+ *
+ * async.threads threads run handlers, the rest of the async.maxInFlight admitted
+ * requests wait in the queue without holding a thread of the container. A request
+ * arriving with maxInFlight already admitted is answered 503 at once, one not done
+ * within async.timeoutMs gets the 503 of Spring's AsyncRequestTimeoutException.
+ * The threads bound the JDBC work in progress, they should not outnumber the
+ * connection pool.
+ *
+ * Published as the executor.* meters tagged name=handler (active, queued,
+ * completed...) plus provman.async.inflight, provman.async.rejected and
+ * provman.async.timeouts, and over JMX as provman:name=handlerExecutor.
+ */
+@Component
+@ManagedResource(objectName = "provman:name=handlerExecutor")
+public class HandlerExecutor implements CallableProcessingInterceptor {
+
+	public static final String IN_FLIGHT = "provman.async.inflight";
+	public static final String REJECTED = "provman.async.rejected";
+	public static final String TIMEOUTS = "provman.async.timeouts";
+
+	@Autowired
+	Environment environment;
+
+	@Autowired
+	MeterRegistry registry;
+
+	private boolean enabled;
+	private long timeoutMillis;
+	private int maxInFlight;
+	private Semaphore permits;
+	private ThreadPoolTaskExecutor executor;
+	private Counter rejected;
+	private Counter timeouts;
+
+	@PostConstruct
+	void init() {
+		enabled = environment.getProperty("async.enabled", Boolean.class, false);
+		timeoutMillis = environment.getProperty("async.timeoutMs", Long.class, 30000L);
+		maxInFlight = environment.getProperty("async.maxInFlight", Integer.class, 2000);
+		if (!enabled) {
+			return;
+		}
+		int threads = environment.getProperty("async.threads", Integer.class, 32);
+		permits = new Semaphore(maxInFlight);
+		executor = new ThreadPoolTaskExecutor();
+		executor.setCorePoolSize(threads);
+		executor.setMaxPoolSize(threads);
+		// never full: admission is decided by the permits, before anything is queued
+		executor.setQueueCapacity(Integer.MAX_VALUE);
+		executor.setThreadNamePrefix("handler-");
+		executor.initialize();
+
+		new ExecutorServiceMetrics(executor.getThreadPoolExecutor(), "handler", Tags.empty()).bindTo(registry);
+		registry.gauge(IN_FLIGHT, Tags.empty(), this, new ToDoubleFunction<HandlerExecutor>() {
+			@Override
+			public double applyAsDouble(HandlerExecutor handlerExecutor) {
+				return handlerExecutor.getInFlight();
+			}
+		});
+		rejected = registry.counter(REJECTED);
+		timeouts = registry.counter(TIMEOUTS);
+	}
+
+	@PreDestroy
+	void shutdown() {
+		if (executor != null) {
+			executor.shutdown();
+		}
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	public long getTimeoutMillis() {
+		return timeoutMillis;
+	}
+
+	public ThreadPoolTaskExecutor getExecutor() {
+		return executor;
+	}
+
+	/**
+	 * Admits the work, to be returned as the handler's result, or refuses it with
+	 * HandlerExecutorFullException. The permit is given back when the request completes.
+	 */
+	public Callable<Object> offload(Callable<Object> work) {
+		if (!permits.tryAcquire()) {
+			rejected.increment();
+			throw new HandlerExecutorFullException(maxInFlight + " requests already in flight");
+		}
+		return new Offload(work);
+	}
+
+	@Override
+	public <T> Object handleTimeout(NativeWebRequest request, Callable<T> task) {
+		if (task instanceof Offload) {
+			timeouts.increment();
+		}
+		return RESULT_NONE;
+	}
+
+	@Override
+	public <T> void afterCompletion(NativeWebRequest request, Callable<T> task) {
+		// on the container thread once the response is complete, whether the work ran, failed or timed out
+		if (task instanceof Offload) {
+			permits.release();
+		}
+	}
+
+	@ManagedAttribute(description = "Offloaded requests running or queued")
+	public int getInFlight() {
+		return permits == null ? 0 : maxInFlight - permits.availablePermits();
+	}
+
+	@ManagedAttribute(description = "Handler threads busy")
+	public int getActive() {
+		return executor == null ? 0 : executor.getActiveCount();
+	}
+
+	@ManagedAttribute(description = "Offloaded requests waiting for a handler thread")
+	public int getQueued() {
+		return executor == null ? 0 : executor.getThreadPoolExecutor().getQueue().size();
+	}
+
+	@ManagedAttribute(description = "Requests refused with maxInFlight reached")
+	public long getRejected() {
+		return rejected == null ? 0 : (long) rejected.count();
+	}
+
+	@ManagedAttribute(description = "Requests that timed out")
+	public long getTimeouts() {
+		return timeouts == null ? 0 : (long) timeouts.count();
+	}
+
+	private static class Offload implements Callable<Object> {
+
+		private final Callable<Object> work;
+
+		Offload(Callable<Object> work) {
+			this.work = work;
+		}
+
+		@Override
+		public Object call() throws Exception {
+			return work.call();
+		}
+	}
+}
@@ -0,0 +1,18 @@
+package com.myfarmer.provman.async;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * A request turned away because async.maxInFlight offloaded requests are already
+ * running or waiting for a handler thread.
+ */
+@ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+public class HandlerExecutorFullException extends RuntimeException {
+
+	private static final long serialVersionUID = 1L;
+
+	public HandlerExecutorFullException(String message) {
+		super(message);
+	}
+}
@@ -0,0 +1,18 @@
+package com.myfarmer.provman.async;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a controller, or single handler methods, whose handlers run on the
+ * HandlerExecutor instead of the container thread when async.enabled is set.
+ * See OffloadingHandlerAdapter.
+ */
+@Documented
+@Target({ ElementType.TYPE, ElementType.METHOD })
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Offloaded {
+}
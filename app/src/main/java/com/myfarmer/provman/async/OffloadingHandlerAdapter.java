@@ -0,0 +1,65 @@
+package com.myfarmer.provman.async;
+
+import java.util.concurrent.Callable;
+
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.method.support.ModelAndViewContainer;
+import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerAdapter;
+import org.springframework.web.servlet.mvc.method.annotation.ServletInvocableHandlerMethod;
+
+/**
+ * Runs @Offloaded handlers on the HandlerExecutor when async.enabled is set, as
+ * if they had returned a Callable: Servlet 3 async frees the container thread
+ * while the handler, and the services and JDBC round trips behind it, run on a
+ * handler thread, then the view is rendered on a container thread again.
+ *
+ * Arguments are still bound and validated on the container thread. Handlers
+ * stay written as plain synchronous methods returning a view name.
+ */
+public class OffloadingHandlerAdapter extends RequestMappingHandlerAdapter {
+
+	private final HandlerExecutor handlerExecutor;
+
+	public OffloadingHandlerAdapter(HandlerExecutor handlerExecutor) {
+		this.handlerExecutor = handlerExecutor;
+	}
+
+	@Override
+	protected ServletInvocableHandlerMethod createInvocableHandlerMethod(HandlerMethod handlerMethod) {
+		if (handlerExecutor.isEnabled() && isOffloaded(handlerMethod)) {
+			return new OffloadedHandlerMethod(handlerMethod);
+		}
+		return super.createInvocableHandlerMethod(handlerMethod);
+	}
+
+	private static boolean isOffloaded(HandlerMethod handlerMethod) {
+		return handlerMethod.getBeanType().isAnnotationPresent(Offloaded.class)
+				|| handlerMethod.hasMethodAnnotation(Offloaded.class);
+	}
+
+	private class OffloadedHandlerMethod extends ServletInvocableHandlerMethod {
+
+		OffloadedHandlerMethod(HandlerMethod handlerMethod) {
+			super(handlerMethod);
+		}
+
+		@Override
+		public Object invokeForRequest(final NativeWebRequest request, final ModelAndViewContainer mavContainer,
+				Object... providedArgs) throws Exception {
+			final Object[] args = getMethodArgumentValues(request, mavContainer, providedArgs);
+			return handlerExecutor.offload(new Callable<Object>() {
+				@Override
+				public Object call() throws Exception {
+					Object result = doInvoke(args);
+					if (result == null && ((ServletWebRequest) request).isNotModified()) {
+						// answered 304 through checkNotModified, the async dispatch has nothing to render
+						mavContainer.setRequestHandled(true);
+					}
+					return result;
+				}
+			});
+		}
+	}
+}
@@ -0,0 +1,123 @@
+package com.myfarmer.provman.bulk;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * RFC 4180 style CSV reader: comma separated, optional double-quoted fields
+ * with "" as escaped quote. A first line matching the expected column names
+ * is treated as a header and may reorder the columns.
+ */
+public class CsvImportRowReader implements ImportRowReader {
+
+	private final Reader reader;
+	private List<String> columns;
+	private long rowNumber;
+	private boolean firstRecord = true;
+
+	public CsvImportRowReader(InputStream input, String... expectedColumns) {
+		this.reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+		this.columns = Arrays.asList(expectedColumns);
+	}
+
+	@Override
+	public ImportRow next() throws IOException {
+		List<String> fields = readRecord();
+		if (fields != null && firstRecord) {
+			firstRecord = false;
+			if (isHeader(fields)) {
+				columns = normalize(fields);
+				fields = readRecord();
+			}
+		}
+		if (fields == null) {
+			return null;
+		}
+		Map<String, String> values = new HashMap<String, String>();
+		for (int i = 0; i < fields.size() && i < columns.size(); i++) {
+			values.put(columns.get(i), fields.get(i));
+		}
+		return new ImportRow(++rowNumber, values);
+	}
+
+	private boolean isHeader(List<String> fields) {
+		List<String> names = normalize(fields);
+		return names.containsAll(columns) || columns.containsAll(names);
+	}
+
+	private static List<String> normalize(List<String> fields) {
+		List<String> names = new ArrayList<String>(fields.size());
+		for (String field : fields) {
+			names.add(field.trim().toLowerCase(Locale.ROOT));
+		}
+		return names;
+	}
+
+	/**
+	 * @return the fields of the next non-blank record, or null at end of input
+	 */
+	private List<String> readRecord() throws IOException {
+		List<String> fields = new ArrayList<String>();
+		StringBuilder field = new StringBuilder();
+		boolean quoted = false;
+		boolean any = false;
+		int c;
+		while ((c = reader.read()) != -1) {
+			any = true;
+			if (quoted) {
+				if (c == '"') {
+					reader.mark(1);
+					if (reader.read() == '"') {
+						field.append('"');
+					} else {
+						reader.reset();
+						quoted = false;
+					}
+				} else {
+					field.append((char) c);
+				}
+			} else if (c == '"') {
+				quoted = true;
+			} else if (c == ',') {
+				fields.add(field.toString());
+				field.setLength(0);
+			} else if (c == '\n' || c == '\r') {
+				if (c == '\r') {
+					reader.mark(1);
+					if (reader.read() != '\n') {
+						reader.reset();
+					}
+				}
+				if (fields.isEmpty() && field.length() == 0) {
+					// skip blank lines
+					any = false;
+					continue;
+				}
+				fields.add(field.toString());
+				return fields;
+			} else {
+				field.append((char) c);
+			}
+		}
+		if (!any) {
+			return null;
+		}
+		fields.add(field.toString());
+		return fields;
+	}
+
+	@Override
+	public void close() throws IOException {
+		reader.close();
+	}
+}
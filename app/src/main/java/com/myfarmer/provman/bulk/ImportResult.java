@@ -0,0 +1,37 @@
+package com.myfarmer.provman.bulk;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import lombok.Getter;
+import lombok.Value;
+
+/**
+ * Outcome of a bulk import: counts plus the first errors, by row number.
+ */
+@Getter
+public class ImportResult {
+
+	public static final int MAX_REPORTED_ERRORS = 1000;
+
+	private long imported;
+	private long failed;
+	private final List<RowError> errors = new ArrayList<RowError>();
+
+	public void addImported(long count) {
+		imported += count;
+	}
+
+	public void addError(long rowNumber, String message) {
+		failed++;
+		if (errors.size() < MAX_REPORTED_ERRORS) {
+			errors.add(new RowError(rowNumber, message));
+		}
+	}
+
+	@Value
+	public static class RowError {
+		long row;
+		String message;
+	}
+}
@@ -0,0 +1,20 @@
+package com.myfarmer.provman.bulk;
+
+import java.util.Map;
+
+import lombok.Value;
+
+/**
+ * One record of an import file, keyed by lower-case column name.
+ */
+@Value
+public class ImportRow {
+
+	long rowNumber;
+	Map<String, String> values;
+
+	public String get(String column) {
+		String value = values.get(column);
+		return value == null || value.trim().isEmpty() ? null : value.trim();
+	}
+}
@@ -0,0 +1,16 @@
+package com.myfarmer.provman.bulk;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Pull parser over an import file, yields one row at a time so the whole file
+ * never has to be held in memory.
+ */
+public interface ImportRowReader extends Closeable {
+
+	/**
+	 * @return the next row, or null at the end of the input
+	 */
+	ImportRow next() throws IOException;
+}
@@ -0,0 +1,63 @@
+package com.myfarmer.provman.bulk;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * Streams the objects of a top-level JSON array, only the current object is
+ * held in memory. Nested values are not supported. Nothing is read before the
+ * first row, so a body that is no array fails like any later unreadable row
+ * and is reported in the import result.
+ */
+public class JsonImportRowReader implements ImportRowReader {
+
+	private static final JsonFactory JSON = new JsonFactory();
+
+	private final JsonParser parser;
+	private long rowNumber;
+	private boolean started;
+
+	public JsonImportRowReader(InputStream input) throws IOException {
+		this.parser = JSON.createParser(input);
+	}
+
+	@Override
+	public ImportRow next() throws IOException {
+		if (!started) {
+			started = true;
+			if (parser.nextToken() != JsonToken.START_ARRAY) {
+				throw new JsonParseException(parser, "Expected a JSON array of objects");
+			}
+		}
+		JsonToken token = parser.nextToken();
+		if (token == null || token == JsonToken.END_ARRAY) {
+			return null;
+		}
+		if (token != JsonToken.START_OBJECT) {
+			throw new JsonParseException(parser, "Expected a JSON object");
+		}
+		Map<String, String> values = new HashMap<String, String>();
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			String name = parser.getCurrentName().toLowerCase(Locale.ROOT);
+			JsonToken value = parser.nextToken();
+			if (value == JsonToken.START_OBJECT || value == JsonToken.START_ARRAY) {
+				throw new JsonParseException(parser, "Nested value for field " + name);
+			}
+			values.put(name, value == JsonToken.VALUE_NULL ? null : parser.getText());
+		}
+		return new ImportRow(++rowNumber, values);
+	}
+
+	@Override
+	public void close() throws IOException {
+		parser.close();
+	}
+}
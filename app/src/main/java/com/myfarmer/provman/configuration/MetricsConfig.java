@@ -0,0 +1,110 @@
+package com.myfarmer.provman.configuration;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.HibernateMetrics;
+import org.springframework.aop.Advisor;
+import org.springframework.aop.support.ComposablePointcut;
+import org.springframework.aop.support.DefaultPointcutAdvisor;
+import org.springframework.aop.support.annotation.AnnotationMatchingPointcut;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Role;
+import org.springframework.core.Ordered;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Repository;
+import org.springframework.stereotype.Service;
+
+import com.myfarmer.provman.metrics.LayerTimingInterceptor;
+import com.myfarmer.provman.metrics.QueryCounter;
+import com.myfarmer.provman.metrics.QueryListener;
+import com.myfarmer.provman.metrics.RequestMetricsInterceptor;
+
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.jvm.ClassLoaderMetrics;
+import io.micrometer.core.instrument.binder.jvm.JvmGcMetrics;
+import io.micrometer.core.instrument.binder.jvm.JvmMemoryMetrics;
+import io.micrometer.core.instrument.binder.jvm.JvmThreadMetrics;
+import io.micrometer.core.instrument.binder.system.ProcessorMetrics;
+import io.micrometer.core.instrument.config.MeterFilter;
+import io.micrometer.core.instrument.distribution.DistributionStatisticConfig;
+import io.micrometer.prometheus.PrometheusConfig;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+
+/**
+ * Micrometer registry behind /metrics, in the Prometheus text format.
+ *
+ * Request timings come from RequestMetricsInterceptor, service and DAO timings
+ * from LayerTimingInterceptor, connection pool timings from the Hikari tracker
+ * session factory counters from Hibernate's statistics and statement timings
+ * from the QueryListener on the data source.
+ */
+@Configuration
+public class MetricsConfig {
+
+	@Autowired
+	private Environment environment;
+
+	@Bean
+	public PrometheusMeterRegistry meterRegistry() {
+		PrometheusMeterRegistry registry = new PrometheusMeterRegistry(PrometheusConfig.DEFAULT);
+		registry.config().commonTags("application", "provman");
+		// histogram buckets for request latencies, so percentiles can be aggregated across instances
+		registry.config().meterFilter(new MeterFilter() {
+			@Override
+			public DistributionStatisticConfig configure(Meter.Id id, DistributionStatisticConfig config) {
+				if (RequestMetricsInterceptor.REQUESTS.equals(id.getName())) {
+					return DistributionStatisticConfig.builder().percentilesHistogram(true).build().merge(config);
+				}
+				return config;
+			}
+		});
+		new ClassLoaderMetrics().bindTo(registry);
+		new JvmMemoryMetrics().bindTo(registry);
+		new JvmThreadMetrics().bindTo(registry);
+		new ProcessorMetrics().bindTo(registry);
+		return registry;
+	}
+
+	@Bean(destroyMethod = "close")
+	public JvmGcMetrics jvmGcMetrics(PrometheusMeterRegistry registry) {
+		JvmGcMetrics metrics = new JvmGcMetrics();
+		metrics.bindTo(registry);
+		return metrics;
+	}
+
+	@Bean
+	public QueryCounter queryCounter() {
+		return new QueryCounter(environment.getProperty("querybudget.failOnExceeded", Boolean.class, false));
+	}
+
+	@Bean
+	public QueryListener queryListener(PrometheusMeterRegistry registry) {
+		return new QueryListener(queryCounter(), registry,
+				environment.getProperty("jdbc.slowQueryThresholdMs", Long.class, 500L));
+	}
+
+	/*
+	 * Picked up by the auto-proxy creator of @EnableTransactionManagement, which only
+	 * considers infrastructure advisors. Ordered before the transaction advisor.
+	 */
+	@Bean
+	@Role(BeanDefinition.ROLE_INFRASTRUCTURE)
+	public Advisor layerTimingAdvisor(PrometheusMeterRegistry registry) {
+		ComposablePointcut pointcut = new ComposablePointcut(new AnnotationMatchingPointcut(Service.class, true))
+				.union(new AnnotationMatchingPointcut(Repository.class, true));
+		DefaultPointcutAdvisor advisor = new DefaultPointcutAdvisor(pointcut,
+				new LayerTimingInterceptor(registry));
+		advisor.setOrder(Ordered.HIGHEST_PRECEDENCE);
+		return advisor;
+	}
+
+	@Bean
+	public HibernateMetrics hibernateMetrics(SessionFactory sessionFactory, PrometheusMeterRegistry registry) {
+		HibernateMetrics metrics = new HibernateMetrics(sessionFactory, "provman", Tags.empty());
+		metrics.bindTo(registry);
+		return metrics;
+	}
+}
@@ -1,33 +1,66 @@
 package com.myfarmer.provman.configuration;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Properties;
 
 import javax.sql.DataSource;
 
+import org.flywaydb.core.Flyway;
 import org.hibernate.SessionFactory;
+import org.springframework.aop.Advisor;
+import org.springframework.aop.support.DefaultPointcutAdvisor;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.BeanDefinition;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.context.annotation.EnableMBeanExport;
+import org.springframework.context.annotation.Primary;
 import org.springframework.context.annotation.PropertySource;
+import org.springframework.context.annotation.Role;
+import org.springframework.core.Ordered;
 import org.springframework.core.env.Environment;
-import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.dao.annotation.PersistenceExceptionTranslationPostProcessor;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.jmx.support.RegistrationPolicy;
 import org.springframework.orm.hibernate5.HibernateTransactionManager;
 import org.springframework.orm.hibernate5.LocalSessionFactoryBean;
 import org.springframework.transaction.annotation.EnableTransactionManagement;
 
+import com.myfarmer.provman.metrics.ConnectionPoolMetrics;
+import com.myfarmer.provman.metrics.QueryListener;
+import com.myfarmer.provman.shard.ShardRouter;
+import com.myfarmer.provman.shard.ShardRoutingDataSource;
+import com.myfarmer.provman.shard.ShardRoutingInterceptor;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import net.ttddyy.dsproxy.support.ProxyDataSourceBuilder;
+
 @Configuration
 @EnableTransactionManagement
+// HikariCP registers its own pool MBeans, keep those instead of failing on the duplicate
+@EnableMBeanExport(registration = RegistrationPolicy.IGNORE_EXISTING)
 @ComponentScan({ "com.myfarmer.provman.configuration" })
-@PropertySource(value = { "classpath:jdbc.properties" })
+// settings may also come from system properties, which take precedence over the file
+@PropertySource(value = { "classpath:jdbc.properties" }, ignoreResourceNotFound = true)
 public class MyHibernateConfig {
 
     @Autowired
     private Environment environment;
 
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private QueryListener queryListener;
+
     @Bean
+    @DependsOn("flyway")
     public LocalSessionFactoryBean sessionFactory() {
-    	System.out.println("**INITIALIZING SESSION FACTORY3");
         LocalSessionFactoryBean sessionFactory = new LocalSessionFactoryBean();
         sessionFactory.setDataSource(dataSource());
         // where to load @Entity classes from
@@ -36,14 +69,167 @@ public class MyHibernateConfig {
         return sessionFactory;
      }
 	
+    /*
+     * Brings the schema up to date before Hibernate starts, on the primary and on every
+     * other shard: replicas follow through replication. jdbc.migrate=false leaves the
+     * schema alone.
+     */
     @Bean
+    public Flyway flyway() {
+        Flyway flyway = SchemaMigrations.configure().dataSource(primaryDataSource()).load();
+        if (environment.getProperty("jdbc.migrate", Boolean.class, true)) {
+            flyway.migrate();
+            ShardRoutingDataSource shards = shardRoutingDataSource();
+            for (int shard = 1; shard < shards.getShardCount(); shard++) {
+                SchemaMigrations.configure().dataSource(shards.getShard(shard)).load().migrate();
+            }
+        }
+        return flyway;
+    }
+
+    /*
+     * Turns exceptions thrown by the @Repository DAOs into DataAccessExceptions,
+     * e.g. a unique index violation into a DataIntegrityViolationException.
+     */
+    @Bean
+    public static PersistenceExceptionTranslationPostProcessor persistenceExceptionTranslation() {
+        return new PersistenceExceptionTranslationPostProcessor();
+    }
+
+    /*
+     * The home shard's data source, or with jdbc.shard.urls set, a routing data source
+     * over it and the other shards. Either way behind the statement listener.
+     */
+    @Bean
+    @Primary
     public DataSource dataSource() {
-        DriverManagerDataSource dataSource = new DriverManagerDataSource();
-        dataSource.setDriverClassName(environment.getRequiredProperty("jdbc.driverClassName"));
-        dataSource.setUrl(environment.getRequiredProperty("jdbc.url"));
-        dataSource.setUsername(environment.getRequiredProperty("jdbc.username"));
-        dataSource.setPassword(environment.getRequiredProperty("jdbc.password"));
-        return dataSource;
+        DataSource dataSource = shardUrls().isEmpty() ? homeDataSource() : shardRoutingDataSource();
+        return ProxyDataSourceBuilder.create(dataSource).name("provman").listener(queryListener).build();
+    }
+
+    /*
+     * The primary pool, or with jdbc.replica.urls set, a routing data source that sends
+     * read-only transactions to the replicas.
+     */
+    private DataSource homeDataSource() {
+        if (replicaUrls().isEmpty()) {
+            return primaryDataSource();
+        }
+        return new LazyConnectionDataSourceProxy(readReplicaRoutingDataSource());
+    }
+
+    @Bean(destroyMethod = "close")
+    public HikariDataSource primaryDataSource() {
+        HikariConfig config = poolConfig("provman", environment.getRequiredProperty("jdbc.url"));
+        config.setMetricsTrackerFactory(connectionPoolMetrics());
+        return new HikariDataSource(config);
+    }
+
+    @Bean(destroyMethod = "close")
+    public ReadReplicaRoutingDataSource readReplicaRoutingDataSource() {
+        List<DataSource> replicas = new ArrayList<DataSource>();
+        for (String url : replicaUrls()) {
+            HikariConfig config = poolConfig("provman-replica-" + replicas.size(), url);
+            config.setMetricRegistry(meterRegistry);
+            replicas.add(new HikariDataSource(config));
+        }
+        return new ReadReplicaRoutingDataSource(primaryDataSource(), replicas,
+                environment.getProperty("jdbc.replica.retryAfterMs", Long.class, 30000L));
+    }
+
+    /*
+     * The home shard first, then a pool per jdbc.shard.urls entry, which takes the
+     * pool settings of the primary. Farms are placed on them by ShardRouter.
+     */
+    @Bean(destroyMethod = "close")
+    public ShardRoutingDataSource shardRoutingDataSource() {
+        List<DataSource> shards = new ArrayList<DataSource>();
+        shards.add(homeDataSource());
+        for (String url : shardUrls()) {
+            HikariConfig config = poolConfig("provman-shard-" + shards.size(), url);
+            config.setMetricRegistry(meterRegistry);
+            shards.add(new HikariDataSource(config));
+        }
+        return new ShardRoutingDataSource(shards);
+    }
+
+    /*
+     * Picked up by the auto-proxy creator like the layer timing advisor, ordered
+     * after it and before the transaction advisor.
+     */
+    @Bean
+    @Role(BeanDefinition.ROLE_INFRASTRUCTURE)
+    public Advisor shardRoutingAdvisor(ShardRouter shardRouter) {
+        DefaultPointcutAdvisor advisor = new DefaultPointcutAdvisor(ShardRoutingInterceptor.POINTCUT,
+                new ShardRoutingInterceptor(shardRouter));
+        advisor.setOrder(Ordered.HIGHEST_PRECEDENCE + 1);
+        return advisor;
+    }
+
+    private List<String> replicaUrls() {
+        return urls("jdbc.replica.urls");
+    }
+
+    private List<String> shardUrls() {
+        return urls("jdbc.shard.urls");
+    }
+
+    private List<String> urls(String property) {
+        List<String> urls = new ArrayList<String>();
+        for (String url : environment.getProperty(property, "").split(",")) {
+            if (!url.trim().isEmpty()) {
+                urls.add(url.trim());
+            }
+        }
+        return urls;
+    }
+
+    private HikariConfig poolConfig(String poolName, String jdbcUrl) {
+        HikariConfig config = new HikariConfig();
+        config.setPoolName(poolName);
+        config.setDriverClassName(environment.getRequiredProperty("jdbc.driverClassName"));
+        config.setJdbcUrl(jdbcUrl);
+        config.setUsername(environment.getRequiredProperty("jdbc.username"));
+        config.setPassword(environment.getRequiredProperty("jdbc.password"));
+
+        // pool sizing and connection lifecycle
+        config.setMinimumIdle(environment.getProperty("jdbc.pool.minIdle", Integer.class, 2));
+        config.setMaximumPoolSize(environment.getProperty("jdbc.pool.maxSize", Integer.class, 10));
+        config.setConnectionTimeout(environment.getProperty("jdbc.pool.connectionTimeoutMs", Long.class, 30000L));
+        config.setIdleTimeout(environment.getProperty("jdbc.pool.idleTimeoutMs", Long.class, 600000L));
+        config.setMaxLifetime(environment.getProperty("jdbc.pool.maxLifetimeMs", Long.class, 1800000L));
+
+        // validation: JDBC4 isValid() unless a test query is configured
+        config.setValidationTimeout(environment.getProperty("jdbc.pool.validationTimeoutMs", Long.class, 5000L));
+        String testQuery = environment.getProperty("jdbc.pool.connectionTestQuery");
+        if (testQuery != null && !testQuery.isEmpty()) {
+            config.setConnectionTestQuery(testQuery);
+        }
+
+        // logs a stack trace for connections held longer than the threshold, 0 disables
+        config.setLeakDetectionThreshold(environment.getProperty("jdbc.pool.leakDetectionThresholdMs", Long.class, 60000L));
+
+        // client side prepared statement cache of the MySQL driver
+        int statementCacheSize = environment.getProperty("jdbc.pool.statementCacheSize", Integer.class, 250);
+        if (statementCacheSize > 0) {
+            config.addDataSourceProperty("cachePrepStmts", "true");
+            config.addDataSourceProperty("prepStmtCacheSize", String.valueOf(statementCacheSize));
+            config.addDataSourceProperty("prepStmtCacheSqlLimit",
+                    environment.getProperty("jdbc.pool.statementCacheSqlLimit", "2048"));
+            config.addDataSourceProperty("useServerPrepStmts",
+                    environment.getProperty("jdbc.pool.useServerPrepStmts", "true"));
+        }
+
+        // let the MySQL driver collapse JDBC batches into multi-row statements
+        config.addDataSourceProperty("rewriteBatchedStatements", "true");
+
+        config.setRegisterMbeans(true);
+        return config;
+    }
+
+    @Bean
+    public ConnectionPoolMetrics connectionPoolMetrics() {
+        return new ConnectionPoolMetrics(meterRegistry);
     }
     
     private Properties hibernateProperties() {
@@ -51,6 +237,23 @@ public class MyHibernateConfig {
         properties.put("hibernate.dialect", environment.getRequiredProperty("hibernate.dialect"));
         properties.put("hibernate.show_sql", environment.getRequiredProperty("hibernate.show_sql"));
         properties.put("hibernate.format_sql", environment.getRequiredProperty("hibernate.format_sql"));
+        properties.put("hibernate.jdbc.batch_size", environment.getProperty("hibernate.jdbc.batch_size", "50"));
+        properties.put("hibernate.order_inserts", "true");
+        properties.put("hibernate.order_updates", "true");
+
+        // opt-in second-level entity cache and query cache, regions are defined in ehcache.xml
+        boolean cacheEnabled = environment.getProperty("hibernate.cache.enabled", Boolean.class, false);
+        properties.put("hibernate.cache.use_second_level_cache", String.valueOf(cacheEnabled));
+        properties.put("hibernate.cache.use_query_cache", String.valueOf(cacheEnabled));
+        if (cacheEnabled) {
+            properties.put("hibernate.cache.region.factory_class", "jcache");
+            properties.put("hibernate.javax.cache.provider", "org.ehcache.jsr107.EhcacheCachingProvider");
+            properties.put("hibernate.javax.cache.uri", environment.getProperty("hibernate.cache.config", "ehcache.xml"));
+            properties.put("hibernate.javax.cache.missing_cache_strategy", "fail");
+        }
+        // statistics feed the hibernate.* meters on /metrics
+        properties.put("hibernate.generate_statistics", environment.getProperty("hibernate.generate_statistics", "true"));
+        properties.put("hibernate.session.events.log", "false");
         return properties;        
     }
     
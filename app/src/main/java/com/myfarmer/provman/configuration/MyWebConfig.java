@@ -1,19 +1,64 @@
 package com.myfarmer.provman.configuration;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.MessageSource;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.support.ResourceBundleMessageSource;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.web.multipart.MultipartResolver;
+import org.springframework.web.multipart.support.StandardServletMultipartResolver;
 import org.springframework.web.servlet.ViewResolver;
-import org.springframework.web.servlet.config.annotation.EnableWebMvc;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.DelegatingWebMvcConfiguration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerAdapter;
 import org.springframework.web.servlet.view.InternalResourceViewResolver;
 import org.springframework.web.servlet.view.JstlView;
 
+import com.myfarmer.provman.async.HandlerExecutor;
+import com.myfarmer.provman.async.OffloadingHandlerAdapter;
+import com.myfarmer.provman.metrics.RequestMetricsInterceptor;
+import com.myfarmer.provman.web.PrimaryReadsInterceptor;
+
+/*
+ * What @EnableWebMvc imports, extended rather than configured so that handlers
+ * can be offloaded (see OffloadingHandlerAdapter).
+ */
 @Configuration
-@EnableWebMvc
+@EnableScheduling
 @ComponentScan(basePackages = "com.myfarmer.provman")
-public class MyWebConfig {
+public class MyWebConfig extends DelegatingWebMvcConfiguration {
+
+	@Autowired
+	RequestMetricsInterceptor requestMetricsInterceptor;
+
+	@Autowired
+	PrimaryReadsInterceptor primaryReadsInterceptor;
+
+	@Autowired
+	HandlerExecutor handlerExecutor;
+
+	@Override
+	protected void addInterceptors(InterceptorRegistry registry) {
+		registry.addInterceptor(requestMetricsInterceptor).excludePathPatterns("/metrics");
+		registry.addInterceptor(primaryReadsInterceptor);
+	}
+
+	@Override
+	protected void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+		if (handlerExecutor.isEnabled()) {
+			configurer.setTaskExecutor(handlerExecutor.getExecutor());
+		}
+		configurer.setDefaultTimeout(handlerExecutor.getTimeoutMillis());
+		configurer.registerCallableInterceptors(requestMetricsInterceptor, primaryReadsInterceptor, handlerExecutor);
+	}
+
+	@Override
+	protected RequestMappingHandlerAdapter createRequestMappingHandlerAdapter() {
+		return new OffloadingHandlerAdapter(handlerExecutor);
+	}
 	
 	@Bean
 	public ViewResolver viewResolver() {
@@ -25,6 +70,11 @@ public class MyWebConfig {
 		return viewResolver;
 	}
 	
+	@Bean
+	public MultipartResolver multipartResolver() {
+		return new StandardServletMultipartResolver();
+	}
+
 	@Bean
 	public MessageSource messageSource() {
 	    ResourceBundleMessageSource messageSource = new ResourceBundleMessageSource();
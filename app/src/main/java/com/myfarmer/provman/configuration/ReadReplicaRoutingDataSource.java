@@ -0,0 +1,166 @@
+package com.myfarmer.provman.configuration;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.sql.DataSource;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Hands out replica connections inside read-only transactions, round robin
+ * over the replicas, and primary connections everywhere else.
+ *
+ * A replica that fails to give a connection is skipped for retryAfterMillis
+ * and the next one is tried, then the primary. The read-only flag is only
+ * known once the transaction has started, so this must sit behind a
+ * LazyConnectionDataSourceProxy.
+ *
+ * A thread bound with bindPrimary reads from the primary, for reads that must
+ * not lag behind the writes: see PrimaryReads. A thread given a primary
+ * connection outside a read-only transaction is taken to have written, which
+ * takeWrites tells once: PrimaryReadsInterceptor keeps the client on the
+ * primary for a while after it.
+ */
+@ManagedResource(objectName = "provman:name=readReplicaRouting")
+public class ReadReplicaRoutingDataSource extends AbstractDataSource implements Closeable {
+
+	private static final Log log = LogFactory.getLog(ReadReplicaRoutingDataSource.class);
+
+	private static final ThreadLocal<Boolean> primaryBound = new ThreadLocal<Boolean>();
+	private static final ThreadLocal<Boolean> wrote = new ThreadLocal<Boolean>();
+
+	private final DataSource primary;
+	private final List<DataSource> replicas;
+	private final long retryAfterMillis;
+
+	private final AtomicInteger next = new AtomicInteger();
+	private final AtomicLongArray downUntil;
+	private final AtomicLong replicaConnections = new AtomicLong();
+	private final AtomicLong primaryConnections = new AtomicLong();
+	private final AtomicLong failovers = new AtomicLong();
+
+	public ReadReplicaRoutingDataSource(DataSource primary, List<DataSource> replicas, long retryAfterMillis) {
+		this.primary = primary;
+		this.replicas = replicas;
+		this.retryAfterMillis = retryAfterMillis;
+		this.downUntil = new AtomicLongArray(replicas.size());
+	}
+
+	@Override
+	public Connection getConnection() throws SQLException {
+		return getConnection(null, null);
+	}
+
+	@Override
+	public Connection getConnection(String username, String password) throws SQLException {
+		boolean readOnly = TransactionSynchronizationManager.isCurrentTransactionReadOnly();
+		if (!readOnly) {
+			wrote.set(Boolean.TRUE);
+		}
+		if (readOnly && primaryBound.get() == null) {
+			int start = Math.abs(next.getAndIncrement() % Math.max(1, replicas.size()));
+			for (int i = 0; i < replicas.size(); i++) {
+				int index = (start + i) % replicas.size();
+				if (downUntil.get(index) > System.currentTimeMillis()) {
+					continue;
+				}
+				try {
+					Connection connection = open(replicas.get(index), username, password);
+					replicaConnections.incrementAndGet();
+					return connection;
+				} catch (SQLException e) {
+					downUntil.set(index, System.currentTimeMillis() + retryAfterMillis);
+					failovers.incrementAndGet();
+					log.warn("Read replica " + index + " unavailable, skipping it for " + retryAfterMillis + " ms", e);
+				}
+			}
+		}
+		primaryConnections.incrementAndGet();
+		return open(primary, username, password);
+	}
+
+	/**
+	 * Sends the current thread's read-only transactions to the primary and
+	 * returns whether it already was bound, to be handed back to restore.
+	 */
+	public static boolean bindPrimary() {
+		boolean previous = primaryBound.get() != null;
+		primaryBound.set(Boolean.TRUE);
+		return previous;
+	}
+
+	public static void restore(boolean previous) {
+		if (!previous) {
+			primaryBound.remove();
+		}
+	}
+
+	/**
+	 * Returns whether the current thread took a primary connection outside a
+	 * read-only transaction since the last call.
+	 */
+	public static boolean takeWrites() {
+		boolean taken = wrote.get() != null;
+		wrote.remove();
+		return taken;
+	}
+
+	private static Connection open(DataSource dataSource, String username, String password) throws SQLException {
+		return username == null ? dataSource.getConnection() : dataSource.getConnection(username, password);
+	}
+
+	@ManagedAttribute(description = "Configured read replicas")
+	public int getReplicaCount() {
+		return replicas.size();
+	}
+
+	@ManagedAttribute(description = "Replicas currently skipped after a connection failure")
+	public int getReplicasDown() {
+		int down = 0;
+		for (int i = 0; i < downUntil.length(); i++) {
+			if (downUntil.get(i) > System.currentTimeMillis()) {
+				down++;
+			}
+		}
+		return down;
+	}
+
+	@ManagedAttribute(description = "Connections handed out from a replica")
+	public long getReplicaConnections() {
+		return replicaConnections.get();
+	}
+
+	@ManagedAttribute(description = "Connections handed out from the primary")
+	public long getPrimaryConnections() {
+		return primaryConnections.get();
+	}
+
+	@ManagedAttribute(description = "Replica connection failures that fell over to another database")
+	public long getFailovers() {
+		return failovers.get();
+	}
+
+	/**
+	 * Closes the replica pools, the primary pool is a bean of its own.
+	 */
+	@Override
+	public void close() throws IOException {
+		for (DataSource replica : replicas) {
+			if (replica instanceof Closeable) {
+				((Closeable) replica).close();
+			}
+		}
+	}
+}
@@ -0,0 +1,27 @@
+package com.myfarmer.provman.configuration;
+
+import org.flywaydb.core.Flyway;
+import org.flywaydb.core.api.configuration.FluentConfiguration;
+
+/**
+ * The Flyway setup the application migrates its database with at startup,
+ * shared with the tests and the perf database so they run the same
+ * migrations. SQL migrations live in src/main/resources/db/migration, Java
+ * ones in com.myfarmer.provman.migration.
+ *
+ * A database that has tables but no flyway_schema_history yet, e.g. one set up
+ * from the old db_init.sql, is baselined at version 0, so every migration
+ * still runs on it and has to cope with what is already there.
+ */
+public final class SchemaMigrations {
+
+	private SchemaMigrations() {
+	}
+
+	public static FluentConfiguration configure() {
+		return Flyway.configure()
+				.locations("classpath:db/migration", "classpath:com/myfarmer/provman/migration")
+				.baselineOnMigrate(true)
+				.baselineVersion("0");
+	}
+}
@@ -1,5 +1,11 @@
 package com.myfarmer.provman.configuration;
 
+import javax.servlet.Filter;
+import javax.servlet.MultipartConfigElement;
+import javax.servlet.ServletRegistration;
+
+import org.springframework.web.filter.DelegatingFilterProxy;
+import org.springframework.web.servlet.FrameworkServlet;
 import org.springframework.web.servlet.support.AbstractAnnotationConfigDispatcherServletInitializer;
 
 public class ServletInitializer extends AbstractAnnotationConfigDispatcherServletInitializer {
@@ -14,6 +20,24 @@ public class ServletInitializer extends AbstractAnnotationConfigDispatcherServle
 		return new String[] { "/" };
 	}
 
+	/*
+	 * Multipart uploads for the bulk import, spooled to disk above 1 MB.
+	 */
+	@Override
+	protected void customizeRegistration(ServletRegistration.Dynamic registration) {
+		registration.setMultipartConfig(new MultipartConfigElement("", 200L * 1024 * 1024, 210L * 1024 * 1024, 1024 * 1024));
+	}
+
+	/*
+	 * The response cache filter is a bean of the dispatcher's context, there is no root context.
+	 */
+	@Override
+	protected Filter[] getServletFilters() {
+		DelegatingFilterProxy responseCacheFilter = new DelegatingFilterProxy("responseCacheFilter");
+		responseCacheFilter.setContextAttribute(FrameworkServlet.SERVLET_CONTEXT_PREFIX + getServletName());
+		return new Filter[] { responseCacheFilter };
+	}
+
 	@Override
 	protected Class<?>[] getRootConfigClasses() {
 		return null;
@@ -0,0 +1,220 @@
+package com.myfarmer.provman.controller;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.List;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.myfarmer.provman.api.DateRange;
+import com.myfarmer.provman.api.JsonWritable;
+import com.myfarmer.provman.api.PricePoint;
+import com.myfarmer.provman.api.ResourceNotFoundException;
+import com.myfarmer.provman.outbox.CatalogChanges;
+import com.myfarmer.provman.outbox.CatalogEvent;
+import com.myfarmer.provman.outbox.InMemoryCatalogEventSink;
+import com.myfarmer.provman.outbox.OutboxRelay;
+import com.myfarmer.provman.paging.Page;
+import com.myfarmer.provman.paging.PageRequest;
+import com.myfarmer.provman.search.SearchHit;
+import com.myfarmer.provman.search.SearchIndex;
+import com.myfarmer.provman.search.SearchKind;
+import com.myfarmer.provman.service.PriceHistoryService;
+import com.myfarmer.provman.service.ProductPricingService;
+import com.myfarmer.provman.service.ProductService;
+import com.myfarmer.provman.service.ProviderService;
+
+/**
+ * Read-only JSON API. Rows are projected straight into summary DTOs by the
+ * queries, no entity is loaded, and written to the response with a streaming
+ * generator.
+ *
+ * Listings are keyset paginated like the JSP pages (size, sort, after) and
+ * answer {"items": [...], "size": n, "sort": "...", "next": "cursor or null"}.
+ * Searches answer {"items": [...]} from the in-memory SearchIndex, best match
+ * first. Price histories answer {"items": [...], "from": "...", "to": "..."},
+ * one item per day with a price change, from (default a year before to) to to
+ * (default today), both ISO dates and included. Changes answer
+ * {"items": [...], "next": "cursor"}, the catalog events published after the
+ * cursor, oldest first; without a cursor only the current one.
+ */
+@Controller
+@RequestMapping(value = "/api/v1", method = RequestMethod.GET)
+public class ApiController {
+
+	private static final String CONTENT_TYPE = "application/json;charset=UTF-8";
+
+	private static final JsonFactory JSON = new JsonFactory();
+
+	private static final int MAX_CHANGES = 1000;
+
+	@Autowired
+	ProviderService providerService;
+
+	@Autowired
+	ProductService productService;
+
+	@Autowired
+	ProductPricingService pricingService;
+
+	@Autowired
+	PriceHistoryService priceHistoryService;
+
+	@Autowired
+	SearchIndex searchIndex;
+
+	@Autowired
+	OutboxRelay outboxRelay;
+
+	@RequestMapping("/providers")
+	public void providers(@RequestParam(value = "size", required = false) Integer size,
+			@RequestParam(value = "sort", required = false) String sort,
+			@RequestParam(value = "after", required = false) String after,
+			HttpServletResponse response) throws IOException {
+		writePage(providerService.findProviderSummaries(PageRequest.of(size, sort, after)), response);
+	}
+
+	@RequestMapping("/providers/{code}")
+	public void provider(@PathVariable("code") String code, HttpServletResponse response) throws IOException {
+		writeItem(found(providerService.findProviderSummaryByCode(code), "provider " + code), response);
+	}
+
+	@RequestMapping("/farms/{farmId}/products")
+	public void products(@PathVariable("farmId") Integer farmId,
+			@RequestParam(value = "size", required = false) Integer size,
+			@RequestParam(value = "sort", required = false) String sort,
+			@RequestParam(value = "after", required = false) String after,
+			HttpServletResponse response) throws IOException {
+		writePage(productService.getProductSummariesByFarmId(farmId, PageRequest.of(size, sort, after)), response);
+	}
+
+	@RequestMapping("/products/{productId}")
+	public void product(@PathVariable("productId") Integer productId, HttpServletResponse response) throws IOException {
+		writeItem(found(productService.findSummaryById(productId), "product " + productId), response);
+	}
+
+	@RequestMapping("/products/{productId}/pricings")
+	public void pricings(@PathVariable("productId") Integer productId,
+			@RequestParam(value = "size", required = false) Integer size,
+			@RequestParam(value = "sort", required = false) String sort,
+			@RequestParam(value = "after", required = false) String after,
+			HttpServletResponse response) throws IOException {
+		writePage(pricingService.findPricingSummariesByProductId(productId, PageRequest.of(size, sort, after)), response);
+	}
+
+	@RequestMapping("/products/{productId}/price-history")
+	public void productPriceHistory(@PathVariable("productId") Integer productId,
+			@RequestParam(value = "from", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+			@RequestParam(value = "to", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+			HttpServletResponse response) throws IOException {
+		DateRange range = DateRange.of(from, to);
+		writeHistory(priceHistoryService.findProductHistory(productId, range), range, response);
+	}
+
+	@RequestMapping("/farms/{farmId}/price-history")
+	public void farmPriceHistory(@PathVariable("farmId") Integer farmId,
+			@RequestParam(value = "from", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+			@RequestParam(value = "to", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+			HttpServletResponse response) throws IOException {
+		DateRange range = DateRange.of(from, to);
+		writeHistory(priceHistoryService.findFarmHistory(farmId, range), range, response);
+	}
+
+	@RequestMapping("/search")
+	public void search(@RequestParam("q") String query,
+			@RequestParam(value = "type", required = false) String type,
+			@RequestParam(value = "limit", defaultValue = "10") int limit,
+			HttpServletResponse response) throws IOException {
+		List<SearchHit> hits = searchIndex.search(query, SearchKind.parse(type), limit);
+		try (JsonGenerator json = open(response)) {
+			json.writeStartObject();
+			json.writeArrayFieldStart("items");
+			for (SearchHit hit : hits) {
+				hit.writeJson(json);
+			}
+			json.writeEndArray();
+			json.writeEndObject();
+		}
+	}
+
+	@RequestMapping("/changes")
+	public void changes(@RequestParam(value = "after", required = false) String after,
+			@RequestParam(value = "limit", defaultValue = "500") int limit,
+			HttpServletResponse response) throws IOException {
+		InMemoryCatalogEventSink sink = outboxRelay.getMemorySink();
+		if (sink == null) {
+			throw new ResourceNotFoundException("No changes here, they are only kept with outbox.sink=memory;"
+					+ " catalog events go to " + outboxRelay.getSink());
+		}
+		CatalogChanges changes = sink.read(after, Math.max(1, Math.min(limit, MAX_CHANGES)));
+		try (JsonGenerator json = open(response)) {
+			json.writeStartObject();
+			json.writeArrayFieldStart("items");
+			for (CatalogEvent event : changes.getItems()) {
+				event.writeJson(json);
+			}
+			json.writeEndArray();
+			json.writeStringField("next", changes.getNext());
+			json.writeEndObject();
+		}
+	}
+
+	private static <T> T found(T item, String what) {
+		if (item == null) {
+			throw new ResourceNotFoundException("No " + what);
+		}
+		return item;
+	}
+
+	private static void writeItem(JsonWritable item, HttpServletResponse response) throws IOException {
+		try (JsonGenerator json = open(response)) {
+			item.writeJson(json);
+		}
+	}
+
+	private static void writePage(Page<? extends JsonWritable> page, HttpServletResponse response) throws IOException {
+		try (JsonGenerator json = open(response)) {
+			json.writeStartObject();
+			json.writeArrayFieldStart("items");
+			for (JsonWritable item : page.getItems()) {
+				item.writeJson(json);
+			}
+			json.writeEndArray();
+			json.writeNumberField("size", page.getSize());
+			json.writeStringField("sort", page.getSort());
+			json.writeStringField("next", page.getNextCursor());
+			json.writeEndObject();
+		}
+	}
+
+	private static void writeHistory(List<PricePoint> points, DateRange range, HttpServletResponse response)
+			throws IOException {
+		try (JsonGenerator json = open(response)) {
+			json.writeStartObject();
+			json.writeArrayFieldStart("items");
+			for (PricePoint point : points) {
+				point.writeJson(json);
+			}
+			json.writeEndArray();
+			json.writeStringField("from", range.getFrom().toString());
+			json.writeStringField("to", range.getTo().toString());
+			json.writeEndObject();
+		}
+	}
+
+	private static JsonGenerator open(HttpServletResponse response) throws IOException {
+		response.setContentType(CONTENT_TYPE);
+		return JSON.createGenerator(response.getOutputStream(), JsonEncoding.UTF8);
+	}
+}
@@ -0,0 +1,76 @@
+package com.myfarmer.provman.controller;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.multipart.MultipartFile;
+
+import com.myfarmer.provman.bulk.CsvImportRowReader;
+import com.myfarmer.provman.bulk.ImportResult;
+import com.myfarmer.provman.bulk.ImportRowReader;
+import com.myfarmer.provman.bulk.JsonImportRowReader;
+import com.myfarmer.provman.service.BulkImportService;
+
+/**
+ * Bulk onboarding of a farm catalog. Accepts either a multipart upload in the
+ * "file" part or the raw request body, as CSV (default) or as a JSON array.
+ *
+ * Products: name,description
+ * Pricings: product_id,weight,price
+ */
+@Controller
+@RequestMapping("/import")
+public class BulkImportController {
+
+	@Autowired
+	BulkImportService bulkImportService;
+
+	@RequestMapping(value = "/{farmId}/products", method = RequestMethod.POST)
+	@ResponseBody
+	public ImportResult importProducts(@PathVariable Integer farmId,
+			@RequestParam(value = "file", required = false) MultipartFile file,
+			@RequestParam(value = "format", required = false) String format,
+			HttpServletRequest request) throws IOException {
+		try (ImportRowReader reader = openReader(file, format, request, "name", "description")) {
+			return bulkImportService.importProducts(farmId, reader);
+		}
+	}
+
+	@RequestMapping(value = "/{farmId}/pricings", method = RequestMethod.POST)
+	@ResponseBody
+	public ImportResult importPricings(@PathVariable Integer farmId,
+			@RequestParam(value = "file", required = false) MultipartFile file,
+			@RequestParam(value = "format", required = false) String format,
+			HttpServletRequest request) throws IOException {
+		try (ImportRowReader reader = openReader(file, format, request, "product_id", "weight", "price")) {
+			return bulkImportService.importPricings(farmId, reader);
+		}
+	}
+
+	private ImportRowReader openReader(MultipartFile file, String format, HttpServletRequest request,
+			String... csvColumns) throws IOException {
+		InputStream input;
+		String contentType;
+		if (file != null) {
+			input = file.getInputStream();
+			contentType = file.getOriginalFilename() != null && file.getOriginalFilename().endsWith(".json")
+					? "application/json" : file.getContentType();
+		} else {
+			input = request.getInputStream();
+			contentType = request.getContentType();
+		}
+		boolean json = format != null
+				? "json".equalsIgnoreCase(format)
+				: contentType != null && contentType.contains("json");
+		return json ? new JsonImportRowReader(input) : new CsvImportRowReader(input, csvColumns);
+	}
+}
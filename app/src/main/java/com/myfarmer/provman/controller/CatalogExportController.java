@@ -0,0 +1,59 @@
+package com.myfarmer.provman.controller;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+
+import com.myfarmer.provman.export.CatalogWriter;
+import com.myfarmer.provman.export.CsvCatalogWriter;
+import com.myfarmer.provman.export.JsonCatalogWriter;
+import com.myfarmer.provman.service.CatalogExportService;
+
+/**
+ * Streams the farm, product and pricing catalog straight from the database
+ * cursor to the response, as CSV (default) or JSON, gzip compressed when the
+ * client accepts it or gzip=true is passed.
+ */
+@Controller
+public class CatalogExportController {
+
+	@Autowired
+	CatalogExportService catalogExportService;
+
+	@RequestMapping(value = "/export/catalog", method = RequestMethod.GET)
+	public void exportCatalog(@RequestParam(value = "farmId", required = false) Integer farmId,
+			@RequestParam(value = "format", defaultValue = "csv") String format,
+			@RequestParam(value = "gzip", required = false) Boolean gzip,
+			HttpServletRequest request, HttpServletResponse response) throws IOException {
+		boolean json = "json".equalsIgnoreCase(format);
+		String acceptEncoding = request.getHeader("Accept-Encoding");
+		boolean compress = gzip != null ? gzip : acceptEncoding != null && acceptEncoding.contains("gzip");
+
+		String fileName = "catalog" + (farmId != null ? "-farm-" + farmId : "") + (json ? ".json" : ".csv");
+		response.setHeader("Content-Disposition", "attachment; filename=\"" + fileName + (compress && gzip != null ? ".gz" : "") + "\"");
+		response.setHeader("Vary", "Accept-Encoding");
+
+		OutputStream out = response.getOutputStream();
+		if (compress) {
+			if (gzip == null) {
+				response.setHeader("Content-Encoding", "gzip");
+			}
+			// sync flush so every writer flush reaches the client instead of waiting in the deflater
+			out = new GZIPOutputStream(out, 8192, true);
+		}
+		CatalogWriter writer = json ? new JsonCatalogWriter(out) : new CsvCatalogWriter(out);
+		response.setContentType(compress && gzip != null ? "application/gzip" : writer.getContentType());
+
+		catalogExportService.exportCatalog(farmId, writer);
+		out.close();
+	}
+}
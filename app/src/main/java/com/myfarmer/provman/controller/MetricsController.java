@@ -0,0 +1,26 @@
+package com.myfarmer.provman.controller;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import io.prometheus.client.exporter.common.TextFormat;
+
+/**
+ * Prometheus scrape endpoint.
+ */
+@Controller
+public class MetricsController {
+
+	@Autowired
+	PrometheusMeterRegistry registry;
+
+	@RequestMapping(value = "/metrics", method = RequestMethod.GET, produces = TextFormat.CONTENT_TYPE_004)
+	@ResponseBody
+	public String scrape() {
+		return registry.scrape();
+	}
+}
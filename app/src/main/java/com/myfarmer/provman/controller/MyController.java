@@ -1,6 +1,5 @@
 package com.myfarmer.provman.controller;
 
-import java.util.List;
 import java.util.Locale;
 
 import javax.validation.Valid;
@@ -8,6 +7,8 @@ import javax.validation.Valid;
 import com.myfarmer.provman.model.Product;
 import com.myfarmer.provman.model.ProductAndPrice;
 import com.myfarmer.provman.model.ProductPricing;
+import com.myfarmer.provman.paging.Page;
+import com.myfarmer.provman.paging.PageRequest;
 import com.myfarmer.provman.service.ProductPricingService;
 import com.myfarmer.provman.service.ProductService;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -20,11 +21,23 @@ import org.springframework.web.bind.annotation.ModelAttribute;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
-
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.support.RedirectAttributes;
+
+import com.myfarmer.provman.async.Offloaded;
+import com.myfarmer.provman.api.ResourceNotFoundException;
+import com.myfarmer.provman.metrics.QueryBudget;
 import com.myfarmer.provman.model.Provider;
+import com.myfarmer.provman.service.ProviderCodeTakenException;
 import com.myfarmer.provman.service.ProviderService;
+import com.myfarmer.provman.web.DataVersion;
+import com.myfarmer.provman.web.PrimaryReads;
+import com.myfarmer.provman.web.RenderedResponseCache;
 
 @Controller
+@Offloaded
 @RequestMapping("/")
 public class MyController {
 
@@ -41,18 +54,26 @@ public class MyController {
 	MessageSource messageSource;
 
 	/*
-	 * List all existing Providers.
+	 * List existing Providers, one keyset page at a time.
 	 */
+	@QueryBudget(2)
 	@RequestMapping(value = { "/", "/provider/list" }, method = RequestMethod.GET)
-	public String listProviders(ModelMap model) {
-		List<Provider> providers = providerService.findAllProviders();
-		model.addAttribute("providers", providers);
+	public String listProviders(@RequestParam(value = "size", required = false) Integer size,
+			@RequestParam(value = "sort", required = false) String sort,
+			@RequestParam(value = "after", required = false) String after, ModelMap model, WebRequest request) {
+		if (isNotModified(request, providerService.findProvidersVersion())) {
+			return null;
+		}
+		Page<Provider> page = providerService.findProviders(PageRequest.of(size, sort, after));
+		model.addAttribute("providers", page.getItems());
+		model.addAttribute("page", page);
 		return "allproviders";
 	}
 
 	/*
 	 * Add a new Provider.
 	 */
+	@QueryBudget(0)
 	@RequestMapping(value = { "/provider/new" }, method = RequestMethod.GET)
 	public String newProvider(ModelMap model) {
 		Provider provider = new Provider();
@@ -64,6 +85,7 @@ public class MyController {
 	/*
 	 * Handling POST request for validating the user input and saving Provider in database.
 	 */
+	@QueryBudget(2)
 	@RequestMapping(value = { "/provider/new" }, method = RequestMethod.POST)
 	public String saveProvider(@Valid Provider provider, BindingResult result,
 			ModelMap model) {
@@ -73,12 +95,17 @@ public class MyController {
 		}
 		
 		if(!providerService.isProviderCodeUnique(provider.getId(), provider.getCode())){
-			FieldError codeError =new FieldError("Provider","code",messageSource.getMessage("non.unique.code", new String[]{provider.getCode()}, Locale.getDefault()));
-		    result.addError(codeError);
+			rejectCode(provider, result);
 			return "registration";
 		}
 		
-		providerService.saveProvider(provider);
+		try {
+			providerService.saveProvider(provider);
+		} catch (ProviderCodeTakenException e) {
+			// taken by another request since the check
+			rejectCode(provider, result);
+			return "registration";
+		}
 
 		model.addAttribute("success", "Provider " + provider.getName() + " registered successfully.");
 		return "success";
@@ -88,8 +115,13 @@ public class MyController {
 	/*
 	 * Provide the existing Provider for updating.
 	 */
+	@PrimaryReads
+	@QueryBudget(2)
 	@RequestMapping(value = { "/edit-{code}-provider" }, method = RequestMethod.GET)
-	public String editProvider(@PathVariable String code, ModelMap model) {
+	public String editProvider(@PathVariable String code, ModelMap model, WebRequest request) {
+		if (isNotModified(request, providerService.findProviderVersion(code))) {
+			return null;
+		}
 		Provider provider = providerService.findProviderByCode(code);
 		model.addAttribute("provider", provider);
 		model.addAttribute("edit", true);
@@ -99,6 +131,7 @@ public class MyController {
 	/*
 	 * Handling POST request for validating the user input and updating Provider in database.
 	 */
+	@QueryBudget(3)
 	@RequestMapping(value = { "/edit-{code}-provider" }, method = RequestMethod.POST)
 	public String updateProvider(@Valid Provider provider, BindingResult result,
 			ModelMap model, @PathVariable String code) {
@@ -108,12 +141,16 @@ public class MyController {
 		}
 
 		if(!providerService.isProviderCodeUnique(provider.getId(), provider.getCode())){
-			FieldError codeError =new FieldError("Provider","code",messageSource.getMessage("non.unique.code", new String[]{provider.getCode()}, Locale.getDefault()));
-		    result.addError(codeError);
+			rejectCode(provider, result);
 			return "registration";
 		}
 
-		providerService.updateProvider(provider);
+		try {
+			providerService.updateProvider(provider);
+		} catch (ProviderCodeTakenException e) {
+			rejectCode(provider, result);
+			return "registration";
+		}
 
 		model.addAttribute("success", "Provider " + provider.getName()	+ " updated successfully");
 		return "success";
@@ -123,17 +160,20 @@ public class MyController {
 	/*
 	 * Delete a Provider by it's CODE value.
 	 */
+	@QueryBudget(3)
 	@RequestMapping(value = { "/delete-{code}-provider" }, method = RequestMethod.GET)
 	public String deleteProvider(@PathVariable String code, ModelMap model) {
 		providerService.deleteProviderByCode(code);
-		List<Provider> providers = providerService.findAllProviders();
-		model.addAttribute("providers", providers);
+		Page<Provider> page = providerService.findProviders(PageRequest.firstPage());
+		model.addAttribute("providers", page.getItems());
+		model.addAttribute("page", page);
 		return "allproviders";
 	}
 
 	/*
 	 * Create a new Product
 	 */
+	@QueryBudget(0)
 	@RequestMapping(value = {"/product/new/{farmId}"}, method = RequestMethod.GET)
 	public String newProduct(@PathVariable Integer farmId, ModelMap modelMap) {
 		Product product = new Product();
@@ -144,6 +184,7 @@ public class MyController {
 		return "product";
 	}
 
+	@QueryBudget(4)
 	@RequestMapping(value = {"/product/new/{farmId}"}, method = RequestMethod.POST)
 	public String saveProduct(@Valid Product product, ModelMap modelMap) {
 		productService.saveProduct(product);
@@ -155,31 +196,50 @@ public class MyController {
 		return "success";
 	}
 
+	@QueryBudget(2)
 	@RequestMapping(value = {"/product/{farmId}"}, method = RequestMethod.GET)
-	public String getProducts(@PathVariable Integer farmId, ModelMap modelMap) {
-		List<Product> products = productService.getProductsByFarmId(farmId);
-		modelMap.addAttribute("products", products);
+	public String getProducts(@PathVariable Integer farmId,
+			@RequestParam(value = "size", required = false) Integer size,
+			@RequestParam(value = "sort", required = false) String sort,
+			@RequestParam(value = "after", required = false) String after, ModelMap modelMap, WebRequest request) {
+		if (isNotModified(request, productService.findFarmProductsVersion(farmId))) {
+			return null;
+		}
+		Page<Product> page = productService.getProductsByFarmId(farmId, PageRequest.of(size, sort, after));
+		modelMap.addAttribute("products", page.getItems());
+		modelMap.addAttribute("page", page);
 		modelMap.addAttribute("farmId", farmId);
 
 
 		return "productList";
 	}
 
+	@PrimaryReads
+	@QueryBudget(3)
 	@RequestMapping(value = {"/product/edit/{productId}"}, method = RequestMethod.GET)
-	public String editProduct(@PathVariable("productId") Integer productId, ModelMap modelMap) {
-		Product product = productService.findById(productId);
+	public String editProduct(@PathVariable("productId") Integer productId, ModelMap modelMap, WebRequest request) {
+		if (isNotModified(request, productService.findProductVersion(productId)
+				.and(pricingService.findPricingsVersion(productId)))) {
+			return null;
+		}
+		Product product = productService.findByIdWithPricings(productId);
+		if (product == null) {
+			throw new ResourceNotFoundException("No product " + productId);
+		}
 
 		modelMap.addAttribute("product", product);
+		modelMap.addAttribute("pricings", product.getProductPricings());
 		modelMap.addAttribute("edit", true);
 
 
 		return "pricingList";
 	}
 
+	@QueryBudget(7)
 	@RequestMapping(value = {"/product/edit/{productId}/{pricingId}"}, method = RequestMethod.POST)
 	public String updateProduct(@Valid ProductAndPrice productAndPrice, ModelMap modelMap) {
-		productService.updateProduct(productAndPrice.getProduct());
-		pricingService.updateProductPricing(productAndPrice.getPricing());
+		// answers 409 through ConcurrentEditException when either was changed since the form was rendered
+		productService.updateProductAndPricing(productAndPrice.getProduct(), productAndPrice.getPricing());
 
 		modelMap.addAttribute("returnPage", "product");
 		modelMap.addAttribute("farmId", productAndPrice.getProduct().getFarmId());
@@ -189,6 +249,7 @@ public class MyController {
 		return "success";
 	}
 
+	@QueryBudget(3)
 	@RequestMapping(value = {"/product/delete/{farmId}/{id}"}, method = RequestMethod.GET)
 	public String deleteProduct(@PathVariable("farmId") Integer farmId, @PathVariable("id") Integer id, ModelMap modelMap) {
 		productService.deleteProductById(id);
@@ -200,6 +261,46 @@ public class MyController {
 		return "success";
 	}
 
+	/*
+	 * Retire a farm: delete all of its products and their pricings. The GET only asks for confirmation,
+	 * a link followed by a crawler or prefetched by a browser must not delete anything.
+	 */
+	@QueryBudget(0)
+	@RequestMapping(value = {"/farm/retire/{farmId}"}, method = RequestMethod.GET)
+	public String confirmRetireFarm(@PathVariable("farmId") Integer farmId, ModelMap modelMap) {
+		modelMap.addAttribute("farmId", farmId);
+
+		return "retireFarm";
+	}
+
+	/*
+	 * Redirects once done, reloading the result page does not post again.
+	 */
+	@QueryBudget(3)
+	@RequestMapping(value = {"/farm/retire/{farmId}"}, method = RequestMethod.POST)
+	public String retireFarm(@PathVariable("farmId") Integer farmId, RedirectAttributes redirectAttributes) {
+		int deleted = productService.retireFarm(farmId);
+
+		redirectAttributes.addFlashAttribute("success",
+				"Successfully retired farm " + farmId + ", " + deleted + " products deleted");
+
+		return "redirect:/farm/retired/" + farmId;
+	}
+
+	@QueryBudget(0)
+	@RequestMapping(value = {"/farm/retired/{farmId}"}, method = RequestMethod.GET)
+	public String farmRetired(@PathVariable("farmId") Integer farmId, ModelMap modelMap) {
+		modelMap.addAttribute("returnPage", "product");
+		modelMap.addAttribute("farmId", farmId);
+		// the flash attribute is gone when the page is reloaded
+		if (!modelMap.containsAttribute("success")) {
+			modelMap.addAttribute("success", "Farm " + farmId + " is retired");
+		}
+
+		return "success";
+	}
+
+	@QueryBudget(1)
 	@RequestMapping(value = {"/pricing/new/{prodId}"}, method = RequestMethod.GET)
 	public String newPricing(@PathVariable Integer prodId, ModelMap modelMap) {
 		ProductPricing productPricing = new ProductPricing();
@@ -212,6 +313,7 @@ public class MyController {
 		return "pricing";
 	}
 
+	@QueryBudget(6)
 	@RequestMapping(value = {"/pricing/new/{prodId}"}, method = RequestMethod.POST)
 	public String savePricing(@Valid ProductPricing productPricing, ModelMap modelMap) {
 		pricingService.saveProductPricing(productPricing);
@@ -223,19 +325,39 @@ public class MyController {
 		return "success";
 	}
 
+	@QueryBudget(4)
 	@RequestMapping(value = {"/pricing/{prodId}"}, method = RequestMethod.GET)
-	public String getPricings(@PathVariable Integer prodId, ModelMap modelMap) {
-		List<ProductPricing> pricings = pricingService.findProductPricingsByProductId(prodId);
+	public String getPricings(@PathVariable Integer prodId,
+			@RequestParam(value = "size", required = false) Integer size,
+			@RequestParam(value = "sort", required = false) String sort,
+			@RequestParam(value = "after", required = false) String after, ModelMap modelMap, WebRequest request) {
+		if (isNotModified(request, productService.findProductVersion(prodId)
+				.and(pricingService.findPricingsVersion(prodId)))) {
+			return null;
+		}
+		Product product = productService.findById(prodId);
+		Page<ProductPricing> page = pricingService.findProductPricingsByProductId(prodId, PageRequest.of(size, sort, after));
 
-		modelMap.addAttribute("pricings", pricings);
+		modelMap.addAttribute("product", product);
+		modelMap.addAttribute("pricings", page.getItems());
+		modelMap.addAttribute("page", page);
 
 
 		return "pricingList";
 	}
 
+	@PrimaryReads
+	@QueryBudget(3)
 	@RequestMapping(value = {"/pricing/edit/{id}"}, method = RequestMethod.GET)
-	public String editPricing(@PathVariable Integer id, ModelMap modelMap) {
+	public String editPricing(@PathVariable Integer id, ModelMap modelMap, WebRequest request) {
+		// covers the product too, the form shows its name
+		if (isNotModified(request, pricingService.findPricingVersion(id))) {
+			return null;
+		}
 		ProductPricing pricing = pricingService.findById(id);
+		if (pricing == null) {
+			throw new ResourceNotFoundException("No pricing " + id);
+		}
 
 		modelMap.addAttribute("pricing", pricing);
 		modelMap.addAttribute("edit", true);
@@ -243,6 +365,7 @@ public class MyController {
 		return "pricing";
 	}
 
+	@QueryBudget(5)
 	@RequestMapping(value = {"/pricing/edit/{id}"}, method = RequestMethod.POST)
 	public String updatePricing(@Valid ProductPricing pricing, ModelMap modelMap) {
 		Integer prodId = pricing.getProduct().getId();
@@ -255,6 +378,7 @@ public class MyController {
 		return "success";
 	}
 
+	@QueryBudget(2)
 	@RequestMapping(value = "/pricing/delete/{prodId}/{id}", method = RequestMethod.GET)
 	public String deletePricing(@PathVariable("prodId") Integer prodId, @PathVariable("id") Integer id, ModelMap modelMap) {
 		pricingService.deleteProductPricingById(id);
@@ -266,4 +390,24 @@ public class MyController {
 		return "success";
 	}
 
+	/*
+	 * Conditional GET: answers 304 from the ETag/Last-Modified of the rows behind the page,
+	 * before anything is loaded. Otherwise the rendered page may go to the response cache.
+	 */
+	private static boolean isNotModified(WebRequest request, DataVersion version) {
+		// always revalidate, a check only costs the count/max query
+		((ServletWebRequest) request).getResponse().setHeader("Cache-Control", "no-cache");
+		if (request.checkNotModified(version.getETag(), version.getLastModified())) {
+			return true;
+		}
+		// on the servlet request, an offloaded handler runs after the WebRequest is closed to attributes
+		((ServletWebRequest) request).getRequest().setAttribute(RenderedResponseCache.CACHEABLE, Boolean.TRUE);
+		return false;
+	}
+
+	private void rejectCode(Provider provider, BindingResult result) {
+		FieldError codeError =new FieldError("Provider","code",messageSource.getMessage("non.unique.code", new String[]{provider.getCode()}, Locale.getDefault()));
+		result.addError(codeError);
+	}
+
 }
@@ -0,0 +1,27 @@
+package com.myfarmer.provman.controller;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+import com.myfarmer.provman.search.SearchIndex;
+import com.myfarmer.provman.search.SearchRebuildResult;
+
+/**
+ * Rebuilds the search index from the database, e.g. after rows were changed
+ * outside the application. Answers 409 while another rebuild is in progress.
+ */
+@Controller
+public class SearchController {
+
+	@Autowired
+	SearchIndex searchIndex;
+
+	@RequestMapping(value = "/search/rebuild", method = RequestMethod.POST)
+	@ResponseBody
+	public SearchRebuildResult rebuild() {
+		return searchIndex.rebuild();
+	}
+}
@@ -0,0 +1,30 @@
+package com.myfarmer.provman.controller;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+import com.myfarmer.provman.shard.FarmMover;
+import com.myfarmer.provman.shard.FarmMoveResult;
+
+/**
+ * Moves a farm to another shard, e.g. POST /shards/farms/12/move?to=2. Answers
+ * 409 while another move is running or if the farm changed during the move,
+ * 400 for a shard that is not configured.
+ */
+@Controller
+public class ShardController {
+
+	@Autowired
+	FarmMover farmMover;
+
+	@RequestMapping(value = "/shards/farms/{farmId}/move", method = RequestMethod.POST)
+	@ResponseBody
+	public FarmMoveResult moveFarm(@PathVariable("farmId") int farmId, @RequestParam("to") int shard) {
+		return farmMover.move(farmId, shard);
+	}
+}
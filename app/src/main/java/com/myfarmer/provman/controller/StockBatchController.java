@@ -0,0 +1,28 @@
+package com.myfarmer.provman.controller;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+import com.myfarmer.provman.service.StockBatchService;
+import com.myfarmer.provman.stock.StockBatchResult;
+
+/**
+ * Triggers a stock_batch rebuild, incremental (changed farms only) by default
+ * or full with mode=full. Answers 409 while another run is in progress.
+ */
+@Controller
+public class StockBatchController {
+
+	@Autowired
+	StockBatchService stockBatchService;
+
+	@RequestMapping(value = "/stock/batch", method = RequestMethod.POST)
+	@ResponseBody
+	public StockBatchResult runStockBatch(@RequestParam(value = "mode", defaultValue = "incremental") String mode) {
+		return stockBatchService.run(!"full".equalsIgnoreCase(mode));
+	}
+}
@@ -3,12 +3,27 @@ package com.myfarmer.provman.dao;
 import java.io.Serializable;
 
 import java.lang.reflect.ParameterizedType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 import org.hibernate.Criteria;
 import org.hibernate.Session;
 import org.hibernate.SessionFactory;
+import org.hibernate.criterion.Order;
+import org.hibernate.criterion.ProjectionList;
+import org.hibernate.criterion.Restrictions;
+import org.hibernate.metadata.ClassMetadata;
+import org.hibernate.transform.Transformers;
+import org.springframework.beans.BeanWrapper;
+import org.springframework.beans.BeanWrapperImpl;
 import org.springframework.beans.factory.annotation.Autowired;
 
+import com.myfarmer.provman.paging.Cursor;
+import com.myfarmer.provman.paging.InvalidPageRequestException;
+import com.myfarmer.provman.paging.Page;
+import com.myfarmer.provman.paging.PageRequest;
+
 public abstract class AbstractDao<PK extends Serializable, T> {
 	
 	private final Class<T> persistentClass;
@@ -38,6 +53,10 @@ public abstract class AbstractDao<PK extends Serializable, T> {
 		getSession().saveOrUpdate(entity);
 	}	
 
+	public void flush() {
+		getSession().flush();
+	}
+
 	public void delete(T entity) {
 		getSession().delete(entity);
 	}
@@ -46,4 +65,84 @@ public abstract class AbstractDao<PK extends Serializable, T> {
 		return getSession().createCriteria(persistentClass);
 	}
 
+	/**
+	 * Keyset pagination over the given criteria: rows are ordered by (sort, id) and
+	 * the page starts strictly after the cursor, so with an index on the criteria's
+	 * equality columns, the sort column and id (see V7__Keyset_page_indexes.sql)
+	 * every page costs one bounded index range scan no matter how deep it is. A
+	 * sortable property without such an index makes every page a sort of all the
+	 * matching rows. The first sortable property is the
+	 * default sort, properties used for sorting must not be nullable and must compare
+	 * exactly: a float read back from the cursor may not equal the column value it
+	 * came from, and rows tied on it would be skipped or repeated.
+	 */
+	protected Page<T> findPage(Criteria criteria, PageRequest request, String... sortableProperties) {
+		return keysetPage(criteria, request, false, sortableProperties);
+	}
+
+	/**
+	 * Same as findPage, with the rows projected onto a DTO instead of loading entities.
+	 * The projection list must alias each column by the DTO property it fills, and
+	 * include the id and every sortable property under their entity property names.
+	 */
+	protected <D> Page<D> findProjectedPage(Criteria criteria, ProjectionList projections, Class<D> dtoClass,
+			PageRequest request, String... sortableProperties) {
+		criteria.setProjection(projections);
+		criteria.setResultTransformer(Transformers.aliasToBean(dtoClass));
+		return keysetPage(criteria, request, true, sortableProperties);
+	}
+
+	@SuppressWarnings("unchecked")
+	private <R> Page<R> keysetPage(Criteria criteria, PageRequest request, boolean projected,
+			String... sortableProperties) {
+		String sort = request.getSort() == null ? sortableProperties[0] : request.getSort();
+		if (!Arrays.asList(sortableProperties).contains(sort)) {
+			throw new InvalidPageRequestException("Cannot sort by '" + sort + "'");
+		}
+		ClassMetadata metadata = sessionFactory.getClassMetadata(persistentClass);
+		Class<?> sortType = metadata.getPropertyType(sort).getReturnedClass();
+		if (sortType == Float.class || sortType == float.class || sortType == Double.class || sortType == double.class) {
+			throw new IllegalArgumentException("Cannot keyset paginate on the approximate property '" + sort + "'");
+		}
+		String idProperty = metadata.getIdentifierPropertyName();
+		boolean sortById = sort.equals(idProperty);
+
+		if (request.getAfter() != null) {
+			Cursor cursor = Cursor.decode(request.getAfter(), sort);
+			if (sortById) {
+				criteria.add(Restrictions.gt(idProperty, cursor.getId()));
+			} else {
+				Object value = cursor.typedValue(sortType);
+				criteria.add(Restrictions.or(
+						Restrictions.gt(sort, value),
+						Restrictions.and(Restrictions.eq(sort, value), Restrictions.gt(idProperty, cursor.getId()))));
+			}
+		}
+		if (!sortById) {
+			criteria.addOrder(Order.asc(sort));
+		}
+		criteria.addOrder(Order.asc(idProperty));
+		// one extra row tells whether there is a next page
+		criteria.setMaxResults(request.getSize() + 1);
+
+		List<R> rows = criteria.list();
+		String nextCursor = null;
+		if (rows.size() > request.getSize()) {
+			rows = new ArrayList<R>(rows.subList(0, request.getSize()));
+			R last = rows.get(rows.size() - 1);
+			Object value;
+			Serializable id;
+			if (projected) {
+				BeanWrapper dto = new BeanWrapperImpl(last);
+				value = sortById ? null : dto.getPropertyValue(sort);
+				id = (Serializable) dto.getPropertyValue(idProperty);
+			} else {
+				value = sortById ? null : metadata.getPropertyValue(last, sort);
+				id = getSession().getIdentifier(last);
+			}
+			nextCursor = Cursor.encode(sort, value, id);
+		}
+		return new Page<R>(rows, request.getSize(), sort, request.getAfter(), nextCursor);
+	}
+
 }
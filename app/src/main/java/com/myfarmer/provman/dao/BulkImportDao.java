@@ -0,0 +1,17 @@
+package com.myfarmer.provman.dao;
+
+import com.myfarmer.provman.model.Product;
+import com.myfarmer.provman.model.ProductPricing;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+public interface BulkImportDao {
+
+  void insertProducts(List<Product> products);
+
+  void insertPricings(List<ProductPricing> pricings);
+
+  Set<Integer> findProductIdsInFarm(Integer farmId, Collection<Integer> productIds);
+}
@@ -0,0 +1,60 @@
+package com.myfarmer.provman.dao;
+
+import com.myfarmer.provman.model.Product;
+import com.myfarmer.provman.model.ProductPricing;
+import org.hibernate.Query;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Inserts through the session with JDBC batching (hibernate.jdbc.batch_size),
+ * flushing and clearing after each chunk so the persistence context stays small.
+ */
+@Repository("bulkImportDao")
+public class BulkImportDaoImpl implements BulkImportDao {
+
+  @Autowired
+  private SessionFactory sessionFactory;
+
+  @Override
+  public void insertProducts(List<Product> products) {
+    Session session = sessionFactory.getCurrentSession();
+    for (Product product : products) {
+      session.persist(product);
+    }
+    session.flush();
+    session.clear();
+  }
+
+  @Override
+  public void insertPricings(List<ProductPricing> pricings) {
+    Session session = sessionFactory.getCurrentSession();
+    for (ProductPricing pricing : pricings) {
+      // reference the product by id without loading it
+      pricing.setProduct(session.load(Product.class, pricing.getProduct().getId()));
+      session.persist(pricing);
+    }
+    session.flush();
+    session.clear();
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public Set<Integer> findProductIdsInFarm(Integer farmId, Collection<Integer> productIds) {
+    if (productIds.isEmpty()) {
+      return new HashSet<Integer>();
+    }
+    Query query = sessionFactory.getCurrentSession().createQuery(
+        "select p.id from Product p where p.farmId = :farmId and p.id in (:ids)");
+    query.setInteger("farmId", farmId);
+    query.setParameterList("ids", productIds);
+    return new HashSet<Integer>(query.list());
+  }
+}
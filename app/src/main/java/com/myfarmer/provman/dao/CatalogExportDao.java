@@ -0,0 +1,14 @@
+package com.myfarmer.provman.dao;
+
+import com.myfarmer.provman.export.CatalogRowHandler;
+
+import java.io.IOException;
+
+public interface CatalogExportDao {
+
+  /**
+   * Streams the catalog, optionally restricted to one farm, ordered by farm,
+   * product and pricing id. Returns the number of rows handled.
+   */
+  long streamCatalog(Integer farmId, CatalogRowHandler handler) throws IOException;
+}
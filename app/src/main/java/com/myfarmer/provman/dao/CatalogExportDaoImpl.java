@@ -0,0 +1,79 @@
+package com.myfarmer.provman.dao;
+
+import com.myfarmer.provman.export.CatalogRow;
+import com.myfarmer.provman.export.CatalogRowHandler;
+import org.hibernate.Query;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+import org.hibernate.dialect.MySQLDialect;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Repository;
+
+import java.io.IOException;
+
+/**
+ * Reads the catalog through a StatelessSession and a forward-only cursor: no
+ * persistence context, no entity instances, one row in memory at a time.
+ * Runs in a transaction, whose connection the stateless session shares.
+ */
+@Repository("catalogExportDao")
+public class CatalogExportDaoImpl implements CatalogExportDao {
+
+  private static final int FETCH_SIZE = 1000;
+
+  @Autowired
+  private SessionFactory sessionFactory;
+
+  @Override
+  public long streamCatalog(Integer farmId, CatalogRowHandler handler) throws IOException {
+    // on the connection of the caller's transaction, which commits or rolls back
+    StatelessSession session = sessionFactory.openStatelessSession(
+        ((SessionImplementor) sessionFactory.getCurrentSession()).connection());
+    try {
+      Query query = session.createQuery(
+          "select p.farmId, p.id, p.name, p.description, pp.id, pp.weight, pp.price "
+              + "from Product p left join p.productPricings pp "
+              + (farmId != null ? "where p.farmId = :farmId " : "")
+              + "order by p.farmId, p.id, pp.id");
+      if (farmId != null) {
+        query.setInteger("farmId", farmId);
+      }
+      query.setReadOnly(true);
+      query.setFetchSize(streamingFetchSize());
+
+      long rows = 0;
+      ScrollableResults results = query.scroll(ScrollMode.FORWARD_ONLY);
+      try {
+        while (results.next()) {
+          handler.handle(new CatalogRow(
+              (Integer) results.get(0),
+              (Integer) results.get(1),
+              (String) results.get(2),
+              (String) results.get(3),
+              (Integer) results.get(4),
+              (Float) results.get(5),
+              (Float) results.get(6)));
+          rows++;
+        }
+      } finally {
+        results.close();
+      }
+      return rows;
+    } finally {
+      session.close();
+    }
+  }
+
+  /**
+   * MySQL Connector/J only streams rows one by one with a fetch size of
+   * Integer.MIN_VALUE, otherwise it buffers the whole result set.
+   */
+  private int streamingFetchSize() {
+    SessionFactoryImplementor factory = (SessionFactoryImplementor) sessionFactory;
+    return factory.getJdbcServices().getDialect() instanceof MySQLDialect ? Integer.MIN_VALUE : FETCH_SIZE;
+  }
+}
@@ -0,0 +1,31 @@
+package com.myfarmer.provman.dao;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/**
+ * Splits an id list for IN (:ids) parameters, so a set-based statement over
+ * thousands of rows stays well under max_allowed_packet and the bind variable
+ * limits of the drivers.
+ */
+final class IdChunks {
+
+  static final int SIZE = 500;
+
+  private IdChunks() {
+  }
+
+  /**
+   * The distinct ids, in order, SIZE at a time.
+   */
+  static <T> List<List<T>> of(Collection<T> ids) {
+    List<T> distinct = new ArrayList<T>(new LinkedHashSet<T>(ids));
+    List<List<T>> chunks = new ArrayList<List<T>>();
+    for (int from = 0; from < distinct.size(); from += SIZE) {
+      chunks.add(distinct.subList(from, Math.min(from + SIZE, distinct.size())));
+    }
+    return chunks;
+  }
+}
@@ -0,0 +1,40 @@
+package com.myfarmer.provman.dao;
+
+import com.myfarmer.provman.outbox.CatalogEvent;
+
+import java.util.Collection;
+import java.util.List;
+
+public interface OutboxDao {
+
+  /**
+   * Appends the events to catalog_outbox in the current transaction, numbering those of each farm
+   * after the farm's last one. The farms' counters stay locked until the transaction ends, so a
+   * farm's events are stored, and committed, in the order of their numbers.
+   */
+  void insertEvents(List<CatalogEvent> events);
+
+  /**
+   * Events of the pricings as they are now, with their product's farm. The pricings must have been
+   * flushed, or not deleted yet.
+   */
+  List<CatalogEvent> findPricingEvents(CatalogEvent.Operation operation, Collection<Integer> pricingIds);
+
+  /**
+   * Events of the products as they are now, for products about to be deleted.
+   */
+  List<CatalogEvent> findProductEvents(CatalogEvent.Operation operation, Collection<Integer> productIds);
+
+  /**
+   * Events of the farm's products named so, or of all of them when name is null.
+   */
+  List<CatalogEvent> findFarmProductEvents(CatalogEvent.Operation operation, int farmId, String name);
+
+  /**
+   * The oldest committed events, locked until the transaction ends so that one relay at a time
+   * hands them over.
+   */
+  List<CatalogEvent> lockOldestEvents(int limit);
+
+  void deleteEvents(Collection<Long> outboxIds);
+}
@@ -0,0 +1,191 @@
+package com.myfarmer.provman.dao;
+
+import com.myfarmer.provman.api.PricingSummary;
+import com.myfarmer.provman.api.ProductSummary;
+import com.myfarmer.provman.outbox.CatalogEvent;
+import org.hibernate.SQLQuery;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.jdbc.Work;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Plain SQL against catalog_outbox and catalog_outbox_farm (see V6__Create_catalog_outbox.sql),
+ * neither of which is mapped as an entity.
+ *
+ * A farm's events are numbered from catalog_outbox_farm, bumped with MySQL's upsert before they
+ * are inserted. The bump locks the farm's row, so a second transaction writing to the farm waits
+ * for the first to end before it numbers and inserts its own events: the ids of a farm's events,
+ * which the relay follows, grow in commit order. Farms are bumped in farm_id order, so two
+ * transactions writing to the same farms cannot deadlock on them.
+ */
+@Repository("outboxDao")
+public class OutboxDaoImpl implements OutboxDao {
+
+  private static final String OUTBOX_TABLE = "catalog_outbox";
+
+  @Autowired
+  private SessionFactory sessionFactory;
+
+  @Override
+  public void insertEvents(final List<CatalogEvent> events) {
+    if (events.isEmpty()) {
+      return;
+    }
+    Map<Integer, Integer> farmCounts = new TreeMap<Integer, Integer>();
+    for (CatalogEvent event : events) {
+      if (event.getFarmId() != null) {
+        Integer count = farmCounts.get(event.getFarmId());
+        farmCounts.put(event.getFarmId(), count == null ? 1 : count + 1);
+      }
+    }
+    // the seq of the first event of each farm
+    final Map<Integer, Long> nextSeqs = new HashMap<Integer, Long>();
+    for (Map.Entry<Integer, Integer> farm : farmCounts.entrySet()) {
+      createQuery("insert into catalog_outbox_farm (farm_id, seq) values (:farmId, :count) "
+          + "on duplicate key update seq = seq + values(seq)")
+          .setInteger("farmId", farm.getKey())
+          .setInteger("count", farm.getValue())
+          .executeUpdate();
+      Number seq = (Number) createQuery("select seq from catalog_outbox_farm where farm_id = :farmId")
+          .setInteger("farmId", farm.getKey())
+          .uniqueResult();
+      nextSeqs.put(farm.getKey(), seq.longValue() - farm.getValue() + 1);
+    }
+
+    sessionFactory.getCurrentSession().doWork(new Work() {
+      @Override
+      public void execute(Connection connection) throws SQLException {
+        try (PreparedStatement insert = connection.prepareStatement(
+            "insert into catalog_outbox (farm_id, farm_seq, entity, entity_id, operation, recorded_at, data) "
+                + "values (?, ?, ?, ?, ?, ?, ?)")) {
+          for (CatalogEvent event : events) {
+            if (event.getFarmId() == null) {
+              insert.setNull(1, Types.INTEGER);
+              insert.setNull(2, Types.BIGINT);
+            } else {
+              long seq = nextSeqs.get(event.getFarmId());
+              nextSeqs.put(event.getFarmId(), seq + 1);
+              insert.setInt(1, event.getFarmId());
+              insert.setLong(2, seq);
+            }
+            insert.setString(3, event.getType().name());
+            insert.setInt(4, event.getEntityId());
+            insert.setString(5, event.getOperation().name());
+            insert.setTimestamp(6, Timestamp.from(event.getRecordedAt()));
+            insert.setString(7, event.getData());
+            insert.addBatch();
+          }
+          insert.executeBatch();
+        }
+      }
+    });
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public List<CatalogEvent> findPricingEvents(CatalogEvent.Operation operation, Collection<Integer> pricingIds) {
+    List<CatalogEvent> events = new ArrayList<CatalogEvent>(pricingIds.size());
+    for (List<Integer> chunk : IdChunks.of(pricingIds)) {
+      List<Object[]> rows = createQuery(
+          "select pp.id, pp.product_id, pp.weight, pp.price, p.farm_id "
+              + "from pricing pp join product p on p.id = pp.product_id where pp.id in (:pricingIds) order by pp.id")
+          .setParameterList("pricingIds", chunk)
+          .list();
+      for (Object[] row : rows) {
+        int id = ((Number) row[0]).intValue();
+        PricingSummary pricing = new PricingSummary(id, ((Number) row[1]).intValue(),
+            ((Number) row[2]).floatValue(), ((Number) row[3]).floatValue());
+        events.add(CatalogEvent.of(CatalogEvent.Type.PRICING, operation, ((Number) row[4]).intValue(), id, pricing));
+      }
+    }
+    return events;
+  }
+
+  @Override
+  public List<CatalogEvent> findProductEvents(CatalogEvent.Operation operation, Collection<Integer> productIds) {
+    List<CatalogEvent> events = new ArrayList<CatalogEvent>(productIds.size());
+    for (List<Integer> chunk : IdChunks.of(productIds)) {
+      events.addAll(productEvents(operation, createQuery(
+          "select id, farm_id, name, description from product where id in (:productIds) order by id")
+          .setParameterList("productIds", chunk)));
+    }
+    return events;
+  }
+
+  @Override
+  public List<CatalogEvent> findFarmProductEvents(CatalogEvent.Operation operation, int farmId, String name) {
+    SQLQuery query = createQuery("select id, farm_id, name, description from product where farm_id = :farmId "
+        + (name == null ? "" : "and name = :name ") + "order by id");
+    query.setInteger("farmId", farmId);
+    if (name != null) {
+      query.setString("name", name);
+    }
+    return productEvents(operation, query);
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public List<CatalogEvent> lockOldestEvents(int limit) {
+    List<Object[]> rows = createQuery(
+        "select id, farm_id, farm_seq, entity, entity_id, operation, recorded_at, data "
+            + "from catalog_outbox order by id limit :limit for update")
+        .setInteger("limit", limit)
+        .list();
+    List<CatalogEvent> events = new ArrayList<CatalogEvent>(rows.size());
+    for (Object[] row : rows) {
+      events.add(new CatalogEvent(((Number) row[0]).longValue(),
+          row[1] == null ? null : ((Number) row[1]).intValue(),
+          row[2] == null ? null : ((Number) row[2]).longValue(),
+          CatalogEvent.Type.valueOf((String) row[3]),
+          CatalogEvent.Operation.valueOf((String) row[5]),
+          ((Number) row[4]).intValue(),
+          ((Timestamp) row[6]).toInstant(),
+          (String) row[7]));
+    }
+    return events;
+  }
+
+  @Override
+  public void deleteEvents(Collection<Long> outboxIds) {
+    for (List<Long> chunk : IdChunks.of(outboxIds)) {
+      createQuery("delete from catalog_outbox where id in (:ids)")
+          .setParameterList("ids", chunk)
+          .executeUpdate();
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private static List<CatalogEvent> productEvents(CatalogEvent.Operation operation, SQLQuery query) {
+    List<Object[]> rows = query.list();
+    List<CatalogEvent> events = new ArrayList<CatalogEvent>(rows.size());
+    for (Object[] row : rows) {
+      int id = ((Number) row[0]).intValue();
+      int farmId = ((Number) row[1]).intValue();
+      ProductSummary product = new ProductSummary(id, farmId, (String) row[2], (String) row[3]);
+      events.add(CatalogEvent.of(CatalogEvent.Type.PRODUCT, operation, farmId, id, product));
+    }
+    return events;
+  }
+
+  private SQLQuery createQuery(String sql) {
+    Session session = sessionFactory.getCurrentSession();
+    SQLQuery query = session.createSQLQuery(sql);
+    // keeps native updates from evicting the whole second-level cache
+    query.addSynchronizedQuerySpace(OUTBOX_TABLE);
+    return query;
+  }
+}
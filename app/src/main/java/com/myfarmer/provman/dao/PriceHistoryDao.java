@@ -0,0 +1,27 @@
+package com.myfarmer.provman.dao;
+
+import com.myfarmer.provman.api.DateRange;
+import com.myfarmer.provman.api.PricePoint;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+
+public interface PriceHistoryDao {
+
+  /**
+   * Appends the current price and weight of the pricings to the history, as of the given time,
+   * and folds them into the day's per product rollup. The pricings must have been flushed.
+   */
+  void recordPricings(Collection<Integer> pricingIds, Instant recordedAt);
+
+  /**
+   * One point per day of the range on which the product's pricings changed, oldest first.
+   */
+  List<PricePoint> findProductDays(int productId, DateRange range);
+
+  /**
+   * One point per day of the range on which any pricing of the farm changed, oldest first.
+   */
+  List<PricePoint> findFarmDays(int farmId, DateRange range);
+}
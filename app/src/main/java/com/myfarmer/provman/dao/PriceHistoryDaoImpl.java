@@ -0,0 +1,102 @@
+package com.myfarmer.provman.dao;
+
+import com.myfarmer.provman.api.DateRange;
+import com.myfarmer.provman.api.PricePoint;
+import org.hibernate.SQLQuery;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Plain SQL against price_history and price_history_day (see V4__Create_price_history.sql),
+ * neither of which is mapped as an entity.
+ *
+ * price_history is only ever appended to. Reads go to price_history_day, which holds at most
+ * one row per product and day, so a year of a product's chart is at most 366 rows read by key.
+ * The upsert is MySQL's, which H2 understands in MODE=MySQL.
+ */
+@Repository("priceHistoryDao")
+public class PriceHistoryDaoImpl implements PriceHistoryDao {
+
+  private static final String HISTORY_TABLE = "price_history";
+
+  @Autowired
+  private SessionFactory sessionFactory;
+
+  @Override
+  public void recordPricings(Collection<Integer> pricingIds, Instant recordedAt) {
+    Date day = Date.valueOf(recordedAt.atOffset(ZoneOffset.UTC).toLocalDate());
+    for (List<Integer> chunk : IdChunks.of(pricingIds)) {
+      createQuery(
+          "insert into price_history (pricing_id, product_id, farm_id, recorded_at, price, weight) "
+              + "select pp.id, p.id, p.farm_id, :recordedAt, pp.price, pp.weight "
+              + "from pricing pp join product p on p.id = pp.product_id where pp.id in (:pricingIds)")
+          .setParameter("recordedAt", Timestamp.from(recordedAt))
+          .setParameterList("pricingIds", chunk)
+          .executeUpdate();
+      createQuery(
+          "insert into price_history_day (product_id, price_day, farm_id, min_price_per_kg, max_price_per_kg, "
+              + "sum_price_per_kg, changes) "
+              + "select p.id, :day, p.farm_id, min(pp.price / pp.weight), max(pp.price / pp.weight), "
+              + "sum(pp.price / pp.weight), count(*) "
+              + "from pricing pp join product p on p.id = pp.product_id "
+              + "where pp.id in (:pricingIds) and pp.weight > 0 group by p.id, p.farm_id "
+              + "on duplicate key update min_price_per_kg = least(min_price_per_kg, values(min_price_per_kg)), "
+              + "max_price_per_kg = greatest(max_price_per_kg, values(max_price_per_kg)), "
+              + "sum_price_per_kg = sum_price_per_kg + values(sum_price_per_kg), "
+              + "changes = changes + values(changes), farm_id = values(farm_id)")
+          .setParameter("day", day)
+          .setParameterList("pricingIds", chunk)
+          .executeUpdate();
+    }
+  }
+
+  @Override
+  public List<PricePoint> findProductDays(int productId, DateRange range) {
+    return points(createQuery(
+        "select price_day, min_price_per_kg, max_price_per_kg, sum_price_per_kg, changes "
+            + "from price_history_day where product_id = :id and price_day between :from and :to "
+            + "order by price_day"), productId, range);
+  }
+
+  @Override
+  public List<PricePoint> findFarmDays(int farmId, DateRange range) {
+    return points(createQuery(
+        "select price_day, min(min_price_per_kg), max(max_price_per_kg), sum(sum_price_per_kg), sum(changes) "
+            + "from price_history_day where farm_id = :id and price_day between :from and :to "
+            + "group by price_day order by price_day"), farmId, range);
+  }
+
+  private SQLQuery createQuery(String sql) {
+    Session session = sessionFactory.getCurrentSession();
+    SQLQuery query = session.createSQLQuery(sql);
+    // keeps native updates from evicting the whole second-level cache
+    query.addSynchronizedQuerySpace(HISTORY_TABLE);
+    return query;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static List<PricePoint> points(SQLQuery query, int id, DateRange range) {
+    List<Object[]> rows = query
+        .setInteger("id", id)
+        .setParameter("from", Date.valueOf(range.getFrom()))
+        .setParameter("to", Date.valueOf(range.getTo()))
+        .list();
+    List<PricePoint> points = new ArrayList<PricePoint>(rows.size());
+    for (Object[] row : rows) {
+      int changes = ((Number) row[4]).intValue();
+      points.add(new PricePoint(((Date) row[0]).toLocalDate(), ((Number) row[1]).doubleValue(),
+          ((Number) row[2]).doubleValue(), ((Number) row[3]).doubleValue() / changes, changes));
+    }
+    return points;
+  }
+}
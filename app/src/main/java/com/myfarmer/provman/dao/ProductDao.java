@@ -1,7 +1,11 @@
 package com.myfarmer.provman.dao;
 
+import com.myfarmer.provman.api.ProductSummary;
 import com.myfarmer.provman.model.Product;
 import com.myfarmer.provman.model.ProductPricing;
+import com.myfarmer.provman.paging.Page;
+import com.myfarmer.provman.paging.PageRequest;
+import com.myfarmer.provman.web.DataVersion;
 
 import java.util.List;
 
@@ -9,16 +13,43 @@ public interface ProductDao {
 
   Product findById(int id);
 
+  Product findByIdWithPricings(int id);
+
   void saveProduct(Product product);
 
   void saveOrUpdate(Product product);
 
+  /**
+   * Writes pending changes now rather than at commit, so their failures surface here.
+   */
+  void flush();
+
   void deleteProductByNameAndFarmId(String name, Integer farmId);
 
   List<ProductPricing> findAllProductPricings(Product product);
 
   List<Product> findProductsByFarmId(Integer farmId);
 
+  Page<Product> findProductsByFarmId(Integer farmId, PageRequest pageRequest);
+
   void deleteProductById(Integer id);
 
+  /**
+   * Deletes every product of the farm along with their pricings, returns the number of products.
+   */
+  int deleteProductsByFarmId(Integer farmId);
+
+  ProductSummary findProductSummaryById(int id);
+
+  Page<ProductSummary> findProductSummariesByFarmId(Integer farmId, PageRequest pageRequest);
+
+  /**
+   * Every product, for the search index.
+   */
+  List<ProductSummary> findAllProductSummaries();
+
+  DataVersion findFarmProductsVersion(Integer farmId);
+
+  DataVersion findProductVersion(int id);
+
 }
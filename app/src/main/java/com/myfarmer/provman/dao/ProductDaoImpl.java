@@ -1,9 +1,15 @@
 package com.myfarmer.provman.dao;
 
+import com.myfarmer.provman.api.ProductSummary;
 import com.myfarmer.provman.model.Product;
 import com.myfarmer.provman.model.ProductPricing;
+import com.myfarmer.provman.paging.Page;
+import com.myfarmer.provman.paging.PageRequest;
+import com.myfarmer.provman.web.DataVersion;
+import org.hibernate.Criteria;
 import org.hibernate.Query;
-import org.hibernate.Session;
+import org.hibernate.criterion.Projections;
+import org.hibernate.criterion.Restrictions;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
@@ -16,6 +22,14 @@ public class ProductDaoImpl extends AbstractDao<Integer, Product> implements Pro
     return super.getByKey(id);
   }
 
+  @Override
+  public Product findByIdWithPricings(int id) {
+    Query query = super.getSession().createQuery(
+        "select distinct p from Product p left join fetch p.productPricings where p.id = :id");
+    query.setInteger("id", id);
+    return (Product) query.uniqueResult();
+  }
+
   @Override
   public void saveProduct(Product product) {
     super.persist(product);
@@ -28,6 +42,13 @@ public class ProductDaoImpl extends AbstractDao<Integer, Product> implements Pro
 
   @Override
   public void deleteProductByNameAndFarmId(String name, Integer farmId) {
+    // pricings first, pricing_product_fk refuses to orphan them
+    Query pricings = super.getSession().createQuery("delete from ProductPricing pp where pp.product.id in "
+        + "(select p.id from Product p where p.name = :name and p.farmId = :farmId)");
+    pricings.setString("name", name);
+    pricings.setInteger("farmId", farmId);
+    pricings.executeUpdate();
+
     Query query = super.getSession().createQuery("delete from Product where name = :name and farm_id = :farmId");
     query.setString("name", name);
     query.setInteger("farmId", farmId);
@@ -39,24 +60,97 @@ public class ProductDaoImpl extends AbstractDao<Integer, Product> implements Pro
     return null;
   }
 
+  /**
+   * Summary listing, pricings are not initialized.
+   */
   @Override
   public List<Product> findProductsByFarmId(Integer farmId) {
     Query query = super.getSession().createQuery("from Product where farm_id = :farmId");
     query.setInteger("farmId", farmId);
+    query.setCacheable(true);
     return query.list();
   }
 
+  @Override
+  public Page<Product> findProductsByFarmId(Integer farmId, PageRequest pageRequest) {
+    Criteria criteria = super.createEntityCriteria();
+    criteria.add(Restrictions.eq("farmId", farmId));
+    criteria.setCacheable(true);
+    return super.findPage(criteria, pageRequest, "id", "name");
+  }
+
+  /**
+   * Two bulk deletes, pricings then the product, nothing is loaded. Hibernate
+   * evicts the product and pricing regions, the pricing collections and the
+   * cached queries over both tables once they run.
+   */
   @Override
   public void deleteProductById(Integer id) {
-    Product product = findById(id);
-    Session session = super.getSession();
+    Query pricings = super.getSession().createQuery("delete from ProductPricing pp where pp.product.id = :id");
+    pricings.setInteger("id", id);
+    pricings.executeUpdate();
+
+    Query product = super.getSession().createQuery("delete from Product where id = :id");
+    product.setInteger("id", id);
+    product.executeUpdate();
+  }
+
+  @Override
+  public int deleteProductsByFarmId(Integer farmId) {
+    Query pricings = super.getSession().createQuery("delete from ProductPricing pp "
+        + "where pp.product.id in (select p.id from Product p where p.farmId = :farmId)");
+    pricings.setInteger("farmId", farmId);
+    pricings.executeUpdate();
+
+    Query products = super.getSession().createQuery("delete from Product where farmId = :farmId");
+    products.setInteger("farmId", farmId);
+    return products.executeUpdate();
+  }
 
-    if (product.getProductPricings().size() != 0) {
-      for (ProductPricing pricing : product.getProductPricings()) {
-        session.delete(pricing);
-      }
-    }
+  @Override
+  public ProductSummary findProductSummaryById(int id) {
+    Query query = super.getSession().createQuery("select new com.myfarmer.provman.api.ProductSummary("
+        + "p.id, p.farmId, p.name, p.description) from Product p where p.id = :id");
+    query.setInteger("id", id);
+    query.setCacheable(true);
+    return (ProductSummary) query.uniqueResult();
+  }
 
-    session.delete(product);
+  @Override
+  public Page<ProductSummary> findProductSummariesByFarmId(Integer farmId, PageRequest pageRequest) {
+    Criteria criteria = super.createEntityCriteria();
+    criteria.add(Restrictions.eq("farmId", farmId));
+    criteria.setCacheable(true);
+    return super.findProjectedPage(criteria, Projections.projectionList()
+        .add(Projections.property("id"), "id")
+        .add(Projections.property("farmId"), "farmId")
+        .add(Projections.property("name"), "name")
+        .add(Projections.property("description"), "description"),
+        ProductSummary.class, pageRequest, "id", "name");
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public List<ProductSummary> findAllProductSummaries() {
+    return (List<ProductSummary>) super.getSession().createQuery("select new com.myfarmer.provman.api.ProductSummary("
+        + "p.id, p.farmId, p.name, p.description) from Product p").list();
+  }
+
+  @Override
+  public DataVersion findFarmProductsVersion(Integer farmId) {
+    Query query = super.getSession().createQuery(
+        "select count(p), max(p.id), max(p.updatedAt) from Product p where p.farmId = :farmId");
+    query.setInteger("farmId", farmId);
+    query.setCacheable(true);
+    return DataVersion.of((Object[]) query.uniqueResult());
+  }
+
+  @Override
+  public DataVersion findProductVersion(int id) {
+    Query query = super.getSession().createQuery(
+        "select count(p), max(p.id), max(p.updatedAt) from Product p where p.id = :id");
+    query.setInteger("id", id);
+    query.setCacheable(true);
+    return DataVersion.of((Object[]) query.uniqueResult());
   }
 }
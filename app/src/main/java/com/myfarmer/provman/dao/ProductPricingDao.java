@@ -1,18 +1,55 @@
 package com.myfarmer.provman.dao;
 
+import com.myfarmer.provman.api.PricingSummary;
 import com.myfarmer.provman.model.ProductPricing;
+import com.myfarmer.provman.paging.Page;
+import com.myfarmer.provman.paging.PageRequest;
+import com.myfarmer.provman.web.DataVersion;
 
+import java.util.Collection;
 import java.util.List;
 
 public interface ProductPricingDao {
 
   List<ProductPricing> findByProductId(int id);
 
+  Page<ProductPricing> findByProductId(int id, PageRequest pageRequest);
+
   void saveProductPricing(ProductPricing productPricing);
 
   void saveOrUpdate(ProductPricing product);
 
+  /**
+   * Writes pending changes now rather than at commit, so their failures surface here.
+   */
+  void flush();
+
   ProductPricing findById(Integer id);
 
+  /**
+   * Loads the pricings in one query per chunk of ids, missing ones are left out.
+   */
+  List<ProductPricing> findByIds(Collection<Integer> ids);
+
   void deleteById(Integer id);
+
+  /**
+   * Deletes the pricings in one statement per chunk of ids, returns the number deleted.
+   */
+  int deleteByIds(Collection<Integer> ids);
+
+  /**
+   * Moves the version of the pricings forward by the given number, in one
+   * statement per chunk of ids, returns the number moved.
+   */
+  int advanceVersions(Collection<Integer> ids, int by);
+
+  Page<PricingSummary> findSummariesByProductId(int id, PageRequest pageRequest);
+
+  DataVersion findPricingsVersion(int productId);
+
+  /**
+   * Version of the pricing and of its product, the pricing form shows both.
+   */
+  DataVersion findPricingVersion(int id);
 }
@@ -1,9 +1,19 @@
 package com.myfarmer.provman.dao;
 
+import com.myfarmer.provman.api.PricingSummary;
+import com.myfarmer.provman.model.Product;
 import com.myfarmer.provman.model.ProductPricing;
+import com.myfarmer.provman.paging.Page;
+import com.myfarmer.provman.paging.PageRequest;
+import com.myfarmer.provman.web.DataVersion;
+import org.hibernate.Criteria;
 import org.hibernate.Query;
+import org.hibernate.criterion.Projections;
+import org.hibernate.criterion.Restrictions;
 import org.springframework.stereotype.Repository;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 
 @Repository("productPricingDao")
@@ -13,12 +23,24 @@ public class ProductPricingDaoImpl extends AbstractDao<Integer, ProductPricing>
   public List<ProductPricing> findByProductId(int prodId) {
     Query query = super.getSession().createQuery("from ProductPricing where product_id = :prodId");
     query.setInteger("prodId", prodId);
+    query.setCacheable(true);
 
     return query.list();
   }
 
+  @Override
+  public Page<ProductPricing> findByProductId(int prodId, PageRequest pageRequest) {
+    Criteria criteria = super.createEntityCriteria();
+    criteria.add(Restrictions.eq("product.id", prodId));
+    criteria.setCacheable(true);
+    // price and weight are floats, not fit for a keyset
+    return super.findPage(criteria, pageRequest, "id");
+  }
+
   @Override
   public void saveProductPricing(ProductPricing productPricing) {
+    // the form only sends the product's id, without a version Hibernate would take it for a new product
+    productPricing.setProduct(super.getSession().load(Product.class, productPricing.getProduct().getId()));
     super.saveOrUpdate(productPricing);
   }
 
@@ -29,10 +51,19 @@ public class ProductPricingDaoImpl extends AbstractDao<Integer, ProductPricing>
 
   @Override
   public ProductPricing findById(Integer id) {
-    Query query = super.getSession().createQuery("from ProductPricing where id = :id");
-    query.setInteger("id", id);
+    // load by key so the lookup can be answered from the second-level cache
+    return super.getByKey(id);
+  }
 
-    return (ProductPricing) query.list().get(0);
+  @Override
+  public List<ProductPricing> findByIds(Collection<Integer> ids) {
+    List<ProductPricing> pricings = new ArrayList<ProductPricing>(ids.size());
+    for (List<Integer> chunk : IdChunks.of(ids)) {
+      Query query = super.getSession().createQuery("from ProductPricing where id in (:ids)");
+      query.setParameterList("ids", chunk);
+      pricings.addAll(query.list());
+    }
+    return pricings;
   }
 
   @Override
@@ -41,4 +72,61 @@ public class ProductPricingDaoImpl extends AbstractDao<Integer, ProductPricing>
     query.setInteger("id", id);
     query.executeUpdate();
   }
+
+  @Override
+  public int deleteByIds(Collection<Integer> ids) {
+    int deleted = 0;
+    for (List<Integer> chunk : IdChunks.of(ids)) {
+      Query query = super.getSession().createQuery("delete from ProductPricing where id in (:ids)");
+      query.setParameterList("ids", chunk);
+      deleted += query.executeUpdate();
+    }
+    return deleted;
+  }
+
+  @Override
+  public int advanceVersions(Collection<Integer> ids, int by) {
+    int advanced = 0;
+    for (List<Integer> chunk : IdChunks.of(ids)) {
+      Query query = super.getSession().createQuery(
+          "update ProductPricing set version = version + :by where id in (:ids)");
+      query.setInteger("by", by);
+      query.setParameterList("ids", chunk);
+      advanced += query.executeUpdate();
+    }
+    return advanced;
+  }
+
+  @Override
+  public Page<PricingSummary> findSummariesByProductId(int prodId, PageRequest pageRequest) {
+    Criteria criteria = super.createEntityCriteria();
+    criteria.add(Restrictions.eq("product.id", prodId));
+    criteria.setCacheable(true);
+    return super.findProjectedPage(criteria, Projections.projectionList()
+        .add(Projections.property("id"), "id")
+        .add(Projections.property("product.id"), "productId")
+        .add(Projections.property("weight"), "weight")
+        .add(Projections.property("price"), "price"),
+        PricingSummary.class, pageRequest, "id");
+  }
+
+  @Override
+  public DataVersion findPricingsVersion(int productId) {
+    Query query = super.getSession().createQuery(
+        "select count(pp), max(pp.id), max(pp.updatedAt) from ProductPricing pp where pp.product.id = :productId");
+    query.setInteger("productId", productId);
+    query.setCacheable(true);
+    return DataVersion.of((Object[]) query.uniqueResult());
+  }
+
+  @Override
+  public DataVersion findPricingVersion(int id) {
+    Query query = super.getSession().createQuery(
+        "select count(pp), max(pp.id), max(pp.updatedAt), max(p.id), max(p.updatedAt) "
+            + "from ProductPricing pp join pp.product p where pp.id = :id");
+    query.setInteger("id", id);
+    query.setCacheable(true);
+    Object[] row = (Object[]) query.uniqueResult();
+    return DataVersion.of(row).and(DataVersion.of(new Object[] { row[0], row[3], row[4] }));
+  }
 }
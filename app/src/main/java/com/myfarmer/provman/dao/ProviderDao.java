@@ -2,7 +2,11 @@ package com.myfarmer.provman.dao;
 
 import java.util.List;
 
+import com.myfarmer.provman.api.ProviderSummary;
 import com.myfarmer.provman.model.Provider;
+import com.myfarmer.provman.paging.Page;
+import com.myfarmer.provman.paging.PageRequest;
+import com.myfarmer.provman.web.DataVersion;
 
 public interface ProviderDao {
 
@@ -11,11 +15,41 @@ public interface ProviderDao {
 	void saveProvider(Provider provider);
 	
 	public void saveOrUpdate(Provider provider);
+
+	void flush();
 	
 	void deleteProviderByCode(String ssn);
 	
 	List<Provider> findAllProviders();
 
+	Page<Provider> findProviders(PageRequest pageRequest);
+
 	Provider findProviderByCode(String ssn);
 
+	/**
+	 * Code and id of every provider.
+	 */
+	List<Object[]> findProviderCodes();
+
+	Page<ProviderSummary> findProviderSummaries(PageRequest pageRequest);
+
+	ProviderSummary findProviderSummaryByCode(String code);
+
+	/**
+	 * Every provider, for the search index.
+	 */
+	List<ProviderSummary> findAllProviderSummaries();
+
+	/**
+	 * Version of the whole provider table, read from its change counter.
+	 */
+	DataVersion findProvidersVersion();
+
+	/**
+	 * Bumps the provider change counter, locking its row until the transaction ends.
+	 */
+	void markProvidersChanged();
+
+	DataVersion findProviderVersion(String code);
+
 }
@@ -1,13 +1,20 @@
 package com.myfarmer.provman.dao;
 
+import java.util.Date;
 import java.util.List;
 
 import org.hibernate.Criteria;
 import org.hibernate.Query;
+import org.hibernate.SQLQuery;
+import org.hibernate.criterion.Projections;
 import org.hibernate.criterion.Restrictions;
 import org.springframework.stereotype.Repository;
 
+import com.myfarmer.provman.api.ProviderSummary;
 import com.myfarmer.provman.model.Provider;
+import com.myfarmer.provman.paging.Page;
+import com.myfarmer.provman.paging.PageRequest;
+import com.myfarmer.provman.web.DataVersion;
 
 @Repository("providerDao")
 public class ProviderDaoImpl extends AbstractDao<Integer, Provider> implements ProviderDao {
@@ -23,9 +30,11 @@ public class ProviderDaoImpl extends AbstractDao<Integer, Provider> implements P
 	public void saveOrUpdate(Provider provider){
 		super.saveOrUpdate(provider);
 	}
-	
+
 	public void deleteProviderByCode(String code) {
-		Query query = getSession().createSQLQuery("delete from provider where code = :code");
+		SQLQuery query = getSession().createSQLQuery("delete from provider where code = :code");
+		// only evict the provider cache region instead of the whole second-level cache
+		query.addSynchronizedEntityClass(Provider.class);
 		query.setString("code", code);
 		query.executeUpdate();
 	}
@@ -33,12 +42,78 @@ public class ProviderDaoImpl extends AbstractDao<Integer, Provider> implements P
 	@SuppressWarnings("unchecked")
 	public List<Provider> findAllProviders() {
 		Criteria criteria = createEntityCriteria();
+		criteria.setCacheable(true);
 		return (List<Provider>) criteria.list();
 	}
 
+	public Page<Provider> findProviders(PageRequest pageRequest) {
+		Criteria criteria = createEntityCriteria();
+		criteria.setCacheable(true);
+		return findPage(criteria, pageRequest, "id", "name", "code", "nationality", "enteringDate");
+	}
+
 	public Provider findProviderByCode(String code) {
 		Criteria criteria = createEntityCriteria();
 		criteria.add(Restrictions.eq("code", code));
+		criteria.setCacheable(true);
 		return (Provider) criteria.uniqueResult();
 	}
+
+	@SuppressWarnings("unchecked")
+	public List<Object[]> findProviderCodes() {
+		return (List<Object[]>) getSession().createQuery("select p.code, p.id from Provider p").list();
+	}
+
+	public Page<ProviderSummary> findProviderSummaries(PageRequest pageRequest) {
+		Criteria criteria = createEntityCriteria();
+		criteria.setCacheable(true);
+		return findProjectedPage(criteria, Projections.projectionList()
+				.add(Projections.property("id"), "id")
+				.add(Projections.property("name"), "name")
+				.add(Projections.property("code"), "code")
+				.add(Projections.property("nationality"), "nationality")
+				.add(Projections.property("enteringDate"), "enteringDate"),
+				ProviderSummary.class, pageRequest, "id", "name", "code", "nationality", "enteringDate");
+	}
+
+	public ProviderSummary findProviderSummaryByCode(String code) {
+		Query query = getSession().createQuery("select new com.myfarmer.provman.api.ProviderSummary("
+				+ "p.id, p.name, p.code, p.nationality, p.enteringDate) from Provider p where p.code = :code");
+		query.setString("code", code);
+		query.setCacheable(true);
+		return (ProviderSummary) query.uniqueResult();
+	}
+
+	@SuppressWarnings("unchecked")
+	public List<ProviderSummary> findAllProviderSummaries() {
+		return (List<ProviderSummary>) getSession().createQuery("select new com.myfarmer.provman.api.ProviderSummary("
+				+ "p.id, p.name, p.code, p.nationality, p.enteringDate) from Provider p").list();
+	}
+
+	public DataVersion findProvidersVersion() {
+		Object[] row = (Object[]) changeQuery("select change_count, changed_at from provider_change where id = 1")
+				.uniqueResult();
+		return row == null ? DataVersion.ofChanges(0, null)
+				: DataVersion.ofChanges(((Number) row[0]).longValue(), (Date) row[1]);
+	}
+
+	public void markProvidersChanged() {
+		changeQuery("update provider_change set change_count = change_count + 1, changed_at = current_timestamp(3) "
+				+ "where id = 1").executeUpdate();
+	}
+
+	public DataVersion findProviderVersion(String code) {
+		Query query = getSession().createQuery(
+				"select count(p), max(p.id), max(p.updatedAt) from Provider p where p.code = :code");
+		query.setString("code", code);
+		query.setCacheable(true);
+		return DataVersion.of((Object[]) query.uniqueResult());
+	}
+
+	private SQLQuery changeQuery(String sql) {
+		SQLQuery query = getSession().createSQLQuery(sql);
+		// keeps the update from evicting the whole second-level cache
+		query.addSynchronizedQuerySpace("provider_change");
+		return query;
+	}
 }
@@ -0,0 +1,29 @@
+package com.myfarmer.provman.dao;
+
+import java.util.Collection;
+import java.util.List;
+
+public interface StockBatchDao {
+
+  /**
+   * Adds a tracking row for every farm that has products but none yet, flagged as changed.
+   */
+  int registerNewFarms();
+
+  List<Integer> findChangedFarms();
+
+  List<Integer> findAllFarms();
+
+  /**
+   * Replaces the stock_batch rows of one farm and records the change count it was built from.
+   */
+  int rebuildFarm(int farmId);
+
+  void markFarmChanged(int farmId);
+
+  void markProductChanged(int productId);
+
+  void markPricingChanged(int pricingId);
+
+  void markPricingsChanged(Collection<Integer> pricingIds);
+}
@@ -0,0 +1,132 @@
+package com.myfarmer.provman.dao;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.hibernate.SQLQuery;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Plain SQL against stock_batch and stock_batch_farm (see stockUpdateBatch.sql),
+ * neither of which is mapped as an entity.
+ *
+ * stock_batch_farm keeps, per farm, a change_count bumped by every product or
+ * pricing write and the built_count the farm's stock_batch rows were last built
+ * from, so a farm needs rebuilding whenever change_count > built_count.
+ */
+@Repository("stockBatchDao")
+public class StockBatchDaoImpl implements StockBatchDao {
+
+  private static final String TRACKING_TABLE = "stock_batch_farm";
+
+  @Autowired
+  private SessionFactory sessionFactory;
+
+  @Override
+  public int registerNewFarms() {
+    return createQuery(
+        "insert into stock_batch_farm (farm_id, change_count, built_count) "
+            + "select distinct p.farm_id, 1, 0 from product p "
+            + "where not exists (select 1 from stock_batch_farm f where f.farm_id = p.farm_id)")
+        .executeUpdate();
+  }
+
+  @Override
+  public List<Integer> findChangedFarms() {
+    return farmIds(createQuery(
+        "select farm_id from stock_batch_farm where change_count > built_count order by farm_id"));
+  }
+
+  @Override
+  public List<Integer> findAllFarms() {
+    // farms left in stock_batch without a tracking row still get rebuilt, i.e. emptied
+    return farmIds(createQuery(
+        "select farm_id from stock_batch_farm union select distinct farm_id from stock_batch order by 1"));
+  }
+
+  @Override
+  public int rebuildFarm(int farmId) {
+    Number changeCount = (Number) createQuery(
+        "select change_count from stock_batch_farm where farm_id = :farmId")
+        .setInteger("farmId", farmId)
+        .uniqueResult();
+
+    createQuery("delete from stock_batch where farm_id = :farmId")
+        .setInteger("farmId", farmId)
+        .executeUpdate();
+    int rows = createQuery(
+        "insert into stock_batch (farm_id, product_id, product_name, descr, weight, price) "
+            + "select a.farm_id, a.id, a.name, a.description, b.weight, b.price "
+            + "from product a join pricing b on b.product_id = a.id "
+            + "where a.farm_id = :farmId")
+        .setInteger("farmId", farmId)
+        .executeUpdate();
+
+    if (changeCount != null) {
+      // writes committed after the count was read leave the farm changed for the next run
+      createQuery("update stock_batch_farm set built_count = :changeCount, built_at = current_timestamp "
+          + "where farm_id = :farmId")
+          .setLong("changeCount", changeCount.longValue())
+          .setInteger("farmId", farmId)
+          .executeUpdate();
+    }
+    return rows;
+  }
+
+  @Override
+  public void markFarmChanged(int farmId) {
+    createQuery("update stock_batch_farm set change_count = change_count + 1 where farm_id = :farmId")
+        .setInteger("farmId", farmId)
+        .executeUpdate();
+  }
+
+  @Override
+  public void markProductChanged(int productId) {
+    createQuery("update stock_batch_farm set change_count = change_count + 1 "
+        + "where farm_id = (select p.farm_id from product p where p.id = :productId)")
+        .setInteger("productId", productId)
+        .executeUpdate();
+  }
+
+  @Override
+  public void markPricingChanged(int pricingId) {
+    createQuery("update stock_batch_farm set change_count = change_count + 1 "
+        + "where farm_id = (select p.farm_id from product p join pricing pp on pp.product_id = p.id "
+        + "where pp.id = :pricingId)")
+        .setInteger("pricingId", pricingId)
+        .executeUpdate();
+  }
+
+  @Override
+  public void markPricingsChanged(Collection<Integer> pricingIds) {
+    for (List<Integer> chunk : IdChunks.of(pricingIds)) {
+      createQuery("update stock_batch_farm set change_count = change_count + 1 "
+          + "where farm_id in (select p.farm_id from product p join pricing pp on pp.product_id = p.id "
+          + "where pp.id in (:pricingIds))")
+          .setParameterList("pricingIds", chunk)
+          .executeUpdate();
+    }
+  }
+
+  private SQLQuery createQuery(String sql) {
+    Session session = sessionFactory.getCurrentSession();
+    SQLQuery query = session.createSQLQuery(sql);
+    // keeps native updates from evicting the whole second-level cache
+    query.addSynchronizedQuerySpace(TRACKING_TABLE);
+    return query;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static List<Integer> farmIds(SQLQuery query) {
+    List<Number> rows = query.list();
+    List<Integer> farmIds = new ArrayList<Integer>(rows.size());
+    for (Number row : rows) {
+      farmIds.add(row.intValue());
+    }
+    return farmIds;
+  }
+}
@@ -0,0 +1,19 @@
+package com.myfarmer.provman.export;
+
+import lombok.Value;
+
+/**
+ * One product pricing of the catalog, flattened with its product and farm.
+ * Pricing fields are null for products without any pricing.
+ */
+@Value
+public class CatalogRow {
+
+	int farmId;
+	int productId;
+	String productName;
+	String description;
+	Integer pricingId;
+	Float weight;
+	Float price;
+}
@@ -0,0 +1,11 @@
+package com.myfarmer.provman.export;
+
+import java.io.IOException;
+
+/**
+ * Receives catalog rows ordered by farm, product and pricing id.
+ */
+public interface CatalogRowHandler {
+
+	void handle(CatalogRow row) throws IOException;
+}
@@ -0,0 +1,20 @@
+package com.myfarmer.provman.export;
+
+import java.io.IOException;
+
+/**
+ * Serializes catalog rows to an output stream as they arrive.
+ */
+public interface CatalogWriter extends CatalogRowHandler {
+
+	String getContentType();
+
+	void start() throws IOException;
+
+	/**
+	 * Push buffered output to the client.
+	 */
+	void flush() throws IOException;
+
+	void finish() throws IOException;
+}
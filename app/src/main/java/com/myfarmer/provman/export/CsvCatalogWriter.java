@@ -0,0 +1,77 @@
+package com.myfarmer.provman.export;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * One line per pricing: farm_id,product_id,product_name,description,pricing_id,weight,price
+ */
+public class CsvCatalogWriter implements CatalogWriter {
+
+	private final Writer out;
+
+	public CsvCatalogWriter(OutputStream output) {
+		this.out = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8), 16 * 1024);
+	}
+
+	@Override
+	public String getContentType() {
+		return "text/csv;charset=UTF-8";
+	}
+
+	@Override
+	public void start() throws IOException {
+		out.write("farm_id,product_id,product_name,description,pricing_id,weight,price\n");
+	}
+
+	@Override
+	public void handle(CatalogRow row) throws IOException {
+		out.write(String.valueOf(row.getFarmId()));
+		out.write(',');
+		out.write(String.valueOf(row.getProductId()));
+		out.write(',');
+		writeText(row.getProductName());
+		out.write(',');
+		writeText(row.getDescription());
+		out.write(',');
+		writeValue(row.getPricingId());
+		out.write(',');
+		writeValue(row.getWeight());
+		out.write(',');
+		writeValue(row.getPrice());
+		out.write('\n');
+	}
+
+	@Override
+	public void flush() throws IOException {
+		out.flush();
+	}
+
+	@Override
+	public void finish() throws IOException {
+		out.flush();
+	}
+
+	private void writeValue(Object value) throws IOException {
+		if (value != null) {
+			out.write(value.toString());
+		}
+	}
+
+	private void writeText(String value) throws IOException {
+		if (value == null) {
+			return;
+		}
+		if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+			out.write(value);
+		} else {
+			out.write('"');
+			out.write(value.replace("\"", "\"\""));
+			out.write('"');
+		}
+	}
+}
@@ -0,0 +1,94 @@
+package com.myfarmer.provman.export;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+/**
+ * Nested farm, product and pricing objects. Rows arrive ordered by farm and
+ * product, so each object is closed as soon as the next one starts and only
+ * the current row is ever held in memory.
+ *
+ * [{"farmId":1,"products":[{"id":2,"name":"..","description":"..","pricings":[{"id":3,"weight":1.0,"price":2.5}]}]}]
+ */
+public class JsonCatalogWriter implements CatalogWriter {
+
+	private static final JsonFactory JSON = new JsonFactory();
+
+	private final JsonGenerator json;
+	private Integer currentFarm;
+	private Integer currentProduct;
+
+	public JsonCatalogWriter(OutputStream output) throws IOException {
+		this.json = JSON.createGenerator(output, JsonEncoding.UTF8);
+	}
+
+	@Override
+	public String getContentType() {
+		return "application/json;charset=UTF-8";
+	}
+
+	@Override
+	public void start() throws IOException {
+		json.writeStartArray();
+	}
+
+	@Override
+	public void handle(CatalogRow row) throws IOException {
+		if (currentFarm == null || currentFarm != row.getFarmId()) {
+			closeFarm();
+			json.writeStartObject();
+			json.writeNumberField("farmId", row.getFarmId());
+			json.writeArrayFieldStart("products");
+			currentFarm = row.getFarmId();
+		}
+		if (currentProduct == null || currentProduct != row.getProductId()) {
+			closeProduct();
+			json.writeStartObject();
+			json.writeNumberField("id", row.getProductId());
+			json.writeStringField("name", row.getProductName());
+			json.writeStringField("description", row.getDescription());
+			json.writeArrayFieldStart("pricings");
+			currentProduct = row.getProductId();
+		}
+		if (row.getPricingId() != null) {
+			json.writeStartObject();
+			json.writeNumberField("id", row.getPricingId());
+			json.writeNumberField("weight", row.getWeight());
+			json.writeNumberField("price", row.getPrice());
+			json.writeEndObject();
+		}
+	}
+
+	@Override
+	public void flush() throws IOException {
+		json.flush();
+	}
+
+	@Override
+	public void finish() throws IOException {
+		closeFarm();
+		json.writeEndArray();
+		json.flush();
+	}
+
+	private void closeProduct() throws IOException {
+		if (currentProduct != null) {
+			json.writeEndArray();
+			json.writeEndObject();
+			currentProduct = null;
+		}
+	}
+
+	private void closeFarm() throws IOException {
+		closeProduct();
+		if (currentFarm != null) {
+			json.writeEndArray();
+			json.writeEndObject();
+			currentFarm = null;
+		}
+	}
+}
@@ -0,0 +1,152 @@
+package com.myfarmer.provman.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+import com.zaxxer.hikari.metrics.IMetricsTracker;
+import com.zaxxer.hikari.metrics.MetricsTrackerFactory;
+import com.zaxxer.hikari.metrics.PoolStats;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Connection pool counters collected through HikariCP's metrics tracker hooks.
+ *
+ * Published over JMX (provman:name=connectionPoolMetrics) so the pool can be
+ * sized against the max_connections limit of the RDS instance class. The same
+ * events go to Hikari's Micrometer tracker, as the hikaricp.* meters on /metrics.
+ */
+@ManagedResource(objectName = "provman:name=connectionPoolMetrics")
+public class ConnectionPoolMetrics implements MetricsTrackerFactory {
+
+	private final AtomicLong acquisitions = new AtomicLong();
+	private final AtomicLong acquireNanosTotal = new AtomicLong();
+	private final AtomicLong acquireNanosMax = new AtomicLong();
+	private final AtomicLong timeouts = new AtomicLong();
+	private final AtomicLong usageMillisTotal = new AtomicLong();
+	private final AtomicLong connectionsCreated = new AtomicLong();
+
+	private final MetricsTrackerFactory micrometer;
+
+	private volatile PoolStats poolStats;
+
+	public ConnectionPoolMetrics(MeterRegistry registry) {
+		micrometer = new MicrometerMetricsTrackerFactory(registry);
+	}
+
+	@Override
+	public IMetricsTracker create(String poolName, PoolStats poolStats) {
+		this.poolStats = poolStats;
+		return new Tracker(micrometer.create(poolName, poolStats));
+	}
+
+	@ManagedAttribute(description = "Connections currently borrowed from the pool")
+	public int getActiveConnections() {
+		return poolStats == null ? 0 : poolStats.getActiveConnections();
+	}
+
+	@ManagedAttribute(description = "Connections sitting idle in the pool")
+	public int getIdleConnections() {
+		return poolStats == null ? 0 : poolStats.getIdleConnections();
+	}
+
+	@ManagedAttribute(description = "Open connections, active and idle")
+	public int getTotalConnections() {
+		return poolStats == null ? 0 : poolStats.getTotalConnections();
+	}
+
+	@ManagedAttribute(description = "Threads waiting for a connection")
+	public int getPendingThreads() {
+		return poolStats == null ? 0 : poolStats.getPendingThreads();
+	}
+
+	@ManagedAttribute(description = "Configured maximum pool size")
+	public int getMaxConnections() {
+		return poolStats == null ? 0 : poolStats.getMaxConnections();
+	}
+
+	@ManagedAttribute(description = "Successful connection acquisitions")
+	public long getAcquisitions() {
+		return acquisitions.get();
+	}
+
+	@ManagedAttribute(description = "Total time spent waiting for connections, in milliseconds")
+	public long getTotalWaitMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(acquireNanosTotal.get());
+	}
+
+	@ManagedAttribute(description = "Mean time spent waiting for a connection, in milliseconds")
+	public double getAverageWaitMillis() {
+		long count = acquisitions.get();
+		return count == 0 ? 0 : acquireNanosTotal.get() / (double) count / 1000000d;
+	}
+
+	@ManagedAttribute(description = "Longest time spent waiting for a connection, in milliseconds")
+	public double getMaxWaitMillis() {
+		return acquireNanosMax.get() / 1000000d;
+	}
+
+	@ManagedAttribute(description = "Requests that gave up waiting for a connection")
+	public long getTimeouts() {
+		return timeouts.get();
+	}
+
+	@ManagedAttribute(description = "Mean time a connection was held before being returned, in milliseconds")
+	public double getAverageUsageMillis() {
+		long count = acquisitions.get();
+		return count == 0 ? 0 : usageMillisTotal.get() / (double) count;
+	}
+
+	@ManagedAttribute(description = "Physical connections opened since startup")
+	public long getConnectionsCreated() {
+		return connectionsCreated.get();
+	}
+
+	private class Tracker implements IMetricsTracker {
+
+		private final IMetricsTracker micrometer;
+
+		Tracker(IMetricsTracker micrometer) {
+			this.micrometer = micrometer;
+		}
+
+		@Override
+		public void recordConnectionCreatedMillis(long connectionCreatedMillis) {
+			connectionsCreated.incrementAndGet();
+			micrometer.recordConnectionCreatedMillis(connectionCreatedMillis);
+		}
+
+		@Override
+		public void recordConnectionAcquiredNanos(long elapsedAcquiredNanos) {
+			micrometer.recordConnectionAcquiredNanos(elapsedAcquiredNanos);
+			acquisitions.incrementAndGet();
+			acquireNanosTotal.addAndGet(elapsedAcquiredNanos);
+			long max;
+			do {
+				max = acquireNanosMax.get();
+			} while (elapsedAcquiredNanos > max && !acquireNanosMax.compareAndSet(max, elapsedAcquiredNanos));
+		}
+
+		@Override
+		public void recordConnectionUsageMillis(long elapsedBorrowedMillis) {
+			usageMillisTotal.addAndGet(elapsedBorrowedMillis);
+			micrometer.recordConnectionUsageMillis(elapsedBorrowedMillis);
+		}
+
+		@Override
+		public void recordConnectionTimeout() {
+			timeouts.incrementAndGet();
+			micrometer.recordConnectionTimeout();
+		}
+
+		@Override
+		public void close() {
+			poolStats = null;
+			micrometer.close();
+		}
+	}
+}
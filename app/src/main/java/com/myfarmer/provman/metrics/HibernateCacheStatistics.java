@@ -0,0 +1,85 @@
+package com.myfarmer.provman.metrics;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+/**
+ * Second-level and query cache hit/miss counters, published over JMX
+ * (provman:name=hibernateCacheStatistics).
+ *
+ * Counters stay at zero when hibernate.generate_statistics is turned off.
+ */
+@Component
+@ManagedResource(objectName = "provman:name=hibernateCacheStatistics")
+public class HibernateCacheStatistics {
+
+	@Autowired
+	private SessionFactory sessionFactory;
+
+	private Statistics statistics() {
+		return sessionFactory.getStatistics();
+	}
+
+	@ManagedAttribute(description = "Whether Hibernate statistics are being collected")
+	public boolean isStatisticsEnabled() {
+		return statistics().isStatisticsEnabled();
+	}
+
+	@ManagedAttribute(description = "Entity and collection lookups answered by the second-level cache")
+	public long getSecondLevelCacheHitCount() {
+		return statistics().getSecondLevelCacheHitCount();
+	}
+
+	@ManagedAttribute(description = "Entity and collection lookups that fell through to the database")
+	public long getSecondLevelCacheMissCount() {
+		return statistics().getSecondLevelCacheMissCount();
+	}
+
+	@ManagedAttribute(description = "Entries put into the second-level cache")
+	public long getSecondLevelCachePutCount() {
+		return statistics().getSecondLevelCachePutCount();
+	}
+
+	@ManagedAttribute(description = "Queries answered by the query cache")
+	public long getQueryCacheHitCount() {
+		return statistics().getQueryCacheHitCount();
+	}
+
+	@ManagedAttribute(description = "Cacheable queries that had to run against the database")
+	public long getQueryCacheMissCount() {
+		return statistics().getQueryCacheMissCount();
+	}
+
+	@ManagedAttribute(description = "Queries executed against the database")
+	public long getQueryExecutionCount() {
+		return statistics().getQueryExecutionCount();
+	}
+
+	@ManagedAttribute(description = "JDBC statements prepared")
+	public long getPrepareStatementCount() {
+		return statistics().getPrepareStatementCount();
+	}
+
+	@ManagedAttribute(description = "Hit, miss and put figures for every cache region")
+	public String[] getRegionStatistics() {
+		String[] regionNames = statistics().getSecondLevelCacheRegionNames();
+		String[] lines = new String[regionNames.length];
+		for (int i = 0; i < regionNames.length; i++) {
+			CacheRegionStatistics region = statistics().getCacheRegionStatistics(regionNames[i]);
+			lines[i] = regionNames[i] + ": hits=" + region.getHitCount() + ", misses=" + region.getMissCount()
+					+ ", puts=" + region.getPutCount();
+		}
+		return lines;
+	}
+
+	@ManagedOperation(description = "Reset all Hibernate statistics counters")
+	public void clear() {
+		statistics().clear();
+	}
+}
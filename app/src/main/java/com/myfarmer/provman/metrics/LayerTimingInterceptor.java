@@ -0,0 +1,69 @@
+package com.myfarmer.provman.metrics;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.core.annotation.AnnotationUtils;
+import org.springframework.stereotype.Repository;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Times calls into @Service and @Repository beans, as provman.service.calls and
+ * provman.dao.calls tagged with class and method. Service timings include the
+ * commit, the interceptor sits outside the transaction.
+ */
+public class LayerTimingInterceptor implements MethodInterceptor {
+
+	public static final String SERVICE_CALLS = "provman.service.calls";
+	public static final String DAO_CALLS = "provman.dao.calls";
+
+	private final MeterRegistry registry;
+
+	// the success timer of each method, looked up once
+	private final ConcurrentMap<Method, Timer> timers = new ConcurrentHashMap<Method, Timer>();
+
+	public LayerTimingInterceptor(MeterRegistry registry) {
+		this.registry = registry;
+	}
+
+	@Override
+	public Object invoke(MethodInvocation invocation) throws Throwable {
+		long start = System.nanoTime();
+		try {
+			Object result = invocation.proceed();
+			timer(invocation).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+			return result;
+		} catch (Throwable e) {
+			registry.timer(name(invocation), tags(invocation).and("exception", e.getClass().getSimpleName()))
+					.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+			throw e;
+		}
+	}
+
+	private Timer timer(MethodInvocation invocation) {
+		Timer timer = timers.get(invocation.getMethod());
+		if (timer == null) {
+			timer = registry.timer(name(invocation), tags(invocation).and("exception", "none"));
+			timers.putIfAbsent(invocation.getMethod(), timer);
+		}
+		return timer;
+	}
+
+	private static String name(MethodInvocation invocation) {
+		Class<?> target = AopUtils.getTargetClass(invocation.getThis());
+		return AnnotationUtils.findAnnotation(target, Repository.class) != null ? DAO_CALLS : SERVICE_CALLS;
+	}
+
+	private static Tags tags(MethodInvocation invocation) {
+		return Tags.of("class", AopUtils.getTargetClass(invocation.getThis()).getSimpleName(), "method",
+				invocation.getMethod().getName());
+	}
+}
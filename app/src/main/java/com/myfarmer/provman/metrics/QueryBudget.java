@@ -0,0 +1,20 @@
+package com.myfarmer.provman.metrics;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * The most SQL statements a handler may execute for one request, view rendering
+ * included. A batch counts once. Overridden by querybudget.<Controller>.<method>,
+ * handlers without either fall back to querybudget.default. See QueryCounter.
+ */
+@Documented
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface QueryBudget {
+
+	int value();
+}
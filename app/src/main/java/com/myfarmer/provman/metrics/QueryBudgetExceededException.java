@@ -0,0 +1,14 @@
+package com.myfarmer.provman.metrics;
+
+/**
+ * Thrown at the statement that takes a request over its query budget, when
+ * querybudget.failOnExceeded is set.
+ */
+public class QueryBudgetExceededException extends RuntimeException {
+
+	private static final long serialVersionUID = 1L;
+
+	public QueryBudgetExceededException(String message) {
+		super(message);
+	}
+}
@@ -0,0 +1,143 @@
+package com.myfarmer.provman.metrics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Counts the statements executed on each thread, fed by QueryListener, and
+ * checks them against the budget of the request being handled.
+ *
+ * Within a budget scope the SQL of the first statements is kept, so that a
+ * request over budget can be reported with the statements it repeated: an N+1
+ * shows up as one select executed once per row. Over budget the request is
+ * logged by RequestMetricsInterceptor, or with querybudget.failOnExceeded (meant
+ * for tests) the statement taking it over fails with QueryBudgetExceededException.
+ */
+public class QueryCounter {
+
+	private static final int RECORDED_STATEMENTS = 100;
+
+	private final boolean failOnExceeded;
+
+	private final ThreadLocal<long[]> count = new ThreadLocal<long[]>() {
+		@Override
+		protected long[] initialValue() {
+			return new long[1];
+		}
+	};
+
+	private final ThreadLocal<Scope> scope = new ThreadLocal<Scope>();
+
+	public QueryCounter(boolean failOnExceeded) {
+		this.failOnExceeded = failOnExceeded;
+	}
+
+	/**
+	 * Statements executed on this thread so far.
+	 */
+	public long current() {
+		return count.get()[0];
+	}
+
+	/**
+	 * Starts counting against a budget on this thread, a budget below 0 only records.
+	 */
+	public void begin(String name, int budget) {
+		scope.set(new Scope(name, budget));
+	}
+
+	/**
+	 * Continues on this thread a scope ended on another, for requests whose handler
+	 * runs on a handler thread and whose view is rendered on a container thread.
+	 */
+	public void resume(Scope current) {
+		scope.set(current);
+	}
+
+	/**
+	 * Ends the scope started on this thread, null when there was none.
+	 */
+	public Scope end() {
+		Scope current = scope.get();
+		scope.remove();
+		return current;
+	}
+
+	void executing(String sql) {
+		count.get()[0]++;
+		Scope current = scope.get();
+		if (current != null) {
+			current.add(sql);
+			if (failOnExceeded && current.isExceeded() && !current.failed) {
+				// report once, the statements of a failing request's error handling would fail too
+				current.failed = true;
+				scope.remove();
+				throw new QueryBudgetExceededException(current.describe());
+			}
+		}
+	}
+
+	public boolean isFailOnExceeded() {
+		return failOnExceeded;
+	}
+
+	public static class Scope {
+
+		private final String name;
+		private final int budget;
+		private final List<String> statements = new ArrayList<String>();
+		private int executed;
+		private boolean failed;
+
+		Scope(String name, int budget) {
+			this.name = name;
+			this.budget = budget;
+		}
+
+		void add(String sql) {
+			executed++;
+			if (statements.size() < RECORDED_STATEMENTS) {
+				statements.add(sql);
+			}
+		}
+
+		public int getExecuted() {
+			return executed;
+		}
+
+		public boolean isExceeded() {
+			return budget >= 0 && executed > budget;
+		}
+
+		/**
+		 * The budget and the distinct statements, most repeated first.
+		 */
+		public String describe() {
+			Map<String, Integer> counts = new LinkedHashMap<String, Integer>();
+			for (String sql : statements) {
+				Integer seen = counts.get(sql);
+				counts.put(sql, seen == null ? 1 : seen + 1);
+			}
+			List<Map.Entry<String, Integer>> sorted = new ArrayList<Map.Entry<String, Integer>>(counts.entrySet());
+			Collections.sort(sorted, new Comparator<Map.Entry<String, Integer>>() {
+				@Override
+				public int compare(Map.Entry<String, Integer> a, Map.Entry<String, Integer> b) {
+					return b.getValue().compareTo(a.getValue());
+				}
+			});
+			StringBuilder text = new StringBuilder();
+			text.append(name).append(" executed ").append(executed).append(" statements, budget ").append(budget);
+			for (Map.Entry<String, Integer> entry : sorted) {
+				text.append("\n  ").append(entry.getValue()).append(" x ").append(entry.getKey());
+			}
+			if (executed > statements.size()) {
+				text.append("\n  (first ").append(statements.size()).append(" shown)");
+			}
+			return text.toString();
+		}
+	}
+}
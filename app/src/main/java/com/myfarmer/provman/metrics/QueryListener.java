@@ -0,0 +1,134 @@
+package com.myfarmer.provman.metrics;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import net.ttddyy.dsproxy.ExecutionInfo;
+import net.ttddyy.dsproxy.QueryInfo;
+import net.ttddyy.dsproxy.listener.QueryExecutionListener;
+import net.ttddyy.dsproxy.proxy.ParameterSetOperation;
+
+/**
+ * Sees every statement executed through the application's data source. Times
+ * it as provman.jdbc.statements by statement type, counts it on the thread's
+ * QueryCounter and logs it with its bound parameters when it took longer than
+ * jdbc.slowQueryThresholdMs.
+ */
+public class QueryListener implements QueryExecutionListener {
+
+	private static final Log log = LogFactory.getLog(QueryListener.class);
+
+	public static final String STATEMENTS = "provman.jdbc.statements";
+	public static final String SLOW_STATEMENTS = "provman.jdbc.slow.statements";
+
+	private static final String START = QueryListener.class.getName() + ".start";
+	private static final int MAX_PARAMETER_LENGTH = 100;
+	private static final int MAX_PARAMETER_SETS = 5;
+
+	private final QueryCounter counter;
+	private final MeterRegistry registry;
+	private final long slowThresholdNanos;
+
+	/**
+	 * @param slowThresholdMs statements slower than this are logged, 0 logs none
+	 */
+	public QueryListener(QueryCounter counter, MeterRegistry registry, long slowThresholdMs) {
+		this.counter = counter;
+		this.registry = registry;
+		this.slowThresholdNanos = TimeUnit.MILLISECONDS.toNanos(slowThresholdMs);
+	}
+
+	@Override
+	public void beforeQuery(ExecutionInfo execution, List<QueryInfo> queries) {
+		counter.executing(sql(queries));
+		execution.addCustomValue(START, System.nanoTime());
+	}
+
+	@Override
+	public void afterQuery(ExecutionInfo execution, List<QueryInfo> queries) {
+		Long start = execution.getCustomValue(START, Long.class);
+		if (start == null) {
+			return;
+		}
+		long elapsed = System.nanoTime() - start;
+		String sql = sql(queries);
+		Tags tags = Tags.of("type", type(sql), "batch", String.valueOf(execution.isBatch()));
+		registry.timer(STATEMENTS, tags).record(elapsed, TimeUnit.NANOSECONDS);
+		if (slowThresholdNanos > 0 && elapsed >= slowThresholdNanos) {
+			registry.counter(SLOW_STATEMENTS, tags).increment();
+			log.warn("Slow statement, " + TimeUnit.NANOSECONDS.toMillis(elapsed) + " ms"
+					+ (execution.isBatch() ? " for a batch of " + execution.getBatchSize() : "")
+					+ (execution.isSuccess() ? "" : ", failed") + ": " + sql + parameters(queries));
+		}
+	}
+
+	private static String sql(List<QueryInfo> queries) {
+		if (queries.size() == 1) {
+			return queries.get(0).getQuery();
+		}
+		StringBuilder sql = new StringBuilder();
+		for (QueryInfo query : queries) {
+			if (sql.length() > 0) {
+				sql.append("; ");
+			}
+			sql.append(query.getQuery());
+		}
+		return sql.toString();
+	}
+
+	private static String type(String sql) {
+		String trimmed = sql.trim();
+		int end = 0;
+		while (end < trimmed.length() && Character.isLetter(trimmed.charAt(end))) {
+			end++;
+		}
+		String keyword = trimmed.substring(0, end).toLowerCase();
+		if (keyword.equals("select") || keyword.equals("insert") || keyword.equals("update")
+				|| keyword.equals("delete")) {
+			return keyword;
+		}
+		return "other";
+	}
+
+	private static String parameters(List<QueryInfo> queries) {
+		StringBuilder text = new StringBuilder();
+		for (QueryInfo query : queries) {
+			List<List<ParameterSetOperation>> sets = query.getParametersList();
+			for (int i = 0; i < sets.size() && i < MAX_PARAMETER_SETS; i++) {
+				text.append(i == 0 ? " with " : ", ").append('[');
+				List<ParameterSetOperation> set = sets.get(i);
+				for (int j = 0; j < set.size(); j++) {
+					if (j > 0) {
+						text.append(", ");
+					}
+					text.append(value(set.get(j)));
+				}
+				text.append(']');
+			}
+			if (sets.size() > MAX_PARAMETER_SETS) {
+				text.append(" and ").append(sets.size() - MAX_PARAMETER_SETS).append(" more");
+			}
+		}
+		return text.toString();
+	}
+
+	private static String value(ParameterSetOperation operation) {
+		if (ParameterSetOperation.isSetNullParameterOperation(operation)) {
+			return "null";
+		}
+		Object[] args = operation.getArgs();
+		if (args.length < 2 || args[1] == null) {
+			return "null";
+		}
+		String value = String.valueOf(args[1]);
+		if (value.length() > MAX_PARAMETER_LENGTH) {
+			value = value.substring(0, MAX_PARAMETER_LENGTH) + "...";
+		}
+		return args[1] instanceof Number || args[1] instanceof Boolean ? value : "'" + value + "'";
+	}
+}
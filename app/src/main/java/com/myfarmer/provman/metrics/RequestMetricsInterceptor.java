@@ -0,0 +1,135 @@
+package com.myfarmer.provman.metrics;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.DispatcherType;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.async.CallableProcessingInterceptor;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.handler.HandlerInterceptorAdapter;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+
+/**
+ * Times every request by handler method and records how many SQL statements
+ * it took, view rendering included. A handler whose statement count grows
+ * with the page size shows up in provman.http.queries as a rising max.
+ *
+ * Requests are also held to the handler's query budget (see QueryBudget):
+ * one over budget is logged and counted in provman.http.query.budget.exceeded.
+ *
+ * An offloaded request (see OffloadingHandlerAdapter) is timed and counted
+ * as one: its budget scope follows it to the handler thread and back to the
+ * container thread that renders the view.
+ */
+@Component
+public class RequestMetricsInterceptor extends HandlerInterceptorAdapter implements CallableProcessingInterceptor {
+
+	public static final String REQUESTS = "provman.http.requests";
+	public static final String QUERIES = "provman.http.queries";
+	public static final String BUDGET_EXCEEDED = "provman.http.query.budget.exceeded";
+
+	private static final Log log = LogFactory.getLog(RequestMetricsInterceptor.class);
+
+	private static final String START = RequestMetricsInterceptor.class.getName() + ".start";
+	private static final String START_QUERIES = RequestMetricsInterceptor.class.getName() + ".startQueries";
+	private static final String SCOPE = RequestMetricsInterceptor.class.getName() + ".scope";
+
+	@Autowired
+	MeterRegistry registry;
+
+	@Autowired
+	QueryCounter queryCounter;
+
+	@Autowired
+	Environment environment;
+
+	@Override
+	public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+		QueryCounter.Scope offloaded = (QueryCounter.Scope) request.getAttribute(SCOPE);
+		if (offloaded != null && request.getDispatcherType() == DispatcherType.ASYNC) {
+			// back from the handler thread, timing started with the first dispatch
+			queryCounter.resume(offloaded);
+			return true;
+		}
+		request.setAttribute(START, System.nanoTime());
+		request.setAttribute(START_QUERIES, queryCounter.current());
+		queryCounter.begin(handlerName(handler), budget(handler));
+		return true;
+	}
+
+	@Override
+	public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response,
+			Object handler) {
+		request.setAttribute(SCOPE, queryCounter.end());
+	}
+
+	@Override
+	public <T> void preProcess(NativeWebRequest request, Callable<T> task) {
+		QueryCounter.Scope offloaded = (QueryCounter.Scope) request.getAttribute(SCOPE, RequestAttributes.SCOPE_REQUEST);
+		if (offloaded != null) {
+			queryCounter.resume(offloaded);
+		}
+	}
+
+	@Override
+	public <T> void postProcess(NativeWebRequest request, Callable<T> task, Object concurrentResult) {
+		queryCounter.end();
+	}
+
+	@Override
+	public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler,
+			Exception ex) {
+		Long start = (Long) request.getAttribute(START);
+		if (start == null) {
+			return;
+		}
+		long elapsed = System.nanoTime() - start;
+		QueryCounter.Scope scope = queryCounter.end();
+		// the scope spans every thread the request ran on, the thread's own count only this one
+		long queries = scope != null ? scope.getExecuted()
+				: queryCounter.current() - (Long) request.getAttribute(START_QUERIES);
+
+		String handlerName = handlerName(handler);
+		if (scope != null && scope.isExceeded()) {
+			registry.counter(BUDGET_EXCEEDED, "handler", handlerName).increment();
+			log.warn("Query budget exceeded: " + scope.describe());
+		}
+		int status = ex != null && response.getStatus() < 400 ? 500 : response.getStatus();
+		registry.timer(REQUESTS, Tags.of("handler", handlerName, "method", request.getMethod(), "status",
+				String.valueOf(status), "exception", ex == null ? "none" : ex.getClass().getSimpleName()))
+				.record(elapsed, TimeUnit.NANOSECONDS);
+		registry.summary(QUERIES, Tags.of("handler", handlerName)).record(queries);
+	}
+
+	private int budget(Object handler) {
+		int budget = environment.getProperty("querybudget.default", Integer.class, -1);
+		if (handler instanceof HandlerMethod) {
+			QueryBudget annotation = ((HandlerMethod) handler).getMethodAnnotation(QueryBudget.class);
+			if (annotation != null) {
+				budget = annotation.value();
+			}
+			budget = environment.getProperty("querybudget." + handlerName(handler), Integer.class, budget);
+		}
+		return budget;
+	}
+
+	private static String handlerName(Object handler) {
+		if (handler instanceof HandlerMethod) {
+			HandlerMethod method = (HandlerMethod) handler;
+			return method.getBeanType().getSimpleName() + "." + method.getMethod().getName();
+		}
+		return "other";
+	}
+}
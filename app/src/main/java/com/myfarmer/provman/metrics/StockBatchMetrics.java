@@ -0,0 +1,116 @@
+package com.myfarmer.provman.metrics;
+
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+/**
+ * Progress of the running stock batch and figures from the last completed one,
+ * published over JMX (provman:name=stockBatch).
+ */
+@Component
+@ManagedResource(objectName = "provman:name=stockBatch")
+public class StockBatchMetrics {
+
+	private volatile boolean running;
+	private volatile boolean incremental;
+	private volatile long startedAt;
+	private volatile int farmsTotal;
+	private final AtomicInteger farmsDone = new AtomicInteger();
+	private final AtomicInteger farmsFailed = new AtomicInteger();
+	private final AtomicLong rowsWritten = new AtomicLong();
+
+	private volatile long lastCompletedAt;
+	private volatile long lastDurationMillis;
+	private volatile long lastRowsWritten;
+	private final AtomicLong runs = new AtomicLong();
+
+	public void started(boolean incremental, int farmsTotal) {
+		this.incremental = incremental;
+		this.farmsTotal = farmsTotal;
+		farmsDone.set(0);
+		farmsFailed.set(0);
+		rowsWritten.set(0);
+		startedAt = System.currentTimeMillis();
+		running = true;
+	}
+
+	public void farmRebuilt(int rows) {
+		farmsDone.incrementAndGet();
+		rowsWritten.addAndGet(rows);
+	}
+
+	public void farmFailed() {
+		farmsFailed.incrementAndGet();
+	}
+
+	public void finished() {
+		lastCompletedAt = System.currentTimeMillis();
+		lastDurationMillis = lastCompletedAt - startedAt;
+		lastRowsWritten = rowsWritten.get();
+		runs.incrementAndGet();
+		running = false;
+	}
+
+	@ManagedAttribute(description = "Whether a stock batch run is in progress")
+	public boolean isRunning() {
+		return running;
+	}
+
+	@ManagedAttribute(description = "Whether the current or last run only rebuilt changed farms")
+	public boolean isIncremental() {
+		return incremental;
+	}
+
+	@ManagedAttribute(description = "Farms to rebuild in the current or last run")
+	public int getFarmsTotal() {
+		return farmsTotal;
+	}
+
+	@ManagedAttribute(description = "Farms rebuilt so far in the current or last run")
+	public int getFarmsDone() {
+		return farmsDone.get();
+	}
+
+	@ManagedAttribute(description = "Farms whose rebuild failed in the current or last run")
+	public int getFarmsFailed() {
+		return farmsFailed.get();
+	}
+
+	@ManagedAttribute(description = "Percentage of farms processed in the current or last run")
+	public double getProgressPercent() {
+		int total = farmsTotal;
+		return total == 0 ? 100 : (farmsDone.get() + farmsFailed.get()) * 100d / total;
+	}
+
+	@ManagedAttribute(description = "stock_batch rows written so far in the current or last run")
+	public long getRowsWritten() {
+		return rowsWritten.get();
+	}
+
+	@ManagedAttribute(description = "Rows written per second by the current run, or by the last one when idle")
+	public double getRowsPerSecond() {
+		long elapsed = running ? System.currentTimeMillis() - startedAt : lastDurationMillis;
+		long rows = running ? rowsWritten.get() : lastRowsWritten;
+		return elapsed <= 0 ? 0 : rows * 1000d / elapsed;
+	}
+
+	@ManagedAttribute(description = "Duration of the last completed run, in milliseconds")
+	public long getLastDurationMillis() {
+		return lastDurationMillis;
+	}
+
+	@ManagedAttribute(description = "When the last run completed")
+	public Date getLastCompletedAt() {
+		return lastCompletedAt == 0 ? null : new Date(lastCompletedAt);
+	}
+
+	@ManagedAttribute(description = "Runs completed since startup")
+	public long getRuns() {
+		return runs.get();
+	}
+}
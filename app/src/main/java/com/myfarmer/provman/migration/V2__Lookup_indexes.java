@@ -0,0 +1,107 @@
+package com.myfarmer.provman.migration;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.flywaydb.core.api.migration.BaseJavaMigration;
+import org.flywaydb.core.api.migration.Context;
+
+/**
+ * The indexes behind the DAO lookups, by farm, by product and by provider
+ * code, and the pricing to product foreign key. Pricings of products that no
+ * longer exist would block the key: they are moved to a pricing_orphan table,
+ * left for the operator to look at and drop.
+ *
+ * Java rather than SQL so that what a database already has is skipped: MySQL
+ * has no create index if not exists, provider_code may have been created by
+ * hand and stock_batch_farm_id by db_init.sql. An index is taken as present
+ * when one starts with the same column, whatever its name.
+ */
+public class V2__Lookup_indexes extends BaseJavaMigration {
+
+	private static final Log log = LogFactory.getLog(V2__Lookup_indexes.class);
+
+	private static final String ORPHANS = "where not exists (select 1 from product p where p.id = pricing.product_id)";
+
+	private static final int MAX_LOGGED_IDS = 100;
+
+	@Override
+	public void migrate(Context context) throws SQLException {
+		Connection connection = context.getConnection();
+		createIndex(connection, "product", "product_farm_id", "farm_id", false);
+		createIndex(connection, "pricing", "pricing_product_id", "product_id", false);
+		createIndex(connection, "provider", "provider_code", "code", true);
+		createIndex(connection, "stock_batch", "stock_batch_farm_id", "farm_id", false);
+		addPricingProductForeignKey(connection);
+	}
+
+	private void createIndex(Connection connection, String table, String name, String column, boolean unique)
+			throws SQLException {
+		DatabaseMetaData metaData = connection.getMetaData();
+		try (ResultSet indexes = metaData.getIndexInfo(connection.getCatalog(), null, identifier(metaData, table),
+				unique, false)) {
+			while (indexes.next()) {
+				if (indexes.getShort("ORDINAL_POSITION") == 1 && column.equalsIgnoreCase(indexes.getString("COLUMN_NAME"))) {
+					return;
+				}
+			}
+		}
+		execute(connection, "create " + (unique ? "unique " : "") + "index " + name + " on " + table + " (" + column + ")");
+	}
+
+	private void addPricingProductForeignKey(Connection connection) throws SQLException {
+		DatabaseMetaData metaData = connection.getMetaData();
+		try (ResultSet keys = metaData.getImportedKeys(connection.getCatalog(), null, identifier(metaData, "pricing"))) {
+			while (keys.next()) {
+				if ("product".equalsIgnoreCase(keys.getString("PKTABLE_NAME"))
+						&& "product_id".equalsIgnoreCase(keys.getString("FKCOLUMN_NAME"))) {
+					return;
+				}
+			}
+		}
+		quarantineOrphanPricings(connection);
+		execute(connection,
+				"alter table pricing add constraint pricing_product_fk foreign key (product_id) references product (id)");
+	}
+
+	/*
+	 * Left behind by product deletes that did not take their pricings along.
+	 */
+	private void quarantineOrphanPricings(Connection connection) throws SQLException {
+		List<Integer> ids = new ArrayList<Integer>();
+		try (Statement statement = connection.createStatement();
+				ResultSet orphans = statement.executeQuery("select id from pricing " + ORPHANS + " order by id")) {
+			while (orphans.next()) {
+				ids.add(orphans.getInt(1));
+			}
+		}
+		if (ids.isEmpty()) {
+			return;
+		}
+		execute(connection, "create table pricing_orphan (id integer primary key not null, weight float not null, "
+				+ "price float not null, product_id integer not null)");
+		execute(connection, "insert into pricing_orphan (id, weight, price, product_id) "
+				+ "select id, weight, price, product_id from pricing " + ORPHANS);
+		execute(connection, "delete from pricing " + ORPHANS);
+		log.warn("Moved " + ids.size() + " pricings of products that no longer exist to pricing_orphan, ids "
+				+ (ids.size() > MAX_LOGGED_IDS ? ids.subList(0, MAX_LOGGED_IDS) + " and more" : ids.toString()));
+	}
+
+	private static int execute(Connection connection, String sql) throws SQLException {
+		try (Statement statement = connection.createStatement()) {
+			return statement.executeUpdate(sql);
+		}
+	}
+
+	private static String identifier(DatabaseMetaData metaData, String name) throws SQLException {
+		return metaData.storesUpperCaseIdentifiers() ? name.toUpperCase(Locale.ROOT) : name;
+	}
+}
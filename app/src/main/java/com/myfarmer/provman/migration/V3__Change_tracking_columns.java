@@ -0,0 +1,54 @@
+package com.myfarmer.provman.migration;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Locale;
+
+import org.flywaydb.core.api.migration.BaseJavaMigration;
+import org.flywaydb.core.api.migration.Context;
+
+/**
+ * The columns Product, ProductPricing and Provider track changes with:
+ * updated_at, which the database sets on every write and which conditional
+ * GETs and the price history start from, and version, which Hibernate bumps
+ * on every update and checks for optimistic locking.
+ *
+ * Java rather than SQL so that what a database already has is skipped: the
+ * db_init.sql of old created the tables without either column, a later one
+ * with updated_at, and MySQL has no add column if not exists.
+ */
+public class V3__Change_tracking_columns extends BaseJavaMigration {
+
+	private static final String[] TABLES = { "product", "pricing", "provider" };
+
+	@Override
+	public void migrate(Context context) throws SQLException {
+		Connection connection = context.getConnection();
+		for (String table : TABLES) {
+			addColumn(connection, table, "updated_at",
+					"timestamp(3) not null default current_timestamp(3) on update current_timestamp(3)");
+			addColumn(connection, table, "version", "integer not null default 0");
+		}
+	}
+
+	private void addColumn(Connection connection, String table, String column, String definition)
+			throws SQLException {
+		DatabaseMetaData metaData = connection.getMetaData();
+		try (ResultSet columns = metaData.getColumns(connection.getCatalog(), null, identifier(metaData, table),
+				identifier(metaData, column))) {
+			if (columns.next()) {
+				return;
+			}
+		}
+		try (Statement statement = connection.createStatement()) {
+			statement.executeUpdate("alter table " + table + " add column " + column + " " + definition);
+		}
+	}
+
+	private static String identifier(DatabaseMetaData metaData, String name) throws SQLException {
+		return metaData.storesUpperCaseIdentifiers() ? name.toUpperCase(Locale.ROOT) : name;
+	}
+}
@@ -1,24 +1,44 @@
 package com.myfarmer.provman.model;
 
 import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
+import org.hibernate.annotations.BatchSize;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.DynamicUpdate;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+import org.hibernate.annotations.UpdateTimestamp;
 import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.FetchType;
 import javax.persistence.GeneratedValue;
-import javax.persistence.GenerationType;
 import javax.persistence.Id;
 import javax.persistence.OneToMany;
 import javax.persistence.Table;
+import javax.persistence.Version;
 import javax.validation.constraints.NotNull;
+import java.time.Instant;
 import java.util.List;
 
 @Entity
 @Table(name = "product")
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "product")
+@DynamicUpdate
 @Data
 public class Product {
 
+  // pooled ids from the product_seq table instead of IDENTITY, so inserts can be JDBC batched;
+  // always the home shard's table, ids are unique across shards
   @Id
-  @GeneratedValue(strategy = GenerationType.IDENTITY)
+  @GeneratedValue(generator = "product_seq")
+  @GenericGenerator(name = "product_seq", strategy = "com.myfarmer.provman.shard.HomeShardSequenceGenerator",
+      parameters = {
+      @Parameter(name = "sequence_name", value = "product_seq"),
+      @Parameter(name = "force_table_use", value = "true"),
+      @Parameter(name = "increment_size", value = "50"),
+      @Parameter(name = "optimizer", value = "pooled-lo")})
   private int id;
 
   @NotNull
@@ -32,7 +52,21 @@ public class Product {
   @Column(name = "description")
   private String description;
 
-  @OneToMany(mappedBy = "product", fetch = FetchType.EAGER)
+  @UpdateTimestamp
+  @Column(name = "updated_at")
+  private Instant updatedAt;
+
+  // null until persisted; the edit forms send back the version they showed
+  @Version
+  @Column(name = "version")
+  private Integer version;
+
+  // loaded on demand, use ProductDao.findByIdWithPricings when the pricings are rendered
+  @OneToMany(mappedBy = "product", fetch = FetchType.LAZY)
+  @BatchSize(size = 50)
+  @Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "product.productPricings")
+  @ToString.Exclude
+  @EqualsAndHashCode.Exclude
   private List<ProductPricing> productPricings;
 
 }
@@ -1,24 +1,40 @@
 package com.myfarmer.provman.model;
 
 import lombok.Data;
+import lombok.EqualsAndHashCode;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.DynamicUpdate;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+import org.hibernate.annotations.UpdateTimestamp;
 
 import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
-import javax.persistence.GenerationType;
 import javax.persistence.Id;
 import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
 import javax.persistence.Table;
+import javax.persistence.Version;
 import javax.validation.constraints.NotNull;
+import java.time.Instant;
 
 @Entity
 @Table(name = "pricing")
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "pricing")
+@DynamicUpdate
 @Data
 public class ProductPricing {
 
   @Id
-  @GeneratedValue(strategy = GenerationType.IDENTITY)
+  @GeneratedValue(generator = "pricing_seq")
+  @GenericGenerator(name = "pricing_seq", strategy = "com.myfarmer.provman.shard.HomeShardSequenceGenerator",
+      parameters = {
+      @Parameter(name = "sequence_name", value = "pricing_seq"),
+      @Parameter(name = "force_table_use", value = "true"),
+      @Parameter(name = "increment_size", value = "50"),
+      @Parameter(name = "optimizer", value = "pooled-lo")})
   private int id;
 
   @NotNull
@@ -29,7 +45,17 @@ public class ProductPricing {
   @Column(name = "weight", nullable = false)
   private float weight;
 
+  @UpdateTimestamp
+  @Column(name = "updated_at")
+  private Instant updatedAt;
+
+  @Version
+  @Column(name = "version")
+  private Integer version;
+
+  // out of hashCode, which bean validation calls before insert, so a product referenced by id is not loaded
   @ManyToOne
   @JoinColumn(name = "product_id")
+  @EqualsAndHashCode.Exclude
   private Product product;
 }
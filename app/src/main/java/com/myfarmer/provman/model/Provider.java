@@ -1,5 +1,6 @@
 package com.myfarmer.provman.model;
 
+import java.time.Instant;
 import java.time.LocalDate;
 
 import javax.persistence.Column;
@@ -8,15 +9,22 @@ import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
 import javax.persistence.Table;
+import javax.persistence.Version;
 import javax.validation.constraints.NotNull;
 import javax.validation.constraints.Size;
 
 import lombok.Data;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.DynamicUpdate;
+import org.hibernate.annotations.UpdateTimestamp;
 import org.hibernate.validator.constraints.NotEmpty;
 import org.springframework.format.annotation.DateTimeFormat;
 
 @Entity
 @Table(name="provider")
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "provider")
+@DynamicUpdate
 @Data
 public class Provider {
 
@@ -41,4 +49,13 @@ public class Provider {
 	@Column(name = "code", unique=true, nullable = false)
 	private String code;
 
+	// set on every insert and update, feeds the ETag and Last-Modified of the provider pages
+	@UpdateTimestamp
+	@Column(name = "updated_at")
+	private Instant updatedAt;
+
+	@Version
+	@Column(name = "version")
+	private Integer version;
+
 }
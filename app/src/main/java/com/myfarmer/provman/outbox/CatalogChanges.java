@@ -0,0 +1,15 @@
+package com.myfarmer.provman.outbox;
+
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+@Getter
+@AllArgsConstructor
+public class CatalogChanges {
+
+	private final List<CatalogEvent> items;
+	// where the next read starts
+	private final String next;
+}
@@ -0,0 +1,71 @@
+package com.myfarmer.provman.outbox;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.time.Instant;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.myfarmer.provman.api.JsonWritable;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * A product, pricing or provider change, with the state the row was left in,
+ * or had before a delete, as its data. Product and pricing events are numbered
+ * per farm by seq, which starts at 1 and has no gaps, so a consumer can tell a
+ * duplicate or a missing event. Provider events have neither farm nor seq.
+ */
+@Getter
+@AllArgsConstructor
+public class CatalogEvent implements JsonWritable {
+
+	private static final JsonFactory JSON = new JsonFactory();
+
+	public enum Type {
+		PRODUCT, PRICING, PROVIDER
+	}
+
+	public enum Operation {
+		CREATED, UPDATED, DELETED
+	}
+
+	// the outbox row, 0 until stored; numbered per shard
+	private final long outboxId;
+	private final Integer farmId;
+	private final Long seq;
+	private final Type type;
+	private final Operation operation;
+	private final int entityId;
+	private final Instant recordedAt;
+	// the entity's API representation, as JSON
+	private final String data;
+
+	public static CatalogEvent of(Type type, Operation operation, Integer farmId, int entityId, JsonWritable data) {
+		StringWriter json = new StringWriter();
+		try (JsonGenerator generator = JSON.createGenerator(json)) {
+			data.writeJson(generator);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return new CatalogEvent(0, farmId, null, type, operation, entityId, Instant.now(), json.toString());
+	}
+
+	@Override
+	public void writeJson(JsonGenerator json) throws IOException {
+		json.writeStartObject();
+		if (farmId != null) {
+			json.writeNumberField("farmId", farmId);
+			json.writeNumberField("seq", seq);
+		}
+		json.writeStringField("type", type.name().toLowerCase());
+		json.writeStringField("op", operation.name().toLowerCase());
+		json.writeNumberField("id", entityId);
+		json.writeStringField("at", recordedAt.toString());
+		json.writeFieldName("data");
+		json.writeRawValue(data);
+		json.writeEndObject();
+	}
+}
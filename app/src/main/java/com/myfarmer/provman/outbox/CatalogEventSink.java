@@ -0,0 +1,15 @@
+package com.myfarmer.provman.outbox;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Where OutboxRelay hands catalog events over, in order. A batch that fails is
+ * handed over again, whole, on the next attempt: events may arrive twice but
+ * never out of order within a farm. Declaring a bean of this type replaces the
+ * sink chosen by outbox.sink.
+ */
+public interface CatalogEventSink {
+
+	void publish(List<CatalogEvent> events) throws IOException;
+}
@@ -0,0 +1,117 @@
+package com.myfarmer.provman.outbox;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import com.myfarmer.provman.api.ProductSummary;
+import com.myfarmer.provman.api.ProviderSummary;
+import com.myfarmer.provman.dao.OutboxDao;
+import com.myfarmer.provman.model.Product;
+import com.myfarmer.provman.model.Provider;
+import com.myfarmer.provman.outbox.CatalogEvent.Operation;
+import com.myfarmer.provman.outbox.CatalogEvent.Type;
+
+/**
+ * Records catalog changes in the outbox of the shard being written, in the
+ * transaction of the change, for OutboxRelay to publish once committed. Off
+ * unless outbox.enabled=true, nothing is recorded then.
+ *
+ * Creates and updates are recorded once flushed, deletes before the rows go.
+ * Deleting a product deletes its pricings without an event of their own.
+ */
+@Component
+public class CatalogOutbox {
+
+	@Autowired
+	OutboxDao dao;
+
+	@Autowired
+	Environment environment;
+
+	private boolean enabled;
+
+	@PostConstruct
+	public void init() {
+		enabled = environment.getProperty("outbox.enabled", Boolean.class, false);
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	public void recordProducts(Operation operation, Collection<Product> products) {
+		if (!enabled) {
+			return;
+		}
+		List<CatalogEvent> events = new ArrayList<CatalogEvent>(products.size());
+		for (Product product : products) {
+			events.add(productEvent(operation, product.getFarmId(), product));
+		}
+		dao.insertEvents(events);
+	}
+
+	public void recordProduct(Operation operation, Product product) {
+		recordProducts(operation, Collections.singletonList(product));
+	}
+
+	/**
+	 * An update of a product that may have left another farm, which is told too.
+	 */
+	public void recordProductUpdate(Product product, int previousFarmId) {
+		if (!enabled) {
+			return;
+		}
+		List<CatalogEvent> events = new ArrayList<CatalogEvent>(2);
+		if (previousFarmId != product.getFarmId()) {
+			events.add(productEvent(Operation.UPDATED, previousFarmId, product));
+		}
+		events.add(productEvent(Operation.UPDATED, product.getFarmId(), product));
+		dao.insertEvents(events);
+	}
+
+	public void recordProductDeletes(Collection<Integer> productIds) {
+		if (enabled) {
+			dao.insertEvents(dao.findProductEvents(Operation.DELETED, productIds));
+		}
+	}
+
+	/**
+	 * Deletes of the farm's products named so, or of all of them when name is null.
+	 */
+	public void recordFarmProductDeletes(int farmId, String name) {
+		if (enabled) {
+			dao.insertEvents(dao.findFarmProductEvents(Operation.DELETED, farmId, name));
+		}
+	}
+
+	public void recordPricings(Operation operation, Collection<Integer> pricingIds) {
+		if (enabled) {
+			dao.insertEvents(dao.findPricingEvents(operation, pricingIds));
+		}
+	}
+
+	public void recordProvider(Operation operation, Provider provider) {
+		recordProvider(operation, new ProviderSummary(provider.getId(), provider.getName(), provider.getCode(),
+				provider.getNationality(), provider.getEnteringDate()));
+	}
+
+	public void recordProvider(Operation operation, ProviderSummary provider) {
+		if (enabled && provider != null) {
+			dao.insertEvents(Collections.singletonList(
+					CatalogEvent.of(Type.PROVIDER, operation, null, provider.getId(), provider)));
+		}
+	}
+
+	private static CatalogEvent productEvent(Operation operation, int farmId, Product product) {
+		return CatalogEvent.of(Type.PRODUCT, operation, farmId, product.getId(), new ProductSummary(product.getId(),
+				product.getFarmId(), product.getName(), product.getDescription()));
+	}
+}
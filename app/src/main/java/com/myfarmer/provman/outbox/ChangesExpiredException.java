@@ -0,0 +1,18 @@
+package com.myfarmer.provman.outbox;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * The changes after a cursor are no longer kept, or the cursor was issued
+ * before a restart: the consumer must read the catalog again.
+ */
+@ResponseStatus(HttpStatus.GONE)
+public class ChangesExpiredException extends IllegalStateException {
+
+	private static final long serialVersionUID = 1L;
+
+	public ChangesExpiredException(String message) {
+		super(message);
+	}
+}
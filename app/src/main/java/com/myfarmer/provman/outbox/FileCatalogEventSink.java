@@ -0,0 +1,56 @@
+package com.myfarmer.provman.outbox;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+/**
+ * Appends events to a file, one JSON object per line, and forces each batch
+ * to disk before the relay deletes it from the outbox.
+ */
+public class FileCatalogEventSink implements CatalogEventSink {
+
+	private static final JsonFactory JSON = new JsonFactory();
+
+	private final Path file;
+
+	public FileCatalogEventSink(Path file) {
+		this.file = file;
+	}
+
+	@Override
+	public synchronized void publish(List<CatalogEvent> events) throws IOException {
+		ByteArrayOutputStream lines = new ByteArrayOutputStream();
+		for (CatalogEvent event : events) {
+			try (JsonGenerator json = JSON.createGenerator(lines, JsonEncoding.UTF8)) {
+				event.writeJson(json);
+			}
+			lines.write('\n');
+		}
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.APPEND)) {
+			ByteBuffer buffer = ByteBuffer.wrap(lines.toByteArray());
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+			channel.force(false);
+		}
+	}
+
+	public Path getFile() {
+		return file;
+	}
+
+	@Override
+	public String toString() {
+		return "file " + file.toAbsolutePath();
+	}
+}
@@ -0,0 +1,95 @@
+package com.myfarmer.provman.outbox;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import com.myfarmer.provman.paging.InvalidPageRequestException;
+
+/**
+ * Keeps the last maxEvents events published on this instance, for consumers
+ * reading GET /api/v1/changes. Cursors are the position of the last event
+ * read, tied to this instance's start: after a restart, or once the events
+ * after a cursor have been dropped, reading from it throws
+ * ChangesExpiredException.
+ */
+public class InMemoryCatalogEventSink implements CatalogEventSink {
+
+	private final int maxEvents;
+	private final long epoch = System.currentTimeMillis();
+
+	// guarded by this; events.getFirst() is at position first
+	private final ArrayDeque<CatalogEvent> events = new ArrayDeque<CatalogEvent>();
+	private long first = 1;
+
+	public InMemoryCatalogEventSink(int maxEvents) {
+		this.maxEvents = maxEvents;
+	}
+
+	@Override
+	public synchronized void publish(List<CatalogEvent> published) {
+		for (CatalogEvent event : published) {
+			events.addLast(event);
+			if (events.size() > maxEvents) {
+				events.removeFirst();
+				first++;
+			}
+		}
+	}
+
+	/**
+	 * Up to limit events after the cursor, oldest first. Without a cursor no
+	 * event is returned, only the cursor of the latest one.
+	 */
+	public synchronized CatalogChanges read(String cursor, int limit) {
+		long last = first + events.size() - 1;
+		if (cursor == null) {
+			return new CatalogChanges(new ArrayList<CatalogEvent>(), cursor(last));
+		}
+		long after = position(cursor);
+		if (after < first - 1 || after > last) {
+			throw new ChangesExpiredException("The changes after " + cursor + " are no longer kept, "
+					+ "read the catalog again and start from a new cursor");
+		}
+		List<CatalogEvent> items = new ArrayList<CatalogEvent>(Math.min(limit, (int) (last - after)));
+		Iterator<CatalogEvent> iterator = events.iterator();
+		for (long position = first; iterator.hasNext() && items.size() < limit; position++) {
+			CatalogEvent event = iterator.next();
+			if (position > after) {
+				items.add(event);
+			}
+		}
+		return new CatalogChanges(items, cursor(after + items.size()));
+	}
+
+	public synchronized int getSize() {
+		return events.size();
+	}
+
+	private String cursor(long position) {
+		return epoch + "-" + position;
+	}
+
+	private long position(String cursor) {
+		int dash = cursor.indexOf('-');
+		long cursorEpoch;
+		long position;
+		try {
+			cursorEpoch = Long.parseLong(cursor.substring(0, Math.max(dash, 0)));
+			position = Long.parseLong(cursor.substring(dash + 1));
+		} catch (NumberFormatException e) {
+			throw new InvalidPageRequestException("Malformed changes cursor", e);
+		}
+		if (cursorEpoch != epoch) {
+			throw new ChangesExpiredException("The cursor " + cursor + " was issued before a restart, "
+					+ "read the catalog again and start from a new cursor");
+		}
+		return position;
+	}
+
+	@Override
+	public String toString() {
+		return "memory";
+	}
+}
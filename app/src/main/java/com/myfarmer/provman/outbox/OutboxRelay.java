@@ -0,0 +1,204 @@
+package com.myfarmer.provman.outbox;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.myfarmer.provman.dao.OutboxDao;
+import com.myfarmer.provman.shard.ShardRouter;
+
+/**
+ * Hands the events of every shard's outbox to the sink, every outbox.relayMs
+ * (1 s), oldest first, outbox.batchSize (500) at a time. A batch is locked,
+ * published and deleted in one transaction, so instances relaying the same
+ * shard take turns. When the sink fails the batch stays in the outbox and the
+ * shard is left until the next round, nothing after it goes first.
+ *
+ * The sink is a CatalogEventSink bean when there is one, else outbox.sink:
+ * file appends JSON lines to outbox.file, memory keeps the last
+ * outbox.memory.maxEvents (10000) for GET /api/v1/changes. The memory sink
+ * only holds what this instance relayed, while the relay deletes from the
+ * outbox every instance shares, so it must be asked for and is meant for
+ * local use. Without a sink nothing is relayed, the events wait in the outbox.
+ */
+@Component
+@ManagedResource(objectName = "provman:name=outboxRelay")
+public class OutboxRelay {
+
+	private static final Log log = LogFactory.getLog(OutboxRelay.class);
+
+	@Autowired
+	OutboxDao dao;
+
+	@Autowired
+	CatalogOutbox outbox;
+
+	@Autowired
+	ShardRouter shardRouter;
+
+	@Autowired
+	PlatformTransactionManager transactionManager;
+
+	@Autowired
+	Environment environment;
+
+	@Autowired(required = false)
+	CatalogEventSink configuredSink;
+
+	private final AtomicBoolean relaying = new AtomicBoolean();
+	private final AtomicLong published = new AtomicLong();
+	private final AtomicLong failures = new AtomicLong();
+
+	private CatalogEventSink sink;
+	private TransactionTemplate transactionTemplate;
+	private int batchSize;
+	private volatile long lastPublishedAt;
+
+	@PostConstruct
+	public void init() {
+		transactionTemplate = new TransactionTemplate(transactionManager);
+		batchSize = environment.getProperty("outbox.batchSize", Integer.class, 500);
+		String configured = environment.getProperty("outbox.sink");
+		if (configuredSink != null) {
+			sink = configuredSink;
+		} else if ("file".equals(configured)) {
+			sink = new FileCatalogEventSink(Paths.get(environment.getProperty("outbox.file", "catalog-events.jsonl")));
+		} else if ("memory".equals(configured)) {
+			sink = new InMemoryCatalogEventSink(environment.getProperty("outbox.memory.maxEvents", Integer.class, 10000));
+		} else if (outbox.isEnabled()) {
+			log.warn("No catalog event sink: set outbox.sink to file or memory, or define a CatalogEventSink bean."
+					+ " Events are kept in the outbox until then");
+		}
+	}
+
+	@Scheduled(fixedDelayString = "${outbox.relayMs:1000}", initialDelayString = "${outbox.relayMs:1000}")
+	public void scheduledRelay() {
+		if (outbox.isEnabled()) {
+			relay();
+		}
+	}
+
+	/**
+	 * Publishes what the outboxes hold, returns the number of events published,
+	 * 0 when there is no sink or another relay of this instance is running.
+	 */
+	public int relay() {
+		if (sink == null || !relaying.compareAndSet(false, true)) {
+			return 0;
+		}
+		try {
+			int count = 0;
+			for (int shard = 0; shard < shardRouter.getShardCount(); shard++) {
+				count += relayShard(shard);
+			}
+			return count;
+		} finally {
+			relaying.set(false);
+		}
+	}
+
+	private int relayShard(int shard) {
+		int count = 0;
+		try {
+			int batch;
+			do {
+				batch = shardRouter.execute(shard, transactionTemplate, new TransactionCallback<Integer>() {
+					@Override
+					public Integer doInTransaction(TransactionStatus status) {
+						return publishBatch();
+					}
+				});
+				count += batch;
+			} while (batch == batchSize);
+		} catch (RuntimeException e) {
+			failures.incrementAndGet();
+			log.warn("Could not publish the catalog events of shard " + shard + " to " + sink
+					+ ", retrying in the next round", e);
+		}
+		return count;
+	}
+
+	private int publishBatch() {
+		List<CatalogEvent> events = dao.lockOldestEvents(batchSize);
+		if (events.isEmpty()) {
+			return 0;
+		}
+		try {
+			sink.publish(events);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		List<Long> ids = new ArrayList<Long>(events.size());
+		for (CatalogEvent event : events) {
+			ids.add(event.getOutboxId());
+		}
+		dao.deleteEvents(ids);
+		published.addAndGet(events.size());
+		lastPublishedAt = System.currentTimeMillis();
+		return events.size();
+	}
+
+	/**
+	 * Publishes what was committed before the shutdown, the rest waits in the
+	 * outbox for the next start.
+	 */
+	@PreDestroy
+	public void close() {
+		if (outbox.isEnabled()) {
+			relay();
+		}
+	}
+
+	@ManagedOperation(description = "Publish the outbox events now")
+	public int relayNow() {
+		return relay();
+	}
+
+	/**
+	 * The memory sink, null when events go elsewhere.
+	 */
+	public InMemoryCatalogEventSink getMemorySink() {
+		return sink instanceof InMemoryCatalogEventSink ? (InMemoryCatalogEventSink) sink : null;
+	}
+
+	@ManagedAttribute(description = "Where events are published")
+	public String getSink() {
+		return sink != null ? sink.toString() : "nowhere";
+	}
+
+	@ManagedAttribute(description = "Events published since startup")
+	public long getPublished() {
+		return published.get();
+	}
+
+	@ManagedAttribute(description = "Rounds in which a shard's events could not be published")
+	public long getFailures() {
+		return failures.get();
+	}
+
+	@ManagedAttribute(description = "When events were last published, epoch millis")
+	public long getLastPublishedAt() {
+		return lastPublishedAt;
+	}
+}
@@ -0,0 +1,70 @@
+package com.myfarmer.provman.paging;
+
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Base64;
+
+import lombok.Value;
+
+/**
+ * Position of the last row of a page: the value of the sort property and the
+ * id used as tie breaker. Encoded as an opaque URL-safe token.
+ */
+@Value
+public class Cursor {
+
+	private static final char SEPARATOR = '\u0001';
+
+	String sort;
+	String value;
+	int id;
+
+	public static String encode(String sort, Object value, Serializable id) {
+		String raw = sort + SEPARATOR + String.valueOf(value) + SEPARATOR + id;
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+	}
+
+	public static Cursor decode(String token, String expectedSort) {
+		String raw;
+		try {
+			raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+		} catch (IllegalArgumentException e) {
+			throw new InvalidPageRequestException("Malformed page cursor", e);
+		}
+		int first = raw.indexOf(SEPARATOR);
+		int last = raw.lastIndexOf(SEPARATOR);
+		if (first < 0 || first == last) {
+			throw new InvalidPageRequestException("Malformed page cursor");
+		}
+		String sort = raw.substring(0, first);
+		if (!sort.equals(expectedSort)) {
+			throw new InvalidPageRequestException("Page cursor was issued for sort '" + sort + "'");
+		}
+		try {
+			return new Cursor(sort, raw.substring(first + 1, last), Integer.parseInt(raw.substring(last + 1)));
+		} catch (NumberFormatException e) {
+			throw new InvalidPageRequestException("Malformed page cursor", e);
+		}
+	}
+
+	/**
+	 * Sort value converted back to the Java type of the sort property.
+	 */
+	public Object typedValue(Class<?> type) {
+		try {
+			if (type == String.class) {
+				return value;
+			} else if (type == Integer.class || type == int.class) {
+				return Integer.valueOf(value);
+			} else if (type == Long.class || type == long.class) {
+				return Long.valueOf(value);
+			} else if (type == LocalDate.class) {
+				return LocalDate.parse(value);
+			}
+		} catch (RuntimeException e) {
+			throw new InvalidPageRequestException("Malformed page cursor", e);
+		}
+		throw new IllegalStateException("Unsupported sort property type " + type.getName());
+	}
+}
@@ -0,0 +1,18 @@
+package com.myfarmer.provman.paging;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.BAD_REQUEST)
+public class InvalidPageRequestException extends IllegalArgumentException {
+
+	private static final long serialVersionUID = 1L;
+
+	public InvalidPageRequestException(String message) {
+		super(message);
+	}
+
+	public InvalidPageRequestException(String message, Throwable cause) {
+		super(message, cause);
+	}
+}
@@ -0,0 +1,27 @@
+package com.myfarmer.provman.paging;
+
+import java.util.List;
+
+import lombok.Value;
+
+/**
+ * One page of a keyset-paginated listing. nextCursor is passed back as the
+ * "after" parameter to fetch the following page.
+ */
+@Value
+public class Page<T> {
+
+	List<T> items;
+	int size;
+	String sort;
+	String after;
+	String nextCursor;
+
+	public boolean isHasNext() {
+		return nextCursor != null;
+	}
+
+	public boolean isFirst() {
+		return after == null;
+	}
+}
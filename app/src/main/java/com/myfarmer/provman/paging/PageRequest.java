@@ -0,0 +1,31 @@
+package com.myfarmer.provman.paging;
+
+import lombok.Value;
+
+/**
+ * Keyset page request: page size, sort property and the opaque cursor of the
+ * last row of the previous page (null for the first page).
+ */
+@Value
+public class PageRequest {
+
+	public static final int DEFAULT_SIZE = 50;
+	public static final int MAX_SIZE = 500;
+
+	int size;
+	String sort;
+	String after;
+
+	public static PageRequest of(Integer size, String sort, String after) {
+		int pageSize = size == null || size <= 0 ? DEFAULT_SIZE : Math.min(size, MAX_SIZE);
+		return new PageRequest(pageSize, emptyToNull(sort), emptyToNull(after));
+	}
+
+	public static PageRequest firstPage() {
+		return of(null, null, null);
+	}
+
+	private static String emptyToNull(String value) {
+		return value == null || value.isEmpty() ? null : value;
+	}
+}
@@ -0,0 +1,14 @@
+package com.myfarmer.provman.search;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.BAD_REQUEST)
+public class InvalidSearchException extends IllegalArgumentException {
+
+	private static final long serialVersionUID = 1L;
+
+	public InvalidSearchException(String message) {
+		super(message);
+	}
+}
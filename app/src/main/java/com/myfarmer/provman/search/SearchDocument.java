@@ -0,0 +1,132 @@
+package com.myfarmer.provman.search;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import com.myfarmer.provman.api.JsonWritable;
+import com.myfarmer.provman.api.ProductSummary;
+import com.myfarmer.provman.api.ProviderSummary;
+
+/**
+ * A product or provider as the search index holds it: its summary, returned
+ * as is, and the terms of its searchable fields with their weight. Names and
+ * codes weigh more than descriptions and nationalities.
+ */
+final class SearchDocument {
+
+	static final int NAME_WEIGHT = 3;
+	static final int TEXT_WEIGHT = 1;
+
+	/** Shorter query tokens only match whole words. */
+	static final int MIN_PREFIX = 2;
+
+	private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+	private static final Pattern SEPARATORS = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+	private final SearchKind kind;
+	private final int id;
+	private final String label;
+	private final JsonWritable item;
+	private final Map<String, Integer> terms = new HashMap<String, Integer>();
+
+	private SearchDocument(SearchKind kind, int id, String label, JsonWritable item) {
+		this.kind = kind;
+		this.id = id;
+		this.label = label == null ? "" : label;
+		this.item = item;
+	}
+
+	static SearchDocument of(ProductSummary product) {
+		SearchDocument document = new SearchDocument(SearchKind.PRODUCT, product.getId(), product.getName(), product);
+		document.add(product.getName(), NAME_WEIGHT);
+		document.add(product.getDescription(), TEXT_WEIGHT);
+		return document;
+	}
+
+	static SearchDocument of(ProviderSummary provider) {
+		SearchDocument document = new SearchDocument(SearchKind.PROVIDER, provider.getId(), provider.getName(), provider);
+		document.add(provider.getName(), NAME_WEIGHT);
+		document.add(provider.getCode(), NAME_WEIGHT);
+		document.add(provider.getNationality(), TEXT_WEIGHT);
+		return document;
+	}
+
+	static String key(SearchKind kind, int id) {
+		return kind.getName() + ':' + id;
+	}
+
+	/**
+	 * Lower-cased words with their accents dropped, split on anything but
+	 * letters and digits: "FR-0042" gives fr and 0042.
+	 */
+	static List<String> tokenize(String text) {
+		if (text == null) {
+			return Collections.emptyList();
+		}
+		String folded = MARKS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD)).replaceAll("");
+		List<String> tokens = new ArrayList<String>();
+		for (String token : SEPARATORS.split(folded.toLowerCase(Locale.ROOT))) {
+			if (!token.isEmpty() && !tokens.contains(token)) {
+				tokens.add(token);
+			}
+		}
+		return tokens;
+	}
+
+	private void add(String text, int weight) {
+		for (String term : tokenize(text)) {
+			Integer current = terms.get(term);
+			if (current == null || current < weight) {
+				terms.put(term, weight);
+			}
+		}
+	}
+
+	/**
+	 * Score of the best term starting with the query token, doubled when the
+	 * term is the token itself, 0 when there is none.
+	 */
+	int score(String token) {
+		if (token.length() < MIN_PREFIX) {
+			Integer weight = terms.get(token);
+			return weight == null ? 0 : weight * 2;
+		}
+		int best = 0;
+		for (Map.Entry<String, Integer> term : terms.entrySet()) {
+			if (term.getKey().startsWith(token)) {
+				best = Math.max(best, term.getValue() * (term.getKey().length() == token.length() ? 2 : 1));
+			}
+		}
+		return best;
+	}
+
+	String getKey() {
+		return key(kind, id);
+	}
+
+	Map<String, Integer> getTerms() {
+		return terms;
+	}
+
+	SearchKind getKind() {
+		return kind;
+	}
+
+	int getId() {
+		return id;
+	}
+
+	String getLabel() {
+		return label;
+	}
+
+	JsonWritable getItem() {
+		return item;
+	}
+}
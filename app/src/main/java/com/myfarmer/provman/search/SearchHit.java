@@ -0,0 +1,51 @@
+package com.myfarmer.provman.search;
+
+import java.io.IOException;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.myfarmer.provman.api.JsonWritable;
+
+/**
+ * A matching product or provider, written as
+ * {"type": "product", "score": n, "item": {summary}}.
+ */
+public class SearchHit implements JsonWritable {
+
+	private final SearchDocument document;
+	private final int score;
+
+	SearchHit(SearchDocument document, int score) {
+		this.document = document;
+		this.score = score;
+	}
+
+	public SearchKind getKind() {
+		return document.getKind();
+	}
+
+	public JsonWritable getItem() {
+		return document.getItem();
+	}
+
+	public int getScore() {
+		return score;
+	}
+
+	String getLabel() {
+		return document.getLabel();
+	}
+
+	int getId() {
+		return document.getId();
+	}
+
+	@Override
+	public void writeJson(JsonGenerator json) throws IOException {
+		json.writeStartObject();
+		json.writeStringField("type", document.getKind().getName());
+		json.writeNumberField("score", score);
+		json.writeFieldName("item");
+		document.getItem().writeJson(json);
+		json.writeEndObject();
+	}
+}
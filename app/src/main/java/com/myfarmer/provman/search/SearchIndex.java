@@ -0,0 +1,342 @@
+package com.myfarmer.provman.search;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PostConstruct;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.core.env.Environment;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.myfarmer.provman.api.ProductSummary;
+import com.myfarmer.provman.api.ProviderSummary;
+import com.myfarmer.provman.dao.ProductDao;
+import com.myfarmer.provman.dao.ProviderDao;
+import com.myfarmer.provman.model.Product;
+import com.myfarmer.provman.model.Provider;
+import com.myfarmer.provman.shard.ShardRouter;
+
+/**
+ * Prefix search over product names and descriptions and provider names,
+ * codes and nationalities, answered from memory. Built from the database once
+ * the context has started, kept current by the product, provider and import
+ * services as their writes commit, and rebuilt every search.refreshMs (an
+ * hour) to pick up what other instances wrote. search.enabled=false turns it
+ * off, searches then find nothing.
+ *
+ * A rebuild fills a new index while searches go on against the current one.
+ * Writes committed meanwhile go to both, so none is lost with the swap.
+ */
+@Component
+@ManagedResource(objectName = "provman:name=searchIndex")
+public class SearchIndex implements ApplicationListener<ContextRefreshedEvent> {
+
+	private static final Log log = LogFactory.getLog(SearchIndex.class);
+
+	@Autowired
+	Environment environment;
+
+	@Autowired
+	ProductDao productDao;
+
+	@Autowired
+	ProviderDao providerDao;
+
+	@Autowired
+	PlatformTransactionManager transactionManager;
+
+	@Autowired
+	ShardRouter shardRouter;
+
+	private final AtomicBoolean rebuilding = new AtomicBoolean();
+	private final AtomicLong searches = new AtomicLong();
+	private final AtomicLong searchNanos = new AtomicLong();
+
+	private boolean enabled;
+	private int maxResults;
+
+	// null until built
+	private volatile TermIndex index;
+
+	// changes committed during a rebuild, replayed on the new index; guarded by this
+	private List<Change> pending;
+
+	private volatile long lastRebuildMillis;
+
+	private interface Change {
+		void apply(TermIndex index);
+	}
+
+	@PostConstruct
+	public void init() {
+		enabled = environment.getProperty("search.enabled", Boolean.class, true);
+		maxResults = environment.getProperty("search.maxResults", Integer.class, 50);
+	}
+
+	@Override
+	public void onApplicationEvent(ContextRefreshedEvent event) {
+		if (enabled && index == null) {
+			try {
+				rebuild();
+			} catch (RuntimeException e) {
+				log.warn("Could not build the search index, searches find nothing until the next rebuild", e);
+			}
+		}
+	}
+
+	@Scheduled(fixedDelayString = "${search.refreshMs:3600000}", initialDelayString = "${search.refreshMs:3600000}")
+	public void scheduledRebuild() {
+		if (!enabled) {
+			return;
+		}
+		try {
+			rebuild();
+		} catch (SearchRebuildRunningException e) {
+			log.info("Skipping scheduled search index rebuild, the previous one is still going");
+		}
+	}
+
+	/**
+	 * Up to limit matches, at most search.maxResults (50), of every token of the
+	 * query as a word prefix, of the given kind or of both when null.
+	 */
+	public List<SearchHit> search(String query, SearchKind kind, int limit) {
+		TermIndex current = index;
+		if (current == null) {
+			return Collections.emptyList();
+		}
+		long start = System.nanoTime();
+		List<SearchHit> hits = current.search(query, kind, Math.min(limit, maxResults));
+		searchNanos.addAndGet(System.nanoTime() - start);
+		searches.incrementAndGet();
+		return hits;
+	}
+
+	public SearchRebuildResult rebuild() {
+		if (!enabled) {
+			throw new IllegalStateException("The search index is disabled, see search.enabled");
+		}
+		if (!rebuilding.compareAndSet(false, true)) {
+			throw new SearchRebuildRunningException();
+		}
+		try {
+			synchronized (this) {
+				pending = new ArrayList<Change>();
+			}
+			long start = System.currentTimeMillis();
+			final TermIndex built = new TermIndex();
+			final int[] counts = new int[2];
+			TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+			transaction.setReadOnly(true);
+			// products from every shard, providers from the home shard
+			for (int shard = 0; shard < shardRouter.getShardCount(); shard++) {
+				shardRouter.execute(shard, transaction, new TransactionCallbackWithoutResult() {
+					@Override
+					protected void doInTransactionWithoutResult(TransactionStatus status) {
+						for (ProductSummary product : productDao.findAllProductSummaries()) {
+							built.put(SearchDocument.of(product));
+							counts[0]++;
+						}
+					}
+				});
+			}
+			transaction.execute(new TransactionCallbackWithoutResult() {
+				@Override
+				protected void doInTransactionWithoutResult(TransactionStatus status) {
+					for (ProviderSummary provider : providerDao.findAllProviderSummaries()) {
+						built.put(SearchDocument.of(provider));
+						counts[1]++;
+					}
+				}
+			});
+			synchronized (this) {
+				for (Change change : pending) {
+					change.apply(built);
+				}
+				index = built;
+			}
+			lastRebuildMillis = System.currentTimeMillis() - start;
+			log.info("Indexed " + counts[0] + " products and " + counts[1] + " providers for search in " + lastRebuildMillis + " ms");
+			return new SearchRebuildResult(counts[0], counts[1], built.getTermCount(), lastRebuildMillis);
+		} finally {
+			synchronized (this) {
+				pending = null;
+			}
+			rebuilding.set(false);
+		}
+	}
+
+	@ManagedOperation(description = "Rebuild the search index from the database")
+	public String rebuildIndex() {
+		SearchRebuildResult result = rebuild();
+		return result.getProducts() + " products, " + result.getProviders() + " providers, "
+				+ result.getDurationMillis() + " ms";
+	}
+
+	public void putProductAfterCommit(Product product) {
+		putProductsAfterCommit(Collections.singletonList(product));
+	}
+
+	public void putProductsAfterCommit(Collection<Product> products) {
+		// taken now, the entities may change before the commit
+		final List<SearchDocument> documents = new ArrayList<SearchDocument>(products.size());
+		for (Product product : products) {
+			documents.add(SearchDocument.of(new ProductSummary(product.getId(), product.getFarmId(),
+					product.getName(), product.getDescription())));
+		}
+		afterCommit(new Change() {
+			@Override
+			public void apply(TermIndex index) {
+				for (SearchDocument document : documents) {
+					index.put(document);
+				}
+			}
+		});
+	}
+
+	public void removeProductAfterCommit(final int id) {
+		afterCommit(new Change() {
+			@Override
+			public void apply(TermIndex index) {
+				index.remove(SearchKind.PRODUCT, id);
+			}
+		});
+	}
+
+	public void removeProductAfterCommit(final String name, final int farmId) {
+		afterCommit(new Change() {
+			@Override
+			public void apply(TermIndex index) {
+				index.removeAll(new TermIndex.Filter() {
+					@Override
+					public boolean matches(SearchDocument document) {
+						if (document.getKind() != SearchKind.PRODUCT) {
+							return false;
+						}
+						ProductSummary product = (ProductSummary) document.getItem();
+						return product.getFarmId() == farmId && name.equals(product.getName());
+					}
+				});
+			}
+		});
+	}
+
+	public void removeFarmAfterCommit(final int farmId) {
+		afterCommit(new Change() {
+			@Override
+			public void apply(TermIndex index) {
+				index.removeAll(new TermIndex.Filter() {
+					@Override
+					public boolean matches(SearchDocument document) {
+						return document.getKind() == SearchKind.PRODUCT
+								&& ((ProductSummary) document.getItem()).getFarmId() == farmId;
+					}
+				});
+			}
+		});
+	}
+
+	public void putProviderAfterCommit(Provider provider) {
+		final SearchDocument document = SearchDocument.of(new ProviderSummary(provider.getId(), provider.getName(),
+				provider.getCode(), provider.getNationality(), provider.getEnteringDate()));
+		afterCommit(new Change() {
+			@Override
+			public void apply(TermIndex index) {
+				index.put(document);
+			}
+		});
+	}
+
+	public void removeProviderAfterCommit(final String code) {
+		afterCommit(new Change() {
+			@Override
+			public void apply(TermIndex index) {
+				index.removeAll(new TermIndex.Filter() {
+					@Override
+					public boolean matches(SearchDocument document) {
+						return document.getKind() == SearchKind.PROVIDER
+								&& code.equals(((ProviderSummary) document.getItem()).getCode());
+					}
+				});
+			}
+		});
+	}
+
+	private void afterCommit(final Change change) {
+		if (!enabled) {
+			return;
+		}
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+				@Override
+				public void afterCommit() {
+					apply(change);
+				}
+			});
+		} else {
+			apply(change);
+		}
+	}
+
+	private synchronized void apply(Change change) {
+		if (pending != null) {
+			pending.add(change);
+		}
+		TermIndex current = index;
+		if (current != null) {
+			change.apply(current);
+		}
+	}
+
+	@ManagedAttribute(description = "False until the index was built")
+	public boolean isBuilt() {
+		return index != null;
+	}
+
+	@ManagedAttribute(description = "Products and providers indexed")
+	public int getDocuments() {
+		TermIndex current = index;
+		return current == null ? 0 : current.getDocumentCount();
+	}
+
+	@ManagedAttribute(description = "Distinct terms indexed")
+	public int getTerms() {
+		TermIndex current = index;
+		return current == null ? 0 : current.getTermCount();
+	}
+
+	@ManagedAttribute(description = "Searches answered")
+	public long getSearches() {
+		return searches.get();
+	}
+
+	@ManagedAttribute(description = "Mean search time in microseconds")
+	public long getMeanSearchMicros() {
+		long count = searches.get();
+		return count == 0 ? 0 : searchNanos.get() / count / 1000;
+	}
+
+	@ManagedAttribute(description = "Duration of the last rebuild in milliseconds")
+	public long getLastRebuildMillis() {
+		return lastRebuildMillis;
+	}
+}
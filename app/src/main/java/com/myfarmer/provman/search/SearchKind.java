@@ -0,0 +1,26 @@
+package com.myfarmer.provman.search;
+
+import java.util.Locale;
+
+public enum SearchKind {
+
+	PRODUCT, PROVIDER;
+
+	/**
+	 * The kind named by the type parameter, null for both.
+	 */
+	public static SearchKind parse(String type) {
+		if (type == null || type.isEmpty()) {
+			return null;
+		}
+		try {
+			return valueOf(type.toUpperCase(Locale.ROOT));
+		} catch (IllegalArgumentException e) {
+			throw new InvalidSearchException("Unknown type " + type + ", expected product or provider");
+		}
+	}
+
+	public String getName() {
+		return name().toLowerCase(Locale.ROOT);
+	}
+}
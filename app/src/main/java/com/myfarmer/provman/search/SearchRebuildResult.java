@@ -0,0 +1,17 @@
+package com.myfarmer.provman.search;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Outcome of a full search index rebuild.
+ */
+@Getter
+@AllArgsConstructor
+public class SearchRebuildResult {
+
+	private final int products;
+	private final int providers;
+	private final int terms;
+	private final long durationMillis;
+}
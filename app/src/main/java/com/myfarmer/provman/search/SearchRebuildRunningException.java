@@ -0,0 +1,14 @@
+package com.myfarmer.provman.search;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.CONFLICT)
+public class SearchRebuildRunningException extends IllegalStateException {
+
+	private static final long serialVersionUID = 1L;
+
+	public SearchRebuildRunningException() {
+		super("A search index rebuild is already in progress");
+	}
+}
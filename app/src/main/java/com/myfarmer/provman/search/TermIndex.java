@@ -0,0 +1,184 @@
+package com.myfarmer.provman.search;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Inverted index from every term to the documents holding it, sorted so that
+ * the terms starting with a prefix are one sub map. Documents are replaced
+ * and removed one at a time, searches share a read lock.
+ */
+final class TermIndex {
+
+	interface Filter {
+		boolean matches(SearchDocument document);
+	}
+
+	// best score first, then by label and id so equal scores come back in a stable order
+	static final Comparator<SearchHit> RANKING = new Comparator<SearchHit>() {
+		@Override
+		public int compare(SearchHit a, SearchHit b) {
+			if (a.getScore() != b.getScore()) {
+				return a.getScore() > b.getScore() ? -1 : 1;
+			}
+			int byLabel = a.getLabel().compareToIgnoreCase(b.getLabel());
+			return byLabel != 0 ? byLabel : Integer.compare(a.getId(), b.getId());
+		}
+	};
+
+	// documents by term with the term's weight in them; documents compare by identity
+	private final NavigableMap<String, Map<SearchDocument, Integer>> postings = new TreeMap<String, Map<SearchDocument, Integer>>();
+	private final Map<String, SearchDocument> documents = new HashMap<String, SearchDocument>();
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+	void put(SearchDocument document) {
+		lock.writeLock().lock();
+		try {
+			unindex(documents.put(document.getKey(), document));
+			for (Map.Entry<String, Integer> term : document.getTerms().entrySet()) {
+				Map<SearchDocument, Integer> documents = postings.get(term.getKey());
+				if (documents == null) {
+					documents = new HashMap<SearchDocument, Integer>();
+					postings.put(term.getKey(), documents);
+				}
+				documents.put(document, term.getValue());
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	void remove(SearchKind kind, int id) {
+		lock.writeLock().lock();
+		try {
+			unindex(documents.remove(SearchDocument.key(kind, id)));
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Removes the documents the filter matches, a scan of every document.
+	 */
+	int removeAll(Filter filter) {
+		lock.writeLock().lock();
+		try {
+			List<SearchDocument> matched = new ArrayList<SearchDocument>();
+			for (SearchDocument document : documents.values()) {
+				if (filter.matches(document)) {
+					matched.add(document);
+				}
+			}
+			for (SearchDocument document : matched) {
+				unindex(documents.remove(document.getKey()));
+			}
+			return matched.size();
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	private void unindex(SearchDocument document) {
+		if (document == null) {
+			return;
+		}
+		for (String term : document.getTerms().keySet()) {
+			Map<SearchDocument, Integer> documents = postings.get(term);
+			if (documents != null && documents.remove(document) != null && documents.isEmpty()) {
+				postings.remove(term);
+			}
+		}
+	}
+
+	/**
+	 * The documents with a term starting with each of the query's tokens, best
+	 * first. The most selective token, the longest, is looked up in the term
+	 * map, the others are checked against the terms of its documents. A token
+	 * shorter than SearchDocument.MIN_PREFIX only matches whole words, a single
+	 * letter would otherwise match a good part of the catalog.
+	 */
+	List<SearchHit> search(String query, SearchKind kind, int limit) {
+		List<String> tokens = SearchDocument.tokenize(query);
+		if (tokens.isEmpty() || limit <= 0) {
+			return Collections.emptyList();
+		}
+		String longest = tokens.get(0);
+		for (String token : tokens) {
+			if (token.length() > longest.length()) {
+				longest = token;
+			}
+		}
+		PriorityQueue<SearchHit> best = new PriorityQueue<SearchHit>(limit + 1, Collections.reverseOrder(RANKING));
+		lock.readLock().lock();
+		try {
+			Map<SearchDocument, Integer> candidates = new HashMap<SearchDocument, Integer>();
+			boolean wholeWord = longest.length() < SearchDocument.MIN_PREFIX;
+			for (Map.Entry<String, Map<SearchDocument, Integer>> term : postings.subMap(longest, true,
+					wholeWord ? longest : longest + Character.MAX_VALUE, wholeWord).entrySet()) {
+				int factor = term.getKey().length() == longest.length() ? 2 : 1;
+				for (Map.Entry<SearchDocument, Integer> posting : term.getValue().entrySet()) {
+					if (kind != null && posting.getKey().getKind() != kind) {
+						continue;
+					}
+					Integer score = candidates.get(posting.getKey());
+					int termScore = posting.getValue() * factor;
+					if (score == null || score < termScore) {
+						candidates.put(posting.getKey(), termScore);
+					}
+				}
+			}
+			for (Map.Entry<SearchDocument, Integer> candidate : candidates.entrySet()) {
+				SearchDocument document = candidate.getKey();
+				int score = candidate.getValue();
+				for (String token : tokens) {
+					if (!token.equals(longest)) {
+						int tokenScore = document.score(token);
+						if (tokenScore == 0) {
+							score = 0;
+							break;
+						}
+						score += tokenScore;
+					}
+				}
+				if (score > 0 && (best.size() < limit || score >= best.peek().getScore())) {
+					best.add(new SearchHit(document, score));
+					if (best.size() > limit) {
+						best.poll();
+					}
+				}
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+		List<SearchHit> hits = new ArrayList<SearchHit>(best);
+		Collections.sort(hits, RANKING);
+		return hits;
+	}
+
+	int getDocumentCount() {
+		lock.readLock().lock();
+		try {
+			return documents.size();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	int getTermCount() {
+		lock.readLock().lock();
+		try {
+			return postings.size();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+}
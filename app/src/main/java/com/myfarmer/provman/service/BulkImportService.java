@@ -0,0 +1,11 @@
+package com.myfarmer.provman.service;
+
+import com.myfarmer.provman.bulk.ImportResult;
+import com.myfarmer.provman.bulk.ImportRowReader;
+
+public interface BulkImportService {
+
+  ImportResult importProducts(Integer farmId, ImportRowReader reader);
+
+  ImportResult importPricings(Integer farmId, ImportRowReader reader);
+}
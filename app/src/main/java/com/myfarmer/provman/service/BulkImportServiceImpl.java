@@ -0,0 +1,304 @@
+package com.myfarmer.provman.service;
+
+import com.myfarmer.provman.bulk.ImportResult;
+import com.myfarmer.provman.bulk.ImportRow;
+import com.myfarmer.provman.bulk.ImportRowReader;
+import com.myfarmer.provman.dao.BulkImportDao;
+import com.myfarmer.provman.dao.PriceHistoryDao;
+import com.myfarmer.provman.dao.StockBatchDao;
+import com.myfarmer.provman.model.Product;
+import com.myfarmer.provman.model.ProductPricing;
+import com.myfarmer.provman.outbox.CatalogEvent.Operation;
+import com.myfarmer.provman.outbox.CatalogOutbox;
+import com.myfarmer.provman.search.SearchIndex;
+import com.myfarmer.provman.shard.ShardKey;
+import com.myfarmer.provman.web.RenderedResponseCache;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.NestedExceptionUtils;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.validation.ConstraintViolation;
+import javax.validation.Validation;
+import javax.validation.Validator;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Streams rows from the reader and writes them in chunks of import.chunkSize rows,
+ * each chunk in its own transaction. Rows failing validation are reported and skipped.
+ * When a chunk fails in the database it is replayed row by row to find the bad rows.
+ *
+ * Not @Transactional on purpose: a single transaction would hold every row of the file.
+ * The farm's shard is bound for the whole import, each chunk goes to it.
+ */
+@Service("bulkImportService")
+public class BulkImportServiceImpl implements BulkImportService {
+
+  @Autowired
+  BulkImportDao dao;
+
+  @Autowired
+  StockBatchDao stockBatchDao;
+
+  @Autowired
+  PriceHistoryDao priceHistoryDao;
+
+  @Autowired
+  RenderedResponseCache responseCache;
+
+  @Autowired
+  SearchIndex searchIndex;
+
+  @Autowired
+  CatalogOutbox outbox;
+
+  @Autowired
+  PlatformTransactionManager transactionManager;
+
+  @Autowired
+  Environment environment;
+
+  private final Validator validator = Validation.buildDefaultValidatorFactory().getValidator();
+
+  private TransactionTemplate transactionTemplate;
+
+  private int chunkSize;
+
+  @PostConstruct
+  public void init() {
+    transactionTemplate = new TransactionTemplate(transactionManager);
+    chunkSize = environment.getProperty("import.chunkSize", Integer.class, 1000);
+  }
+
+  @Override
+  public ImportResult importProducts(@ShardKey(ShardKey.Kind.FARM) final Integer farmId, ImportRowReader reader) {
+    return new ChunkedImport<Product>() {
+      @Override
+      Product convert(ImportRow row) {
+        Product product = new Product();
+        product.setFarmId(farmId);
+        product.setName(row.get("name"));
+        product.setDescription(row.get("description"));
+        return product;
+      }
+
+      @Override
+      void write(List<Product> products) {
+        dao.insertProducts(products);
+        stockBatchDao.markFarmChanged(farmId);
+        outbox.recordProducts(Operation.CREATED, products);
+        searchIndex.putProductsAfterCommit(products);
+        responseCache.invalidateAfterCommit();
+      }
+
+      @Override
+      void reset(Product product) {
+        product.setId(0);
+      }
+    }.run(reader);
+  }
+
+  @Override
+  public ImportResult importPricings(@ShardKey(ShardKey.Kind.FARM) final Integer farmId, ImportRowReader reader) {
+    return new ChunkedImport<ProductPricing>() {
+      @Override
+      ProductPricing convert(ImportRow row) {
+        ProductPricing pricing = new ProductPricing();
+        Product product = new Product();
+        product.setId(parseInt(row, "product_id"));
+        pricing.setProduct(product);
+        pricing.setWeight(parseFloat(row, "weight"));
+        pricing.setPrice(parseFloat(row, "price"));
+        return pricing;
+      }
+
+      @Override
+      void beforeChunk(List<ProductPricing> pricings, List<Long> rowNumbers, ImportResult result) {
+        List<Integer> productIds = new ArrayList<Integer>(pricings.size());
+        for (ProductPricing pricing : pricings) {
+          productIds.add(pricing.getProduct().getId());
+        }
+        Set<Integer> known = findProductIdsInFarm(farmId, productIds);
+        int kept = 0;
+        for (int i = 0; i < pricings.size(); i++) {
+          int productId = pricings.get(i).getProduct().getId();
+          if (known.contains(productId)) {
+            pricings.set(kept, pricings.get(i));
+            rowNumbers.set(kept, rowNumbers.get(i));
+            kept++;
+          } else {
+            result.addError(rowNumbers.get(i), "product_id: no product " + productId + " in farm " + farmId);
+          }
+        }
+        pricings.subList(kept, pricings.size()).clear();
+        rowNumbers.subList(kept, rowNumbers.size()).clear();
+      }
+
+      @Override
+      void write(List<ProductPricing> pricings) {
+        dao.insertPricings(pricings);
+        stockBatchDao.markFarmChanged(farmId);
+        List<Integer> pricingIds = new ArrayList<Integer>(pricings.size());
+        for (ProductPricing pricing : pricings) {
+          pricingIds.add(pricing.getId());
+        }
+        priceHistoryDao.recordPricings(pricingIds, Instant.now());
+        outbox.recordPricings(Operation.CREATED, pricingIds);
+        responseCache.invalidateAfterCommit();
+      }
+
+      @Override
+      void reset(ProductPricing pricing) {
+        pricing.setId(0);
+      }
+    }.run(reader);
+  }
+
+  private Set<Integer> findProductIdsInFarm(final Integer farmId, final List<Integer> productIds) {
+    // read-write on purpose so it runs on the primary, products imported a moment ago
+    // may not have reached a read replica yet
+    return transactionTemplate.execute(new TransactionCallback<Set<Integer>>() {
+      @Override
+      public Set<Integer> doInTransaction(TransactionStatus status) {
+        return dao.findProductIdsInFarm(farmId, productIds);
+      }
+    });
+  }
+
+  private static int parseInt(ImportRow row, String column) {
+    String value = row.get(column);
+    if (value == null) {
+      throw new IllegalArgumentException(column + ": may not be empty");
+    }
+    try {
+      return Integer.parseInt(value);
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException(column + ": '" + value + "' is not a whole number");
+    }
+  }
+
+  private static float parseFloat(ImportRow row, String column) {
+    String value = row.get(column);
+    if (value == null) {
+      throw new IllegalArgumentException(column + ": may not be empty");
+    }
+    try {
+      return Float.parseFloat(value);
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException(column + ": '" + value + "' is not a number");
+    }
+  }
+
+  /**
+   * Import loop shared by products and pricings.
+   */
+  private abstract class ChunkedImport<T> {
+
+    private final ImportResult result = new ImportResult();
+    private final List<T> chunk = new ArrayList<T>();
+    private final List<Long> rowNumbers = new ArrayList<Long>();
+
+    abstract T convert(ImportRow row);
+
+    abstract void write(List<T> entities);
+
+    /**
+     * Undo the id assignment of a failed persist so the entity can be persisted again.
+     */
+    abstract void reset(T entity);
+
+    void beforeChunk(List<T> entities, List<Long> rowNumbers, ImportResult result) {
+    }
+
+    ImportResult run(ImportRowReader reader) {
+      long lastRow = 0;
+      try {
+        ImportRow row;
+        while ((row = reader.next()) != null) {
+          lastRow = row.getRowNumber();
+          T entity;
+          try {
+            entity = convert(row);
+          } catch (IllegalArgumentException e) {
+            result.addError(row.getRowNumber(), e.getMessage());
+            continue;
+          }
+          String violations = validate(entity);
+          if (violations != null) {
+            result.addError(row.getRowNumber(), violations);
+            continue;
+          }
+          chunk.add(entity);
+          rowNumbers.add(row.getRowNumber());
+          if (chunk.size() >= chunkSize) {
+            flushChunk();
+          }
+        }
+      } catch (IOException e) {
+        result.addError(lastRow + 1, "Unreadable input: " + e.getMessage());
+      }
+      flushChunk();
+      return result;
+    }
+
+    private void flushChunk() {
+      if (!chunk.isEmpty()) {
+        beforeChunk(chunk, rowNumbers, result);
+      }
+      if (!chunk.isEmpty()) {
+        try {
+          writeInTransaction(chunk);
+          result.addImported(chunk.size());
+        } catch (RuntimeException chunkFailure) {
+          for (int i = 0; i < chunk.size(); i++) {
+            T entity = chunk.get(i);
+            reset(entity);
+            try {
+              writeInTransaction(Collections.singletonList(entity));
+              result.addImported(1);
+            } catch (RuntimeException rowFailure) {
+              result.addError(rowNumbers.get(i), NestedExceptionUtils.getMostSpecificCause(rowFailure).getMessage());
+            }
+          }
+        }
+      }
+      chunk.clear();
+      rowNumbers.clear();
+    }
+
+    private void writeInTransaction(final List<T> entities) {
+      transactionTemplate.execute(new TransactionCallbackWithoutResult() {
+        @Override
+        protected void doInTransactionWithoutResult(TransactionStatus status) {
+          write(entities);
+        }
+      });
+    }
+
+    private String validate(T entity) {
+      Set<ConstraintViolation<T>> violations = validator.validate(entity);
+      if (violations.isEmpty()) {
+        return null;
+      }
+      StringBuilder message = new StringBuilder();
+      for (ConstraintViolation<T> violation : violations) {
+        if (message.length() > 0) {
+          message.append("; ");
+        }
+        message.append(violation.getPropertyPath()).append(": ").append(violation.getMessage());
+      }
+      return message.toString();
+    }
+  }
+}
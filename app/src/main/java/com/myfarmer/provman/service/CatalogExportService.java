@@ -0,0 +1,10 @@
+package com.myfarmer.provman.service;
+
+import com.myfarmer.provman.export.CatalogWriter;
+
+import java.io.IOException;
+
+public interface CatalogExportService {
+
+  long exportCatalog(Integer farmId, CatalogWriter writer) throws IOException;
+}
@@ -0,0 +1,91 @@
+package com.myfarmer.provman.service;
+
+import com.myfarmer.provman.dao.CatalogExportDao;
+import com.myfarmer.provman.export.CatalogRow;
+import com.myfarmer.provman.export.CatalogRowHandler;
+import com.myfarmer.provman.export.CatalogWriter;
+import com.myfarmer.provman.shard.ShardContext;
+import com.myfarmer.provman.shard.ShardKey;
+import com.myfarmer.provman.shard.ShardRouter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.DefaultTransactionDefinition;
+
+import java.io.IOException;
+
+/**
+ * Rows are read through a stateless session on the connection of a read-only
+ * transaction, routed to a read replica when replicas are configured: one
+ * connection per export. With shards, each shard is read in a transaction of
+ * its own, and a whole catalog export is in farm order within each shard only.
+ */
+@Service("catalogExportService")
+public class CatalogExportServiceImpl implements CatalogExportService {
+
+  /**
+   * Output is pushed to the client after the first row and then every FLUSH_EVERY rows.
+   */
+  private static final int FLUSH_EVERY = 1000;
+
+  @Autowired
+  CatalogExportDao dao;
+
+  @Autowired
+  ShardRouter shardRouter;
+
+  @Autowired
+  PlatformTransactionManager transactionManager;
+
+  @Override
+  public long exportCatalog(@ShardKey(ShardKey.Kind.FARM) Integer farmId, final CatalogWriter writer)
+      throws IOException {
+    writer.start();
+    CatalogRowHandler handler = new CatalogRowHandler() {
+      private long count;
+
+      @Override
+      public void handle(CatalogRow row) throws IOException {
+        writer.handle(row);
+        if (++count % FLUSH_EVERY == 1) {
+          writer.flush();
+        }
+      }
+    };
+    long rows = 0;
+    if (farmId != null) {
+      rows = streamCatalog(farmId, handler);
+    } else {
+      // the whole catalog, one shard after the other
+      for (int shard = 0; shard < shardRouter.getShardCount(); shard++) {
+        Integer previous = ShardContext.bind(shard);
+        try {
+          rows += streamCatalog(null, handler);
+        } finally {
+          ShardContext.restore(previous);
+        }
+      }
+    }
+    writer.finish();
+    return rows;
+  }
+
+  /**
+   * Not through a TransactionTemplate, whose callback cannot throw the writer's IOException.
+   */
+  private long streamCatalog(Integer farmId, CatalogRowHandler handler) throws IOException {
+    DefaultTransactionDefinition definition = new DefaultTransactionDefinition();
+    definition.setReadOnly(true);
+    TransactionStatus status = transactionManager.getTransaction(definition);
+    long rows;
+    try {
+      rows = dao.streamCatalog(farmId, handler);
+    } catch (IOException | RuntimeException e) {
+      transactionManager.rollback(status);
+      throw e;
+    }
+    transactionManager.commit(status);
+    return rows;
+  }
+}
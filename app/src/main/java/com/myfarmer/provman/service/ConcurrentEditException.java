@@ -0,0 +1,34 @@
+package com.myfarmer.provman.service;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * An edit made from a version of the row that is no longer current: another
+ * request changed or deleted it since the form was rendered, or between the
+ * load and the flush of this one.
+ */
+@ResponseStatus(HttpStatus.CONFLICT)
+public class ConcurrentEditException extends ObjectOptimisticLockingFailureException {
+
+	private static final long serialVersionUID = 1L;
+
+	public ConcurrentEditException(Class<?> type, Object id, Throwable cause) {
+		super(type, id, type.getSimpleName() + " " + id + " was changed by someone else, reload it and edit again", cause);
+	}
+
+	/**
+	 * Fails unless the row is still there, current being null otherwise, and has
+	 * the version the edit was made from. Every edit path sends the version its
+	 * form showed, an edit without one is refused with MissingVersionException.
+	 */
+	static void check(Class<?> type, Object id, Integer submitted, Integer current) {
+		if (submitted == null) {
+			throw new MissingVersionException(type, id);
+		}
+		if (current == null || !submitted.equals(current)) {
+			throw new ConcurrentEditException(type, id, null);
+		}
+	}
+}
@@ -0,0 +1,19 @@
+package com.myfarmer.provman.service;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * An edit sent without the version of the row it was made from, which could
+ * not be told apart from one made from a version long gone.
+ */
+@ResponseStatus(HttpStatus.BAD_REQUEST)
+public class MissingVersionException extends IllegalArgumentException {
+
+	private static final long serialVersionUID = 1L;
+
+	public MissingVersionException(Class<?> type, Object id) {
+		super("No version was sent with the edit of " + type.getSimpleName() + " " + id
+				+ ", reload it and edit again");
+	}
+}
@@ -0,0 +1,13 @@
+package com.myfarmer.provman.service;
+
+import com.myfarmer.provman.api.DateRange;
+import com.myfarmer.provman.api.PricePoint;
+
+import java.util.List;
+
+public interface PriceHistoryService {
+
+  List<PricePoint> findProductHistory(Integer productId, DateRange range);
+
+  List<PricePoint> findFarmHistory(Integer farmId, DateRange range);
+}
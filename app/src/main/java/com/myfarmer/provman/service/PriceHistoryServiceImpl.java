@@ -0,0 +1,33 @@
+package com.myfarmer.provman.service;
+
+import com.myfarmer.provman.api.DateRange;
+import com.myfarmer.provman.api.PricePoint;
+import com.myfarmer.provman.dao.PriceHistoryDao;
+import com.myfarmer.provman.shard.ShardKey;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+/**
+ * Reads of the price history. It is written by the pricing writes themselves,
+ * through PriceHistoryDao.recordPricings, in their own transactions.
+ */
+@Service("priceHistoryService")
+@Transactional(readOnly = true)
+public class PriceHistoryServiceImpl implements PriceHistoryService {
+
+  @Autowired
+  PriceHistoryDao dao;
+
+  @Override
+  public List<PricePoint> findProductHistory(@ShardKey(ShardKey.Kind.PRODUCT) Integer productId, DateRange range) {
+    return dao.findProductDays(productId, range);
+  }
+
+  @Override
+  public List<PricePoint> findFarmHistory(@ShardKey(ShardKey.Kind.FARM) Integer farmId, DateRange range) {
+    return dao.findFarmDays(farmId, range);
+  }
+}
@@ -0,0 +1,572 @@
+package com.myfarmer.provman.service;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.ToDoubleFunction;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.myfarmer.provman.api.PricingSummary;
+import com.myfarmer.provman.dao.PriceHistoryDao;
+import com.myfarmer.provman.dao.ProductPricingDao;
+import com.myfarmer.provman.dao.StockBatchDao;
+import com.myfarmer.provman.model.ProductPricing;
+import com.myfarmer.provman.outbox.CatalogEvent.Operation;
+import com.myfarmer.provman.outbox.CatalogOutbox;
+import com.myfarmer.provman.paging.Page;
+import com.myfarmer.provman.shard.ShardRouter;
+import com.myfarmer.provman.web.DataVersion;
+import com.myfarmer.provman.web.RenderedResponseCache;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+
+/**
+ * Write-behind for ProductPricingService.updateProductPricing, off unless
+ * writebehind.enabled=true. Updates are kept per pricing id, a later one
+ * replacing the earlier, and the latest price and weight of every buffered
+ * pricing are written every writebehind.flushMs (default 200), or as soon as
+ * writebehind.maxPending (default 1000) pricings are buffered. A flush writes
+ * each shard's pricings in one transaction, as JDBC batches of
+ * hibernate.jdbc.batch_size updates, with their price history, stock batch
+ * marks and catalog events.
+ *
+ * The service reads through the buffer, so a pricing shows its buffered
+ * values to this instance at once, and to others after the flush. Every
+ * buffered update moves the pricing's version by one, as a write would: the
+ * buffered values are read with that version, the next update must be made
+ * from it, and the flush, which writes the last values once, leaves the row
+ * at it. A pricing changed or deleted by another write path before the flush
+ * keeps that change, its buffered updates are dropped and counted as
+ * conflicts.
+ *
+ * On shutdown the buffer stops taking updates, they are written through, and
+ * flushes what it holds. Updates buffered since the last flush are lost if
+ * the process dies.
+ *
+ * Published as provman.writebehind.updates (updates taken),
+ * provman.writebehind.writes (pricings written), provman.writebehind.conflicts,
+ * provman.writebehind.pending and provman.writebehind.coalescing (updates per
+ * write), and over JMX as provman:name=pricingWriteBuffer.
+ */
+@Component
+@ManagedResource(objectName = "provman:name=pricingWriteBuffer")
+public class PricingWriteBuffer {
+
+	public static final String UPDATES = "provman.writebehind.updates";
+	public static final String WRITES = "provman.writebehind.writes";
+	public static final String CONFLICTS = "provman.writebehind.conflicts";
+	public static final String PENDING = "provman.writebehind.pending";
+	public static final String COALESCING = "provman.writebehind.coalescing";
+
+	private static final Log log = LogFactory.getLog(PricingWriteBuffer.class);
+
+	private static final int SHUTDOWN_FLUSH_ATTEMPTS = 3;
+
+	@Autowired
+	Environment environment;
+
+	@Autowired
+	MeterRegistry registry;
+
+	@Autowired
+	ProductPricingDao dao;
+
+	@Autowired
+	StockBatchDao stockBatchDao;
+
+	@Autowired
+	PriceHistoryDao priceHistoryDao;
+
+	@Autowired
+	CatalogOutbox outbox;
+
+	@Autowired
+	RenderedResponseCache responseCache;
+
+	@Autowired
+	ShardRouter shardRouter;
+
+	@Autowired
+	PlatformTransactionManager transactionManager;
+
+	private final ConcurrentMap<Integer, Pending> pending = new ConcurrentHashMap<Integer, Pending>();
+	private final AtomicLong stamps = new AtomicLong();
+	private final AtomicLong failedFlushes = new AtomicLong();
+	private final AtomicBoolean flushRequested = new AtomicBoolean();
+	// updates are taken under the read lock, closing takes the write lock
+	private final ReadWriteLock closing = new ReentrantReadWriteLock();
+
+	private boolean enabled;
+	private volatile boolean closed;
+	private int maxPending;
+	private TransactionTemplate transactionTemplate;
+	private ScheduledExecutorService executor;
+	private Counter updates;
+	private Counter writes;
+	private Counter conflicts;
+
+	@PostConstruct
+	public void init() {
+		enabled = environment.getProperty("writebehind.enabled", Boolean.class, false);
+		if (!enabled) {
+			return;
+		}
+		long flushMillis = environment.getProperty("writebehind.flushMs", Long.class, 200L);
+		maxPending = environment.getProperty("writebehind.maxPending", Integer.class, 1000);
+		transactionTemplate = new TransactionTemplate(transactionManager);
+
+		updates = registry.counter(UPDATES);
+		writes = registry.counter(WRITES);
+		conflicts = registry.counter(CONFLICTS);
+		registry.gauge(PENDING, Tags.empty(), this, new ToDoubleFunction<PricingWriteBuffer>() {
+			@Override
+			public double applyAsDouble(PricingWriteBuffer buffer) {
+				return buffer.getPending();
+			}
+		});
+		registry.gauge(COALESCING, Tags.empty(), this, new ToDoubleFunction<PricingWriteBuffer>() {
+			@Override
+			public double applyAsDouble(PricingWriteBuffer buffer) {
+				return buffer.getCoalescingRatio();
+			}
+		});
+
+		executor = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("pricing-write-behind-"));
+		executor.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				flushQuietly();
+			}
+		}, flushMillis, flushMillis, TimeUnit.MILLISECONDS);
+	}
+
+	@PreDestroy
+	public void close() {
+		if (!enabled) {
+			return;
+		}
+		// waits for the updates being taken, those coming later see closed and are written through
+		closing.writeLock().lock();
+		try {
+			closed = true;
+			executor.shutdown();
+			try {
+				executor.awaitTermination(10, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			for (int attempt = 0; attempt < SHUTDOWN_FLUSH_ATTEMPTS && !pending.isEmpty(); attempt++) {
+				flushQuietly();
+			}
+			if (!pending.isEmpty()) {
+				log.error("Shutting down with the buffered updates of pricings " + pending.keySet() + " unwritten");
+			}
+		} finally {
+			closing.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Whether updates are to be buffered, false once the buffer is closing.
+	 */
+	public boolean isEnabled() {
+		return enabled && !closed;
+	}
+
+	/**
+	 * Replaces the buffered update of the pricing, if it has one, checking the
+	 * submitted version against the one its latest update left. False when the
+	 * pricing has nothing buffered, or the buffer is closed.
+	 */
+	public boolean coalesce(ProductPricing update) {
+		closing.readLock().lock();
+		try {
+			return !closed && coalescePending(update);
+		} finally {
+			closing.readLock().unlock();
+		}
+	}
+
+	private boolean coalescePending(ProductPricing update) {
+		while (true) {
+			Pending current = pending.get(update.getId());
+			if (current == null) {
+				return false;
+			}
+			ConcurrentEditException.check(ProductPricing.class, update.getId(), update.getVersion(),
+					current.version());
+			if (pending.replace(update.getId(), current, current.with(update, stamps.incrementAndGet()))) {
+				updates.increment();
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Buffers the first update of a pricing, already checked against its
+	 * entity. False when the buffer is closed, the update is then for the
+	 * caller to write through. Refused as a concurrent edit in the rare case
+	 * where the pricing was buffered and flushed meanwhile, the entity being
+	 * stale.
+	 */
+	public boolean add(ProductPricing update, ProductPricing entity) {
+		closing.readLock().lock();
+		try {
+			if (closed) {
+				return false;
+			}
+			Pending added = new Pending(update.getId(), entity.getProduct().getId(), update.getPrice(),
+					update.getWeight(), entity.getVersion(), 1, System.currentTimeMillis(), stamps.incrementAndGet());
+			if (pending.putIfAbsent(update.getId(), added) != null) {
+				if (!coalescePending(update)) {
+					throw new ConcurrentEditException(ProductPricing.class, update.getId(), null);
+				}
+				return true;
+			}
+			updates.increment();
+			if (pending.size() >= maxPending && flushRequested.compareAndSet(false, true)) {
+				executor.execute(new Runnable() {
+					@Override
+					public void run() {
+						flushRequested.set(false);
+						flushQuietly();
+					}
+				});
+			}
+			return true;
+		} finally {
+			closing.readLock().unlock();
+		}
+	}
+
+	/**
+	 * The pricing with its buffered values, as a detached copy so a caller's
+	 * session never writes them, or the pricing itself when nothing is buffered.
+	 */
+	public ProductPricing overlay(ProductPricing pricing) {
+		Pending buffered = pricing == null || pending.isEmpty() ? null : pending.get(pricing.getId());
+		if (buffered == null) {
+			return pricing;
+		}
+		ProductPricing copy = new ProductPricing();
+		copy.setId(pricing.getId());
+		copy.setProduct(pricing.getProduct());
+		copy.setUpdatedAt(pricing.getUpdatedAt());
+		copy.setVersion(buffered.version());
+		copy.setPrice(buffered.price);
+		copy.setWeight(buffered.weight);
+		return copy;
+	}
+
+	public List<ProductPricing> overlay(List<ProductPricing> pricings) {
+		if (pending.isEmpty()) {
+			return pricings;
+		}
+		List<ProductPricing> overlaid = new ArrayList<ProductPricing>(pricings.size());
+		for (ProductPricing pricing : pricings) {
+			overlaid.add(overlay(pricing));
+		}
+		return overlaid;
+	}
+
+	public Page<ProductPricing> overlay(Page<ProductPricing> page) {
+		if (pending.isEmpty()) {
+			return page;
+		}
+		return new Page<ProductPricing>(overlay(page.getItems()), page.getSize(), page.getSort(), page.getAfter(),
+				page.getNextCursor());
+	}
+
+	/**
+	 * Sets the buffered values on the summaries, which are built per query.
+	 */
+	public Page<PricingSummary> overlaySummaries(Page<PricingSummary> page) {
+		if (!pending.isEmpty()) {
+			for (PricingSummary summary : page.getItems()) {
+				Pending buffered = pending.get(summary.getId());
+				if (buffered != null) {
+					summary.setPrice(buffered.price);
+					summary.setWeight(buffered.weight);
+				}
+			}
+		}
+		return page;
+	}
+
+	/**
+	 * The pricing's version, moved by every update buffered for it.
+	 */
+	public DataVersion pricingVersion(int id, DataVersion version) {
+		Pending buffered = pending.isEmpty() ? null : pending.get(id);
+		return buffered == null ? version : version.and(buffered.dataVersion());
+	}
+
+	/**
+	 * The version of the product's pricings, moved by every update buffered for
+	 * one of them. Scans the buffer, which holds at most a flush worth of pricings.
+	 */
+	public DataVersion pricingsVersion(int productId, DataVersion version) {
+		Pending latest = null;
+		for (Pending buffered : pending.values()) {
+			if (buffered.productId == productId && (latest == null || buffered.stamp > latest.stamp)) {
+				latest = buffered;
+			}
+		}
+		return latest == null ? version : version.and(latest.dataVersion());
+	}
+
+	/**
+	 * Writes the buffered pricings shard by shard, returns the number written.
+	 * The pricings of a shard whose transaction fails stay buffered for the next flush.
+	 */
+	@ManagedOperation(description = "Write the buffered pricing updates now")
+	public synchronized int flush() {
+		if (pending.isEmpty()) {
+			return 0;
+		}
+		Map<Integer, List<Pending>> byShard = new LinkedHashMap<Integer, List<Pending>>();
+		for (Pending buffered : pending.values()) {
+			int shard = shardRouter.shardOfPricing(buffered.id);
+			List<Pending> group = byShard.get(shard);
+			if (group == null) {
+				group = new ArrayList<Pending>();
+				byShard.put(shard, group);
+			}
+			group.add(buffered);
+		}
+		int written = 0;
+		RuntimeException failure = null;
+		for (Map.Entry<Integer, List<Pending>> entry : byShard.entrySet()) {
+			final List<Pending> group = entry.getValue();
+			Map<Integer, Integer> versions;
+			try {
+				versions = shardRouter.execute(entry.getKey(), transactionTemplate,
+						new TransactionCallback<Map<Integer, Integer>>() {
+							@Override
+							public Map<Integer, Integer> doInTransaction(TransactionStatus status) {
+								return write(group);
+							}
+						});
+			} catch (RuntimeException e) {
+				failedFlushes.incrementAndGet();
+				failure = e;
+				continue;
+			}
+			for (Pending flushed : group) {
+				Integer version = versions.get(flushed.id);
+				if (version == null) {
+					drop(flushed);
+				} else {
+					settle(flushed, version);
+				}
+			}
+			written += versions.size();
+			writes.increment(versions.size());
+		}
+		if (failure != null) {
+			throw failure;
+		}
+		return written;
+	}
+
+	private void flushQuietly() {
+		try {
+			flush();
+		} catch (RuntimeException e) {
+			log.warn("Could not write buffered pricing updates, " + pending.size() + " pricings wait for the next flush",
+					e);
+		}
+	}
+
+	/**
+	 * Writes the pricings still at the version they were buffered from, moves
+	 * them to the version their buffered updates left, and returns it by id.
+	 */
+	private Map<Integer, Integer> write(List<Pending> group) {
+		Map<Integer, Pending> byId = new HashMap<Integer, Pending>();
+		for (Pending buffered : group) {
+			byId.put(buffered.id, buffered);
+		}
+		List<ProductPricing> current = new ArrayList<ProductPricing>();
+		List<Integer> changed = new ArrayList<Integer>();
+		for (ProductPricing entity : dao.findByIds(byId.keySet())) {
+			Pending buffered = byId.get(entity.getId());
+			if (entity.getVersion() == null || entity.getVersion() != buffered.baseVersion) {
+				continue;
+			}
+			current.add(entity);
+			if (entity.getPrice() != buffered.price || entity.getWeight() != buffered.weight) {
+				entity.setPrice(buffered.price);
+				entity.setWeight(buffered.weight);
+				changed.add(entity.getId());
+			}
+		}
+		dao.flush();
+		// the write moved each version by one at most, the rest goes by how much is left
+		Map<Integer, List<Integer>> behind = new HashMap<Integer, List<Integer>>();
+		Map<Integer, Integer> versions = new HashMap<Integer, Integer>();
+		for (ProductPricing entity : current) {
+			int version = byId.get(entity.getId()).version();
+			versions.put(entity.getId(), version);
+			if (entity.getVersion() != version) {
+				List<Integer> ids = behind.get(version - entity.getVersion());
+				if (ids == null) {
+					ids = new ArrayList<Integer>();
+					behind.put(version - entity.getVersion(), ids);
+				}
+				ids.add(entity.getId());
+			}
+		}
+		for (Map.Entry<Integer, List<Integer>> entry : behind.entrySet()) {
+			dao.advanceVersions(entry.getValue(), entry.getKey());
+		}
+		if (!changed.isEmpty()) {
+			stockBatchDao.markPricingsChanged(changed);
+			priceHistoryDao.recordPricings(changed, Instant.now());
+			outbox.recordPricings(Operation.UPDATED, changed);
+			responseCache.invalidateAfterCommit();
+		}
+		return versions;
+	}
+
+	/**
+	 * Forgets the written entry, or moves what was buffered on top of it
+	 * meanwhile onto the version the write left.
+	 */
+	private void settle(Pending flushed, int version) {
+		while (true) {
+			Pending current = pending.get(flushed.id);
+			if (current == null || current.baseVersion != flushed.baseVersion) {
+				return;
+			}
+			if (current == flushed ? pending.remove(flushed.id, flushed)
+					: pending.replace(flushed.id, current, current.rebase(version, flushed.updates))) {
+				return;
+			}
+		}
+	}
+
+	private void drop(Pending flushed) {
+		while (true) {
+			Pending current = pending.get(flushed.id);
+			if (current == null || current.baseVersion != flushed.baseVersion) {
+				return;
+			}
+			if (pending.remove(flushed.id, current)) {
+				conflicts.increment();
+				log.warn("Pricing " + flushed.id + " was changed or deleted since version " + flushed.baseVersion
+						+ ", dropped its " + current.updates + " buffered updates");
+				return;
+			}
+		}
+	}
+
+	@ManagedAttribute(description = "Pricings with buffered updates")
+	public int getPending() {
+		return pending.size();
+	}
+
+	@ManagedAttribute(description = "Updates taken into the buffer")
+	public long getUpdates() {
+		return updates == null ? 0 : (long) updates.count();
+	}
+
+	@ManagedAttribute(description = "Pricings written by flushes")
+	public long getWrites() {
+		return writes == null ? 0 : (long) writes.count();
+	}
+
+	@ManagedAttribute(description = "Buffered pricings dropped as changed or deleted meanwhile")
+	public long getConflicts() {
+		return conflicts == null ? 0 : (long) conflicts.count();
+	}
+
+	@ManagedAttribute(description = "Updates taken per pricing written")
+	public double getCoalescingRatio() {
+		long written = getWrites();
+		return written == 0 ? 0 : (double) getUpdates() / written;
+	}
+
+	@ManagedAttribute(description = "Shard flushes that failed and were retried")
+	public long getFailedFlushes() {
+		return failedFlushes.get();
+	}
+
+	/**
+	 * A pricing's latest buffered values. Immutable, replaced as a whole so
+	 * the flush can tell whether an entry changed after it was written.
+	 */
+	private static final class Pending {
+
+		final int id;
+		final int productId;
+		final float price;
+		final float weight;
+		final int baseVersion;
+		final int updates;
+		final long bufferedAt;
+		final long stamp;
+
+		Pending(int id, int productId, float price, float weight, int baseVersion, int updates, long bufferedAt,
+				long stamp) {
+			this.id = id;
+			this.productId = productId;
+			this.price = price;
+			this.weight = weight;
+			this.baseVersion = baseVersion;
+			this.updates = updates;
+			this.bufferedAt = bufferedAt;
+			this.stamp = stamp;
+		}
+
+		Pending with(ProductPricing update, long stamp) {
+			return new Pending(id, productId, update.getPrice(), update.getWeight(), baseVersion, updates + 1,
+					System.currentTimeMillis(), stamp);
+		}
+
+		Pending rebase(int version, int written) {
+			return new Pending(id, productId, price, weight, version, updates - written, bufferedAt, stamp);
+		}
+
+		/**
+		 * The version the buffered updates leave, one per update.
+		 */
+		int version() {
+			return baseVersion + updates;
+		}
+
+		DataVersion dataVersion() {
+			return new DataVersion("w" + Long.toHexString(stamp), bufferedAt);
+		}
+	}
+}
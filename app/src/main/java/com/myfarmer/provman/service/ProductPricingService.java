@@ -1,7 +1,12 @@
 package com.myfarmer.provman.service;
 
+import com.myfarmer.provman.api.PricingSummary;
 import com.myfarmer.provman.model.ProductPricing;
+import com.myfarmer.provman.paging.Page;
+import com.myfarmer.provman.paging.PageRequest;
+import com.myfarmer.provman.web.DataVersion;
 
+import java.util.Collection;
 import java.util.List;
 
 public interface ProductPricingService {
@@ -12,7 +17,17 @@ public interface ProductPricingService {
 
   void deleteProductPricingById(Integer id);
 
+  int deleteProductPricingsByIds(Collection<Integer> ids);
+
   List<ProductPricing> findProductPricingsByProductId(Integer productId);
 
+  Page<ProductPricing> findProductPricingsByProductId(Integer productId, PageRequest pageRequest);
+
   ProductPricing findById(Integer id);
+
+  Page<PricingSummary> findPricingSummariesByProductId(Integer productId, PageRequest pageRequest);
+
+  DataVersion findPricingsVersion(Integer productId);
+
+  DataVersion findPricingVersion(Integer id);
 }
@@ -1,11 +1,25 @@
 package com.myfarmer.provman.service;
 
+import com.myfarmer.provman.api.PricingSummary;
+import com.myfarmer.provman.dao.PriceHistoryDao;
 import com.myfarmer.provman.dao.ProductPricingDao;
+import com.myfarmer.provman.dao.StockBatchDao;
 import com.myfarmer.provman.model.ProductPricing;
+import com.myfarmer.provman.outbox.CatalogEvent.Operation;
+import com.myfarmer.provman.outbox.CatalogOutbox;
+import com.myfarmer.provman.paging.Page;
+import com.myfarmer.provman.paging.PageRequest;
+import com.myfarmer.provman.shard.ShardKey;
+import com.myfarmer.provman.web.DataVersion;
+import com.myfarmer.provman.web.RenderedResponseCache;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 
 @Service("productPricing")
@@ -15,30 +29,119 @@ public class ProductPricingServiceImpl implements ProductPricingService {
   @Autowired
   ProductPricingDao dao;
 
+  @Autowired
+  StockBatchDao stockBatchDao;
+
+  @Autowired
+  PriceHistoryDao priceHistoryDao;
+
+  @Autowired
+  RenderedResponseCache responseCache;
+
+  @Autowired
+  CatalogOutbox outbox;
+
+  @Autowired
+  PricingWriteBuffer writeBuffer;
+
   @Override
-  public void saveProductPricing(ProductPricing productPricing) {
+  public void saveProductPricing(@ShardKey(ShardKey.Kind.PRICING) ProductPricing productPricing) {
     dao.saveProductPricing(productPricing);
+    // inserted now so the statements below find the new row
+    dao.flush();
+    stockBatchDao.markPricingChanged(productPricing.getId());
+    priceHistoryDao.recordPricings(Collections.singleton(productPricing.getId()), Instant.now());
+    outbox.recordPricings(Operation.CREATED, Collections.singleton(productPricing.getId()));
+    responseCache.invalidateAfterCommit();
   }
 
   @Override
-  public void updateProductPricing(ProductPricing productPricing) {
-    dao.saveOrUpdate(productPricing);
+  public void updateProductPricing(@ShardKey(ShardKey.Kind.PRICING) ProductPricing productPricing) {
+    // written by the buffer's next flush, the pricing is only read when it has nothing buffered yet
+    if (writeBuffer.isEnabled() && writeBuffer.coalesce(productPricing)) {
+      responseCache.invalidateAfterCommit();
+      return;
+    }
+    ProductPricing entity = dao.findById(productPricing.getId());
+    ConcurrentEditException.check(ProductPricing.class, productPricing.getId(), productPricing.getVersion(),
+        entity == null ? null : entity.getVersion());
+    // the buffer refuses it once closed, it is then written through like with no buffer
+    if (writeBuffer.isEnabled() && writeBuffer.add(productPricing, entity)) {
+      responseCache.invalidateAfterCommit();
+      return;
+    }
+    boolean priceChanged = entity.getPrice() != productPricing.getPrice()
+        || entity.getWeight() != productPricing.getWeight();
+    entity.setPrice(productPricing.getPrice());
+    entity.setWeight(productPricing.getWeight());
+    try {
+      dao.flush();
+    } catch (OptimisticLockingFailureException e) {
+      throw new ConcurrentEditException(ProductPricing.class, productPricing.getId(), e);
+    }
+    stockBatchDao.markPricingChanged(productPricing.getId());
+    if (priceChanged) {
+      priceHistoryDao.recordPricings(Collections.singleton(productPricing.getId()), Instant.now());
+      outbox.recordPricings(Operation.UPDATED, Collections.singleton(productPricing.getId()));
+    }
+    responseCache.invalidateAfterCommit();
   }
 
   @Override
-  public void deleteProductPricingById(Integer id) {
+  public void deleteProductPricingById(@ShardKey(ShardKey.Kind.PRICING) Integer id) {
+    stockBatchDao.markPricingChanged(id);
+    outbox.recordPricings(Operation.DELETED, Collections.singleton(id));
     dao.deleteById(id);
+    responseCache.invalidateAfterCommit();
   }
 
   @Override
-  public List<ProductPricing> findProductPricingsByProductId(Integer productId) {
-    return null;
+  public int deleteProductPricingsByIds(@ShardKey(ShardKey.Kind.PRICING) Collection<Integer> ids) {
+    if (ids.isEmpty()) {
+      return 0;
+    }
+    stockBatchDao.markPricingsChanged(ids);
+    outbox.recordPricings(Operation.DELETED, ids);
+    int deleted = dao.deleteByIds(ids);
+    responseCache.invalidateAfterCommit();
+    return deleted;
   }
 
   @Override
-  public ProductPricing findById(Integer id) {
-    return dao.findById(id);
+  @Transactional(readOnly = true)
+  public List<ProductPricing> findProductPricingsByProductId(@ShardKey(ShardKey.Kind.PRODUCT) Integer productId) {
+    return writeBuffer.overlay(dao.findByProductId(productId));
   }
 
+  @Override
+  @Transactional(readOnly = true)
+  public Page<ProductPricing> findProductPricingsByProductId(@ShardKey(ShardKey.Kind.PRODUCT) Integer productId,
+      PageRequest pageRequest) {
+    return writeBuffer.overlay(dao.findByProductId(productId, pageRequest));
+  }
 
+  @Override
+  @Transactional(readOnly = true)
+  public ProductPricing findById(@ShardKey(ShardKey.Kind.PRICING) Integer id) {
+    return writeBuffer.overlay(dao.findById(id));
+  }
+
+  @Override
+  @Transactional(readOnly = true)
+  public Page<PricingSummary> findPricingSummariesByProductId(@ShardKey(ShardKey.Kind.PRODUCT) Integer productId,
+      PageRequest pageRequest) {
+    return writeBuffer.overlaySummaries(dao.findSummariesByProductId(productId, pageRequest));
+  }
+
+  @Override
+  @Transactional(readOnly = true)
+  public DataVersion findPricingsVersion(@ShardKey(ShardKey.Kind.PRODUCT) Integer productId) {
+    return writeBuffer.pricingsVersion(productId, dao.findPricingsVersion(productId));
+  }
+
+  @Override
+  @Transactional(readOnly = true)
+  public DataVersion findPricingVersion(@ShardKey(ShardKey.Kind.PRICING) Integer id) {
+    return writeBuffer.pricingVersion(id, dao.findPricingVersion(id));
+  }
 }
@@ -1,6 +1,11 @@
 package com.myfarmer.provman.service;
 
+import com.myfarmer.provman.api.ProductSummary;
 import com.myfarmer.provman.model.Product;
+import com.myfarmer.provman.model.ProductPricing;
+import com.myfarmer.provman.paging.Page;
+import com.myfarmer.provman.paging.PageRequest;
+import com.myfarmer.provman.web.DataVersion;
 
 import java.util.List;
 
@@ -8,13 +13,36 @@ public interface ProductService {
 
   Product findById(Integer id);
 
+  Product findByIdWithPricings(Integer id);
+
   void saveProduct(Product product);
 
   void updateProduct(Product product);
 
+  /**
+   * Updates the product and one of its pricings in one transaction, failing with
+   * ConcurrentEditException if either changed since the versions submitted.
+   */
+  void updateProductAndPricing(Product product, ProductPricing pricing);
+
   List<Product> getProductsByFarmId(Integer farmId);
 
+  Page<Product> getProductsByFarmId(Integer farmId, PageRequest pageRequest);
+
   void deleteProductByNameAndFarmId(String name, Integer farmId);
 
   void deleteProductById(Integer id);
+
+  /**
+   * Deletes all products of the farm with their pricings, returns the number of products.
+   */
+  int retireFarm(Integer farmId);
+
+  ProductSummary findSummaryById(Integer id);
+
+  Page<ProductSummary> getProductSummariesByFarmId(Integer farmId, PageRequest pageRequest);
+
+  DataVersion findFarmProductsVersion(Integer farmId);
+
+  DataVersion findProductVersion(Integer id);
 }
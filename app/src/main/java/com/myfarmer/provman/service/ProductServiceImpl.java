@@ -1,11 +1,28 @@
 package com.myfarmer.provman.service;
 
+import com.myfarmer.provman.api.ProductSummary;
+import com.myfarmer.provman.api.ResourceNotFoundException;
+import com.myfarmer.provman.dao.PriceHistoryDao;
 import com.myfarmer.provman.dao.ProductDao;
+import com.myfarmer.provman.dao.ProductPricingDao;
+import com.myfarmer.provman.dao.StockBatchDao;
 import com.myfarmer.provman.model.Product;
+import com.myfarmer.provman.model.ProductPricing;
+import com.myfarmer.provman.outbox.CatalogEvent.Operation;
+import com.myfarmer.provman.outbox.CatalogOutbox;
+import com.myfarmer.provman.paging.Page;
+import com.myfarmer.provman.paging.PageRequest;
+import com.myfarmer.provman.search.SearchIndex;
+import com.myfarmer.provman.shard.ShardKey;
+import com.myfarmer.provman.web.DataVersion;
+import com.myfarmer.provman.web.RenderedResponseCache;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.time.Instant;
+import java.util.Collections;
 import java.util.List;
 
 @Service("productService")
@@ -15,32 +32,168 @@ public class ProductServiceImpl implements ProductService {
   @Autowired
   ProductDao dao;
 
+  @Autowired
+  ProductPricingDao pricingDao;
+
+  @Autowired
+  StockBatchDao stockBatchDao;
+
+  @Autowired
+  PriceHistoryDao priceHistoryDao;
+
+  @Autowired
+  RenderedResponseCache responseCache;
+
+  @Autowired
+  SearchIndex searchIndex;
+
+  @Autowired
+  CatalogOutbox outbox;
+
   @Override
-  public Product findById(Integer id) {
+  @Transactional(readOnly = true)
+  public Product findById(@ShardKey(ShardKey.Kind.PRODUCT) Integer id) {
     return dao.findById(id);
   }
 
   @Override
-  public void saveProduct(Product product) {
+  @Transactional(readOnly = true)
+  public Product findByIdWithPricings(@ShardKey(ShardKey.Kind.PRODUCT) Integer id) {
+    return dao.findByIdWithPricings(id);
+  }
+
+  @Override
+  public void saveProduct(@ShardKey(ShardKey.Kind.PRODUCT) Product product) {
     dao.saveProduct(product);
+    stockBatchDao.markFarmChanged(product.getFarmId());
+    outbox.recordProduct(Operation.CREATED, product);
+    searchIndex.putProductAfterCommit(product);
+    responseCache.invalidateAfterCommit();
   }
 
   @Override
-  public void updateProduct(Product product) {
-    dao.saveOrUpdate(product);
+  public void updateProduct(@ShardKey(ShardKey.Kind.PRODUCT) Product product) {
+    // the farm the product is moving out of, if any, then the one it is in now
+    stockBatchDao.markProductChanged(product.getId());
+    Product entity = dao.findById(product.getId());
+    ConcurrentEditException.check(Product.class, product.getId(), product.getVersion(),
+        entity == null ? null : entity.getVersion());
+    int previousFarmId = entity.getFarmId();
+    copyEdits(product, entity);
+    flush(product);
+    stockBatchDao.markFarmChanged(product.getFarmId());
+    outbox.recordProductUpdate(entity, previousFarmId);
+    searchIndex.putProductAfterCommit(entity);
+    responseCache.invalidateAfterCommit();
   }
 
   @Override
-  public List<Product> getProductsByFarmId(Integer farmId) {
+  public void updateProductAndPricing(@ShardKey(ShardKey.Kind.PRODUCT) Product product, ProductPricing pricing) {
+    stockBatchDao.markProductChanged(product.getId());
+    // the product is joined to the pricing, one select loads both
+    ProductPricing pricingEntity = pricingDao.findById(pricing.getId());
+    if (pricingEntity != null && pricingEntity.getProduct().getId() != product.getId()) {
+      throw new ResourceNotFoundException("No pricing " + pricing.getId() + " for product " + product.getId());
+    }
+    ConcurrentEditException.check(ProductPricing.class, pricing.getId(), pricing.getVersion(),
+        pricingEntity == null ? null : pricingEntity.getVersion());
+    Product entity = pricingEntity.getProduct();
+    ConcurrentEditException.check(Product.class, product.getId(), product.getVersion(), entity.getVersion());
+
+    // only the columns that changed are updated, with a version check each
+    int previousFarmId = entity.getFarmId();
+    copyEdits(product, entity);
+    boolean priceChanged = pricingEntity.getPrice() != pricing.getPrice()
+        || pricingEntity.getWeight() != pricing.getWeight();
+    pricingEntity.setPrice(pricing.getPrice());
+    pricingEntity.setWeight(pricing.getWeight());
+    flush(product);
+    stockBatchDao.markFarmChanged(product.getFarmId());
+    outbox.recordProductUpdate(entity, previousFarmId);
+    if (priceChanged) {
+      priceHistoryDao.recordPricings(Collections.singleton(pricing.getId()), Instant.now());
+      outbox.recordPricings(Operation.UPDATED, Collections.singleton(pricing.getId()));
+    }
+    searchIndex.putProductAfterCommit(entity);
+    responseCache.invalidateAfterCommit();
+  }
+
+  private static void copyEdits(Product edited, Product entity) {
+    entity.setName(edited.getName());
+    entity.setDescription(edited.getDescription());
+    entity.setFarmId(edited.getFarmId());
+  }
+
+  private void flush(Product product) {
+    try {
+      dao.flush();
+    } catch (OptimisticLockingFailureException e) {
+      throw new ConcurrentEditException(Product.class, product.getId(), e);
+    }
+  }
+
+  @Override
+  @Transactional(readOnly = true)
+  public List<Product> getProductsByFarmId(@ShardKey(ShardKey.Kind.FARM) Integer farmId) {
     return dao.findProductsByFarmId(farmId);
   }
 
   @Override
-  public void deleteProductByNameAndFarmId(String name, Integer farmId) {
+  @Transactional(readOnly = true)
+  public Page<Product> getProductsByFarmId(@ShardKey(ShardKey.Kind.FARM) Integer farmId, PageRequest pageRequest) {
+    return dao.findProductsByFarmId(farmId, pageRequest);
+  }
+
+  @Override
+  public void deleteProductByNameAndFarmId(String name, @ShardKey(ShardKey.Kind.FARM) Integer farmId) {
+    outbox.recordFarmProductDeletes(farmId, name);
     dao.deleteProductByNameAndFarmId(name, farmId);
+    stockBatchDao.markFarmChanged(farmId);
+    searchIndex.removeProductAfterCommit(name, farmId);
+    responseCache.invalidateAfterCommit();
   }
 
-  public void deleteProductById(Integer id) {
+  public void deleteProductById(@ShardKey(ShardKey.Kind.PRODUCT) Integer id) {
+    stockBatchDao.markProductChanged(id);
+    outbox.recordProductDeletes(Collections.singleton(id));
     dao.deleteProductById(id);
+    searchIndex.removeProductAfterCommit(id);
+    responseCache.invalidateAfterCommit();
+  }
+
+  @Override
+  public int retireFarm(@ShardKey(ShardKey.Kind.FARM) Integer farmId) {
+    // the next stock batch run empties the farm's stock_batch rows
+    stockBatchDao.markFarmChanged(farmId);
+    outbox.recordFarmProductDeletes(farmId, null);
+    int deleted = dao.deleteProductsByFarmId(farmId);
+    searchIndex.removeFarmAfterCommit(farmId);
+    responseCache.invalidateAfterCommit();
+    return deleted;
+  }
+
+  @Override
+  @Transactional(readOnly = true)
+  public ProductSummary findSummaryById(@ShardKey(ShardKey.Kind.PRODUCT) Integer id) {
+    return dao.findProductSummaryById(id);
+  }
+
+  @Override
+  @Transactional(readOnly = true)
+  public Page<ProductSummary> getProductSummariesByFarmId(@ShardKey(ShardKey.Kind.FARM) Integer farmId,
+      PageRequest pageRequest) {
+    return dao.findProductSummariesByFarmId(farmId, pageRequest);
+  }
+
+  @Override
+  @Transactional(readOnly = true)
+  public DataVersion findFarmProductsVersion(@ShardKey(ShardKey.Kind.FARM) Integer farmId) {
+    return dao.findFarmProductsVersion(farmId);
+  }
+
+  @Override
+  @Transactional(readOnly = true)
+  public DataVersion findProductVersion(@ShardKey(ShardKey.Kind.PRODUCT) Integer id) {
+    return dao.findProductVersion(id);
   }
 }
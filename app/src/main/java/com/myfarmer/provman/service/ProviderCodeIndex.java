@@ -0,0 +1,200 @@
+package com.myfarmer.provman.service;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PostConstruct;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.core.env.Environment;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.myfarmer.provman.dao.ProviderDao;
+
+/**
+ * Every provider code mapped to its provider id, so the code uniqueness check
+ * of the provider forms can mostly answer without a query. Loaded once the
+ * context has started, kept current by ProviderServiceImpl as its writes
+ * commit, and reloaded every providercodes.refreshMs (10 minutes) to pick up
+ * what other instances wrote. providercodes.index.enabled=false turns it off.
+ *
+ * Only its negative answers are trusted: a code it does not know, or knows as
+ * the provider's own, is taken as free. A code taken meanwhile by another
+ * instance is then refused by the provider_code unique index, see
+ * ProviderCodeTakenException. A code it knows as someone else's is always
+ * looked up, the provider may have been deleted or renamed since.
+ *
+ * Codes are compared lower-cased, as MySQL's default collation does.
+ */
+@Component
+@ManagedResource(objectName = "provman:name=providerCodeIndex")
+public class ProviderCodeIndex implements ApplicationListener<ContextRefreshedEvent> {
+
+	private static final Log log = LogFactory.getLog(ProviderCodeIndex.class);
+
+	@Autowired
+	Environment environment;
+
+	@Autowired
+	ProviderDao providerDao;
+
+	@Autowired
+	PlatformTransactionManager transactionManager;
+
+	private final AtomicLong answered = new AtomicLong();
+	private final AtomicLong lookedUp = new AtomicLong();
+
+	private boolean enabled;
+
+	// null until loaded, every check goes to the database meanwhile
+	private volatile ConcurrentMap<String, Integer> codes;
+
+	@PostConstruct
+	public void init() {
+		enabled = environment.getProperty("providercodes.index.enabled", Boolean.class, true);
+	}
+
+	@Override
+	public void onApplicationEvent(ContextRefreshedEvent event) {
+		if (enabled && codes == null) {
+			try {
+				reload();
+			} catch (RuntimeException e) {
+				log.warn("Could not load the provider code index, codes are checked in the database until the next reload", e);
+			}
+		}
+	}
+
+	@Scheduled(fixedDelayString = "${providercodes.refreshMs:600000}", initialDelayString = "${providercodes.refreshMs:600000}")
+	public void scheduledReload() {
+		if (enabled) {
+			reload();
+		}
+	}
+
+	@ManagedOperation(description = "Reload every provider code from the database")
+	public void reload() {
+		TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+		transaction.setReadOnly(true);
+		List<Object[]> rows = transaction.execute(new TransactionCallback<List<Object[]>>() {
+			@Override
+			public List<Object[]> doInTransaction(TransactionStatus status) {
+				return providerDao.findProviderCodes();
+			}
+		});
+		ConcurrentMap<String, Integer> loaded = new ConcurrentHashMap<String, Integer>(Math.max(16, rows.size() * 2));
+		for (Object[] row : rows) {
+			loaded.put(key((String) row[0]), (Integer) row[1]);
+		}
+		codes = loaded;
+	}
+
+	/**
+	 * True when the code is known to be free, or to belong to the provider with
+	 * the given id. False means the database has to be asked.
+	 */
+	public boolean isAvailable(String code, Integer id) {
+		Map<String, Integer> current = codes;
+		if (current == null || code == null) {
+			return false;
+		}
+		Integer owner = current.get(key(code));
+		if (owner == null || owner.equals(id)) {
+			answered.incrementAndGet();
+			return true;
+		}
+		lookedUp.incrementAndGet();
+		return false;
+	}
+
+	/**
+	 * Records the provider's code once the current transaction commits, dropping
+	 * the code it had before, if any.
+	 */
+	public void putAfterCommit(final int id, final String previousCode, final String code) {
+		afterCommit(new Runnable() {
+			@Override
+			public void run() {
+				ConcurrentMap<String, Integer> current = codes;
+				if (current == null) {
+					return;
+				}
+				if (previousCode != null) {
+					current.remove(key(previousCode), id);
+				}
+				current.put(key(code), id);
+			}
+		});
+	}
+
+	public void removeAfterCommit(final String code) {
+		afterCommit(new Runnable() {
+			@Override
+			public void run() {
+				Map<String, Integer> current = codes;
+				if (current != null) {
+					current.remove(key(code));
+				}
+			}
+		});
+	}
+
+	private void afterCommit(final Runnable update) {
+		if (!enabled) {
+			return;
+		}
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+				@Override
+				public void afterCommit() {
+					update.run();
+				}
+			});
+		} else {
+			update.run();
+		}
+	}
+
+	private static String key(String code) {
+		return code.toLowerCase(Locale.ROOT);
+	}
+
+	@ManagedAttribute(description = "False until the codes were loaded")
+	public boolean isLoaded() {
+		return codes != null;
+	}
+
+	@ManagedAttribute(description = "Provider codes held")
+	public int getSize() {
+		Map<String, Integer> current = codes;
+		return current == null ? 0 : current.size();
+	}
+
+	@ManagedAttribute(description = "Uniqueness checks answered without a query")
+	public long getAnswered() {
+		return answered.get();
+	}
+
+	@ManagedAttribute(description = "Uniqueness checks that had to query, the code being known")
+	public long getLookedUp() {
+		return lookedUp.get();
+	}
+}
@@ -0,0 +1,45 @@
+package com.myfarmer.provman.service;
+
+import java.util.Locale;
+
+import org.hibernate.exception.ConstraintViolationException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * A provider write refused by the provider_code unique index, the code having
+ * been taken after it was checked.
+ */
+@ResponseStatus(HttpStatus.CONFLICT)
+public class ProviderCodeTakenException extends DataIntegrityViolationException {
+
+	private static final long serialVersionUID = 1L;
+
+	static final String UNIQUE_INDEX = "provider_code";
+
+	private final String code;
+
+	public ProviderCodeTakenException(String code, Throwable cause) {
+		super("Provider code " + code + " is already taken", cause);
+		this.code = code;
+	}
+
+	public String getCode() {
+		return code;
+	}
+
+	/**
+	 * Whether the violation is the one of the provider_code index, as named by the
+	 * dialect: provider_code on MySQL 5.7, provider.provider_code on 8, PUBLIC.PROVIDER_CODE on H2.
+	 */
+	static boolean isCodeViolation(DataIntegrityViolationException e) {
+		for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+			if (cause instanceof ConstraintViolationException) {
+				String name = ((ConstraintViolationException) cause).getConstraintName();
+				return name != null && name.toLowerCase(Locale.ROOT).contains(UNIQUE_INDEX);
+			}
+		}
+		return false;
+	}
+}
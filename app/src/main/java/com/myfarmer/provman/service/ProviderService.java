@@ -2,7 +2,11 @@ package com.myfarmer.provman.service;
 
 import java.util.List;
 
+import com.myfarmer.provman.api.ProviderSummary;
 import com.myfarmer.provman.model.Provider;
+import com.myfarmer.provman.paging.Page;
+import com.myfarmer.provman.paging.PageRequest;
+import com.myfarmer.provman.web.DataVersion;
 
 public interface ProviderService {
 
@@ -15,9 +19,19 @@ public interface ProviderService {
 	void deleteProviderByCode(String code);
 
 	List<Provider> findAllProviders(); 
+
+	Page<Provider> findProviders(PageRequest pageRequest);
 	
 	Provider findProviderByCode(String code);
 
 	boolean isProviderCodeUnique(Integer id, String code);
+
+	Page<ProviderSummary> findProviderSummaries(PageRequest pageRequest);
+
+	ProviderSummary findProviderSummaryByCode(String code);
+
+	DataVersion findProvidersVersion();
+
+	DataVersion findProviderVersion(String code);
 	
 }
@@ -2,12 +2,29 @@ package com.myfarmer.provman.service;
 
 import java.util.List;
 
+import javax.annotation.PostConstruct;
+
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import com.myfarmer.provman.dao.ProviderDao;
+import com.myfarmer.provman.api.ProviderSummary;
 import com.myfarmer.provman.model.Provider;
+import com.myfarmer.provman.outbox.CatalogEvent.Operation;
+import com.myfarmer.provman.outbox.CatalogOutbox;
+import com.myfarmer.provman.paging.Page;
+import com.myfarmer.provman.paging.PageRequest;
+import com.myfarmer.provman.search.SearchIndex;
+import com.myfarmer.provman.web.DataVersion;
+import com.myfarmer.provman.web.RenderedResponseCache;
 
 @Service("providerService")
 @Transactional
@@ -15,41 +32,138 @@ public class ProviderServiceImpl implements ProviderService {
 
 	@Autowired
 	private ProviderDao dao;
+
+	@Autowired
+	private RenderedResponseCache responseCache;
+
+	@Autowired
+	private ProviderCodeIndex codeIndex;
+
+	@Autowired
+	private SearchIndex searchIndex;
+
+	@Autowired
+	private CatalogOutbox outbox;
+
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+
+	private TransactionTemplate transactionTemplate;
+
+	@PostConstruct
+	public void init() {
+		transactionTemplate = new TransactionTemplate(transactionManager);
+	}
 	
+	@Transactional(readOnly = true)
 	public Provider findById(int id) {
 		return dao.findById(id);
 	}
 
 	public void saveProvider(Provider provider) {
-		dao.saveProvider(provider);
+		try {
+			dao.saveProvider(provider);
+		} catch (DataIntegrityViolationException e) {
+			throw codeTaken(provider.getCode(), e);
+		}
+		dao.markProvidersChanged();
+		outbox.recordProvider(Operation.CREATED, provider);
+		codeIndex.putAfterCommit(provider.getId(), null, provider.getCode());
+		searchIndex.putProviderAfterCommit(provider);
+		responseCache.invalidateAfterCommit();
 	}
 	
 	public void updateProvider(Provider provider) {
 		Provider entity = dao.findById(provider.getId());
-		if(entity!=null){
-			entity.setName(provider.getName());
-			entity.setEnteringDate(provider.getEnteringDate());
-			entity.setNationality(provider.getNationality());
-			entity.setCode(provider.getCode());
-			//dao.saveOrUpdate(provider);
+		ConcurrentEditException.check(Provider.class, provider.getId(), provider.getVersion(),
+				entity == null ? null : entity.getVersion());
+		String previousCode = entity.getCode();
+		entity.setName(provider.getName());
+		entity.setEnteringDate(provider.getEnteringDate());
+		entity.setNationality(provider.getNationality());
+		entity.setCode(provider.getCode());
+		try {
+			// flushed here rather than at commit, so a code taken meanwhile can be told apart
+			dao.flush();
+		} catch (DataIntegrityViolationException e) {
+			throw codeTaken(provider.getCode(), e);
+		} catch (OptimisticLockingFailureException e) {
+			throw new ConcurrentEditException(Provider.class, provider.getId(), e);
 		}
+		dao.markProvidersChanged();
+		outbox.recordProvider(Operation.UPDATED, entity);
+		codeIndex.putAfterCommit(entity.getId(), previousCode, entity.getCode());
+		searchIndex.putProviderAfterCommit(entity);
+		responseCache.invalidateAfterCommit();
 	}
 
 	public void deleteProviderByCode(String ssn) {
+		// read before the delete, recorded after it: the provider's row is locked by then
+		ProviderSummary deleted = outbox.isEnabled() ? dao.findProviderSummaryByCode(ssn) : null;
 		dao.deleteProviderByCode(ssn);
+		dao.markProvidersChanged();
+		outbox.recordProvider(Operation.DELETED, deleted);
+		codeIndex.removeAfterCommit(ssn);
+		searchIndex.removeProviderAfterCommit(ssn);
+		responseCache.invalidateAfterCommit();
 	}
 	
+	@Transactional(readOnly = true)
 	public List<Provider> findAllProviders() {
 		return dao.findAllProviders();
 	}
 
+	@Transactional(readOnly = true)
+	public Page<Provider> findProviders(PageRequest pageRequest) {
+		return dao.findProviders(pageRequest);
+	}
+
+	@Transactional(readOnly = true)
 	public Provider findProviderByCode(String ssn) {
 		return dao.findProviderByCode(ssn);
 	}
 
+	// no transaction while the index answers, most checks take no connection at all
+	@Transactional(propagation = Propagation.NOT_SUPPORTED)
 	public boolean isProviderCodeUnique(Integer id, String ssn) {
-		Provider provider = findProviderByCode(ssn);
+		if (codeIndex.isAvailable(ssn, id)) {
+			return true;
+		}
+		Provider provider = findProviderByCodeOnPrimary(ssn);
 		return ( provider == null || ((id != null) && (provider.getId() == id)));
 	}
-	
+
+	private Provider findProviderByCodeOnPrimary(final String ssn) {
+		// read-write on purpose so it runs on the primary, a lagging replica could miss a code just taken
+		return transactionTemplate.execute(new TransactionCallback<Provider>() {
+			@Override
+			public Provider doInTransaction(TransactionStatus status) {
+				return dao.findProviderByCode(ssn);
+			}
+		});
+	}
+
+	@Transactional(readOnly = true)
+	public Page<ProviderSummary> findProviderSummaries(PageRequest pageRequest) {
+		return dao.findProviderSummaries(pageRequest);
+	}
+
+	@Transactional(readOnly = true)
+	public ProviderSummary findProviderSummaryByCode(String code) {
+		return dao.findProviderSummaryByCode(code);
+	}
+
+	@Transactional(readOnly = true)
+	public DataVersion findProvidersVersion() {
+		return dao.findProvidersVersion();
+	}
+
+	@Transactional(readOnly = true)
+	public DataVersion findProviderVersion(String code) {
+		return dao.findProviderVersion(code);
+	}
+
+	private static DataIntegrityViolationException codeTaken(String code, DataIntegrityViolationException e) {
+		return ProviderCodeTakenException.isCodeViolation(e) ? new ProviderCodeTakenException(code, e) : e;
+	}
 }
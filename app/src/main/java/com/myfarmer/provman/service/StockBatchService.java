@@ -0,0 +1,18 @@
+package com.myfarmer.provman.service;
+
+import com.myfarmer.provman.stock.StockBatchResult;
+
+public interface StockBatchService {
+
+  /**
+   * Rebuilds the stock_batch snapshot, either for every farm or only for the
+   * farms whose products or pricings changed since their last rebuild.
+   */
+  StockBatchResult run(boolean incremental);
+
+  /**
+   * Run by the stockbatch.cron schedule, with stockbatch.incremental. On the
+   * interface so the scheduler can call it through the service's proxy.
+   */
+  void scheduledRun();
+}
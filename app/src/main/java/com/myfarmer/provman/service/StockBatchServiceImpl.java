@@ -0,0 +1,160 @@
+package com.myfarmer.provman.service;
+
+import com.myfarmer.provman.dao.StockBatchDao;
+import com.myfarmer.provman.metrics.StockBatchMetrics;
+import com.myfarmer.provman.shard.ShardRouter;
+import com.myfarmer.provman.stock.StockBatchResult;
+import com.myfarmer.provman.stock.StockBatchRunningException;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Replaces the batch_product_stock procedure. Each farm is rebuilt with one
+ * set-based delete and insert ... select in its own transaction, so readers of
+ * stock_batch see either the old or the new rows of a farm, never a mix, and
+ * farms are spread over stockbatch.threads workers (default 4, keep it below
+ * jdbc.pool.maxSize). With shards, the farms to rebuild are gathered from
+ * every shard and each is rebuilt on the shard it lives on.
+ *
+ * Transactions are per farm, hence no class-level @Transactional.
+ */
+@Service("stockBatchService")
+public class StockBatchServiceImpl implements StockBatchService {
+
+  private static final Log log = LogFactory.getLog(StockBatchServiceImpl.class);
+
+  @Autowired
+  StockBatchDao dao;
+
+  @Autowired
+  StockBatchMetrics metrics;
+
+  @Autowired
+  ShardRouter shardRouter;
+
+  @Autowired
+  PlatformTransactionManager transactionManager;
+
+  @Autowired
+  Environment environment;
+
+  private final AtomicBoolean running = new AtomicBoolean();
+
+  private TransactionTemplate transactionTemplate;
+
+  private int threads;
+
+  @PostConstruct
+  public void init() {
+    transactionTemplate = new TransactionTemplate(transactionManager);
+    threads = environment.getProperty("stockbatch.threads", Integer.class, 4);
+  }
+
+  /**
+   * Disabled unless stockbatch.cron is set, e.g. "0 0 3 * * *".
+   */
+  @Override
+  @Scheduled(cron = "${stockbatch.cron:-}")
+  public void scheduledRun() {
+    try {
+      run(environment.getProperty("stockbatch.incremental", Boolean.class, true));
+    } catch (StockBatchRunningException e) {
+      log.info("Skipping scheduled stock batch, the previous run is still going");
+    }
+  }
+
+  @Override
+  public StockBatchResult run(boolean incremental) {
+    if (!running.compareAndSet(false, true)) {
+      throw new StockBatchRunningException();
+    }
+    try {
+      return rebuild(incremental);
+    } finally {
+      running.set(false);
+    }
+  }
+
+  private StockBatchResult rebuild(final boolean incremental) {
+    long start = System.currentTimeMillis();
+    List<Integer> farmIds = new ArrayList<Integer>();
+    for (int shard = 0; shard < shardRouter.getShardCount(); shard++) {
+      farmIds.addAll(shardRouter.execute(shard, transactionTemplate, new TransactionCallback<List<Integer>>() {
+        @Override
+        public List<Integer> doInTransaction(TransactionStatus status) {
+          dao.registerNewFarms();
+          return incremental ? dao.findChangedFarms() : dao.findAllFarms();
+        }
+      }));
+    }
+
+    StockBatchResult result = new StockBatchResult(incremental);
+    metrics.started(incremental, farmIds.size());
+    ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, farmIds.size())));
+    try {
+      List<Future<Integer>> futures = new ArrayList<Future<Integer>>(farmIds.size());
+      for (Integer farmId : farmIds) {
+        futures.add(executor.submit(rebuildTask(farmId)));
+      }
+      for (int i = 0; i < futures.size(); i++) {
+        try {
+          result.addFarm(futures.get(i).get());
+        } catch (ExecutionException e) {
+          log.warn("Stock batch rebuild of farm " + farmIds.get(i) + " failed", e.getCause());
+          result.addFailedFarm(farmIds.get(i));
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while rebuilding stock_batch", e);
+    } finally {
+      executor.shutdownNow();
+      metrics.finished();
+    }
+
+    result.setDurationMillis(System.currentTimeMillis() - start);
+    log.info("Stock batch rebuilt " + result.getFarmsRebuilt() + " farms, " + result.getRowsWritten()
+        + " rows in " + result.getDurationMillis() + " ms, " + result.getFailedFarms().size() + " failed");
+    return result;
+  }
+
+  private Callable<Integer> rebuildTask(final int farmId) {
+    return new Callable<Integer>() {
+      @Override
+      public Integer call() {
+        try {
+          int rows = shardRouter.execute(shardRouter.shardOfFarm(farmId), transactionTemplate,
+              new TransactionCallback<Integer>() {
+                @Override
+                public Integer doInTransaction(TransactionStatus status) {
+                  return dao.rebuildFarm(farmId);
+                }
+              });
+          metrics.farmRebuilt(rows);
+          return rows;
+        } catch (RuntimeException e) {
+          metrics.farmFailed();
+          throw e;
+        }
+      }
+    };
+  }
+}
@@ -0,0 +1,18 @@
+package com.myfarmer.provman.shard;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * A write that would touch farms living on different shards, e.g. moving a
+ * product to a farm of another shard. Move the farms onto one shard first.
+ */
+@ResponseStatus(HttpStatus.CONFLICT)
+public class CrossShardWriteException extends IllegalStateException {
+
+	private static final long serialVersionUID = 1L;
+
+	public CrossShardWriteException(String message) {
+		super(message);
+	}
+}
@@ -0,0 +1,14 @@
+package com.myfarmer.provman.shard;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.CONFLICT)
+public class FarmMoveConflictException extends IllegalStateException {
+
+	private static final long serialVersionUID = 1L;
+
+	public FarmMoveConflictException(String message) {
+		super(message);
+	}
+}
@@ -0,0 +1,21 @@
+package com.myfarmer.provman.shard;
+
+import java.util.Map;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Outcome of a farm move, with the rows copied per table. A farm already on
+ * the target shard is left alone and reports no rows.
+ */
+@Getter
+@AllArgsConstructor
+public class FarmMoveResult {
+
+	private final int farmId;
+	private final int fromShard;
+	private final int toShard;
+	private final Map<String, Integer> rows;
+	private final long durationMillis;
+}
@@ -0,0 +1,237 @@
+package com.myfarmer.provman.shard;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Moves a farm, with its products, pricings, price history, stock batch rows
+ * and unpublished catalog events, from its shard to another one. Rows keep
+ * their ids, except the price history and outbox events, which are numbered
+ * per shard. Events the source relays meanwhile are published twice, with
+ * the same farm seq.
+ *
+ * The farm is flagged moving in farm_shard first, which makes every instance
+ * refuse writes to it once it has read the flag, after shard.mapRefreshMs.
+ * The rows are then copied to the target in one transaction and checked
+ * unchanged on the source, the farm is flipped to the target, and after
+ * shard.mapRefreshMs again, once every instance routes the farm to the
+ * target, its rows are deleted from the source and the flag is cleared. A
+ * write that still got through to the source makes the move fail with the
+ * copy deleted and the farm left where it was. A move that died half way
+ * leaves the farm flagged: moving it again, to either shard, clears it.
+ */
+@Component
+@ManagedResource(objectName = "provman:name=farmMover")
+public class FarmMover {
+
+	private static final Log log = LogFactory.getLog(FarmMover.class);
+
+	private static final int BATCH_SIZE = 500;
+
+	private static final String FARM = "farm_id = ?";
+
+	// copied in this order, deleted in the reverse one: pricing_product_fk wants the product first
+	private static final Table[] TABLES = {
+			new Table("product", "id, name, farm_id, description, updated_at, version", FARM),
+			new Table("pricing", "id, weight, price, product_id, updated_at, version",
+					"product_id in (select id from product where farm_id = ?)"),
+			new Table("price_history", "pricing_id, product_id, farm_id, recorded_at, price, weight", FARM),
+			new Table("price_history_day", "product_id, price_day, farm_id, min_price_per_kg, max_price_per_kg, "
+					+ "sum_price_per_kg, changes", FARM),
+			new Table("stock_batch", "farm_id, product_id, product_name, descr, weight, price", FARM),
+			new Table("stock_batch_farm", "farm_id, change_count, built_count, built_at", FARM),
+			new Table("catalog_outbox_farm", "farm_id, seq", FARM),
+			new Table("catalog_outbox", "farm_id, farm_seq, entity, entity_id, operation, recorded_at, data", FARM) };
+
+	@Autowired
+	ShardRouter router;
+
+	private final AtomicBoolean moving = new AtomicBoolean();
+
+	public FarmMoveResult move(int farmId, int shard) {
+		router.jdbc(shard);
+		if (!moving.compareAndSet(false, true)) {
+			throw new FarmMoveConflictException("A farm move is already in progress");
+		}
+		try {
+			return doMove(farmId, shard);
+		} finally {
+			moving.set(false);
+		}
+	}
+
+	@ManagedOperation(description = "Move a farm to another shard")
+	public String moveFarm(int farmId, int shard) {
+		FarmMoveResult result = move(farmId, shard);
+		return "farm " + farmId + " from shard " + result.getFromShard() + " to " + result.getToShard() + ", "
+				+ result.getRows() + ", " + result.getDurationMillis() + " ms";
+	}
+
+	private FarmMoveResult doMove(final int farmId, final int target) {
+		long start = System.currentTimeMillis();
+		final int source = router.shardOfFarm(farmId);
+		if (source == target) {
+			router.setMoving(farmId, false);
+			return new FarmMoveResult(farmId, source, target, new LinkedHashMap<String, Integer>(), 0);
+		}
+
+		router.setMoving(farmId, true);
+		Map<String, Integer> rows;
+		try {
+			// writes of instances that had not read the flag yet
+			settle();
+			List<Object> before = fingerprint(source, farmId);
+			rows = inTransaction(target, new TransactionCallback<Map<String, Integer>>() {
+				@Override
+				public Map<String, Integer> doInTransaction(TransactionStatus status) {
+					// leftovers of an earlier move that failed half way
+					delete(target, farmId);
+					return copy(source, target, farmId);
+				}
+			});
+			if (!before.equals(fingerprint(source, farmId))) {
+				deleteInTransaction(target, farmId);
+				throw new FarmMoveConflictException("Farm " + farmId + " changed on shard " + source
+						+ " while it was being moved, try again");
+			}
+			router.assign(farmId, target);
+			// reads of instances that still route the farm to the source find the same rows there
+			settle();
+			deleteInTransaction(source, farmId);
+		} finally {
+			router.setMoving(farmId, false);
+		}
+
+		long duration = System.currentTimeMillis() - start;
+		log.info("Moved farm " + farmId + " from shard " + source + " to " + target + " in " + duration + " ms, rows "
+				+ rows);
+		return new FarmMoveResult(farmId, source, target, rows, duration);
+	}
+
+	/**
+	 * Waits until every instance has read farm_shard again.
+	 */
+	private void settle() {
+		try {
+			Thread.sleep(router.getRefreshMillis());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while moving a farm", e);
+		}
+	}
+
+	/**
+	 * What any write to the farm's products or pricings changes: a count, a max
+	 * id or updated_at, or a sum of versions.
+	 */
+	private List<Object> fingerprint(int shard, int farmId) {
+		JdbcTemplate jdbc = router.jdbc(shard);
+		List<Object> fingerprint = new ArrayList<Object>();
+		fingerprint.addAll(jdbc.queryForMap("select count(*), max(id), max(updated_at), coalesce(sum(version), 0) "
+				+ "from product where farm_id = ?", farmId).values());
+		fingerprint.addAll(jdbc.queryForMap("select count(*), max(pp.id), max(pp.updated_at), "
+				+ "coalesce(sum(pp.version), 0) from pricing pp join product p on p.id = pp.product_id "
+				+ "where p.farm_id = ?", farmId).values());
+		return fingerprint;
+	}
+
+	private Map<String, Integer> copy(int source, int target, int farmId) {
+		final JdbcTemplate to = router.jdbc(target);
+		Map<String, Integer> rows = new LinkedHashMap<String, Integer>();
+		for (final Table table : TABLES) {
+			final List<Object[]> batch = new ArrayList<Object[]>(BATCH_SIZE);
+			final int[] count = new int[1];
+			router.jdbc(source).query(table.select(), new RowCallbackHandler() {
+				@Override
+				public void processRow(ResultSet rs) throws SQLException {
+					Object[] row = new Object[table.columnCount];
+					for (int i = 0; i < row.length; i++) {
+						row[i] = rs.getObject(i + 1);
+					}
+					batch.add(row);
+					count[0]++;
+					if (batch.size() == BATCH_SIZE) {
+						insert(to, table, batch);
+					}
+				}
+			}, farmId);
+			insert(to, table, batch);
+			rows.put(table.name, count[0]);
+		}
+		return rows;
+	}
+
+	private static void insert(JdbcTemplate jdbc, Table table, Collection<Object[]> batch) {
+		if (!batch.isEmpty()) {
+			jdbc.batchUpdate(table.insert(), new ArrayList<Object[]>(batch));
+			batch.clear();
+		}
+	}
+
+	private void delete(int shard, int farmId) {
+		for (int i = TABLES.length - 1; i >= 0; i--) {
+			router.jdbc(shard).update("delete from " + TABLES[i].name + " where " + TABLES[i].farmFilter, farmId);
+		}
+	}
+
+	private void deleteInTransaction(final int shard, final int farmId) {
+		inTransaction(shard, new TransactionCallback<Object>() {
+			@Override
+			public Object doInTransaction(TransactionStatus status) {
+				delete(shard, farmId);
+				return null;
+			}
+		});
+	}
+
+	private <T> T inTransaction(int shard, TransactionCallback<T> callback) {
+		return new TransactionTemplate(new DataSourceTransactionManager(router.jdbc(shard).getDataSource()))
+				.execute(callback);
+	}
+
+	private static class Table {
+
+		final String name;
+		final String columns;
+		final String farmFilter;
+		final int columnCount;
+
+		Table(String name, String columns, String farmFilter) {
+			this.name = name;
+			this.columns = columns;
+			this.farmFilter = farmFilter;
+			this.columnCount = columns.split(",").length;
+		}
+
+		String select() {
+			return "select " + columns + " from " + name + " where " + farmFilter;
+		}
+
+		String insert() {
+			StringBuilder values = new StringBuilder("?");
+			for (int i = 1; i < columnCount; i++) {
+				values.append(", ?");
+			}
+			return "insert into " + name + " (" + columns + ") values (" + values + ")";
+		}
+	}
+}
@@ -0,0 +1,18 @@
+package com.myfarmer.provman.shard;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * A write to a farm that FarmMover is moving to another shard. The farm's rows
+ * take no writes until the move is over, the write can be tried again then.
+ */
+@ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+public class FarmMovingException extends IllegalStateException {
+
+	private static final long serialVersionUID = 1L;
+
+	public FarmMovingException(String message) {
+		super(message);
+	}
+}
@@ -0,0 +1,25 @@
+package com.myfarmer.provman.shard;
+
+import java.io.Serializable;
+
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
+
+/**
+ * The enhanced-sequence generator, always drawing its id blocks from the home
+ * shard's id table, so ids stay unique across shards and rows keep them when
+ * their farm moves. The block is fetched on a connection of its own, the
+ * session's connection still goes to the shard bound by the caller.
+ */
+public class HomeShardSequenceGenerator extends SequenceStyleGenerator {
+
+	@Override
+	public Serializable generate(SharedSessionContractImplementor session, Object object) {
+		Integer previous = ShardContext.bind(ShardContext.HOME);
+		try {
+			return super.generate(session, object);
+		} finally {
+			ShardContext.restore(previous);
+		}
+	}
+}
@@ -0,0 +1,47 @@
+package com.myfarmer.provman.shard;
+
+/**
+ * The shard the current thread's database work goes to, read by
+ * ShardRoutingDataSource whenever a connection is opened, so it has to be
+ * bound before the transaction starts. Unbound means the home shard, which
+ * keeps everything that is not farm data: providers, the farm to shard map
+ * and the id allocation tables.
+ */
+public final class ShardContext {
+
+	public static final int HOME = 0;
+
+	private static final ThreadLocal<Integer> current = new ThreadLocal<Integer>();
+
+	private ShardContext() {
+	}
+
+	/**
+	 * The bound shard, null when none is.
+	 */
+	public static Integer current() {
+		return current.get();
+	}
+
+	public static int currentOrHome() {
+		Integer shard = current.get();
+		return shard == null ? HOME : shard;
+	}
+
+	/**
+	 * Binds the shard and returns the one bound before, to be handed back to restore.
+	 */
+	public static Integer bind(int shard) {
+		Integer previous = current.get();
+		current.set(shard);
+		return previous;
+	}
+
+	public static void restore(Integer previous) {
+		if (previous == null) {
+			current.remove();
+		} else {
+			current.set(previous);
+		}
+	}
+}
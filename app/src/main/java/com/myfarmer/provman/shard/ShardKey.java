@@ -0,0 +1,25 @@
+package com.myfarmer.provman.shard;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks the service method parameter that tells which farm, and so which shard,
+ * the call works on: a farm, product or pricing id, a collection of such ids,
+ * or a Product or ProductPricing. ShardRoutingInterceptor binds that shard
+ * around the call, outside its transaction. A null argument binds nothing.
+ */
+@Documented
+@Target(ElementType.PARAMETER)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface ShardKey {
+
+	Kind value();
+
+	enum Kind {
+		FARM, PRODUCT, PRICING
+	}
+}
@@ -0,0 +1,357 @@
+package com.myfarmer.provman.shard;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.myfarmer.provman.model.Product;
+import com.myfarmer.provman.model.ProductPricing;
+
+/**
+ * Tells which shard a farm, product or pricing lives on. Without a
+ * ShardRoutingDataSource of more than one shard everything is on the home
+ * shard and nothing is looked up.
+ *
+ * Farms are placed by the farm_shard table of the home shard, farms without a
+ * row live on the home shard. The table is read at most every
+ * shard.mapRefreshMs (default 10 s), the delay after which a FarmMover flip
+ * is seen by every instance. A farm flagged moving there takes no writes:
+ * they are refused with FarmMovingException while FarmMover copies it.
+ *
+ * Products and pricings are found by asking each shard in turn for their farm,
+ * the answer is kept in a cache of shard.idCacheSize entries (default 100000)
+ * per kind: ids are unique across shards and a product only changes farm
+ * within a shard, so an entry stays right when its farm moves.
+ */
+@Component
+@ManagedResource(objectName = "provman:name=shardRouter")
+public class ShardRouter {
+
+	@Autowired(required = false)
+	ShardRoutingDataSource shards;
+
+	@Autowired
+	Environment environment;
+
+	private final AtomicLong lookups = new AtomicLong();
+
+	private JdbcTemplate[] jdbc = new JdbcTemplate[0];
+	private long refreshMillis;
+	private volatile Map<Integer, Integer> farmShards = Collections.emptyMap();
+	private volatile Set<Integer> movingFarms = Collections.emptySet();
+	private volatile long farmShardsReadAt;
+	private Map<Integer, Integer> productFarms;
+	private Map<Integer, Integer> pricingProducts;
+
+	@PostConstruct
+	public void init() {
+		if (shards != null) {
+			jdbc = new JdbcTemplate[shards.getShardCount()];
+			for (int shard = 0; shard < jdbc.length; shard++) {
+				jdbc[shard] = new JdbcTemplate(shards.getShard(shard));
+			}
+		}
+		refreshMillis = environment.getProperty("shard.mapRefreshMs", Long.class, 10000L);
+		int cacheSize = environment.getProperty("shard.idCacheSize", Integer.class, 100000);
+		productFarms = lruMap(cacheSize);
+		pricingProducts = lruMap(cacheSize);
+	}
+
+	@ManagedAttribute(description = "Configured shards, the home shard included")
+	public int getShardCount() {
+		return Math.max(1, jdbc.length);
+	}
+
+	public boolean isEnabled() {
+		return getShardCount() > 1;
+	}
+
+	public long getRefreshMillis() {
+		return refreshMillis;
+	}
+
+	public int shardOfFarm(int farmId) {
+		return shardOfFarm(farmId, false);
+	}
+
+	private int shardOfFarm(int farmId, boolean write) {
+		if (!isEnabled()) {
+			return ShardContext.HOME;
+		}
+		Integer shard = farmShards().get(farmId);
+		if (write && movingFarms.contains(farmId)) {
+			throw new FarmMovingException("Farm " + farmId + " is being moved to another shard, try again later");
+		}
+		return shard == null ? ShardContext.HOME : shard;
+	}
+
+	/**
+	 * The shard of the product's farm, the home shard for a product no shard has.
+	 */
+	public int shardOfProduct(int productId) {
+		return shardOfProduct(productId, false);
+	}
+
+	private int shardOfProduct(int productId, boolean write) {
+		if (!isEnabled()) {
+			return ShardContext.HOME;
+		}
+		Integer farmId = productFarms.get(productId);
+		if (farmId == null) {
+			Object[] row = findOnAnyShard("select farm_id from product where id = ?", productId);
+			if (row == null) {
+				return ShardContext.HOME;
+			}
+			farmId = (Integer) row[0];
+			productFarms.put(productId, farmId);
+		}
+		return shardOfFarm(farmId, write);
+	}
+
+	public int shardOfPricing(int pricingId) {
+		return shardOfPricing(pricingId, false);
+	}
+
+	private int shardOfPricing(int pricingId, boolean write) {
+		if (!isEnabled()) {
+			return ShardContext.HOME;
+		}
+		Integer productId = pricingProducts.get(pricingId);
+		if (productId == null) {
+			Object[] row = findOnAnyShard("select p.id, p.farm_id from pricing pp join product p on p.id = pp.product_id "
+					+ "where pp.id = ?", pricingId);
+			if (row == null) {
+				return ShardContext.HOME;
+			}
+			productId = (Integer) row[0];
+			pricingProducts.put(pricingId, productId);
+			productFarms.put(productId, (Integer) row[1]);
+		}
+		return shardOfProduct(productId, write);
+	}
+
+	/**
+	 * The shard of a @ShardKey argument, null for a null argument or an empty collection.
+	 */
+	public Integer shardOf(ShardKey.Kind kind, Object key) {
+		return shardOf(kind, key, false);
+	}
+
+	/**
+	 * Same as shardOf, for a call that writes: refused if the farm is being moved.
+	 */
+	public Integer shardOfWrite(ShardKey.Kind kind, Object key) {
+		return shardOf(kind, key, true);
+	}
+
+	private Integer shardOf(ShardKey.Kind kind, Object key, boolean write) {
+		if (key == null) {
+			return null;
+		}
+		if (key instanceof Product) {
+			return shardOfProduct((Product) key, write);
+		}
+		if (key instanceof ProductPricing) {
+			ProductPricing pricing = (ProductPricing) key;
+			return pricing.getId() != 0 ? shardOfPricing(pricing.getId(), write)
+					: pricing.getProduct() == null ? null : shardOfProduct(pricing.getProduct().getId(), write);
+		}
+		if (key instanceof Collection) {
+			Integer shard = null;
+			for (Object id : (Collection<?>) key) {
+				Integer next = shardOf(kind, id, write);
+				if (shard != null && next != null && !shard.equals(next)) {
+					throw new CrossShardWriteException("The " + kind.name().toLowerCase() + "s " + key
+							+ " live on different shards");
+				}
+				shard = next;
+			}
+			return shard;
+		}
+		int id = ((Number) key).intValue();
+		switch (kind) {
+		case FARM:
+			return shardOfFarm(id, write);
+		case PRODUCT:
+			return shardOfProduct(id, write);
+		default:
+			return shardOfPricing(id, write);
+		}
+	}
+
+	/**
+	 * A new product goes to its farm's shard, a saved one stays where it is and
+	 * may only be given a farm of that same shard.
+	 */
+	private int shardOfProduct(Product product, boolean write) {
+		int farmShard = shardOfFarm(product.getFarmId(), write);
+		if (product.getId() == 0) {
+			return farmShard;
+		}
+		int shard = shardOfProduct(product.getId(), write);
+		if (shard != farmShard) {
+			throw new CrossShardWriteException("Product " + product.getId() + " cannot move to farm "
+					+ product.getFarmId() + ", which lives on another shard");
+		}
+		// the farm may be changing, it is looked up again next time
+		productFarms.remove(product.getId());
+		return shard;
+	}
+
+	/**
+	 * Runs the callback in a transaction of the given shard.
+	 */
+	public <T> T execute(int shard, TransactionTemplate transactionTemplate, TransactionCallback<T> callback) {
+		Integer previous = ShardContext.bind(shard);
+		try {
+			return transactionTemplate.execute(callback);
+		} finally {
+			ShardContext.restore(previous);
+		}
+	}
+
+	/**
+	 * Places the farm on the shard in farm_shard, seen here at once and by
+	 * other instances within shard.mapRefreshMs.
+	 */
+	public synchronized void assign(int farmId, int shard) {
+		JdbcTemplate home = jdbc(ShardContext.HOME);
+		if (home.update("update farm_shard set shard = ? where farm_id = ?", shard, farmId) == 0) {
+			home.update("insert into farm_shard (farm_id, shard) values (?, ?)", farmId, shard);
+		}
+		Map<Integer, Integer> updated = new HashMap<Integer, Integer>(farmShards);
+		updated.put(farmId, shard);
+		farmShards = updated;
+	}
+
+	/**
+	 * Flags the farm as moving in farm_shard, or clears the flag. Seen here at
+	 * once and by other instances within shard.mapRefreshMs.
+	 */
+	public synchronized void setMoving(int farmId, boolean moving) {
+		JdbcTemplate home = jdbc(ShardContext.HOME);
+		if (home.update("update farm_shard set moving = ? where farm_id = ?", moving, farmId) == 0 && moving) {
+			home.update("insert into farm_shard (farm_id, shard, moving) values (?, ?, ?)", farmId,
+					shardOfFarm(farmId), true);
+		}
+		Set<Integer> updated = new HashSet<Integer>(movingFarms);
+		if (moving) {
+			updated.add(farmId);
+		} else {
+			updated.remove(farmId);
+		}
+		movingFarms = updated;
+	}
+
+	public boolean isMoving(int farmId) {
+		if (!isEnabled()) {
+			return false;
+		}
+		farmShards();
+		return movingFarms.contains(farmId);
+	}
+
+	public JdbcTemplate jdbc(int shard) {
+		if (shard < 0 || shard >= jdbc.length) {
+			throw new UnknownShardException(shard, jdbc.length);
+		}
+		return jdbc[shard];
+	}
+
+	private Map<Integer, Integer> farmShards() {
+		if (isStale()) {
+			refreshStaleFarmShards();
+		}
+		return farmShards;
+	}
+
+	private boolean isStale() {
+		return System.currentTimeMillis() - farmShardsReadAt > refreshMillis;
+	}
+
+	/*
+	 * Threads that found the map stale together read it once: the others find
+	 * it fresh once they get the lock.
+	 */
+	private synchronized void refreshStaleFarmShards() {
+		if (isStale()) {
+			refreshFarmShards();
+		}
+	}
+
+	@ManagedOperation(description = "Read the farm to shard map again now")
+	public synchronized void refreshFarmShards() {
+		final Map<Integer, Integer> read = new HashMap<Integer, Integer>();
+		final Set<Integer> moving = new HashSet<Integer>();
+		jdbc(ShardContext.HOME).query("select farm_id, shard, moving from farm_shard", new RowCallbackHandler() {
+			@Override
+			public void processRow(ResultSet rs) throws SQLException {
+				if (rs.getInt(2) >= getShardCount()) {
+					throw new IllegalStateException("Farm " + rs.getInt(1) + " is placed on shard " + rs.getInt(2)
+							+ ", there are " + getShardCount());
+				}
+				read.put(rs.getInt(1), rs.getInt(2));
+				if (rs.getBoolean(3)) {
+					moving.add(rs.getInt(1));
+				}
+			}
+		});
+		lookups.incrementAndGet();
+		farmShards = read;
+		movingFarms = moving;
+		farmShardsReadAt = System.currentTimeMillis();
+	}
+
+	private Object[] findOnAnyShard(String sql, int id) {
+		for (int shard = 0; shard < jdbc.length; shard++) {
+			lookups.incrementAndGet();
+			List<Map<String, Object>> rows = jdbc[shard].queryForList(sql, id);
+			if (!rows.isEmpty()) {
+				return rows.get(0).values().toArray();
+			}
+		}
+		return null;
+	}
+
+	@ManagedAttribute(description = "Farms placed by farm_shard")
+	public int getPlacedFarms() {
+		return farmShards.size();
+	}
+
+	@ManagedAttribute(description = "Queries run to find a farm, product or pricing")
+	public long getLookups() {
+		return lookups.get();
+	}
+
+	private static Map<Integer, Integer> lruMap(final int maxEntries) {
+		return Collections.synchronizedMap(new LinkedHashMap<Integer, Integer>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Integer, Integer> eldest) {
+				return size() > maxEntries;
+			}
+		});
+	}
+}
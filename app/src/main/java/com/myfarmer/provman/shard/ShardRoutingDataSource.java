@@ -0,0 +1,78 @@
+package com.myfarmer.provman.shard;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.sql.DataSource;
+
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+/**
+ * Hands out connections of the shard bound to the current thread (see
+ * ShardContext), the home shard, index 0, when none is. The home shard is the
+ * data source the application would use without shards, read replicas
+ * included; the others are plain pools.
+ */
+@ManagedResource(objectName = "provman:name=shardRouting")
+public class ShardRoutingDataSource extends AbstractDataSource implements Closeable {
+
+	private final List<DataSource> shards;
+	private final AtomicLongArray connections;
+
+	public ShardRoutingDataSource(List<DataSource> shards) {
+		this.shards = shards;
+		this.connections = new AtomicLongArray(shards.size());
+	}
+
+	@Override
+	public Connection getConnection() throws SQLException {
+		return getConnection(null, null);
+	}
+
+	@Override
+	public Connection getConnection(String username, String password) throws SQLException {
+		int shard = ShardContext.currentOrHome();
+		DataSource dataSource = getShard(shard);
+		connections.incrementAndGet(shard);
+		return username == null ? dataSource.getConnection() : dataSource.getConnection(username, password);
+	}
+
+	@ManagedAttribute(description = "Configured shards, the home shard included")
+	public int getShardCount() {
+		return shards.size();
+	}
+
+	public DataSource getShard(int shard) {
+		if (shard < 0 || shard >= shards.size()) {
+			throw new IllegalStateException("No shard " + shard + ", there are " + shards.size());
+		}
+		return shards.get(shard);
+	}
+
+	@ManagedAttribute(description = "Connections handed out per shard")
+	public long[] getConnections() {
+		long[] counts = new long[connections.length()];
+		for (int i = 0; i < counts.length; i++) {
+			counts[i] = connections.get(i);
+		}
+		return counts;
+	}
+
+	/**
+	 * Closes the pools of the other shards, the home shard's are beans of their own.
+	 */
+	@Override
+	public void close() throws IOException {
+		for (DataSource shard : shards.subList(1, shards.size())) {
+			if (shard instanceof Closeable) {
+				((Closeable) shard).close();
+			}
+		}
+	}
+}
@@ -0,0 +1,99 @@
+package com.myfarmer.provman.shard;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.aop.support.StaticMethodMatcherPointcut;
+import org.springframework.transaction.annotation.AnnotationTransactionAttributeSource;
+import org.springframework.transaction.interceptor.TransactionAttribute;
+import org.springframework.transaction.interceptor.TransactionAttributeSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Binds the shard of the call's @ShardKey argument for the duration of the
+ * call. Must be ordered before the transaction advisor, the connection is
+ * opened when the transaction starts.
+ *
+ * A call for another shard than the one of a transaction already running
+ * fails: its work would silently go to the running transaction's shard. So
+ * does a call that writes, i.e. any but a @Transactional(readOnly = true) one,
+ * to a farm being moved to another shard (see FarmMover).
+ */
+public class ShardRoutingInterceptor implements MethodInterceptor {
+
+	/** Matches the methods that have a @ShardKey parameter. */
+	public static final StaticMethodMatcherPointcut POINTCUT = new StaticMethodMatcherPointcut() {
+		@Override
+		public boolean matches(Method method, Class<?> targetClass) {
+			return keyIndex(AopUtils.getMostSpecificMethod(method, targetClass)) >= 0;
+		}
+	};
+
+	private final ShardRouter router;
+
+	private final TransactionAttributeSource transactionAttributes = new AnnotationTransactionAttributeSource();
+
+	// the @ShardKey parameter of each method, looked up once
+	private final ConcurrentMap<Method, Integer> keyIndexes = new ConcurrentHashMap<Method, Integer>();
+
+	public ShardRoutingInterceptor(ShardRouter router) {
+		this.router = router;
+	}
+
+	@Override
+	public Object invoke(MethodInvocation invocation) throws Throwable {
+		if (!router.isEnabled()) {
+			return invocation.proceed();
+		}
+		Class<?> targetClass = AopUtils.getTargetClass(invocation.getThis());
+		Method method = AopUtils.getMostSpecificMethod(invocation.getMethod(), targetClass);
+		Integer index = keyIndexes.get(method);
+		if (index == null) {
+			index = keyIndex(method);
+			keyIndexes.putIfAbsent(method, index);
+		}
+		ShardKey key = shardKey(method.getParameterAnnotations()[index]);
+		TransactionAttribute transaction = transactionAttributes.getTransactionAttribute(method, targetClass);
+		Object argument = invocation.getArguments()[index];
+		Integer shard = transaction != null && transaction.isReadOnly() ? router.shardOf(key.value(), argument)
+				: router.shardOfWrite(key.value(), argument);
+		if (shard == null) {
+			return invocation.proceed();
+		}
+		if (TransactionSynchronizationManager.isActualTransactionActive() && ShardContext.currentOrHome() != shard) {
+			throw new CrossShardWriteException(method.getDeclaringClass().getSimpleName() + "." + method.getName()
+					+ " works on shard " + shard + " but was called in a transaction of shard "
+					+ ShardContext.currentOrHome());
+		}
+		Integer previous = ShardContext.bind(shard);
+		try {
+			return invocation.proceed();
+		} finally {
+			ShardContext.restore(previous);
+		}
+	}
+
+	private static int keyIndex(Method method) {
+		Annotation[][] annotations = method.getParameterAnnotations();
+		for (int i = 0; i < annotations.length; i++) {
+			if (shardKey(annotations[i]) != null) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private static ShardKey shardKey(Annotation[] annotations) {
+		for (Annotation annotation : annotations) {
+			if (annotation instanceof ShardKey) {
+				return (ShardKey) annotation;
+			}
+		}
+		return null;
+	}
+}
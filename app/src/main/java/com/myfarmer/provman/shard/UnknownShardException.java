@@ -0,0 +1,15 @@
+package com.myfarmer.provman.shard;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.BAD_REQUEST)
+public class UnknownShardException extends IllegalArgumentException {
+
+	private static final long serialVersionUID = 1L;
+
+	public UnknownShardException(int shard, int shardCount) {
+		super("No shard " + shard + (shardCount > 1 ? ", shards go from 0 to " + (shardCount - 1)
+				: ", sharding is not configured (jdbc.shard.urls)"));
+	}
+}
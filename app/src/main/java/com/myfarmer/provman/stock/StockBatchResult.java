@@ -0,0 +1,37 @@
+package com.myfarmer.provman.stock;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import lombok.Getter;
+
+/**
+ * Outcome of a stock batch run. Farms that failed keep their changed flag and
+ * are picked up again by the next incremental run.
+ */
+@Getter
+public class StockBatchResult {
+
+	private final boolean incremental;
+	private int farmsRebuilt;
+	private long rowsWritten;
+	private long durationMillis;
+	private final List<Integer> failedFarms = new ArrayList<Integer>();
+
+	public StockBatchResult(boolean incremental) {
+		this.incremental = incremental;
+	}
+
+	public void addFarm(int rows) {
+		farmsRebuilt++;
+		rowsWritten += rows;
+	}
+
+	public void addFailedFarm(int farmId) {
+		failedFarms.add(farmId);
+	}
+
+	public void setDurationMillis(long durationMillis) {
+		this.durationMillis = durationMillis;
+	}
+}
@@ -0,0 +1,14 @@
+package com.myfarmer.provman.stock;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.CONFLICT)
+public class StockBatchRunningException extends IllegalStateException {
+
+	private static final long serialVersionUID = 1L;
+
+	public StockBatchRunningException() {
+		super("A stock batch run is already in progress");
+	}
+}
@@ -0,0 +1,13 @@
+package com.myfarmer.provman.web;
+
+import lombok.Value;
+
+@Value
+public class CachedResponse {
+
+	String contentType;
+	String eTag;
+	String lastModified;
+	byte[] body;
+	long expiresAt;
+}
@@ -0,0 +1,48 @@
+package com.myfarmer.provman.web;
+
+import java.time.Instant;
+import java.util.Date;
+
+import lombok.Value;
+
+/**
+ * Cheap fingerprint of a set of rows, taken from count(*), max(id) and
+ * max(updated_at) instead of loading them: an insert raises max(id), a delete
+ * lowers the count and an update moves updated_at.
+ */
+@Value
+public class DataVersion {
+
+	String tag;
+	long lastModified;
+
+	/**
+	 * From a "select count(x), max(x.id), max(x.updatedAt)" row.
+	 */
+	public static DataVersion of(Object[] row) {
+		long count = ((Number) row[0]).longValue();
+		long maxId = row[1] == null ? 0 : ((Number) row[1]).longValue();
+		long lastModified = row[2] == null ? -1 : ((Instant) row[2]).toEpochMilli();
+		return new DataVersion(Long.toHexString(count) + "-" + Long.toHexString(maxId) + "-"
+				+ Long.toHexString(lastModified), lastModified);
+	}
+
+	/**
+	 * From a change counter and the time of the last change it counts.
+	 */
+	public static DataVersion ofChanges(long changeCount, Date changedAt) {
+		long lastModified = changedAt == null ? -1 : changedAt.getTime();
+		return new DataVersion(Long.toHexString(changeCount) + "-" + Long.toHexString(lastModified), lastModified);
+	}
+
+	/**
+	 * Version of a page rendering both row sets.
+	 */
+	public DataVersion and(DataVersion other) {
+		return new DataVersion(tag + "." + other.tag, Math.max(lastModified, other.lastModified));
+	}
+
+	public String getETag() {
+		return "\"" + tag + "\"";
+	}
+}
@@ -0,0 +1,20 @@
+package com.myfarmer.provman.web;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a controller, or single handler methods, whose reads go to the
+ * primary even when read replicas are configured: edit forms, whose version
+ * read from a replica behind the primary could only be refused with a 409.
+ * Listings stay on the replicas, except for a client that just wrote. See
+ * PrimaryReadsInterceptor.
+ */
+@Documented
+@Target({ ElementType.TYPE, ElementType.METHOD })
+@Retention(RetentionPolicy.RUNTIME)
+public @interface PrimaryReads {
+}
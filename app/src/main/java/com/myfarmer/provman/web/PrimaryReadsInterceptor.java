@@ -0,0 +1,164 @@
+package com.myfarmer.provman.web;
+
+import java.util.concurrent.Callable;
+
+import javax.annotation.PostConstruct;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.async.CallableProcessingInterceptor;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.ModelAndView;
+import org.springframework.web.servlet.handler.HandlerInterceptorAdapter;
+
+import com.myfarmer.provman.configuration.ReadReplicaRoutingDataSource;
+
+/**
+ * Binds the primary for the requests of @PrimaryReads handlers, and for every
+ * request of a client that wrote less than jdbc.replica.maxLagMs ago, on every
+ * thread they run on: the container thread, the handler thread of an
+ * offloaded handler (see OffloadingHandlerAdapter) and the container thread
+ * rendering its view.
+ *
+ * A request that wrote answers with a cookie holding the time of the write;
+ * the other requests read from the replicas and are marked FROM_REPLICA, so
+ * that RenderedResponseCache does not keep what they rendered from a replica
+ * still behind the last write. Without replicas it does nothing.
+ */
+@Component
+public class PrimaryReadsInterceptor extends HandlerInterceptorAdapter implements CallableProcessingInterceptor {
+
+	/** Request attribute set on requests whose reads may have gone to a replica. */
+	public static final String FROM_REPLICA = PrimaryReadsInterceptor.class.getName() + ".FROM_REPLICA";
+
+	static final String COOKIE = "provman-wrote";
+
+	private static final String PREVIOUS = PrimaryReadsInterceptor.class.getName() + ".previous";
+	private static final String WROTE = PrimaryReadsInterceptor.class.getName() + ".wrote";
+
+	@Autowired
+	Environment environment;
+
+	@Autowired(required = false)
+	ReadReplicaRoutingDataSource routingDataSource;
+
+	private boolean enabled;
+	private long maxLagMillis;
+
+	@PostConstruct
+	public void init() {
+		enabled = routingDataSource != null && routingDataSource.getReplicaCount() > 0;
+		maxLagMillis = environment.getProperty("jdbc.replica.maxLagMs", Long.class, 5000L);
+	}
+
+	public long getMaxLagMillis() {
+		return maxLagMillis;
+	}
+
+	@Override
+	public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+		if (!enabled) {
+			return true;
+		}
+		ReadReplicaRoutingDataSource.takeWrites();
+		if (readsPrimary(handler) || wroteRecently(request)) {
+			request.setAttribute(PREVIOUS, ReadReplicaRoutingDataSource.bindPrimary());
+		} else {
+			request.setAttribute(FROM_REPLICA, Boolean.TRUE);
+		}
+		return true;
+	}
+
+	@Override
+	public void postHandle(HttpServletRequest request, HttpServletResponse response, Object handler,
+			ModelAndView modelAndView) {
+		if (!enabled) {
+			return;
+		}
+		if (ReadReplicaRoutingDataSource.takeWrites() || request.getAttribute(WROTE) != null) {
+			String path = request.getContextPath();
+			Cookie cookie = new Cookie(COOKIE, String.valueOf(System.currentTimeMillis()));
+			cookie.setPath(path.isEmpty() ? "/" : path);
+			cookie.setMaxAge((int) Math.max(1, (maxLagMillis + 999) / 1000));
+			cookie.setHttpOnly(true);
+			response.addCookie(cookie);
+		}
+	}
+
+	@Override
+	public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response,
+			Object handler) {
+		restore(request);
+	}
+
+	@Override
+	public <T> void preProcess(NativeWebRequest request, Callable<T> task) {
+		if (!enabled) {
+			return;
+		}
+		ReadReplicaRoutingDataSource.takeWrites();
+		if (request.getAttribute(PREVIOUS, RequestAttributes.SCOPE_REQUEST) != null) {
+			ReadReplicaRoutingDataSource.bindPrimary();
+		}
+	}
+
+	@Override
+	public <T> void postProcess(NativeWebRequest request, Callable<T> task, Object concurrentResult) {
+		if (!enabled) {
+			return;
+		}
+		if (ReadReplicaRoutingDataSource.takeWrites()) {
+			// told to postHandle, which runs in the dispatch that follows
+			request.setAttribute(WROTE, Boolean.TRUE, RequestAttributes.SCOPE_REQUEST);
+		}
+		if (request.getAttribute(PREVIOUS, RequestAttributes.SCOPE_REQUEST) != null) {
+			// a handler thread is bound by nothing else
+			ReadReplicaRoutingDataSource.restore(false);
+		}
+	}
+
+	@Override
+	public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler,
+			Exception ex) {
+		restore(request);
+	}
+
+	private boolean wroteRecently(HttpServletRequest request) {
+		Cookie[] cookies = request.getCookies();
+		if (cookies == null) {
+			return false;
+		}
+		for (Cookie cookie : cookies) {
+			if (COOKIE.equals(cookie.getName())) {
+				try {
+					return System.currentTimeMillis() - Long.parseLong(cookie.getValue()) < maxLagMillis;
+				} catch (NumberFormatException e) {
+					return false;
+				}
+			}
+		}
+		return false;
+	}
+
+	private static void restore(HttpServletRequest request) {
+		Boolean previous = (Boolean) request.getAttribute(PREVIOUS);
+		if (previous != null) {
+			ReadReplicaRoutingDataSource.restore(previous);
+		}
+	}
+
+	private static boolean readsPrimary(Object handler) {
+		if (!(handler instanceof HandlerMethod)) {
+			return false;
+		}
+		HandlerMethod method = (HandlerMethod) handler;
+		return method.getBeanType().isAnnotationPresent(PrimaryReads.class)
+				|| method.hasMethodAnnotation(PrimaryReads.class);
+	}
+}
@@ -0,0 +1,138 @@
+package com.myfarmer.provman.web;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * In-process cache of rendered catalog pages, keyed by URL, off unless
+ * responsecache.enabled=true. Filled by ResponseCacheFilter for the responses
+ * a handler marked as cacheable, and emptied whenever a service writes.
+ *
+ * Entries rendered while a write was committing are never stored: put only
+ * accepts a response if no invalidation happened since its request started.
+ * Nor are pages read from a replica within jdbc.replica.maxLagMs of the last
+ * invalidation: the replica may not have the write yet.
+ */
+@Component
+@ManagedResource(objectName = "provman:name=renderedResponseCache")
+public class RenderedResponseCache {
+
+	/** Request attribute set by handlers whose response may be cached. */
+	public static final String CACHEABLE = RenderedResponseCache.class.getName() + ".CACHEABLE";
+
+	@Autowired
+	Environment environment;
+
+	private final AtomicLong generation = new AtomicLong();
+	private final AtomicLong clearedAt = new AtomicLong();
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	private boolean enabled;
+	private long ttlMillis;
+	private long replicaLagMillis;
+	private Map<String, CachedResponse> entries;
+
+	@PostConstruct
+	public void init() {
+		enabled = environment.getProperty("responsecache.enabled", Boolean.class, false);
+		ttlMillis = environment.getProperty("responsecache.ttlSeconds", Long.class, 300L) * 1000;
+		replicaLagMillis = environment.getProperty("jdbc.replica.maxLagMs", Long.class, 5000L);
+		final int maxEntries = environment.getProperty("responsecache.maxEntries", Integer.class, 1000);
+		entries = Collections.synchronizedMap(new LinkedHashMap<String, CachedResponse>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, CachedResponse> eldest) {
+				return size() > maxEntries;
+			}
+		});
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	public long getGeneration() {
+		return generation.get();
+	}
+
+	public CachedResponse get(String key) {
+		CachedResponse response = entries.get(key);
+		if (response != null && response.getExpiresAt() < System.currentTimeMillis()) {
+			entries.remove(key);
+			response = null;
+		}
+		if (response == null) {
+			misses.incrementAndGet();
+		} else {
+			hits.incrementAndGet();
+		}
+		return response;
+	}
+
+	public void put(String key, String contentType, String eTag, String lastModified, byte[] body,
+			long requestGeneration, boolean fromReplica) {
+		if (fromReplica && System.currentTimeMillis() - clearedAt.get() < replicaLagMillis) {
+			return;
+		}
+		if (requestGeneration == generation.get()) {
+			entries.put(key, new CachedResponse(contentType, eTag, lastModified, body,
+					System.currentTimeMillis() + ttlMillis));
+		}
+	}
+
+	/**
+	 * Empties the cache once the current transaction commits, or right away outside one.
+	 */
+	public void invalidateAfterCommit() {
+		if (!enabled) {
+			return;
+		}
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+				@Override
+				public void afterCommit() {
+					clear();
+				}
+			});
+		} else {
+			clear();
+		}
+	}
+
+	@ManagedOperation(description = "Drop every cached page")
+	public void clear() {
+		clearedAt.set(System.currentTimeMillis());
+		generation.incrementAndGet();
+		entries.clear();
+	}
+
+	@ManagedAttribute(description = "Pages currently cached")
+	public int getSize() {
+		return entries.size();
+	}
+
+	@ManagedAttribute(description = "Requests answered from the cache")
+	public long getHits() {
+		return hits.get();
+	}
+
+	@ManagedAttribute(description = "Requests that had to be rendered")
+	public long getMisses() {
+		return misses.get();
+	}
+}
@@ -0,0 +1,111 @@
+package com.myfarmer.provman.web;
+
+import java.io.IOException;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.ContentCachingResponseWrapper;
+import org.springframework.web.util.WebUtils;
+
+/**
+ * Serves GET requests for the JSP catalog pages from RenderedResponseCache and
+ * stores the 200 responses that handlers marked with RenderedResponseCache.CACHEABLE.
+ * Registered through a DelegatingFilterProxy in ServletInitializer.
+ *
+ * Other routes are left alone, buffering would defeat the streaming export and API.
+ *
+ * With offloaded handlers (async.enabled) the page is only rendered on the async
+ * dispatch, so the filter runs again then to store and copy it.
+ */
+@Component("responseCacheFilter")
+public class ResponseCacheFilter extends OncePerRequestFilter {
+
+	private static final String[] PAGE_PREFIXES = { "/provider/list", "/edit-", "/product/", "/pricing/" };
+
+	private static final String GENERATION = ResponseCacheFilter.class.getName() + ".generation";
+
+	@Autowired
+	RenderedResponseCache cache;
+
+	@Override
+	protected boolean shouldNotFilter(HttpServletRequest request) {
+		if (!cache.isEnabled() || !"GET".equals(request.getMethod())) {
+			return true;
+		}
+		String path = request.getRequestURI().substring(request.getContextPath().length());
+		if (path.equals("/")) {
+			return false;
+		}
+		for (String prefix : PAGE_PREFIXES) {
+			if (path.startsWith(prefix)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	protected boolean shouldNotFilterAsyncDispatch() {
+		return false;
+	}
+
+	@Override
+	protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+			throws ServletException, IOException {
+		String key = request.getQueryString() == null ? request.getRequestURI()
+				: request.getRequestURI() + "?" + request.getQueryString();
+		ContentCachingResponseWrapper wrapper;
+		if (isAsyncDispatch(request)) {
+			// the wrapper of the first dispatch, which started async processing with it
+			wrapper = WebUtils.getNativeResponse(response, ContentCachingResponseWrapper.class);
+			if (wrapper == null) {
+				chain.doFilter(request, response);
+				return;
+			}
+		} else {
+			CachedResponse cached = cache.get(key);
+			if (cached != null) {
+				write(cached, request, response);
+				return;
+			}
+			request.setAttribute(GENERATION, cache.getGeneration());
+			wrapper = new ContentCachingResponseWrapper(response);
+		}
+
+		chain.doFilter(request, wrapper);
+		if (isAsyncStarted(request)) {
+			return;
+		}
+		if (wrapper.getStatus() == HttpServletResponse.SC_OK && request.getAttribute(RenderedResponseCache.CACHEABLE) != null) {
+			cache.put(key, wrapper.getContentType(), wrapper.getHeader("ETag"), wrapper.getHeader("Last-Modified"),
+					wrapper.getContentAsByteArray(), (Long) request.getAttribute(GENERATION),
+					request.getAttribute(PrimaryReadsInterceptor.FROM_REPLICA) != null);
+		}
+		wrapper.copyBodyToResponse();
+	}
+
+	private static void write(CachedResponse cached, HttpServletRequest request, HttpServletResponse response)
+			throws IOException {
+		response.setHeader("Cache-Control", "no-cache");
+		if (cached.getETag() != null) {
+			response.setHeader("ETag", cached.getETag());
+			String ifNoneMatch = request.getHeader("If-None-Match");
+			if (ifNoneMatch != null && ifNoneMatch.contains(cached.getETag())) {
+				response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+				return;
+			}
+		}
+		if (cached.getLastModified() != null) {
+			response.setHeader("Last-Modified", cached.getLastModified());
+		}
+		response.setContentType(cached.getContentType());
+		response.setContentLength(cached.getBody().length);
+		response.getOutputStream().write(cached.getBody());
+	}
+}
@@ -0,0 +1,60 @@
+-- Tables as db_init.sql used to create them. Databases set up from db_init.sql
+-- are baselined at version 0 and run this too: only what they miss is added.
+-- updated_at and version come with V3, which adds them where they are missing.
+
+create table if not exists product (
+                          id integer primary key auto_increment not null,
+                          name varchar(30) not null,
+                          farm_id integer not null,
+                          description varchar(50)
+);
+
+create table if not exists pricing (
+                          id integer primary key auto_increment not null,
+                          weight float not null,
+                          price float not null,
+                          product_id integer not null
+);
+
+create table if not exists provider (
+                          id integer primary key auto_increment not null,
+                          name varchar(50) not null,
+                          entering_date date not null,
+                          nationality varchar(5) not null,
+                          code varchar(20) not null
+);
+
+-- id allocation tables for the pooled product and pricing id generators,
+-- started past the ids already in use
+create table if not exists product_seq (
+                          next_val bigint not null
+);
+insert into product_seq (next_val)
+    select n.next_val from (select coalesce(max(id), 0) + 1 as next_val from product) n
+    where not exists (select 1 from product_seq);
+
+create table if not exists pricing_seq (
+                          next_val bigint not null
+);
+insert into pricing_seq (next_val)
+    select n.next_val from (select coalesce(max(id), 0) + 1 as next_val from pricing) n
+    where not exists (select 1 from pricing_seq);
+
+-- catalog snapshot rebuilt by the stock batch (StockBatchService, or batch_product_stock
+-- in stockUpdateBatch.sql), its farm_id index comes with V2
+create table if not exists stock_batch (
+                          farm_id integer not null,
+                          product_id integer not null,
+                          product_name varchar(30) not null,
+                          descr varchar(50),
+                          weight float not null,
+                          price float not null
+);
+
+-- per farm change counter, the farm's stock_batch rows are stale while change_count > built_count
+create table if not exists stock_batch_farm (
+                          farm_id integer primary key not null,
+                          change_count bigint not null,
+                          built_count bigint not null,
+                          built_at timestamp null
+);
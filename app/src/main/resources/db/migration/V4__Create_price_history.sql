@@ -0,0 +1,40 @@
+-- price history: every price or weight written to a pricing is appended to
+-- price_history and folded into price_history_day, one row per product and
+-- (UTC) day, which is what range queries and charts read
+
+create table price_history (
+                          id bigint primary key auto_increment not null,
+                          pricing_id integer not null,
+                          product_id integer not null,
+                          farm_id integer not null,
+                          recorded_at timestamp(3) not null,
+                          price float not null,
+                          weight float not null
+);
+
+-- min, max and sum of price / weight over the day's changes, pricings weighing
+-- nothing left out; the farm's rows are read through price_history_day_farm
+create table price_history_day (
+                          product_id integer not null,
+                          price_day date not null,
+                          farm_id integer not null,
+                          min_price_per_kg double not null,
+                          max_price_per_kg double not null,
+                          sum_price_per_kg double not null,
+                          changes integer not null,
+                          primary key (product_id, price_day)
+);
+
+create index price_history_day_farm on price_history_day (farm_id, price_day);
+
+-- the pricings already there start the history, at their last update
+insert into price_history (pricing_id, product_id, farm_id, recorded_at, price, weight)
+    select pp.id, p.id, p.farm_id, coalesce(pp.updated_at, current_timestamp(3)), pp.price, pp.weight
+    from pricing pp join product p on p.id = pp.product_id;
+
+insert into price_history_day (product_id, price_day, farm_id, min_price_per_kg, max_price_per_kg,
+                               sum_price_per_kg, changes)
+    select product_id, cast(recorded_at as date), max(farm_id), min(price / weight), max(price / weight),
+           sum(price / weight), count(*)
+    from price_history where weight > 0
+    group by product_id, cast(recorded_at as date);
@@ -0,0 +1,7 @@
+-- farm to shard map, only read on the home shard (see ShardRouter): farms
+-- without a row live on the home shard, FarmMover adds or changes rows
+
+create table farm_shard (
+                          farm_id integer primary key not null,
+                          shard integer not null
+);
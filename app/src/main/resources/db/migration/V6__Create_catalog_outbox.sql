@@ -0,0 +1,20 @@
+-- catalog change events (see CatalogOutbox), written in the transaction of the
+-- change and deleted once OutboxRelay has handed them to the sink
+
+create table catalog_outbox (
+                          id bigint primary key auto_increment not null,
+                          farm_id integer,
+                          farm_seq bigint,
+                          entity varchar(16) not null,
+                          entity_id integer not null,
+                          operation varchar(16) not null,
+                          recorded_at timestamp(3) not null,
+                          data varchar(2000) not null
+);
+
+-- last event number of each farm; bumping it locks the row, which keeps a
+-- farm's events in commit order
+create table catalog_outbox_farm (
+                          farm_id integer primary key not null,
+                          seq bigint not null
+);
@@ -0,0 +1,12 @@
+-- indexes behind the keyset pages (see AbstractDao.findPage): one per sort,
+-- ending with id so that the cursor's (sort, id) position is found in the index
+-- and a page reads its rows in order from there
+
+create index provider_name_id on provider (name, id);
+create index provider_code_id on provider (code, id);
+create index provider_nationality_id on provider (nationality, id);
+create index provider_entering_date_id on provider (entering_date, id);
+
+-- a farm's products by name; by id they are read from product_farm_id, which
+-- holds the primary key after farm_id
+create index product_farm_id_name_id on product (farm_id, name, id);
@@ -0,0 +1,4 @@
+-- set while FarmMover copies the farm to another shard: its rows take no
+-- writes until the move is over (see ShardRoutingInterceptor)
+
+alter table farm_shard add column moving boolean default false not null;
@@ -0,0 +1,10 @@
+-- change counter of the provider table, one row bumped by every provider write
+-- (see ProviderDao.markProvidersChanged): the provider list's version is read
+-- from it instead of a count and max over the whole table
+
+create table provider_change (
+                          id integer primary key not null,
+                          change_count bigint not null,
+                          changed_at timestamp(3) not null
+);
+insert into provider_change (id, change_count, changed_at) values (1, 0, current_timestamp(3));
@@ -27,7 +27,11 @@
 		<h2>List of Providers</h2><br/>	
 		<table class="table table-striped">
 			<tr>
-				<td>Name</td><td>Subscription Date</td><td>Country</td><td>CODE</td><td colspan="2"></td>
+				<td><a href="<c:url value='/provider/list?sort=name' />">Name</a></td>
+				<td><a href="<c:url value='/provider/list?sort=enteringDate' />">Subscription Date</a></td>
+				<td><a href="<c:url value='/provider/list?sort=nationality' />">Country</a></td>
+				<td><a href="<c:url value='/provider/list?sort=code' />">CODE</a></td>
+				<td colspan="2"></td>
 			</tr>
 			<c:forEach items="${providers}" var="provider">
 				<tr>
@@ -39,6 +43,9 @@
 				</tr>
 			</c:forEach>
 		</table>
+
+		<c:set var="pagePath" value="/provider/list"/>
+		<%@ include file="pager.jspf" %>
 		
 		<br/>
 		
@@ -31,6 +31,7 @@
 		<br/>
 		<form:form method="POST" modelAttribute="pricing">
 		    <form:input type="hidden" path="id" id="id"/>
+		    <form:input type="hidden" path="version" id="version"/>
 		    <form:input type="hidden" path="product.id" value="${pricing.product.id}"/>
 		    <form:input type="hidden" path="product.farmId" value="${pricing.product.farmId}"/>
 		    
@@ -39,7 +39,7 @@
 		        <td colspan="2"/>
 		    </tr>
 		
-		    <c:forEach items="${product.productPricings}" var="pricing">
+		    <c:forEach items="${pricings}" var="pricing">
 		        <tr>
 		            <td>${pricing.weight} kg.</td>
 		            <td>€${pricing.price}</td>
@@ -50,6 +50,10 @@
 		        </tr>
 		    </c:forEach>
 		</table>
+		<c:if test="${not empty page}">
+			<c:set var="pagePath" value="/pricing/${product.id}"/>
+			<%@ include file="pager.jspf" %>
+		</c:if>
 		<br/>
 		<a class="btn btn-success" href="<c:url value='/pricing/new/${product.id}' />">Add Purchase Option</a>
 	</div>
@@ -32,6 +32,7 @@
 		
 		<form:form method="POST" modelAttribute="product">
 		    <form:input type="hidden" path="id" id="id"/>
+		    <form:input type="hidden" path="version" id="version"/>
 		    
 	        <div class="form-group">
 	            <label for="name">Name: ${product.name}</label>
@@ -26,7 +26,9 @@
 		<br/>
 		<table class="table table-striped">
 		    <tr>
-		        <td>ID</td><td>Name</td><td>Description</td><td></td>
+		        <td><a href="<c:url value='/product/${farmId}?sort=id' />">ID</a></td>
+		        <td><a href="<c:url value='/product/${farmId}?sort=name' />">Name</a></td>
+		        <td>Description</td><td></td>
 		    </tr>
 		    <c:forEach items="${products}" var="product">
 	            <tr>
@@ -37,7 +39,10 @@
 	            </tr>
 		    </c:forEach>
 		</table>
+		<c:set var="pagePath" value="/product/${farmId}"/>
+		<%@ include file="pager.jspf" %>
 		<a class="btn btn-success" role="button" href="<c:url value='/product/new/${farmId}' />">Add Product</a>
+		<a class="btn btn-danger" role="button" href="<c:url value='/farm/retire/${farmId}' />">Retire Farm...</a>
 	</div>
 	
 	<div class="container mt-3">
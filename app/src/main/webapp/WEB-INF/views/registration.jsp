@@ -36,6 +36,7 @@
 		<br/>
 		<form:form method="POST" modelAttribute="provider">
 			<form:input type="hidden" path="id" id="id"/>
+			<form:input type="hidden" path="version" id="version"/>
 			<table  class="table">
 				<tr>
 					<td><label for="name">Name: </label> </td>
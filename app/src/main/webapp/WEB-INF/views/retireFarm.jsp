@@ -0,0 +1,27 @@
+<%@ page language="java" contentType="text/html; charset=ISO-8859-1"
+         pageEncoding="ISO-8859-1"%>
+<%@ taglib prefix="c" uri="http://java.sun.com/jsp/jstl/core" %>
+<html>
+<head>
+    <meta http-equiv="Content-Type" content="text/html; charset=ISO-8859-1">
+    <title>Retire Farm</title>
+	<script src=https://code.jquery.com/jquery-3.6.0.min.js></script>
+	<link href="https://cdn.jsdelivr.net/npm/bootstrap@5.0.2/dist/css/bootstrap.min.css"
+	    rel="stylesheet"
+	    integrity="sha384-EVSTQN3/azprG1Anm3QDgpJLIm9Nao0Yz1ztcQTwFspd3yD65VohhpuuCOmLASjC"
+	    crossorigin="anonymous">
+</head>
+<body>
+	<div class="container">
+		<h2>Retire Farm #${farmId}</h2>
+		<br/>
+		<div class="alert alert-danger" role="alert">
+			All the products of farm #${farmId} and their purchase options will be deleted.
+		</div>
+		<form method="POST" action="<c:url value='/farm/retire/${farmId}' />">
+			<button type="submit" class="btn btn-danger">Retire Farm</button>
+			<a class="btn btn-primary" role="button" href="<c:url value='/product/${farmId}' />">Cancel</a>
+		</form>
+	</div>
+</body>
+</html>
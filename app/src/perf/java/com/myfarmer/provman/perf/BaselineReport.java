@@ -0,0 +1,142 @@
+package com.myfarmer.provman.perf;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Side by side comparison of two JMH JSON result files: score and allocated
+ * bytes per operation, with the change against the baseline. A change worse
+ * than the threshold and larger than the score error is a regression.
+ *
+ * Can also be run on its own: BaselineReport results.json baseline.json [threshold]
+ */
+public class BaselineReport {
+
+	private static final String ALLOCATION_METRIC = "gc.alloc.rate.norm";
+
+	private final StringBuilder text = new StringBuilder();
+	private int regressions;
+
+	public static void main(String[] args) throws IOException {
+		BaselineReport report = compare(new File(args[0]), new File(args[1]),
+				args.length > 2 ? Double.parseDouble(args[2]) : 10);
+		System.out.println(report.text());
+	}
+
+	public static BaselineReport compare(File results, File baseline, double thresholdPercent) throws IOException {
+		ObjectMapper mapper = new ObjectMapper();
+		Map<String, JsonNode> current = index(mapper.readTree(results));
+		Map<String, JsonNode> previous = baseline == null ? new LinkedHashMap<String, JsonNode>()
+				: index(mapper.readTree(baseline));
+
+		BaselineReport report = new BaselineReport();
+		report.line(String.format("%-60s %22s %22s %9s %14s %14s %9s  %s", "Benchmark", "Score", "Baseline", "Change",
+				"Alloc B/op", "Baseline", "Change", ""));
+		for (Map.Entry<String, JsonNode> entry : current.entrySet()) {
+			report.add(entry.getKey(), entry.getValue(), previous.get(entry.getKey()), thresholdPercent);
+		}
+		if (baseline == null) {
+			report.line("No baseline yet, run with -Dperf.saveBaseline=true to record one.");
+		}
+		return report;
+	}
+
+	private void add(String name, JsonNode result, JsonNode base, double thresholdPercent) {
+		JsonNode metric = result.get("primaryMetric");
+		double score = metric.get("score").asDouble();
+		// NaN with too few iterations for an error estimate
+		double error = metric.get("scoreError").asDouble();
+		if (Double.isNaN(error)) {
+			error = 0;
+		}
+		String unit = metric.get("scoreUnit").asText();
+		double allocation = allocation(result);
+
+		String baseScore = "";
+		String scoreChange = "";
+		String baseAllocation = "";
+		String allocationChange = "";
+		String verdict = "";
+		if (base != null) {
+			double previous = base.get("primaryMetric").get("score").asDouble();
+			double change = percent(score, previous);
+			// throughput modes are better when higher, time modes when lower
+			boolean higherIsBetter = "thrpt".equals(result.get("mode").asText());
+			double worse = higherIsBetter ? -change : change;
+			baseScore = String.format("%.3f %s", previous, unit);
+			scoreChange = String.format("%+.1f%%", change);
+			if (worse > thresholdPercent && Math.abs(score - previous) > error) {
+				verdict = "REGRESSION";
+				regressions++;
+			} else if (-worse > thresholdPercent && Math.abs(score - previous) > error) {
+				verdict = "improved";
+			}
+
+			double previousAllocation = allocation(base);
+			if (previousAllocation >= 0 && allocation >= 0) {
+				baseAllocation = String.format("%.0f", previousAllocation);
+				allocationChange = String.format("%+.1f%%", percent(allocation, previousAllocation));
+			}
+		}
+		line(String.format("%-60s %22s %22s %9s %14s %14s %9s  %s", name,
+				String.format("%.3f +- %.3f %s", score, error, unit), baseScore, scoreChange,
+				allocation < 0 ? "" : String.format("%.0f", allocation), baseAllocation, allocationChange, verdict));
+	}
+
+	private static Map<String, JsonNode> index(JsonNode results) {
+		Map<String, JsonNode> byName = new LinkedHashMap<String, JsonNode>();
+		for (JsonNode result : results) {
+			String name = result.get("benchmark").asText().replace("com.myfarmer.provman.perf.", "");
+			JsonNode params = result.get("params");
+			if (params != null) {
+				for (Iterator<Map.Entry<String, JsonNode>> it = params.fields(); it.hasNext();) {
+					Map.Entry<String, JsonNode> param = it.next();
+					name += ":" + param.getKey() + "=" + param.getValue().asText();
+				}
+			}
+			byName.put(name, result);
+		}
+		return byName;
+	}
+
+	private static double allocation(JsonNode result) {
+		JsonNode secondary = result.get("secondaryMetrics");
+		if (secondary != null) {
+			for (Iterator<Map.Entry<String, JsonNode>> it = secondary.fields(); it.hasNext();) {
+				Map.Entry<String, JsonNode> metric = it.next();
+				if (metric.getKey().endsWith(ALLOCATION_METRIC)) {
+					return metric.getValue().get("score").asDouble();
+				}
+			}
+		}
+		return -1;
+	}
+
+	private static double percent(double value, double previous) {
+		return previous == 0 ? 0 : (value - previous) * 100 / previous;
+	}
+
+	private void line(String line) {
+		text.append(line).append('\n');
+	}
+
+	public String text() {
+		return text.toString() + (regressions == 0 ? "" : regressions + " regression(s)\n");
+	}
+
+	public boolean hasRegressions() {
+		return regressions > 0;
+	}
+
+	public void write(File file) throws IOException {
+		Files.write(file.toPath(), text().getBytes(StandardCharsets.UTF_8));
+	}
+}
@@ -0,0 +1,90 @@
+package com.myfarmer.provman.perf;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+/**
+ * Runs the benchmarks with the GC profiler (allocation rate and bytes per
+ * operation), writes the JMH results to target/jmh/results.json and compares
+ * them with the baseline in a report, see BaselineReport.
+ *
+ * -Dperf.include=regex          benchmarks to run (default all)
+ * -Dperf.forks, perf.warmupIterations, perf.iterations, perf.iterationSeconds
+ * -Dperf.baseline=file          baseline results (default src/perf/baseline.json)
+ * -Dperf.saveBaseline=true      make this run the new baseline
+ * -Dperf.threshold=10           change in percent reported as a regression
+ * -Dperf.failOnRegression=true  exit with status 1 on a regression
+ *
+ * jdbc.*, hibernate.*, responsecache.* and perf.* system properties are passed
+ * on to the forked benchmark JVMs, so a setting can be compared against the
+ * baseline by running with e.g. -Dhibernate.cache.enabled=true.
+ */
+public final class BenchmarkRunner {
+
+	private static final String[] FORWARDED_PREFIXES = { "jdbc.", "hibernate.", "responsecache.", "perf." };
+
+	private BenchmarkRunner() {
+	}
+
+	public static void main(String[] args) throws Exception {
+		File outputDir = new File(System.getProperty("perf.outputDir", "target/jmh"));
+		outputDir.mkdirs();
+		File results = new File(outputDir, "results.json");
+		int iterationSeconds = Integer.getInteger("perf.iterationSeconds", 2);
+
+		Options options = new OptionsBuilder()
+				.include(System.getProperty("perf.include", BenchmarkRunner.class.getPackage().getName() + ".*Benchmarks"))
+				.forks(Integer.getInteger("perf.forks", 1))
+				.warmupIterations(Integer.getInteger("perf.warmupIterations", 3))
+				.warmupTime(TimeValue.seconds(iterationSeconds))
+				.measurementIterations(Integer.getInteger("perf.iterations", 5))
+				.measurementTime(TimeValue.seconds(iterationSeconds))
+				.addProfiler(GCProfiler.class)
+				.jvmArgsAppend(forwardedProperties())
+				.resultFormat(ResultFormatType.JSON)
+				.result(results.getPath())
+				.build();
+		new Runner(options).run();
+
+		File baseline = new File(System.getProperty("perf.baseline", "src/perf/baseline.json"));
+		double threshold = Double.parseDouble(System.getProperty("perf.threshold", "10"));
+		BaselineReport report = BaselineReport.compare(results, baseline.exists() ? baseline : null, threshold);
+		File reportFile = new File(outputDir, "report.txt");
+		report.write(reportFile);
+		System.out.println();
+		System.out.println(report.text());
+		System.out.println("Report written to " + reportFile.getPath());
+
+		if (Boolean.getBoolean("perf.saveBaseline")) {
+			Files.copy(results.toPath(), baseline.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			System.out.println("Baseline saved to " + baseline.getPath());
+		}
+		if (Boolean.getBoolean("perf.failOnRegression") && report.hasRegressions()) {
+			System.exit(1);
+		}
+	}
+
+	private static String[] forwardedProperties() {
+		List<String> args = new ArrayList<String>();
+		for (Map.Entry<Object, Object> property : System.getProperties().entrySet()) {
+			String key = property.getKey().toString();
+			for (String prefix : FORWARDED_PREFIXES) {
+				if (key.startsWith(prefix)) {
+					args.add("-D" + key + "=" + property.getValue());
+				}
+			}
+		}
+		return args.toArray(new String[args.size()]);
+	}
+}
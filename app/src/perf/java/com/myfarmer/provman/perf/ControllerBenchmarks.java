@@ -0,0 +1,55 @@
+package com.myfarmer.provman.perf;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.springframework.test.web.servlet.MvcResult;
+
+/**
+ * Full dispatch through the DispatcherServlet with MockMvc: handler mapping,
+ * argument binding, service and DAO calls and view resolution. JSP views are
+ * resolved but not rendered, MockMvc only records the forward.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ControllerBenchmarks {
+
+	@Benchmark
+	public MvcResult listProviders(PerfContext perf) throws Exception {
+		return perf.mockMvc.perform(get("/provider/list")).andReturn();
+	}
+
+	@Benchmark
+	public MvcResult listProducts(PerfContext perf) throws Exception {
+		return perf.mockMvc.perform(get("/product/{farmId}", randomFarm())).andReturn();
+	}
+
+	@Benchmark
+	public MvcResult editProduct(PerfContext perf) throws Exception {
+		return perf.mockMvc.perform(get("/product/edit/{productId}", randomProduct())).andReturn();
+	}
+
+	@Benchmark
+	public MvcResult listPricings(PerfContext perf) throws Exception {
+		return perf.mockMvc.perform(get("/pricing/{productId}", randomProduct())).andReturn();
+	}
+
+	@Benchmark
+	public MvcResult apiListProducts(PerfContext perf) throws Exception {
+		return perf.mockMvc.perform(get("/api/v1/farms/{farmId}/products", randomFarm())).andReturn();
+	}
+
+	private static int randomFarm() {
+		return 1 + ThreadLocalRandom.current().nextInt(PerfDatabase.FARMS);
+	}
+
+	private static int randomProduct() {
+		return 1 + ThreadLocalRandom.current().nextInt(PerfDatabase.productCount());
+	}
+}
@@ -0,0 +1,103 @@
+package com.myfarmer.provman.perf;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sql.DataSource;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+
+import com.myfarmer.provman.dao.ProductDao;
+import com.myfarmer.provman.dao.ProviderDao;
+import com.myfarmer.provman.model.Product;
+import com.myfarmer.provman.model.Provider;
+
+/**
+ * DAO calls, each in its own transaction as the services run them.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class DaoBenchmarks {
+
+	@State(Scope.Benchmark)
+	public static class Daos {
+		ProviderDao providerDao;
+		ProductDao productDao;
+
+		@Setup(Level.Trial)
+		public void lookUp(PerfContext perf) {
+			providerDao = perf.bean(ProviderDao.class);
+			productDao = perf.bean(ProductDao.class);
+		}
+	}
+
+	/**
+	 * A product with its pricings, inserted before each delete.
+	 */
+	@State(Scope.Thread)
+	public static class DisposableProduct {
+		private static final AtomicInteger NEXT_ID = new AtomicInteger(100000000);
+
+		private JdbcTemplate jdbc;
+		int id;
+
+		@Setup(Level.Trial)
+		public void connect(PerfContext perf) {
+			jdbc = new JdbcTemplate(perf.bean(DataSource.class));
+		}
+
+		@Setup(Level.Invocation)
+		public void insert() {
+			id = NEXT_ID.incrementAndGet();
+			jdbc.update("insert into product (id, name, farm_id, description) values (?, 'Disposable', 0, null)", id);
+			for (int i = 1; i <= PerfDatabase.PRICINGS_PER_PRODUCT; i++) {
+				jdbc.update("insert into pricing (id, weight, price, product_id) values (?, ?, 1, ?)", id * 10 + i, i, id);
+			}
+		}
+	}
+
+	@Benchmark
+	public Provider findProviderByCode(PerfContext perf, final Daos daos) {
+		final String code = PerfDatabase.providerCode(1 + ThreadLocalRandom.current().nextInt(PerfDatabase.PROVIDERS));
+		return perf.readOnly.execute(new TransactionCallback<Provider>() {
+			@Override
+			public Provider doInTransaction(TransactionStatus status) {
+				return daos.providerDao.findProviderByCode(code);
+			}
+		});
+	}
+
+	@Benchmark
+	public List<Product> findProductsByFarmId(PerfContext perf, final Daos daos) {
+		final int farmId = 1 + ThreadLocalRandom.current().nextInt(PerfDatabase.FARMS);
+		return perf.readOnly.execute(new TransactionCallback<List<Product>>() {
+			@Override
+			public List<Product> doInTransaction(TransactionStatus status) {
+				return daos.productDao.findProductsByFarmId(farmId);
+			}
+		});
+	}
+
+	@Benchmark
+	public void deleteProductById(PerfContext perf, final Daos daos, final DisposableProduct product) {
+		perf.readWrite.execute(new TransactionCallbackWithoutResult() {
+			@Override
+			protected void doInTransactionWithoutResult(TransactionStatus status) {
+				daos.productDao.deleteProductById(product.id);
+			}
+		});
+	}
+}
@@ -0,0 +1,46 @@
+package com.myfarmer.provman.perf;
+
+import java.io.File;
+import java.util.Collections;
+
+import org.apache.catalina.Context;
+import org.apache.catalina.LifecycleException;
+import org.apache.catalina.startup.Tomcat;
+import org.springframework.web.SpringServletContainerInitializer;
+
+import com.myfarmer.provman.configuration.ServletInitializer;
+
+/**
+ * The WAR as Tomcat would run it: src/main/webapp for the JSPs, ServletInitializer
+ * for the dispatcher and filters, compiled classes from the classpath.
+ */
+public class EmbeddedServer {
+
+	private final Tomcat tomcat = new Tomcat();
+
+	public EmbeddedServer(int port) {
+		File baseDir = new File("target/tomcat");
+		baseDir.mkdirs();
+		tomcat.setBaseDir(baseDir.getAbsolutePath());
+		tomcat.setPort(port);
+		tomcat.getConnector().setProperty("maxThreads", System.getProperty("load.serverThreads", "200"));
+	}
+
+	public void start() throws LifecycleException {
+		Context context = tomcat.addWebapp("", new File("src/main/webapp").getAbsolutePath());
+		// the classes are not under WEB-INF, hand the initializer over instead of scanning for it
+		context.setContainerSciFilter(SpringServletContainerInitializer.class.getName());
+		context.addServletContainerInitializer(new SpringServletContainerInitializer(),
+				Collections.<Class<?>> singleton(ServletInitializer.class));
+		tomcat.start();
+	}
+
+	public int getPort() {
+		return tomcat.getConnector().getLocalPort();
+	}
+
+	public void stop() throws LifecycleException {
+		tomcat.stop();
+		tomcat.destroy();
+	}
+}
@@ -0,0 +1,246 @@
+package com.myfarmer.provman.perf;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Boots the application in an embedded Tomcat over a seeded PerfDatabase and
+ * replays a weighted mix of MyController routes from load.threads workers.
+ *
+ * -Dload.threads=16            concurrent clients
+ * -Dload.durationSeconds=60    measured run, after
+ * -Dload.warmupSeconds=15      unmeasured warm up (JIT, JSP compilation, pools)
+ * -Dload.rate=0                total requests per second, 0 sends as fast as the
+ *                              server answers. With a rate, latency is measured
+ *                              from when a request was due, so a stalled server
+ *                              shows in the percentiles instead of slowing the
+ *                              clients down.
+ * -Dload.mix=listProviders=20,editProvider=10,...  route weights, see LoadRoute
+ * -Dload.outputDir=target/load
+ *
+ * Pointing jdbc.* at an empty local MySQL database runs against MySQL instead
+ * of H2, the perf.* volumes apply either way. Results go to a timestamped JSON
+ * file, see LoadReport.
+ */
+public final class LoadGenerator {
+
+	static final String DEFAULT_MIX = "listProviders=15,editProvider=8,saveProvider=2,updateProvider=2,deleteProvider=1,"
+			+ "listProducts=15,editProduct=10,saveProduct=2,updateProduct=2,deleteProduct=1,"
+			+ "listPricings=15,editPricing=8,savePricing=2,updatePricing=2,deletePricing=1";
+
+	// the alert on success.jsp, which every save, update and delete ends on
+	private static final String SUCCESS_MARKER = "alert-success";
+
+	private final String baseUrl;
+	private final LoadRoute[] routes;
+	private final int[] cumulativeWeights;
+	private final Map<LoadRoute, RouteStats> stats = new EnumMap<LoadRoute, RouteStats>(LoadRoute.class);
+	private final LoadTargets targets = new LoadTargets();
+	private final int timeoutMs = Integer.getInteger("load.timeoutMs", 30000);
+
+	private volatile boolean running = true;
+
+	LoadGenerator(String baseUrl, Map<LoadRoute, Integer> mix) {
+		this.baseUrl = baseUrl;
+		routes = mix.keySet().toArray(new LoadRoute[mix.size()]);
+		cumulativeWeights = new int[routes.length];
+		int total = 0;
+		for (int i = 0; i < routes.length; i++) {
+			total += mix.get(routes[i]);
+			cumulativeWeights[i] = total;
+			stats.put(routes[i], new RouteStats());
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		int threads = Integer.getInteger("load.threads", 16);
+		int warmupSeconds = Integer.getInteger("load.warmupSeconds", 15);
+		int durationSeconds = Integer.getInteger("load.durationSeconds", 60);
+		double rate = Double.parseDouble(System.getProperty("load.rate", "0"));
+		Map<LoadRoute, Integer> mix = parseMix(System.getProperty("load.mix", DEFAULT_MIX));
+		// the JDK keeps only 5 idle connections per host by default, one per client avoids reconnects
+		System.setProperty("http.maxConnections", String.valueOf(threads));
+
+		PerfDatabase.create("load");
+		EmbeddedServer server = new EmbeddedServer(Integer.getInteger("load.port", 0));
+		server.start();
+		try {
+			LoadGenerator generator = new LoadGenerator("http://localhost:" + server.getPort(), mix);
+			LoadReport report = generator.run(threads, rate, warmupSeconds, durationSeconds);
+			File file = report.write(new File(System.getProperty("load.outputDir", "target/load")));
+			System.out.println(report.summary());
+			System.out.println("Results written to " + file.getPath());
+		} finally {
+			server.stop();
+		}
+	}
+
+	LoadReport run(int threads, double rate, int warmupSeconds, int durationSeconds) throws InterruptedException {
+		// every worker sends its share of the rate at a fixed interval
+		final long intervalNanos = rate > 0 ? (long) (threads * 1e9 / rate) : 0;
+		List<Thread> workers = new ArrayList<Thread>();
+		for (int i = 0; i < threads; i++) {
+			Thread worker = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					work(intervalNanos);
+				}
+			}, "load-" + i);
+			worker.setDaemon(true);
+			worker.start();
+			workers.add(worker);
+		}
+
+		TimeUnit.SECONDS.sleep(warmupSeconds);
+		for (RouteStats routeStats : stats.values()) {
+			routeStats.reset();
+		}
+		long measureStart = System.nanoTime();
+		TimeUnit.SECONDS.sleep(durationSeconds);
+		running = false;
+		for (Thread worker : workers) {
+			worker.join();
+		}
+		double measuredSeconds = (System.nanoTime() - measureStart) / 1e9;
+
+		Map<String, Object> settings = new LinkedHashMap<String, Object>();
+		settings.put("threads", threads);
+		settings.put("rate", rate);
+		settings.put("warmupSeconds", warmupSeconds);
+		settings.put("durationSeconds", durationSeconds);
+		Map<String, RouteStats.Result> results = new LinkedHashMap<String, RouteStats.Result>();
+		for (Map.Entry<LoadRoute, RouteStats> entry : stats.entrySet()) {
+			results.put(entry.getKey().getKey(), entry.getValue().result());
+		}
+		return new LoadReport(settings, weights(), measuredSeconds, results);
+	}
+
+	private void work(long intervalNanos) {
+		long due = System.nanoTime();
+		while (running) {
+			LoadRoute route = pick();
+			LoadRoute.Request request = route.next(targets);
+			RouteStats routeStats = stats.get(route);
+			if (request == null) {
+				routeStats.skip();
+				continue;
+			}
+			long start;
+			if (intervalNanos > 0) {
+				due += intervalNanos;
+				long wait = due - System.nanoTime();
+				if (wait > 0) {
+					sleep(wait);
+				}
+				start = due;
+			} else {
+				start = System.nanoTime();
+			}
+			String error = send(request);
+			routeStats.record(System.nanoTime() - start, error);
+		}
+	}
+
+	/**
+	 * Sends the request and reads the whole response, returns what went wrong or null.
+	 */
+	private String send(LoadRoute.Request request) {
+		try {
+			HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl + request.path).openConnection();
+			connection.setRequestMethod(request.method);
+			connection.setInstanceFollowRedirects(false);
+			connection.setConnectTimeout(timeoutMs);
+			connection.setReadTimeout(timeoutMs);
+			if (request.form != null) {
+				connection.setDoOutput(true);
+				connection.setRequestProperty("Content-Type", "application/x-www-form-urlencoded");
+				try (OutputStream out = connection.getOutputStream()) {
+					out.write(request.form.getBytes(StandardCharsets.UTF_8));
+				}
+			}
+			int status = connection.getResponseCode();
+			// read to the end so the connection goes back to the keep-alive cache
+			ByteArrayOutputStream body = new ByteArrayOutputStream();
+			try (InputStream in = status >= 400 ? connection.getErrorStream() : connection.getInputStream()) {
+				if (in != null) {
+					byte[] buffer = new byte[8192];
+					int read;
+					while ((read = in.read(buffer)) >= 0) {
+						if (request.form != null) {
+							body.write(buffer, 0, read);
+						}
+					}
+				}
+			}
+			if (status >= 400) {
+				return "HTTP " + status;
+			}
+			// a form that failed validation comes back as the form again, with a 200
+			if (request.form != null && !body.toString("ISO-8859-1").contains(SUCCESS_MARKER)) {
+				return "rejected form";
+			}
+			return null;
+		} catch (IOException e) {
+			return e.getClass().getSimpleName();
+		}
+	}
+
+	private LoadRoute pick() {
+		int value = ThreadLocalRandom.current().nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+		for (int i = 0; i < cumulativeWeights.length; i++) {
+			if (value < cumulativeWeights[i]) {
+				return routes[i];
+			}
+		}
+		return routes[routes.length - 1];
+	}
+
+	private Map<String, Integer> weights() {
+		Map<String, Integer> weights = new LinkedHashMap<String, Integer>();
+		int previous = 0;
+		for (int i = 0; i < routes.length; i++) {
+			weights.put(routes[i].getKey(), cumulativeWeights[i] - previous);
+			previous = cumulativeWeights[i];
+		}
+		return weights;
+	}
+
+	static Map<LoadRoute, Integer> parseMix(String mix) {
+		Map<LoadRoute, Integer> weights = new LinkedHashMap<LoadRoute, Integer>();
+		for (String entry : mix.split(",")) {
+			String[] keyAndWeight = entry.trim().split("=");
+			if (keyAndWeight.length != 2) {
+				throw new IllegalArgumentException("Expected route=weight in load.mix, got '" + entry + "'");
+			}
+			int weight = Integer.parseInt(keyAndWeight[1].trim());
+			if (weight > 0) {
+				weights.put(LoadRoute.forKey(keyAndWeight[0].trim()), weight);
+			}
+		}
+		if (weights.isEmpty()) {
+			throw new IllegalArgumentException("load.mix has no route with a positive weight");
+		}
+		return weights;
+	}
+
+	private static void sleep(long nanos) {
+		try {
+			TimeUnit.NANOSECONDS.sleep(nanos);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -0,0 +1,161 @@
+package com.myfarmer.provman.perf;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import javax.xml.bind.DatatypeConverter;
+
+import org.HdrHistogram.Histogram;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+/**
+ * Results of one load run: per route and in total, requests, errors, throughput
+ * and latency percentiles in milliseconds. The JSON file also carries each
+ * HdrHistogram, compressed and base64 encoded, so runs can be merged or
+ * re-analysed later (Histogram.decodeFromCompressedByteBuffer).
+ */
+class LoadReport {
+
+	private static final double[] PERCENTILES = { 50, 90, 95, 99, 99.9 };
+	private static final String[] RECORDED_PREFIXES = { "perf.", "hibernate.", "responsecache.", "jdbc.pool." };
+
+	private final LocalDateTime finishedAt = LocalDateTime.now();
+	private final Map<String, Object> settings;
+	private final Map<String, Integer> mix;
+	private final double measuredSeconds;
+	private final Map<String, RouteStats.Result> routes;
+	private final RouteStats.Result total;
+
+	LoadReport(Map<String, Object> settings, Map<String, Integer> mix, double measuredSeconds,
+			Map<String, RouteStats.Result> routes) {
+		this.settings = settings;
+		this.mix = mix;
+		this.measuredSeconds = measuredSeconds;
+		this.routes = routes;
+
+		Histogram latencies = new Histogram(3);
+		long requests = 0;
+		long errors = 0;
+		long skipped = 0;
+		for (RouteStats.Result result : routes.values()) {
+			latencies.add(result.latencies);
+			requests += result.requests;
+			errors += result.errors;
+			skipped += result.skipped;
+		}
+		total = new RouteStats.Result(latencies, requests, errors, skipped, new TreeMap<String, Long>());
+	}
+
+	File write(File directory) throws IOException {
+		directory.mkdirs();
+		File file = new File(directory,
+				"load-" + finishedAt.format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss")) + ".json");
+		try (JsonGenerator json = new JsonFactory().createGenerator(file, JsonEncoding.UTF8)) {
+			json.useDefaultPrettyPrinter();
+			json.writeStartObject();
+			json.writeStringField("finishedAt", finishedAt.toString());
+			json.writeNumberField("measuredSeconds", measuredSeconds);
+
+			json.writeObjectFieldStart("settings");
+			for (Map.Entry<String, Object> setting : settings.entrySet()) {
+				json.writeStringField(setting.getKey(), String.valueOf(setting.getValue()));
+			}
+			// the knobs a comparison between two runs needs to know about
+			for (String key : new TreeSet<String>(System.getProperties().stringPropertyNames())) {
+				for (String prefix : RECORDED_PREFIXES) {
+					if (key.startsWith(prefix)) {
+						json.writeStringField(key, System.getProperty(key));
+					}
+				}
+			}
+			json.writeStringField("jdbc.url", System.getProperty("jdbc.url"));
+			json.writeEndObject();
+
+			json.writeObjectFieldStart("mix");
+			for (Map.Entry<String, Integer> weight : mix.entrySet()) {
+				json.writeNumberField(weight.getKey(), weight.getValue());
+			}
+			json.writeEndObject();
+
+			json.writeFieldName("total");
+			writeResult(json, total);
+			json.writeObjectFieldStart("routes");
+			for (Map.Entry<String, RouteStats.Result> route : routes.entrySet()) {
+				json.writeFieldName(route.getKey());
+				writeResult(json, route.getValue());
+			}
+			json.writeEndObject();
+			json.writeEndObject();
+		}
+		return file;
+	}
+
+	private void writeResult(JsonGenerator json, RouteStats.Result result) throws IOException {
+		Histogram latencies = result.latencies;
+		json.writeStartObject();
+		json.writeNumberField("requests", result.requests);
+		json.writeNumberField("errors", result.errors);
+		json.writeNumberField("errorRate", errorRate(result));
+		json.writeNumberField("skipped", result.skipped);
+		json.writeNumberField("throughput", result.requests / measuredSeconds);
+		if (!result.errorsByKind.isEmpty()) {
+			json.writeObjectFieldStart("errorsByKind");
+			for (Map.Entry<String, Long> error : result.errorsByKind.entrySet()) {
+				json.writeNumberField(error.getKey(), error.getValue());
+			}
+			json.writeEndObject();
+		}
+		json.writeObjectFieldStart("latencyMs");
+		json.writeNumberField("mean", latencies.getMean() / 1000);
+		for (double percentile : PERCENTILES) {
+			json.writeNumberField("p" + format(percentile), millis(latencies, percentile));
+		}
+		json.writeNumberField("max", latencies.getMaxValue() / 1000.0);
+		json.writeEndObject();
+		ByteBuffer buffer = ByteBuffer.allocate(latencies.getNeededByteBufferCapacity());
+		int length = latencies.encodeIntoCompressedByteBuffer(buffer);
+		json.writeStringField("histogram", DatatypeConverter.printBase64Binary(
+				Arrays.copyOf(buffer.array(), length)));
+		json.writeEndObject();
+	}
+
+	String summary() {
+		StringBuilder text = new StringBuilder();
+		text.append(String.format("%-16s %9s %9s %7s %8s %9s %9s %9s %9s%n", "Route", "Requests", "Req/s", "Errors",
+				"Skipped", "p50 ms", "p99 ms", "p99.9 ms", "max ms"));
+		for (Map.Entry<String, RouteStats.Result> route : routes.entrySet()) {
+			line(text, route.getKey(), route.getValue());
+		}
+		line(text, "total", total);
+		return text.toString();
+	}
+
+	private void line(StringBuilder text, String name, RouteStats.Result result) {
+		Histogram latencies = result.latencies;
+		text.append(String.format("%-16s %9d %9.1f %6.2f%% %8d %9.2f %9.2f %9.2f %9.2f%n", name, result.requests,
+				result.requests / measuredSeconds, errorRate(result) * 100, result.skipped, millis(latencies, 50),
+				millis(latencies, 99), millis(latencies, 99.9), latencies.getMaxValue() / 1000.0));
+	}
+
+	private static double errorRate(RouteStats.Result result) {
+		return result.requests == 0 ? 0 : (double) result.errors / result.requests;
+	}
+
+	private static double millis(Histogram latencies, double percentile) {
+		return latencies.getValueAtPercentile(percentile) / 1000.0;
+	}
+
+	private static String format(double percentile) {
+		return percentile == Math.rint(percentile) ? String.valueOf((int) percentile) : String.valueOf(percentile);
+	}
+}
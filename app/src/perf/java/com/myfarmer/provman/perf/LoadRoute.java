@@ -0,0 +1,187 @@
+package com.myfarmer.provman.perf;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+
+/**
+ * The MyController routes the load generator replays. The key names the route
+ * in load.mix and in the results.
+ */
+enum LoadRoute {
+
+	LIST_PROVIDERS("listProviders") {
+		@Override
+		Request next(LoadTargets targets) {
+			return Request.get("/provider/list");
+		}
+	},
+	EDIT_PROVIDER("editProvider") {
+		@Override
+		Request next(LoadTargets targets) {
+			return Request.get("/edit-" + PerfDatabase.providerCode(targets.provider()) + "-provider");
+		}
+	},
+	SAVE_PROVIDER("saveProvider") {
+		@Override
+		Request next(LoadTargets targets) {
+			long n = targets.nextCreated();
+			return Request.post("/provider/new", "name", "Load provider " + n, "enteringDate", "01/06/2021",
+					"nationality", "FR", "code", "LOAD" + n);
+		}
+	},
+	UPDATE_PROVIDER("updateProvider") {
+		@Override
+		Request next(LoadTargets targets) {
+			int id = targets.provider();
+			String code = PerfDatabase.providerCode(id);
+			return Request.post("/edit-" + code + "-provider", "id", String.valueOf(id), "name", "Provider " + id,
+					"enteringDate", "01/06/2021", "nationality", "FR", "code", code);
+		}
+	},
+	DELETE_PROVIDER("deleteProvider") {
+		@Override
+		Request next(LoadTargets targets) {
+			int id = targets.providerToDelete();
+			return id < 0 ? null : Request.get("/delete-" + PerfDatabase.providerCode(id) + "-provider");
+		}
+	},
+	LIST_PRODUCTS("listProducts") {
+		@Override
+		Request next(LoadTargets targets) {
+			return Request.get("/product/" + targets.farm());
+		}
+	},
+	EDIT_PRODUCT("editProduct") {
+		@Override
+		Request next(LoadTargets targets) {
+			return Request.get("/product/edit/" + targets.product());
+		}
+	},
+	SAVE_PRODUCT("saveProduct") {
+		@Override
+		Request next(LoadTargets targets) {
+			long n = targets.nextCreated();
+			return Request.post("/product/new/" + targets.farm(), "name", "Load product " + n, "description",
+					"Created by the load generator");
+		}
+	},
+	UPDATE_PRODUCT("updateProduct") {
+		@Override
+		Request next(LoadTargets targets) {
+			int productId = targets.product();
+			int pricingId = targets.pricing(productId);
+			return Request.post("/product/edit/" + productId + "/" + pricingId, "product.id", String.valueOf(productId),
+					"product.name", "Product " + productId, "product.farmId", String.valueOf(targets.farmOf(productId)),
+					"product.description", "Updated by the load generator", "pricing.id", String.valueOf(pricingId),
+					"pricing.product.id", String.valueOf(productId), "pricing.weight", "1.5", "pricing.price", "4.2");
+		}
+	},
+	DELETE_PRODUCT("deleteProduct") {
+		@Override
+		Request next(LoadTargets targets) {
+			int id = targets.productToDelete();
+			return id < 0 ? null : Request.get("/product/delete/" + targets.farmOf(id) + "/" + id);
+		}
+	},
+	LIST_PRICINGS("listPricings") {
+		@Override
+		Request next(LoadTargets targets) {
+			return Request.get("/pricing/" + targets.product());
+		}
+	},
+	EDIT_PRICING("editPricing") {
+		@Override
+		Request next(LoadTargets targets) {
+			return Request.get("/pricing/edit/" + targets.pricing(targets.product()));
+		}
+	},
+	SAVE_PRICING("savePricing") {
+		@Override
+		Request next(LoadTargets targets) {
+			int productId = targets.product();
+			return Request.post("/pricing/new/" + productId, "product.id", String.valueOf(productId), "weight", "2.5",
+					"price", "7.9");
+		}
+	},
+	UPDATE_PRICING("updatePricing") {
+		@Override
+		Request next(LoadTargets targets) {
+			int productId = targets.product();
+			int pricingId = targets.pricing(productId);
+			return Request.post("/pricing/edit/" + pricingId, "id", String.valueOf(pricingId), "product.id",
+					String.valueOf(productId), "product.farmId", String.valueOf(targets.farmOf(productId)), "weight",
+					"1.0", "price", "3.3");
+		}
+	},
+	DELETE_PRICING("deletePricing") {
+		@Override
+		Request next(LoadTargets targets) {
+			int productId = targets.productOfPricingToDelete();
+			return productId < 0 ? null
+					: Request.get("/pricing/delete/" + productId + "/" + targets.lastPricing(productId));
+		}
+	};
+
+	private final String key;
+
+	LoadRoute(String key) {
+		this.key = key;
+	}
+
+	public String getKey() {
+		return key;
+	}
+
+	/**
+	 * The next request of this route, null when it has nothing left to work on.
+	 */
+	abstract Request next(LoadTargets targets);
+
+	static LoadRoute forKey(String key) {
+		for (LoadRoute route : values()) {
+			if (route.key.equals(key)) {
+				return route;
+			}
+		}
+		throw new IllegalArgumentException("Unknown route '" + key + "' in load.mix");
+	}
+
+	static final class Request {
+
+		final String method;
+		final String path;
+		final String form;
+
+		private Request(String method, String path, String form) {
+			this.method = method;
+			this.path = path;
+			this.form = form;
+		}
+
+		static Request get(String path) {
+			return new Request("GET", path, null);
+		}
+
+		/**
+		 * A form POST, fields given as name, value, name, value...
+		 */
+		static Request post(String path, String... fields) {
+			StringBuilder form = new StringBuilder();
+			for (int i = 0; i < fields.length; i += 2) {
+				if (form.length() > 0) {
+					form.append('&');
+				}
+				form.append(fields[i]).append('=').append(encode(fields[i + 1]));
+			}
+			return new Request("POST", path, form.toString());
+		}
+
+		private static String encode(String value) {
+			try {
+				return URLEncoder.encode(value, "UTF-8");
+			} catch (UnsupportedEncodingException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+	}
+}
@@ -0,0 +1,93 @@
+package com.myfarmer.provman.perf;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Picks the rows the load routes work on, from the ids PerfDatabase seeded.
+ *
+ * The lower half of the providers and products are read and updated, deletes
+ * consume the upper half from the top down, so a read never hits a deleted
+ * row. Of the pricings, the last one of each read product is kept for the
+ * pricing deletes. Once a delete range is used up, further deletes are
+ * skipped and counted as such.
+ */
+class LoadTargets {
+
+	private final int liveProviders = Math.max(1, PerfDatabase.PROVIDERS / 2);
+	private final int liveProducts = Math.max(1, PerfDatabase.productCount() / 2);
+	private final int liveFarms = Math.max(1, liveProducts / PerfDatabase.PRODUCTS_PER_FARM);
+	private final int editablePricings = Math.max(1, PerfDatabase.PRICINGS_PER_PRODUCT - 1);
+
+	private final AtomicInteger nextDeletedProvider = new AtomicInteger(PerfDatabase.PROVIDERS + 1);
+	private final AtomicInteger nextDeletedProduct = new AtomicInteger(PerfDatabase.productCount() + 1);
+	private final AtomicInteger nextDeletedPricing = new AtomicInteger();
+	private final AtomicLong created = new AtomicLong();
+
+	int provider() {
+		return 1 + random().nextInt(liveProviders);
+	}
+
+	int farm() {
+		return 1 + random().nextInt(liveFarms);
+	}
+
+	int product() {
+		return 1 + random().nextInt(liveProducts);
+	}
+
+	/**
+	 * A pricing of the given product that is never deleted.
+	 */
+	int pricing(int productId) {
+		return firstPricing(productId) + random().nextInt(editablePricings);
+	}
+
+	int farmOf(int productId) {
+		return (productId - 1) / PerfDatabase.PRODUCTS_PER_FARM + 1;
+	}
+
+	/**
+	 * Provider id to delete, -1 when none is left.
+	 */
+	int providerToDelete() {
+		int id = nextDeletedProvider.decrementAndGet();
+		return id > liveProviders ? id : -1;
+	}
+
+	int productToDelete() {
+		int id = nextDeletedProduct.decrementAndGet();
+		return id > liveProducts ? id : -1;
+	}
+
+	/**
+	 * Product id of the next pricing to delete, -1 when none is left.
+	 */
+	int productOfPricingToDelete() {
+		if (PerfDatabase.PRICINGS_PER_PRODUCT < 2) {
+			return -1;
+		}
+		int productId = nextDeletedPricing.incrementAndGet();
+		return productId <= liveProducts ? productId : -1;
+	}
+
+	int lastPricing(int productId) {
+		return firstPricing(productId) + PerfDatabase.PRICINGS_PER_PRODUCT - 1;
+	}
+
+	/**
+	 * A number for the names and codes of created rows, unique within the run.
+	 */
+	long nextCreated() {
+		return created.incrementAndGet();
+	}
+
+	private static int firstPricing(int productId) {
+		return (productId - 1) * PerfDatabase.PRICINGS_PER_PRODUCT + 1;
+	}
+
+	private static ThreadLocalRandom random() {
+		return ThreadLocalRandom.current();
+	}
+}
@@ -0,0 +1,53 @@
+package com.myfarmer.provman.perf;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.mock.web.MockServletContext;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.context.support.AnnotationConfigWebApplicationContext;
+
+import com.myfarmer.provman.configuration.MyWebConfig;
+
+/**
+ * The whole application context, as deployed, over a seeded PerfDatabase.
+ * One per benchmark fork.
+ */
+@State(Scope.Benchmark)
+public class PerfContext {
+
+	private AnnotationConfigWebApplicationContext context;
+
+	MockMvc mockMvc;
+	TransactionTemplate readOnly;
+	TransactionTemplate readWrite;
+
+	@Setup(Level.Trial)
+	public void start() throws Exception {
+		PerfDatabase.create("jmh");
+		context = new AnnotationConfigWebApplicationContext();
+		context.setServletContext(new MockServletContext());
+		context.register(MyWebConfig.class);
+		context.refresh();
+
+		mockMvc = MockMvcBuilders.webAppContextSetup(context).build();
+		PlatformTransactionManager transactionManager = context.getBean(PlatformTransactionManager.class);
+		readWrite = new TransactionTemplate(transactionManager);
+		readOnly = new TransactionTemplate(transactionManager);
+		readOnly.setReadOnly(true);
+	}
+
+	@TearDown(Level.Trial)
+	public void stop() {
+		context.close();
+	}
+
+	public <T> T bean(Class<T> type) {
+		return context.getBean(type);
+	}
+}
@@ -0,0 +1,123 @@
+package com.myfarmer.provman.perf;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import com.myfarmer.provman.configuration.SchemaMigrations;
+
+/**
+ * In-memory H2 database seeded with a catalog of realistic size, and the
+ * system properties that point MyHibernateConfig at it.
+ *
+ * Volumes: perf.farms (default 200) farms of perf.productsPerFarm (50)
+ * products with perf.pricingsPerProduct (4) pricings each, and
+ * perf.providers (5000) providers. Product ids of farm f run from
+ * (f - 1) * productsPerFarm + 1 to f * productsPerFarm.
+ */
+public final class PerfDatabase {
+
+	public static final int FARMS = Integer.getInteger("perf.farms", 200);
+	public static final int PRODUCTS_PER_FARM = Integer.getInteger("perf.productsPerFarm", 50);
+	public static final int PRICINGS_PER_PRODUCT = Integer.getInteger("perf.pricingsPerProduct", 4);
+	public static final int PROVIDERS = Integer.getInteger("perf.providers", 5000);
+
+	private static final String[] NATIONALITIES = { "FR", "US", "DE", "ES", "IT", "NL", "BE" };
+
+	private PerfDatabase() {
+	}
+
+	/**
+	 * Sets the jdbc.* and hibernate.* system properties for an H2 database unless
+	 * they are already set on the command line, then creates and seeds the
+	 * database they point to, which must be empty.
+	 */
+	public static void create(String name) throws SQLException {
+		String url = "jdbc:h2:mem:" + name + ";MODE=MySQL;DB_CLOSE_DELAY=-1";
+		setDefault("jdbc.driverClassName", "org.h2.Driver");
+		setDefault("jdbc.url", url);
+		setDefault("jdbc.username", "sa");
+		setDefault("jdbc.password", "");
+		setDefault("hibernate.dialect", "org.hibernate.dialect.H2Dialect");
+		setDefault("hibernate.show_sql", "false");
+		setDefault("hibernate.format_sql", "false");
+
+		String jdbcUrl = System.getProperty("jdbc.url");
+		String username = System.getProperty("jdbc.username");
+		String password = System.getProperty("jdbc.password");
+		// the application's own migrations, seeding before the context would run them
+		SchemaMigrations.configure().dataSource(jdbcUrl, username, password).load().migrate();
+		try (Connection connection = DriverManager.getConnection(jdbcUrl, username, password)) {
+			seed(connection);
+		}
+	}
+
+	public static int productCount() {
+		return FARMS * PRODUCTS_PER_FARM;
+	}
+
+	public static String providerCode(int index) {
+		return "PRV" + index;
+	}
+
+	private static void setDefault(String key, String value) {
+		if (System.getProperty(key) == null) {
+			System.setProperty(key, value);
+		}
+	}
+
+	private static void seed(Connection connection) throws SQLException {
+		connection.setAutoCommit(false);
+		try (PreparedStatement provider = connection.prepareStatement(
+				"insert into provider (id, name, entering_date, nationality, code) values (?, ?, ?, ?, ?)")) {
+			for (int i = 1; i <= PROVIDERS; i++) {
+				provider.setInt(1, i);
+				provider.setString(2, "Provider " + i);
+				provider.setDate(3, new Date(1500000000000L + i * 86400000L));
+				provider.setString(4, NATIONALITIES[i % NATIONALITIES.length]);
+				provider.setString(5, providerCode(i));
+				provider.addBatch();
+				if (i % 1000 == 0) {
+					provider.executeBatch();
+				}
+			}
+			provider.executeBatch();
+		}
+
+		int pricingId = 0;
+		try (PreparedStatement product = connection.prepareStatement(
+				"insert into product (id, name, farm_id, description) values (?, ?, ?, ?)");
+				PreparedStatement pricing = connection.prepareStatement(
+						"insert into pricing (id, weight, price, product_id) values (?, ?, ?, ?)")) {
+			int productId = 0;
+			for (int farm = 1; farm <= FARMS; farm++) {
+				for (int p = 0; p < PRODUCTS_PER_FARM; p++) {
+					productId++;
+					product.setInt(1, productId);
+					product.setString(2, "Product " + (char) ('A' + p % 26) + productId);
+					product.setInt(3, farm);
+					product.setString(4, "Seasonal produce from farm " + farm);
+					product.addBatch();
+					for (int w = 1; w <= PRICINGS_PER_PRODUCT; w++) {
+						pricing.setInt(1, ++pricingId);
+						pricing.setFloat(2, w * 0.5f);
+						pricing.setFloat(3, w * 1.9f + p % 7);
+						pricing.setInt(4, productId);
+						pricing.addBatch();
+					}
+				}
+				product.executeBatch();
+				pricing.executeBatch();
+			}
+		}
+
+		try (Statement statement = connection.createStatement()) {
+			statement.execute("update product_seq set next_val = " + (productCount() + 1));
+			statement.execute("update pricing_seq set next_val = " + (pricingId + 1));
+		}
+		connection.commit();
+	}
+}
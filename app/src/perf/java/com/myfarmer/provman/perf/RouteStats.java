@@ -0,0 +1,82 @@
+package com.myfarmer.provman.perf;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+/**
+ * Latencies in microseconds and outcomes of one route, recorded by all worker
+ * threads at once.
+ */
+class RouteStats {
+
+	private final Recorder latencies = new Recorder(3);
+	private final AtomicLong requests = new AtomicLong();
+	private final AtomicLong skipped = new AtomicLong();
+	private final ConcurrentMap<String, AtomicLong> errors = new ConcurrentHashMap<String, AtomicLong>();
+
+	void record(long latencyNanos, String error) {
+		latencies.recordValue(Math.max(1, latencyNanos / 1000));
+		requests.incrementAndGet();
+		if (error != null) {
+			AtomicLong count = errors.get(error);
+			if (count == null) {
+				AtomicLong created = new AtomicLong();
+				count = errors.putIfAbsent(error, created);
+				if (count == null) {
+					count = created;
+				}
+			}
+			count.incrementAndGet();
+		}
+	}
+
+	void skip() {
+		skipped.incrementAndGet();
+	}
+
+	/**
+	 * Forgets what was recorded so far, at the end of the warm up.
+	 */
+	void reset() {
+		latencies.getIntervalHistogram();
+		requests.set(0);
+		skipped.set(0);
+		errors.clear();
+	}
+
+	/**
+	 * What was recorded since the last reset. Call once, after the workers stopped.
+	 */
+	Result result() {
+		Map<String, Long> errorCounts = new TreeMap<String, Long>();
+		long errorTotal = 0;
+		for (Map.Entry<String, AtomicLong> error : errors.entrySet()) {
+			errorCounts.put(error.getKey(), error.getValue().get());
+			errorTotal += error.getValue().get();
+		}
+		return new Result(latencies.getIntervalHistogram(), requests.get(), errorTotal, skipped.get(), errorCounts);
+	}
+
+	static class Result {
+
+		final Histogram latencies;
+		final long requests;
+		final long errors;
+		final long skipped;
+		final Map<String, Long> errorsByKind;
+
+		Result(Histogram latencies, long requests, long errors, long skipped, Map<String, Long> errorsByKind) {
+			this.latencies = latencies;
+			this.requests = requests;
+			this.errors = errors;
+			this.skipped = skipped;
+			this.errorsByKind = errorsByKind;
+		}
+	}
+}
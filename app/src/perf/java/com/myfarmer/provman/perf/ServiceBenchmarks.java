@@ -0,0 +1,47 @@
+package com.myfarmer.provman.perf;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.myfarmer.provman.service.ProviderService;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ServiceBenchmarks {
+
+	@State(Scope.Benchmark)
+	public static class Services {
+		ProviderService providerService;
+
+		@Setup(Level.Trial)
+		public void lookUp(PerfContext perf) {
+			providerService = perf.bean(ProviderService.class);
+		}
+	}
+
+	/**
+	 * Saving a new provider: the code is free.
+	 */
+	@Benchmark
+	public boolean isProviderCodeUniqueForNewCode(Services services) {
+		return services.providerService.isProviderCodeUnique(null, "NEW" + ThreadLocalRandom.current().nextInt(1000000));
+	}
+
+	/**
+	 * Updating a provider: the code is found and belongs to it.
+	 */
+	@Benchmark
+	public boolean isProviderCodeUniqueForOwnCode(Services services) {
+		int id = 1 + ThreadLocalRandom.current().nextInt(PerfDatabase.PROVIDERS);
+		return services.providerService.isProviderCodeUnique(id, PerfDatabase.providerCode(id));
+	}
+}
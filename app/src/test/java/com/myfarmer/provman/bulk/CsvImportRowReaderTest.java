@@ -0,0 +1,57 @@
+package com.myfarmer.provman.bulk;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+class CsvImportRowReaderTest {
+
+	@Test
+	void readsQuotedFields() throws IOException {
+		CsvImportRowReader reader = reader("\"Leek, big\",\"the \"\"best\"\" one\"\r\n"
+				+ "\"Two\nlines\",\n");
+
+		ImportRow row = reader.next();
+		assertEquals(1, row.getRowNumber());
+		assertEquals("Leek, big", row.get("name"));
+		assertEquals("the \"best\" one", row.get("description"));
+
+		row = reader.next();
+		assertEquals("Two\nlines", row.get("name"));
+		assertNull(row.get("description"));
+		assertNull(reader.next());
+	}
+
+	@Test
+	void takesColumnOrderFromAHeader() throws IOException {
+		CsvImportRowReader reader = reader(" Description ,NAME\n\nGreen,Leek\n");
+
+		ImportRow row = reader.next();
+		// the header and the blank line are not counted as rows
+		assertEquals(1, row.getRowNumber());
+		assertEquals("Leek", row.get("name"));
+		assertEquals("Green", row.get("description"));
+		assertNull(reader.next());
+	}
+
+	@Test
+	void readsAFirstLineOfDataAsARow() throws IOException {
+		CsvImportRowReader reader = reader("Leek,Green\nTomato,Red");
+
+		assertEquals("Leek", reader.next().get("name"));
+		ImportRow last = reader.next();
+		assertEquals(2, last.getRowNumber());
+		assertEquals("Red", last.get("description"));
+		assertNull(reader.next());
+	}
+
+	private static CsvImportRowReader reader(String csv) {
+		return new CsvImportRowReader(new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)), "name",
+				"description");
+	}
+}
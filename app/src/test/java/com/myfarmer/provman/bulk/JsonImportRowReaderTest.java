@@ -0,0 +1,60 @@
+package com.myfarmer.provman.bulk;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.function.Executable;
+
+import com.fasterxml.jackson.core.JsonParseException;
+
+class JsonImportRowReaderTest {
+
+	@Test
+	void readsTheObjectsOfAnArray() throws IOException {
+		JsonImportRowReader reader = reader("[{\"Product_Id\": 3, \"weight\": \"1.5\", \"price\": null}, {}]");
+
+		ImportRow row = reader.next();
+		assertEquals(1, row.getRowNumber());
+		assertEquals("3", row.get("product_id"));
+		assertEquals("1.5", row.get("weight"));
+		assertNull(row.get("price"));
+		assertEquals(2, reader.next().getRowNumber());
+		assertNull(reader.next());
+	}
+
+	@Test
+	void failsOnTheFirstRowWhenTheBodyIsNoArray() throws IOException {
+		// opening the reader does not fail, the import reports the error
+		JsonImportRowReader reader = reader("{\"name\": \"Leek\"}");
+		assertNextFails(reader);
+
+		assertNextFails(reader("not json"));
+	}
+
+	@Test
+	void refusesNestedValues() throws IOException {
+		JsonImportRowReader reader = reader("[{\"name\": \"Leek\"}, {\"name\": {\"en\": \"Leek\"}}]");
+
+		assertEquals("Leek", reader.next().get("name"));
+		assertNextFails(reader);
+	}
+
+	private static void assertNextFails(final JsonImportRowReader reader) {
+		assertThrows(JsonParseException.class, new Executable() {
+			@Override
+			public void execute() throws Throwable {
+				reader.next();
+			}
+		});
+	}
+
+	private static JsonImportRowReader reader(String json) throws IOException {
+		return new JsonImportRowReader(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+	}
+}
@@ -0,0 +1,158 @@
+package com.myfarmer.provman.configuration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Properties;
+
+import javax.sql.DataSource;
+
+import org.hibernate.FlushMode;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.orm.hibernate5.HibernateTransactionManager;
+import org.springframework.orm.hibernate5.LocalSessionFactoryBuilder;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Primary and replica are two embedded H2 databases holding a different row,
+ * so every query tells which one it ran on.
+ */
+class ReadReplicaRoutingDataSourceTest {
+
+	private EmbeddedDatabase primary = database("primary");
+	private EmbeddedDatabase replica = database("replica");
+	private SessionFactory sessionFactory;
+
+	@AfterEach
+	void tearDown() {
+		sessionFactory.close();
+		primary.shutdown();
+		replica.shutdown();
+	}
+
+	@Test
+	void readOnlyTransactionsGoToTheReplica() {
+		ReadReplicaRoutingDataSource routing = routing(replica);
+
+		assertEquals("replica", whereAmI(true));
+		assertEquals("primary", whereAmI(false));
+		assertEquals(1, routing.getReplicaConnections());
+	}
+
+	@Test
+	void threadBoundToThePrimaryReadsFromIt() {
+		ReadReplicaRoutingDataSource routing = routing(replica);
+
+		boolean previous = ReadReplicaRoutingDataSource.bindPrimary();
+		try {
+			assertEquals("primary", whereAmI(true));
+			// nested binds leave it bound
+			ReadReplicaRoutingDataSource.restore(ReadReplicaRoutingDataSource.bindPrimary());
+			assertEquals("primary", whereAmI(true));
+		} finally {
+			ReadReplicaRoutingDataSource.restore(previous);
+		}
+		assertEquals("replica", whereAmI(true));
+		assertEquals(1, routing.getReplicaConnections());
+	}
+
+	@Test
+	void readOnlySessionsDoNotFlushOrKeepSnapshots() {
+		routing(replica);
+
+		TransactionTemplate template = template(true);
+		template.execute(new TransactionCallback<Void>() {
+			@Override
+			public Void doInTransaction(TransactionStatus status) {
+				Session session = sessionFactory.getCurrentSession();
+				assertEquals(FlushMode.MANUAL, session.getHibernateFlushMode());
+				assertTrue(session.isDefaultReadOnly());
+				return null;
+			}
+		});
+	}
+
+	@Test
+	void unavailableReplicaFallsOverToTheNextOneThenThePrimary() {
+		ReadReplicaRoutingDataSource routing = routing(new DeadDataSource(), replica);
+
+		assertEquals("replica", whereAmI(true));
+		assertEquals("replica", whereAmI(true));
+		assertEquals(1, routing.getFailovers());
+		assertEquals(1, routing.getReplicasDown());
+
+		routing = routing(new DeadDataSource());
+		assertEquals("primary", whereAmI(true));
+		assertEquals(1, routing.getFailovers());
+	}
+
+	private ReadReplicaRoutingDataSource routing(DataSource... replicas) {
+		if (sessionFactory != null) {
+			sessionFactory.close();
+		}
+		ReadReplicaRoutingDataSource routing = new ReadReplicaRoutingDataSource(primary, Arrays.asList(replicas), 60000);
+		Properties properties = new Properties();
+		properties.put("hibernate.dialect", "org.hibernate.dialect.H2Dialect");
+		sessionFactory = new LocalSessionFactoryBuilder(new LazyConnectionDataSourceProxy(routing))
+				.addProperties(properties)
+				.buildSessionFactory();
+		return routing;
+	}
+
+	private String whereAmI(boolean readOnly) {
+		return template(readOnly).execute(new TransactionCallback<String>() {
+			@Override
+			public String doInTransaction(TransactionStatus status) {
+				return (String) sessionFactory.getCurrentSession()
+						.createSQLQuery("select name from whoami")
+						.uniqueResult();
+			}
+		});
+	}
+
+	private TransactionTemplate template(boolean readOnly) {
+		TransactionTemplate template = new TransactionTemplate(new HibernateTransactionManager(sessionFactory));
+		template.setReadOnly(readOnly);
+		return template;
+	}
+
+	private static EmbeddedDatabase database(String name) {
+		EmbeddedDatabase database = new EmbeddedDatabaseBuilder()
+				.setType(EmbeddedDatabaseType.H2)
+				.generateUniqueName(true)
+				.build();
+		try (Connection connection = database.getConnection()) {
+			connection.createStatement().execute("create table whoami (name varchar(10))");
+			connection.createStatement().execute("insert into whoami values ('" + name + "')");
+		} catch (SQLException e) {
+			throw new IllegalStateException(e);
+		}
+		return database;
+	}
+
+	private static class DeadDataSource extends AbstractDataSource {
+
+		@Override
+		public Connection getConnection() throws SQLException {
+			throw new SQLException("Connection refused");
+		}
+
+		@Override
+		public Connection getConnection(String username, String password) throws SQLException {
+			throw new SQLException("Connection refused");
+		}
+	}
+}
@@ -0,0 +1,132 @@
+package com.myfarmer.provman.configuration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.function.Executable;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+class SchemaMigrationTest {
+
+	DriverManagerDataSource dataSource;
+	JdbcTemplate jdbc;
+
+	@BeforeEach
+	void setUp() {
+		dataSource = new DriverManagerDataSource(
+				"jdbc:h2:mem:" + UUID.randomUUID() + ";MODE=MySQL;DB_CLOSE_DELAY=-1", "sa", "");
+		jdbc = new JdbcTemplate(dataSource);
+	}
+
+	@Test
+	void migratesAnEmptyDatabaseOnce() throws SQLException {
+		assertEquals(9, flyway().migrate().migrationsExecuted);
+		assertEquals(0, flyway().migrate().migrationsExecuted);
+
+		assertIndexed("product", "farm_id");
+		assertIndexed("pricing", "product_id");
+		assertIndexed("provider", "code");
+		assertIndexed("stock_batch", "farm_id");
+		for (String column : new String[] { "name", "nationality", "entering_date" }) {
+			assertIndexed("provider", column);
+		}
+		assertIndexed("product", "name");
+		assertEquals(1, count("select next_val from product_seq"));
+		assertEquals(1, count("select count(*) from pricing_seq"));
+
+		jdbc.update("insert into provider (name, entering_date, nationality, code) values ('a', current_date, 'FR', 'C1')");
+		assertThrows(DataIntegrityViolationException.class, new Executable() {
+			@Override
+			public void execute() {
+				jdbc.update("insert into provider (name, entering_date, nationality, code) "
+						+ "values ('b', current_date, 'FR', 'C1')");
+			}
+		});
+		assertThrows(DataIntegrityViolationException.class, new Executable() {
+			@Override
+			public void execute() {
+				jdbc.update("insert into pricing (weight, price, product_id) values (1, 1, 42)");
+			}
+		});
+	}
+
+	@Test
+	void completesADatabaseSetUpBeforeMigrations() throws SQLException {
+		// the tables of the original db_init.sql: no updated_at or version, no id tables, no stock batch
+		jdbc.execute("create table product (id integer primary key auto_increment not null, name varchar(30) not null, "
+				+ "farm_id integer not null, description varchar(50))");
+		jdbc.execute("create table pricing (id integer primary key auto_increment not null, weight float not null, "
+				+ "price float not null, product_id integer not null)");
+		jdbc.execute("create table provider (id integer primary key auto_increment not null, name varchar(50) not null, "
+				+ "entering_date date not null, nationality varchar(5) not null, code varchar(20) not null)");
+		// and a hand made code index under another name
+		jdbc.execute("create unique index provider_code_unique on provider (code)");
+		jdbc.update("insert into product (id, name, farm_id) values (7, 'kept', 1)");
+		jdbc.update("insert into pricing (id, weight, price, product_id) values (30, 1, 1, 7)");
+		jdbc.update("insert into pricing (id, weight, price, product_id) values (31, 1, 1, 8)");
+
+		flyway().migrate();
+
+		assertEquals("0", flyway().info().applied()[0].getVersion().getVersion());
+		assertEquals(8, count("select next_val from product_seq"));
+		assertEquals(32, count("select next_val from pricing_seq"));
+		assertEquals(0, count("select count(*) from stock_batch_farm"));
+		// the orphan is moved aside, the other pricing stays
+		assertEquals(1, count("select count(*) from pricing"));
+		assertEquals(31, count("select id from pricing_orphan where product_id = 8"));
+		// and starts its price history
+		assertEquals(1, count("select count(*) from price_history where pricing_id = 30"));
+		assertEquals(1, count("select changes from price_history_day where product_id = 7"));
+		assertIndexed("product", "farm_id");
+		// the hand made one and the (code, id) of the keyset pages, no second one from V2
+		assertEquals(2, indexesOn("provider", "code"));
+		// the columns the entities map were added, filled in for the rows already there
+		jdbc.update("insert into provider (name, entering_date, nationality, code) values ('a', current_date, 'FR', 'C1')");
+		for (String table : new String[] { "product", "pricing", "provider" }) {
+			assertEquals(1, count("select count(*) from " + table + " where updated_at is not null and version = 0"));
+		}
+		assertEquals(1, jdbc.update("update product set name = 'edited', version = version + 1 "
+				+ "where id = 7 and version = 0"));
+	}
+
+	private Flyway flyway() {
+		return SchemaMigrations.configure().dataSource(dataSource).load();
+	}
+
+	private void assertIndexed(String table, String column) throws SQLException {
+		assertTrue(indexesOn(table, column) > 0, table + "." + column + " is not indexed");
+	}
+
+	private int indexesOn(String table, String column) throws SQLException {
+		Set<String> names = new HashSet<String>();
+		try (Connection connection = dataSource.getConnection()) {
+			DatabaseMetaData metaData = connection.getMetaData();
+			try (ResultSet indexes = metaData.getIndexInfo(null, null, table.toUpperCase(), false, false)) {
+				while (indexes.next()) {
+					if (column.equalsIgnoreCase(indexes.getString("COLUMN_NAME"))) {
+						names.add(indexes.getString("INDEX_NAME"));
+					}
+				}
+			}
+		}
+		return names.size();
+	}
+
+	private int count(String sql) {
+		return jdbc.queryForObject(sql, Integer.class);
+	}
+}
@@ -0,0 +1,99 @@
+package com.myfarmer.provman.configuration;
+
+import java.util.Properties;
+import java.util.UUID;
+
+import javax.sql.DataSource;
+
+import org.hibernate.SessionFactory;
+import org.springframework.aop.Advisor;
+import org.springframework.aop.support.DefaultPointcutAdvisor;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.context.annotation.Role;
+import org.springframework.core.Ordered;
+import org.springframework.dao.annotation.PersistenceExceptionTranslationPostProcessor;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.orm.hibernate5.HibernateTransactionManager;
+import org.springframework.orm.hibernate5.LocalSessionFactoryBean;
+import org.springframework.transaction.annotation.EnableTransactionManagement;
+
+import com.myfarmer.provman.metrics.StockBatchMetrics;
+import com.myfarmer.provman.shard.ShardRouter;
+import com.myfarmer.provman.shard.ShardRoutingInterceptor;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * The DAOs and services as MyHibernateConfig and MyWebConfig wire them, over
+ * an in-memory H2 database migrated like the real one, a new one per context.
+ * Tests import it and only declare what they do differently, e.g. their own
+ * dataSource or a CatalogEventSink.
+ *
+ * Nothing is scheduled: index refreshes and the outbox relay run when a test
+ * calls them. The second-level cache is off, tests change rows with JDBC
+ * behind Hibernate's back.
+ */
+@Configuration
+@EnableTransactionManagement
+@ComponentScan({ "com.myfarmer.provman.dao", "com.myfarmer.provman.service", "com.myfarmer.provman.outbox",
+		"com.myfarmer.provman.search", "com.myfarmer.provman.shard", "com.myfarmer.provman.web" })
+@Import(StockBatchMetrics.class)
+public class TestHibernateConfig {
+
+	/**
+	 * A new H2 database in MySQL mode, for the price history upsert, with the
+	 * application's migrations applied.
+	 */
+	public static DataSource migratedDatabase() {
+		DataSource dataSource = new DriverManagerDataSource(
+				"jdbc:h2:mem:" + UUID.randomUUID() + ";MODE=MySQL;DB_CLOSE_DELAY=-1", "sa", "");
+		SchemaMigrations.configure().dataSource(dataSource).load().migrate();
+		return dataSource;
+	}
+
+	@Bean
+	public DataSource dataSource() {
+		return migratedDatabase();
+	}
+
+	@Bean
+	public LocalSessionFactoryBean sessionFactory(DataSource dataSource) {
+		LocalSessionFactoryBean sessionFactory = new LocalSessionFactoryBean();
+		sessionFactory.setDataSource(dataSource);
+		sessionFactory.setPackagesToScan(new String[] { "com.myfarmer.provman.model" });
+		Properties properties = new Properties();
+		properties.put("hibernate.dialect", "org.hibernate.dialect.H2Dialect");
+		properties.put("hibernate.cache.use_second_level_cache", "false");
+		sessionFactory.setHibernateProperties(properties);
+		return sessionFactory;
+	}
+
+	@Bean
+	public HibernateTransactionManager transactionManager(SessionFactory sessionFactory) {
+		return new HibernateTransactionManager(sessionFactory);
+	}
+
+	@Bean
+	public static PersistenceExceptionTranslationPostProcessor persistenceExceptionTranslation() {
+		return new PersistenceExceptionTranslationPostProcessor();
+	}
+
+	@Bean
+	public MeterRegistry meterRegistry() {
+		return new SimpleMeterRegistry();
+	}
+
+	@Bean
+	@Role(BeanDefinition.ROLE_INFRASTRUCTURE)
+	public Advisor shardRoutingAdvisor(ShardRouter shardRouter) {
+		DefaultPointcutAdvisor advisor = new DefaultPointcutAdvisor(ShardRoutingInterceptor.POINTCUT,
+				new ShardRoutingInterceptor(shardRouter));
+		advisor.setOrder(Ordered.HIGHEST_PRECEDENCE + 1);
+		return advisor;
+	}
+}
@@ -0,0 +1,277 @@
+package com.myfarmer.provman.controller;
+
+import static org.hamcrest.CoreMatchers.not;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.model;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.redirectedUrl;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.view;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+
+import javax.sql.DataSource;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit.jupiter.web.SpringJUnitWebConfig;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+import org.springframework.web.servlet.FlashMap;
+
+import com.myfarmer.provman.configuration.MyWebConfig;
+import com.myfarmer.provman.metrics.RequestMetricsInterceptor;
+import com.myfarmer.provman.paging.Cursor;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * The MyController routes over the application context as deployed, on an H2
+ * database seeded with more rows than a page holds. With
+ * querybudget.failOnExceeded the statement taking a request over its
+ * @QueryBudget fails the request, so a handler that starts loading rows one
+ * by one fails here rather than in production. MockMvc does not render the
+ * JSPs, what they would load is not counted.
+ */
+@SpringJUnitWebConfig(MyWebConfig.class)
+@TestPropertySource(properties = { "jdbc.driverClassName=org.h2.Driver",
+		"jdbc.url=jdbc:h2:mem:my-controller;MODE=MySQL;DB_CLOSE_DELAY=-1", "jdbc.username=sa", "jdbc.password=",
+		"hibernate.dialect=org.hibernate.dialect.H2Dialect", "hibernate.show_sql=false",
+		"hibernate.format_sql=false", "querybudget.failOnExceeded=true" })
+class MyControllerTest {
+
+	static final int FARM = 1;
+	static final int PRODUCTS = 60;
+	static final int PRICINGS_PER_PRODUCT = 3;
+	static final int PROVIDERS = 60;
+
+	@Autowired
+	WebApplicationContext context;
+
+	@Autowired
+	@Qualifier("primaryDataSource")
+	DataSource dataSource;
+
+	@Autowired
+	MeterRegistry registry;
+
+	MockMvc mockMvc;
+
+	@BeforeEach
+	void setUp() throws SQLException {
+		mockMvc = MockMvcBuilders.webAppContextSetup(context).build();
+		seed();
+	}
+
+	@Test
+	void providerPagesStayWithinBudget() throws Exception {
+		mockMvc.perform(get("/")).andExpect(view().name("allproviders"));
+		mockMvc.perform(get("/provider/list").param("size", "20").param("sort", "code")
+				.param("after", Cursor.encode("code", "PRV10", 10))).andExpect(view().name("allproviders"));
+		mockMvc.perform(get("/provider/new")).andExpect(view().name("registration"));
+		mockMvc.perform(get("/edit-PRV1-provider")).andExpect(view().name("registration"));
+	}
+
+	@Test
+	void providerWritesStayWithinBudget() throws Exception {
+		mockMvc.perform(post("/provider/new").param("name", "Green fields").param("enteringDate", "01/01/2026")
+				.param("nationality", "FR").param("code", "NEW1")).andExpect(view().name("success"));
+		int id = count("select id from provider where code = 'PRV2'");
+		mockMvc.perform(post("/edit-PRV2-provider").param("id", String.valueOf(id)).param("name", "Renamed")
+				.param("enteringDate", "01/01/2026").param("nationality", "FR").param("code", "PRV2")
+				.param("version", "0")).andExpect(view().name("success"));
+		mockMvc.perform(get("/delete-PRV3-provider")).andExpect(view().name("allproviders"));
+	}
+
+	@Test
+	void productPagesStayWithinBudget() throws Exception {
+		mockMvc.perform(get("/product/" + FARM)).andExpect(view().name("productList"));
+		mockMvc.perform(get("/product/" + FARM).param("sort", "name").param("size", "500"))
+				.andExpect(view().name("productList"));
+		mockMvc.perform(get("/product/new/" + FARM)).andExpect(view().name("product"));
+		mockMvc.perform(get("/product/edit/1")).andExpect(view().name("pricingList"));
+	}
+
+	@Test
+	void answersNotFoundForAnUnknownProduct() throws Exception {
+		mockMvc.perform(get("/product/edit/" + (PRODUCTS + 1))).andExpect(status().isNotFound());
+	}
+
+	@Test
+	void answersBadRequestForAnEditWithoutVersion() throws Exception {
+		mockMvc.perform(post("/pricing/edit/1").param("id", "1").param("product.id", "1")
+				.param("product.farmId", String.valueOf(FARM)).param("price", "5").param("weight", "2"))
+				.andExpect(status().isBadRequest());
+		assertEquals(0, count("select version from pricing where id = 1"));
+	}
+
+	@Test
+	void answersNotFoundForAnUnknownPricing() throws Exception {
+		mockMvc.perform(get("/pricing/edit/" + (PRODUCTS * PRICINGS_PER_PRODUCT + 1)))
+				.andExpect(status().isNotFound());
+	}
+
+	@Test
+	void providerListChangesVersionWithEveryProviderWrite() throws Exception {
+		String eTag = mockMvc.perform(get("/")).andReturn().getResponse().getHeader("ETag");
+		mockMvc.perform(post("/provider/new").param("name", "Green fields").param("enteringDate", "01/01/2026")
+				.param("nationality", "FR").param("code", "NEW1"));
+		String created = mockMvc.perform(get("/").header("If-None-Match", eTag)).andExpect(status().isOk())
+				.andReturn().getResponse().getHeader("ETag");
+		assertNotEquals(eTag, created);
+
+		mockMvc.perform(get("/delete-NEW1-provider"));
+		mockMvc.perform(get("/").header("If-None-Match", created)).andExpect(status().isOk())
+				.andExpect(header().string("ETag", not(created)));
+	}
+
+	@Test
+	void answersNotModifiedWhileTheRowsAreUnchanged() throws Exception {
+		for (String page : Arrays.asList("/", "/edit-PRV1-provider", "/product/" + FARM, "/product/edit/1",
+				"/pricing/1", "/pricing/edit/1")) {
+			String eTag = mockMvc.perform(get(page)).andExpect(status().isOk()).andReturn().getResponse()
+					.getHeader("ETag");
+			mockMvc.perform(get(page).header("If-None-Match", eTag)).andExpect(status().isNotModified());
+		}
+		String eTag = mockMvc.perform(get("/pricing/1")).andReturn().getResponse().getHeader("ETag");
+		new JdbcTemplate(dataSource).update("insert into pricing (id, weight, price, product_id) values (?, 9, 9, 1)",
+				PRODUCTS * PRICINGS_PER_PRODUCT + 1);
+		mockMvc.perform(get("/pricing/1").header("If-None-Match", eTag)).andExpect(status().isOk())
+				.andExpect(header().string("ETag", not(eTag)));
+	}
+
+	@Test
+	void editPricingAnswersNotModifiedBeforeLoadingThePricing() throws Exception {
+		String eTag = mockMvc.perform(get("/pricing/edit/1")).andExpect(status().isOk()).andReturn().getResponse()
+				.getHeader("ETag");
+		double queries = queries("MyController.editPricing");
+		mockMvc.perform(get("/pricing/edit/1").header("If-None-Match", eTag)).andExpect(status().isNotModified());
+		// the version query only
+		assertEquals(1, queries("MyController.editPricing") - queries);
+
+		// the form shows the product's name, its version is part of the pricing's
+		new JdbcTemplate(dataSource).update(
+				"update product set name = 'Renamed', updated_at = dateadd('SECOND', 1, updated_at) where id = 1");
+		mockMvc.perform(get("/pricing/edit/1").header("If-None-Match", eTag)).andExpect(status().isOk())
+				.andExpect(header().string("ETag", not(eTag)));
+	}
+
+	@Test
+	void productWritesStayWithinBudget() throws Exception {
+		mockMvc.perform(post("/product/new/" + FARM).param("name", "Leek").param("farmId", String.valueOf(FARM))
+				.param("description", "Green")).andExpect(view().name("success"));
+		mockMvc.perform(post("/product/edit/1/1").param("product.id", "1").param("product.name", "Renamed")
+				.param("product.farmId", String.valueOf(FARM)).param("product.version", "0")
+				.param("pricing.id", "1").param("pricing.price", "9").param("pricing.weight", "1")
+				.param("pricing.version", "0")).andExpect(view().name("success"));
+		mockMvc.perform(get("/product/delete/" + FARM + "/2")).andExpect(view().name("success"));
+	}
+
+	@Test
+	void retiresAFarmOnlyOnceConfirmed() throws Exception {
+		mockMvc.perform(get("/farm/retire/" + FARM)).andExpect(view().name("retireFarm"));
+		assertEquals(PRODUCTS, count("select count(*) from product"));
+
+		FlashMap flash = mockMvc.perform(post("/farm/retire/" + FARM))
+				.andExpect(redirectedUrl("/farm/retired/" + FARM)).andReturn().getFlashMap();
+		assertEquals(0, count("select count(*) from product"));
+		assertEquals(0, count("select count(*) from pricing"));
+
+		mockMvc.perform(get("/farm/retired/" + FARM).flashAttrs(flash)).andExpect(view().name("success"))
+				.andExpect(model().attribute("success", "Successfully retired farm " + FARM + ", " + PRODUCTS
+						+ " products deleted"));
+	}
+
+	@Test
+	void pricingPagesStayWithinBudget() throws Exception {
+		mockMvc.perform(get("/pricing/1")).andExpect(view().name("pricingList"));
+		mockMvc.perform(get("/pricing/1").param("size", "2").param("after", Cursor.encode("id", null, 2)))
+				.andExpect(view().name("pricingList"));
+		mockMvc.perform(get("/pricing/new/1")).andExpect(view().name("pricing"));
+		mockMvc.perform(get("/pricing/edit/1")).andExpect(view().name("pricing"));
+	}
+
+	@Test
+	void pricingWritesStayWithinBudget() throws Exception {
+		mockMvc.perform(post("/pricing/new/1").param("product.id", "1").param("price", "4").param("weight", "2"))
+				.andExpect(view().name("success"));
+		mockMvc.perform(post("/pricing/edit/1").param("id", "1").param("version", "0").param("product.id", "1")
+				.param("product.farmId", String.valueOf(FARM)).param("price", "5").param("weight", "2"))
+				.andExpect(view().name("success"));
+		mockMvc.perform(get("/pricing/delete/1/2")).andExpect(status().isOk()).andExpect(view().name("success"));
+	}
+
+	/**
+	 * PRODUCTS products of FARM with PRICINGS_PER_PRODUCT pricings each, product
+	 * and pricing ids from 1, and PROVIDERS providers coded PRV1 and up.
+	 */
+	private void seed() throws SQLException {
+		try (Connection connection = dataSource.getConnection()) {
+			try (Statement statement = connection.createStatement()) {
+				for (String table : Arrays.asList("price_history_day", "price_history", "stock_batch_farm",
+						"stock_batch", "pricing", "product", "provider")) {
+					statement.execute("delete from " + table);
+				}
+			}
+			try (PreparedStatement provider = connection.prepareStatement(
+					"insert into provider (name, entering_date, nationality, code) values (?, ?, 'FR', ?)")) {
+				for (int i = 1; i <= PROVIDERS; i++) {
+					provider.setString(1, "Provider " + i);
+					provider.setDate(2, Date.valueOf("2026-01-01"));
+					provider.setString(3, "PRV" + i);
+					provider.addBatch();
+				}
+				provider.executeBatch();
+			}
+			try (PreparedStatement product = connection.prepareStatement(
+					"insert into product (id, name, farm_id, description) values (?, ?, ?, 'Seasonal')");
+					PreparedStatement pricing = connection.prepareStatement(
+							"insert into pricing (id, weight, price, product_id) values (?, ?, ?, ?)")) {
+				int pricingId = 0;
+				for (int p = 1; p <= PRODUCTS; p++) {
+					product.setInt(1, p);
+					product.setString(2, "Product " + p);
+					product.setInt(3, FARM);
+					product.addBatch();
+					for (int w = 1; w <= PRICINGS_PER_PRODUCT; w++) {
+						pricing.setInt(1, ++pricingId);
+						pricing.setFloat(2, w);
+						pricing.setFloat(3, w * 2);
+						pricing.setInt(4, p);
+						pricing.addBatch();
+					}
+				}
+				product.executeBatch();
+				pricing.executeBatch();
+			}
+			try (Statement statement = connection.createStatement()) {
+				statement.execute("update product_seq set next_val = " + (PRODUCTS + 1));
+				statement.execute("update pricing_seq set next_val = " + (PRODUCTS * PRICINGS_PER_PRODUCT + 1));
+			}
+		}
+	}
+
+	private double queries(String handler) {
+		DistributionSummary summary = registry.find(RequestMetricsInterceptor.QUERIES).tag("handler", handler)
+				.summary();
+		return summary == null ? 0 : summary.totalAmount();
+	}
+
+	private int count(String sql) {
+		return new JdbcTemplate(dataSource).queryForObject(sql, Integer.class);
+	}
+}
@@ -0,0 +1,135 @@
+package com.myfarmer.provman.dao;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.orm.hibernate5.HibernateTransactionManager;
+import org.springframework.test.context.junit.jupiter.SpringJUnitConfig;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.myfarmer.provman.configuration.TestHibernateConfig;
+
+@SpringJUnitConfig(TestHibernateConfig.class)
+class BulkDeleteDaoTest {
+
+	@Autowired
+	ProductDao productDao;
+
+	@Autowired
+	ProductPricingDao pricingDao;
+
+	@Autowired
+	StockBatchDao stockBatchDao;
+
+	@Autowired
+	DataSource dataSource;
+
+	@Autowired
+	HibernateTransactionManager transactionManager;
+
+	JdbcTemplate jdbc;
+
+	@BeforeEach
+	void setUp() {
+		jdbc = new JdbcTemplate(dataSource);
+		jdbc.execute("delete from stock_batch_farm");
+		jdbc.execute("delete from pricing");
+		jdbc.execute("delete from product");
+		for (int farmId = 1; farmId <= 2; farmId++) {
+			jdbc.update("insert into stock_batch_farm (farm_id, change_count, built_count) values (?, 0, 0)", farmId);
+			for (int p = 1; p <= 3; p++) {
+				int productId = farmId * 100 + p;
+				jdbc.update("insert into product (id, name, farm_id) values (?, ?, ?)", productId, "p" + productId, farmId);
+				jdbc.update("insert into pricing (weight, price, product_id) values (1, 2, ?)", productId);
+				jdbc.update("insert into pricing (weight, price, product_id) values (2, 3, ?)", productId);
+			}
+		}
+	}
+
+	@Test
+	void deleteProductByIdTakesItsPricings() {
+		inTransaction(new TransactionCallback<Object>() {
+			@Override
+			public Object doInTransaction(TransactionStatus status) {
+				productDao.deleteProductById(101);
+				return null;
+			}
+		});
+
+		assertEquals(0, count("select count(*) from product where id = 101"));
+		assertEquals(0, count("select count(*) from pricing where product_id = 101"));
+		assertEquals(10, count("select count(*) from pricing"));
+	}
+
+	@Test
+	void deleteProductsByFarmIdOnlyTouchesThatFarm() {
+		int deleted = inTransaction(new TransactionCallback<Integer>() {
+			@Override
+			public Integer doInTransaction(TransactionStatus status) {
+				return productDao.deleteProductsByFarmId(2);
+			}
+		});
+
+		assertEquals(3, deleted);
+		assertEquals(0, count("select count(*) from product where farm_id = 2"));
+		assertEquals(3, count("select count(*) from product where farm_id = 1"));
+		assertEquals(6, count("select count(*) from pricing"));
+		assertEquals(0, count("select count(*) from pricing where product_id > 200"));
+	}
+
+	@Test
+	void deleteByIdsSpansSeveralChunks() {
+		for (int i = 0; i < IdChunks.SIZE + 10; i++) {
+			jdbc.update("insert into pricing (weight, price, product_id) values (1, 1, 101)");
+		}
+		final List<Integer> ids = jdbc.queryForList("select id from pricing where product_id in (101, 201)",
+				Integer.class);
+
+		int deleted = inTransaction(new TransactionCallback<Integer>() {
+			@Override
+			public Integer doInTransaction(TransactionStatus status) {
+				stockBatchDao.markPricingsChanged(ids);
+				return pricingDao.deleteByIds(ids);
+			}
+		});
+
+		assertEquals(IdChunks.SIZE + 14, deleted);
+		assertEquals(0, count("select count(*) from pricing where product_id in (101, 201)"));
+		assertEquals(8, count("select count(*) from pricing"));
+		// one bump per chunk that had pricings of the farm
+		assertEquals(2, count("select change_count from stock_batch_farm where farm_id = 1"));
+		assertEquals(1, count("select change_count from stock_batch_farm where farm_id = 2"));
+	}
+
+	@Test
+	void chunksAreDistinct() {
+		List<Integer> ids = new ArrayList<Integer>();
+		for (int i = 0; i < IdChunks.SIZE * 2; i++) {
+			ids.add(i % (IdChunks.SIZE + 1));
+		}
+
+		List<List<Integer>> chunks = IdChunks.of(ids);
+
+		assertEquals(2, chunks.size());
+		assertEquals(IdChunks.SIZE, chunks.get(0).size());
+		assertEquals(1, chunks.get(1).size());
+	}
+
+	private int count(String sql) {
+		return jdbc.queryForObject(sql, Integer.class);
+	}
+
+	private <T> T inTransaction(TransactionCallback<T> work) {
+		return new TransactionTemplate(transactionManager).execute(work);
+	}
+}
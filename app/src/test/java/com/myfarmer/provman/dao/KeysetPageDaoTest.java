@@ -0,0 +1,146 @@
+package com.myfarmer.provman.dao;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.function.Executable;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.orm.hibernate5.HibernateTransactionManager;
+import org.springframework.test.context.junit.jupiter.SpringJUnitConfig;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.myfarmer.provman.api.PricingSummary;
+import com.myfarmer.provman.configuration.TestHibernateConfig;
+import com.myfarmer.provman.model.Product;
+import com.myfarmer.provman.model.ProductPricing;
+import com.myfarmer.provman.paging.InvalidPageRequestException;
+import com.myfarmer.provman.paging.Page;
+import com.myfarmer.provman.paging.PageRequest;
+
+/**
+ * Products of one farm whose names repeat, and pricings of one product whose
+ * prices and weights repeat, with values a float does not hold exactly, paged
+ * three at a time.
+ */
+@SpringJUnitConfig(TestHibernateConfig.class)
+class KeysetPageDaoTest {
+
+	static final int PRICINGS = 10;
+
+	@Autowired
+	ProductDao productDao;
+
+	@Autowired
+	ProductPricingDao pricingDao;
+
+	@Autowired
+	DataSource dataSource;
+
+	@Autowired
+	HibernateTransactionManager transactionManager;
+
+	@BeforeEach
+	void setUp() {
+		JdbcTemplate jdbc = new JdbcTemplate(dataSource);
+		jdbc.execute("delete from pricing");
+		jdbc.execute("delete from product");
+		jdbc.update("insert into product (id, name, farm_id) values (1, 'Leek', 1)");
+		for (int id = 2; id <= 8; id++) {
+			jdbc.update("insert into product (id, name, farm_id) values (?, ?, 1)", id, id % 2 == 0 ? "Kale" : "Leek");
+		}
+		for (int id = 1; id <= PRICINGS; id++) {
+			jdbc.update("insert into pricing (id, weight, price, product_id) values (?, ?, ?, 1)", id,
+					id % 2 == 0 ? 0.1f : 0.3f, id % 3 == 0 ? 1.1f : 0.7f);
+		}
+	}
+
+	@Test
+	void pagesProductsByRepeatedNamesOnceEach() {
+		List<Integer> ids = new ArrayList<Integer>();
+		String after = null;
+		do {
+			Page<Product> page = products(PageRequest.of(3, "name", after));
+			for (Product product : page.getItems()) {
+				ids.add(product.getId());
+			}
+			after = page.getNextCursor();
+		} while (after != null);
+
+		assertEquals(Arrays.asList(2, 4, 6, 8, 1, 3, 5, 7), ids);
+	}
+
+	@Test
+	void pagesPricingsByIdOnceEach() {
+		List<Integer> ids = new ArrayList<Integer>();
+		String after = null;
+		do {
+			Page<ProductPricing> page = pricings(PageRequest.of(3, null, after));
+			for (ProductPricing pricing : page.getItems()) {
+				ids.add(pricing.getId());
+			}
+			after = page.getNextCursor();
+		} while (after != null);
+
+		List<Integer> expected = new ArrayList<Integer>();
+		for (int id = 1; id <= PRICINGS; id++) {
+			expected.add(id);
+		}
+		assertEquals(expected, ids);
+	}
+
+	@Test
+	void refusesToSortByAFloat() {
+		for (final String sort : new String[] { "price", "weight" }) {
+			assertThrows(InvalidPageRequestException.class, new Executable() {
+				@Override
+				public void execute() {
+					pricings(PageRequest.of(3, sort, null));
+				}
+			});
+			assertThrows(InvalidPageRequestException.class, new Executable() {
+				@Override
+				public void execute() {
+					summaries(PageRequest.of(3, sort, null));
+				}
+			});
+		}
+	}
+
+	private Page<Product> products(final PageRequest request) {
+		return new TransactionTemplate(transactionManager).execute(new TransactionCallback<Page<Product>>() {
+			@Override
+			public Page<Product> doInTransaction(TransactionStatus status) {
+				return productDao.findProductsByFarmId(1, request);
+			}
+		});
+	}
+
+	private Page<ProductPricing> pricings(final PageRequest request) {
+		return new TransactionTemplate(transactionManager).execute(new TransactionCallback<Page<ProductPricing>>() {
+			@Override
+			public Page<ProductPricing> doInTransaction(TransactionStatus status) {
+				return pricingDao.findByProductId(1, request);
+			}
+		});
+	}
+
+	private Page<PricingSummary> summaries(final PageRequest request) {
+		return new TransactionTemplate(transactionManager).execute(new TransactionCallback<Page<PricingSummary>>() {
+			@Override
+			public Page<PricingSummary> doInTransaction(TransactionStatus status) {
+				return pricingDao.findSummariesByProductId(1, request);
+			}
+		});
+	}
+}
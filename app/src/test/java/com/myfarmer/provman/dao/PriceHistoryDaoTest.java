@@ -0,0 +1,123 @@
+package com.myfarmer.provman.dao;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.orm.hibernate5.HibernateTransactionManager;
+import org.springframework.test.context.junit.jupiter.SpringJUnitConfig;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.myfarmer.provman.api.DateRange;
+import com.myfarmer.provman.api.PricePoint;
+import com.myfarmer.provman.configuration.TestHibernateConfig;
+
+@SpringJUnitConfig(TestHibernateConfig.class)
+class PriceHistoryDaoTest {
+
+	private static final Instant JAN_1 = Instant.parse("2026-01-01T10:00:00Z");
+	private static final Instant JAN_2 = Instant.parse("2026-01-02T10:00:00Z");
+
+	@Autowired
+	PriceHistoryDao dao;
+
+	@Autowired
+	DataSource dataSource;
+
+	@Autowired
+	HibernateTransactionManager transactionManager;
+
+	JdbcTemplate jdbc;
+
+	@BeforeEach
+	void setUp() {
+		jdbc = new JdbcTemplate(dataSource);
+		jdbc.execute("delete from price_history_day");
+		jdbc.execute("delete from price_history");
+		jdbc.execute("delete from pricing");
+		jdbc.execute("delete from product");
+		jdbc.update("insert into product (id, name, farm_id) values (1, 'a', 10)");
+		jdbc.update("insert into product (id, name, farm_id) values (2, 'b', 10)");
+		jdbc.update("insert into pricing (id, weight, price, product_id) values (11, 2, 4, 1)");
+		jdbc.update("insert into pricing (id, weight, price, product_id) values (12, 1, 6, 1)");
+		jdbc.update("insert into pricing (id, weight, price, product_id) values (21, 0, 5, 2)");
+	}
+
+	@Test
+	void foldsChangesIntoOneRowPerProductAndDay() {
+		record(JAN_1, 11, 12, 21);
+		jdbc.update("update pricing set price = 10 where id = 11");
+		record(JAN_1, 11);
+		record(JAN_2, 11);
+
+		assertEquals(5, count("select count(*) from price_history"));
+		List<PricePoint> points = productDays(1, LocalDate.parse("2026-01-01"), LocalDate.parse("2026-01-31"));
+		assertEquals(2, points.size());
+		PricePoint first = points.get(0);
+		assertEquals(LocalDate.parse("2026-01-01"), first.getDay());
+		assertEquals(3, first.getChanges());
+		assertEquals(2.0, first.getMinPricePerKg());
+		assertEquals(6.0, first.getMaxPricePerKg());
+		assertEquals((2.0 + 6.0 + 5.0) / 3, first.getAvgPricePerKg(), 1e-9);
+		assertEquals(1, points.get(1).getChanges());
+		// weighing nothing, kept but without a price per kg
+		assertEquals(0, productDays(2, LocalDate.parse("2026-01-01"), LocalDate.parse("2026-01-31")).size());
+	}
+
+	@Test
+	void groupsAFarmByDayWithinTheRange() {
+		jdbc.update("update pricing set weight = 1 where id = 21");
+		record(JAN_1, 11, 12, 21);
+		record(JAN_2, 12);
+
+		List<PricePoint> points = inTransaction(new TransactionCallback<List<PricePoint>>() {
+			@Override
+			public List<PricePoint> doInTransaction(TransactionStatus status) {
+				return dao.findFarmDays(10, DateRange.of(LocalDate.parse("2025-12-01"), LocalDate.parse("2026-01-01")));
+			}
+		});
+
+		assertEquals(1, points.size());
+		assertEquals(3, points.get(0).getChanges());
+		assertEquals(2.0, points.get(0).getMinPricePerKg());
+		assertEquals(6.0, points.get(0).getMaxPricePerKg());
+	}
+
+	private void record(final Instant at, final Integer... pricingIds) {
+		inTransaction(new TransactionCallback<Object>() {
+			@Override
+			public Object doInTransaction(TransactionStatus status) {
+				dao.recordPricings(Arrays.asList(pricingIds), at);
+				return null;
+			}
+		});
+	}
+
+	private List<PricePoint> productDays(final int productId, final LocalDate from, final LocalDate to) {
+		return inTransaction(new TransactionCallback<List<PricePoint>>() {
+			@Override
+			public List<PricePoint> doInTransaction(TransactionStatus status) {
+				return dao.findProductDays(productId, DateRange.of(from, to));
+			}
+		});
+	}
+
+	private int count(String sql) {
+		return jdbc.queryForObject(sql, Integer.class);
+	}
+
+	private <T> T inTransaction(TransactionCallback<T> work) {
+		return new TransactionTemplate(transactionManager).execute(work);
+	}
+}
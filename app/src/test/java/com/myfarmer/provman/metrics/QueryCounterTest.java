@@ -0,0 +1,92 @@
+package com.myfarmer.provman.metrics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import org.junit.jupiter.api.Test;
+
+class QueryCounterTest {
+
+	@Test
+	void recordsWithinBudget() {
+		QueryCounter counter = new QueryCounter(true);
+		counter.begin("MyController.listProviders", 2);
+		counter.executing("select count(*) from provider");
+		counter.executing("select * from provider");
+		QueryCounter.Scope scope = counter.end();
+
+		assertEquals(2, scope.getExecuted());
+		assertFalse(scope.isExceeded());
+		assertEquals(2, counter.current());
+		assertNull(counter.end());
+	}
+
+	@Test
+	void reportsRepeatedStatementsFirst() {
+		QueryCounter counter = new QueryCounter(false);
+		counter.begin("MyController.getPricings", 2);
+		counter.executing("select * from product where id=?");
+		for (int i = 0; i < 3; i++) {
+			counter.executing("select * from pricing where id=?");
+		}
+		QueryCounter.Scope scope = counter.end();
+
+		assertTrue(scope.isExceeded());
+		assertEquals("MyController.getPricings executed 4 statements, budget 2"
+				+ "\n  3 x select * from pricing where id=?"
+				+ "\n  1 x select * from product where id=?", scope.describe());
+	}
+
+	@Test
+	void failsOnTheStatementOverBudget() {
+		QueryCounter counter = new QueryCounter(true);
+		counter.begin("MyController.editPricing", 1);
+		counter.executing("select * from pricing where id=?");
+
+		try {
+			counter.executing("select * from product where id=?");
+			fail("expected the second statement to exceed the budget");
+		} catch (QueryBudgetExceededException e) {
+			assertTrue(e.getMessage().startsWith("MyController.editPricing executed 2 statements, budget 1"));
+		}
+		// the scope is gone, statements after the failure are only counted
+		counter.executing("select 1");
+		assertNull(counter.end());
+	}
+
+	@Test
+	void negativeBudgetOnlyRecords() {
+		QueryCounter counter = new QueryCounter(true);
+		counter.begin("MyController.newProvider", -1);
+		counter.executing("select 1");
+
+		assertFalse(counter.end().isExceeded());
+	}
+
+	@Test
+	void resumedScopeCountsOnAnotherThread() throws InterruptedException {
+		final QueryCounter counter = new QueryCounter(false);
+		counter.begin("MyController.getProducts", 2);
+		counter.executing("select count(*) from product");
+		final QueryCounter.Scope scope = counter.end();
+
+		Thread handlerThread = new Thread() {
+			@Override
+			public void run() {
+				counter.resume(scope);
+				counter.executing("select * from product");
+				counter.end();
+			}
+		};
+		handlerThread.start();
+		handlerThread.join();
+		counter.resume(scope);
+		counter.executing("select * from pricing");
+
+		assertEquals(3, counter.end().getExecuted());
+		assertEquals(2, counter.current());
+	}
+}
@@ -0,0 +1,255 @@
+package com.myfarmer.provman.outbox;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.sql.DataSource;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.function.Executable;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit.jupiter.SpringJUnitConfig;
+
+import com.myfarmer.provman.configuration.TestHibernateConfig;
+import com.myfarmer.provman.model.Product;
+import com.myfarmer.provman.model.ProductPricing;
+import com.myfarmer.provman.model.Provider;
+import com.myfarmer.provman.service.ConcurrentEditException;
+import com.myfarmer.provman.service.ProductPricingService;
+import com.myfarmer.provman.service.ProductService;
+import com.myfarmer.provman.service.ProviderService;
+
+@SpringJUnitConfig(CatalogOutboxTest.Config.class)
+@TestPropertySource(properties = { "outbox.enabled=true", "outbox.batchSize=3", "search.enabled=false",
+		"providercodes.index.enabled=false" })
+class CatalogOutboxTest {
+
+	@Configuration
+	@Import(TestHibernateConfig.class)
+	static class Config {
+
+		@Bean
+		FlakySink sink() {
+			return new FlakySink();
+		}
+	}
+
+	/**
+	 * Keeps what it is given, or fails while told to.
+	 */
+	static class FlakySink implements CatalogEventSink {
+
+		final List<CatalogEvent> events = new ArrayList<CatalogEvent>();
+		boolean failing;
+
+		@Override
+		public synchronized void publish(List<CatalogEvent> published) throws IOException {
+			if (failing) {
+				throw new IOException("sink down");
+			}
+			events.addAll(published);
+		}
+	}
+
+	@Autowired
+	ProductService productService;
+
+	@Autowired
+	ProductPricingService pricingService;
+
+	@Autowired
+	ProviderService providerService;
+
+	@Autowired
+	OutboxRelay relay;
+
+	@Autowired
+	FlakySink sink;
+
+	@Autowired
+	DataSource dataSource;
+
+	JdbcTemplate jdbc;
+
+	@BeforeEach
+	void setUp() {
+		jdbc = new JdbcTemplate(dataSource);
+		for (String table : Arrays.asList("catalog_outbox", "catalog_outbox_farm", "price_history_day",
+				"price_history", "pricing", "product", "provider")) {
+			jdbc.execute("delete from " + table);
+		}
+		sink.events.clear();
+		sink.failing = false;
+	}
+
+	@Test
+	void publishesEveryWriteInOrderWithItsState() {
+		Product product = saveProduct(1, "Leek");
+		ProductPricing pricing = savePricing(product, 2);
+		ProductPricing edit = pricingService.findById(pricing.getId());
+		edit.setPrice(3);
+		pricingService.updateProductPricing(edit);
+		Provider provider = saveProvider("P-1");
+		productService.deleteProductById(product.getId());
+		providerService.deleteProviderByCode("P-1");
+
+		assertEquals(6, count("select count(*) from catalog_outbox"));
+		assertEquals(6, relay.relay());
+		assertEquals(0, count("select count(*) from catalog_outbox"));
+
+		List<CatalogEvent> events = sink.events;
+		assertEquals("PRODUCT CREATED 1", describe(events.get(0)));
+		assertEquals("PRICING CREATED 2", describe(events.get(1)));
+		assertEquals("PRICING UPDATED 3", describe(events.get(2)));
+		assertEquals("PROVIDER CREATED null", describe(events.get(3)));
+		assertEquals("PRODUCT DELETED 4", describe(events.get(4)));
+		assertEquals("PROVIDER DELETED null", describe(events.get(5)));
+		assertEquals("{\"id\":" + pricing.getId() + ",\"productId\":" + product.getId() + ",\"weight\":1.0,"
+				+ "\"price\":3.0}", events.get(2).getData());
+		assertEquals(provider.getId(), events.get(5).getEntityId());
+		assertEquals(0, relay.relay());
+	}
+
+	@Test
+	void recordsNothingForARolledBackWrite() {
+		Product product = saveProduct(1, "Leek");
+		final Product stale = productService.findById(product.getId());
+		stale.setVersion(stale.getVersion() - 1);
+		stale.setName("Onion");
+
+		assertThrows(ConcurrentEditException.class, new Executable() {
+			@Override
+			public void execute() {
+				productService.updateProduct(stale);
+			}
+		});
+		assertEquals(1, count("select count(*) from catalog_outbox"));
+	}
+
+	@Test
+	void tellsBothFarmsOfAProductChangingFarm() {
+		Product product = saveProduct(1, "Leek");
+		Product edit = productService.findById(product.getId());
+		edit.setFarmId(2);
+		productService.updateProduct(edit);
+		relay.relay();
+
+		assertEquals("PRODUCT UPDATED 2", describe(sink.events.get(1)));
+		assertEquals(2, (int) sink.events.get(2).getFarmId());
+		assertEquals("PRODUCT UPDATED 1", describe(sink.events.get(2)));
+	}
+
+	@Test
+	void keepsTheEventsWhileTheSinkFails() {
+		for (int i = 0; i < 4; i++) {
+			saveProduct(1, "Leek " + i);
+		}
+		sink.failing = true;
+
+		assertEquals(0, relay.relay());
+		assertEquals(4, count("select count(*) from catalog_outbox"));
+		assertEquals(1, relay.getFailures());
+
+		sink.failing = false;
+		assertEquals(4, relay.relay());
+		for (int i = 0; i < 4; i++) {
+			assertEquals(Long.valueOf(i + 1), sink.events.get(i).getSeq());
+		}
+	}
+
+	@Test
+	void numbersEachFarmsEventsInCommitOrder() throws Exception {
+		final Product[] products = { saveProduct(1, "Leek"), saveProduct(2, "Tomato") };
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<Object>> futures = new ArrayList<Future<Object>>();
+			for (int i = 0; i < 40; i++) {
+				final Product product = products[i % 2];
+				final float price = i;
+				futures.add(executor.submit(new Callable<Object>() {
+					@Override
+					public Object call() {
+						ProductPricing pricing = new ProductPricing();
+						Product reference = new Product();
+						reference.setId(product.getId());
+						pricing.setProduct(reference);
+						pricing.setWeight(1);
+						pricing.setPrice(price);
+						pricingService.saveProductPricing(pricing);
+						return null;
+					}
+				}));
+			}
+			for (Future<Object> future : futures) {
+				future.get();
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		relay.relay();
+
+		assertEquals(42, sink.events.size());
+		Map<Integer, Long> lastSeqs = new HashMap<Integer, Long>();
+		for (CatalogEvent event : sink.events) {
+			Long last = lastSeqs.get(event.getFarmId());
+			assertEquals(last == null ? 1 : last + 1, (long) event.getSeq());
+			lastSeqs.put(event.getFarmId(), event.getSeq());
+		}
+		assertEquals(Long.valueOf(21), lastSeqs.get(1));
+	}
+
+	private Product saveProduct(int farmId, String name) {
+		Product product = new Product();
+		product.setFarmId(farmId);
+		product.setName(name);
+		productService.saveProduct(product);
+		return product;
+	}
+
+	private ProductPricing savePricing(Product product, float price) {
+		ProductPricing pricing = new ProductPricing();
+		Product reference = new Product();
+		reference.setId(product.getId());
+		pricing.setProduct(reference);
+		pricing.setWeight(1);
+		pricing.setPrice(price);
+		pricingService.saveProductPricing(pricing);
+		return pricing;
+	}
+
+	private Provider saveProvider(String code) {
+		Provider provider = new Provider();
+		provider.setName("Green fields");
+		provider.setCode(code);
+		provider.setNationality("FR");
+		provider.setEnteringDate(LocalDate.of(2026, 1, 1));
+		providerService.saveProvider(provider);
+		return provider;
+	}
+
+	private static String describe(CatalogEvent event) {
+		return event.getType() + " " + event.getOperation() + " " + event.getSeq();
+	}
+
+	private int count(String sql) {
+		return jdbc.queryForObject(sql, Integer.class);
+	}
+}
@@ -0,0 +1,60 @@
+package com.myfarmer.provman.outbox;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import javax.sql.DataSource;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit.jupiter.SpringJUnitConfig;
+
+import com.myfarmer.provman.configuration.TestHibernateConfig;
+import com.myfarmer.provman.model.Product;
+import com.myfarmer.provman.service.ProductService;
+
+/**
+ * The outbox on without a sink: events are recorded but nothing is relayed,
+ * in particular not to a memory sink no other instance could read.
+ */
+@SpringJUnitConfig(TestHibernateConfig.class)
+@TestPropertySource(properties = { "outbox.enabled=true", "search.enabled=false",
+		"providercodes.index.enabled=false" })
+class OutboxRelayTest {
+
+	@Autowired
+	ProductService productService;
+
+	@Autowired
+	OutboxRelay configured;
+
+	@Autowired
+	DataSource dataSource;
+
+	@Test
+	void keepsTheEventsWithoutASink() {
+		JdbcTemplate jdbc = new JdbcTemplate(dataSource);
+		jdbc.execute("delete from catalog_outbox");
+		Product product = new Product();
+		product.setFarmId(1);
+		product.setName("Leek");
+		productService.saveProduct(product);
+
+		// CatalogOutboxTest's sink is a bean of every context scanning this package
+		OutboxRelay relay = new OutboxRelay();
+		relay.dao = configured.dao;
+		relay.outbox = configured.outbox;
+		relay.shardRouter = configured.shardRouter;
+		relay.transactionManager = configured.transactionManager;
+		relay.environment = new MockEnvironment().withProperty("outbox.enabled", "true");
+		relay.init();
+
+		assertEquals(0, relay.relay());
+		assertEquals(1, (int) jdbc.queryForObject("select count(*) from catalog_outbox", Integer.class));
+		assertNull(relay.getMemorySink());
+		assertEquals("nowhere", relay.getSink());
+	}
+}
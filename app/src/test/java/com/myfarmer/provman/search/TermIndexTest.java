@@ -0,0 +1,85 @@
+package com.myfarmer.provman.search;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.myfarmer.provman.api.ProductSummary;
+import com.myfarmer.provman.api.ProviderSummary;
+
+class TermIndexTest {
+
+	TermIndex index;
+
+	@BeforeEach
+	void setUp() {
+		index = new TermIndex();
+		index.put(SearchDocument.of(new ProductSummary(1, 10, "Tomato", "Round red tomatoes")));
+		index.put(SearchDocument.of(new ProductSummary(2, 10, "Cherry tomato", "Sweet")));
+		index.put(SearchDocument.of(new ProductSummary(3, 11, "Cr\u00e8me fra\u00eeche", "Tomme de Savoie pairing")));
+		index.put(SearchDocument.of(new ProviderSummary(4, "Tomas Ferreira", "PT-0042", "PT", LocalDate.now())));
+	}
+
+	@Test
+	void matchesPrefixesOfEveryTokenBestFirst() {
+		// names weigh more than descriptions, equal scores go by name
+		assertEquals(keys("product:2", "provider:4", "product:1", "product:3"),
+				keys(index.search("tom", null, 10)));
+		// whole words more than prefixes
+		assertEquals(keys("product:2", "product:1"), keys(index.search("tomato", null, 10)));
+		assertEquals(keys("product:2"), keys(index.search("tom CHER", null, 10)));
+		assertEquals(keys("provider:4"), keys(index.search("pt-004", SearchKind.PROVIDER, 10)));
+		assertEquals(keys("product:2"), keys(index.search("tom", null, 1)));
+		assertTrue(index.search("tom zzz", null, 10).isEmpty());
+		// single letters only match whole words
+		assertTrue(index.search("t", null, 10).isEmpty());
+		assertEquals(keys("provider:4"), keys(index.search("pt", null, 10)));
+		assertTrue(index.search(" - ", null, 10).isEmpty());
+	}
+
+	@Test
+	void foldsCaseAndAccents() {
+		assertEquals(keys("product:3"), keys(index.search("CREME fraic", null, 10)));
+		assertEquals(keys("product:3"), keys(index.search("cr\u00c8me", null, 10)));
+	}
+
+	@Test
+	void replacesAndRemovesDocuments() {
+		index.put(SearchDocument.of(new ProductSummary(1, 10, "Potato", null)));
+		assertEquals(keys("product:2", "provider:4", "product:3"), keys(index.search("tom", null, 10)));
+		assertEquals(keys("product:1"), keys(index.search("pot", null, 10)));
+
+		index.remove(SearchKind.PRODUCT, 2);
+		assertEquals(2, index.removeAll(new TermIndex.Filter() {
+			@Override
+			public boolean matches(SearchDocument document) {
+				return document.getKind() == SearchKind.PRODUCT;
+			}
+		}));
+		assertEquals(keys("provider:4"), keys(index.search("tom", null, 10)));
+		assertEquals(1, index.getDocumentCount());
+		assertEquals(4, index.getTermCount());
+	}
+
+	private static List<String> keys(String... keys) {
+		List<String> list = new ArrayList<String>();
+		for (String key : keys) {
+			list.add(key);
+		}
+		return list;
+	}
+
+	private static List<String> keys(List<SearchHit> hits) {
+		List<String> list = new ArrayList<String>();
+		for (SearchHit hit : hits) {
+			list.add(SearchDocument.key(hit.getKind(), hit.getId()));
+		}
+		return list;
+	}
+}
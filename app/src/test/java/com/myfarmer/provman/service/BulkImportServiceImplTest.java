@@ -0,0 +1,93 @@
+package com.myfarmer.provman.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.junit.jupiter.SpringJUnitConfig;
+
+import com.myfarmer.provman.bulk.CsvImportRowReader;
+import com.myfarmer.provman.bulk.ImportResult;
+import com.myfarmer.provman.bulk.ImportResult.RowError;
+import com.myfarmer.provman.bulk.JsonImportRowReader;
+import com.myfarmer.provman.configuration.TestHibernateConfig;
+
+@SpringJUnitConfig(TestHibernateConfig.class)
+class BulkImportServiceImplTest {
+
+	@Autowired
+	BulkImportService bulkImportService;
+
+	@Autowired
+	DataSource dataSource;
+
+	JdbcTemplate jdbc;
+
+	@BeforeEach
+	void setUp() {
+		jdbc = new JdbcTemplate(dataSource);
+		jdbc.update("delete from pricing");
+		jdbc.update("delete from product");
+		jdbc.update("insert into product (id, name, farm_id) values (1, 'Leek', 1)");
+		jdbc.update("insert into product (id, name, farm_id) values (2, 'Tomato', 2)");
+	}
+
+	@Test
+	void replaysAFailedChunkRowByRow() throws Exception {
+		// the name fits no product.name column, only the database refuses it, failing the whole chunk
+		ImportResult result = bulkImportService.importProducts(1,
+				csv("name,description\nCarrot,Orange\nA name much longer than thirty characters,Long\nOnion,\n",
+						"name", "description"));
+
+		assertEquals(2, result.getImported());
+		assertEquals(1, result.getFailed());
+		assertEquals(2, result.getErrors().get(0).getRow());
+		assertEquals(2, count("select count(*) from product where farm_id = 1 and name in ('Carrot', 'Onion')"));
+		assertEquals(3, count("select count(*) from product where farm_id = 1"));
+	}
+
+	@Test
+	void reportsBadNumbersAndForeignProductsByRow() throws Exception {
+		ImportResult result = bulkImportService.importPricings(1,
+				csv("1,1,2\n1,heavy,2\n,1,2\n2,1,2\n1,2.5,3.5\n", "product_id", "weight", "price"));
+
+		assertEquals(2, result.getImported());
+		List<RowError> errors = result.getErrors();
+		assertEquals(3, errors.size());
+		assertEquals("weight: 'heavy' is not a number", errors.get(0).getMessage());
+		assertEquals("product_id: may not be empty", errors.get(1).getMessage());
+		assertEquals(4, errors.get(2).getRow());
+		assertEquals(2, count("select count(*) from pricing where product_id = 1"));
+	}
+
+	@Test
+	void reportsABodyThatIsNoJsonArray() throws Exception {
+		ImportResult result = bulkImportService.importProducts(1,
+				new JsonImportRowReader(bytes("{\"name\": \"Carrot\"}")));
+
+		assertEquals(0, result.getImported());
+		assertEquals(1, result.getErrors().get(0).getRow());
+		assertTrue(result.getErrors().get(0).getMessage().contains("Expected a JSON array"));
+	}
+
+	private long count(String sql) {
+		return jdbc.queryForObject(sql, Long.class);
+	}
+
+	private static CsvImportRowReader csv(String csv, String... columns) {
+		return new CsvImportRowReader(bytes(csv), columns);
+	}
+
+	private static ByteArrayInputStream bytes(String content) {
+		return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+	}
+}
@@ -0,0 +1,132 @@
+package com.myfarmer.provman.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.test.context.junit.jupiter.SpringJUnitConfig;
+
+import com.myfarmer.provman.configuration.TestHibernateConfig;
+import com.myfarmer.provman.export.CatalogRow;
+import com.myfarmer.provman.export.CatalogWriter;
+
+@SpringJUnitConfig(CatalogExportServiceImplTest.Config.class)
+class CatalogExportServiceImplTest {
+
+	@Configuration
+	@Import(TestHibernateConfig.class)
+	static class Config {
+
+		@Bean
+		OpenConnections dataSource() {
+			return new OpenConnections();
+		}
+	}
+
+	/**
+	 * Counts the connections open at the same time.
+	 */
+	static class OpenConnections extends DelegatingDataSource {
+
+		final AtomicInteger open = new AtomicInteger();
+		final AtomicInteger max = new AtomicInteger();
+
+		OpenConnections() {
+			super(TestHibernateConfig.migratedDatabase());
+		}
+
+		@Override
+		public Connection getConnection() throws SQLException {
+			final Connection connection = super.getConnection();
+			max.set(Math.max(max.get(), open.incrementAndGet()));
+			return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { Connection.class },
+					new InvocationHandler() {
+						@Override
+						public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+							if (method.getName().equals("close") && !connection.isClosed()) {
+								open.decrementAndGet();
+							}
+							try {
+								return method.invoke(connection, args);
+							} catch (InvocationTargetException e) {
+								throw e.getCause();
+							}
+						}
+					});
+		}
+	}
+
+	@Autowired
+	CatalogExportService exportService;
+
+	@Autowired
+	OpenConnections dataSource;
+
+	@BeforeEach
+	void setUp() {
+		JdbcTemplate jdbc = new JdbcTemplate(dataSource);
+		jdbc.update("delete from pricing");
+		jdbc.update("delete from product");
+		jdbc.update("insert into product (id, name, farm_id) values (1, 'Leek', 1)");
+		jdbc.update("insert into product (id, name, farm_id) values (2, 'Tomato', 2)");
+		jdbc.update("insert into pricing (id, weight, price, product_id) values (1, 1, 2, 1)");
+		jdbc.update("insert into pricing (id, weight, price, product_id) values (2, 2, 3, 1)");
+		dataSource.max.set(0);
+	}
+
+	@Test
+	void exportsOnOneConnection() throws Exception {
+		List<CatalogRow> rows = new ArrayList<CatalogRow>();
+		assertEquals(2, exportService.exportCatalog(1, collect(rows)));
+		assertEquals(Integer.valueOf(2), rows.get(1).getPricingId());
+		assertEquals(1, dataSource.max.get());
+
+		rows.clear();
+		assertEquals(3, exportService.exportCatalog(null, collect(rows)));
+		assertEquals(2, rows.get(2).getProductId());
+		assertEquals(1, dataSource.max.get());
+		assertEquals(0, dataSource.open.get());
+	}
+
+	private static CatalogWriter collect(final List<CatalogRow> rows) {
+		return new CatalogWriter() {
+			@Override
+			public void handle(CatalogRow row) {
+				rows.add(row);
+			}
+
+			@Override
+			public String getContentType() {
+				return "text/plain";
+			}
+
+			@Override
+			public void start() {
+			}
+
+			@Override
+			public void flush() {
+			}
+
+			@Override
+			public void finish() {
+			}
+		};
+	}
+}
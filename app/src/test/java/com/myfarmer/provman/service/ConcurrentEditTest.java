@@ -0,0 +1,135 @@
+package com.myfarmer.provman.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import javax.sql.DataSource;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.function.Executable;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.junit.jupiter.SpringJUnitConfig;
+
+import com.myfarmer.provman.configuration.TestHibernateConfig;
+import com.myfarmer.provman.model.Product;
+import com.myfarmer.provman.model.ProductPricing;
+
+@SpringJUnitConfig(TestHibernateConfig.class)
+class ConcurrentEditTest {
+
+	@Autowired
+	ProductService productService;
+
+	@Autowired
+	ProductPricingService pricingService;
+
+	@Autowired
+	DataSource dataSource;
+
+	JdbcTemplate jdbc;
+
+	@BeforeEach
+	void setUp() {
+		jdbc = new JdbcTemplate(dataSource);
+		jdbc.execute("delete from pricing");
+		jdbc.execute("delete from product");
+		jdbc.update("insert into product (id, name, farm_id, description) values (1, 'Tomato', 1, 'Red')");
+		jdbc.update("insert into pricing (id, weight, price, product_id) values (10, 1, 2, 1)");
+	}
+
+	@Test
+	void updatesOnlyWhatChangedAndBumpsItsVersion() {
+		productService.updateProductAndPricing(product("Cherry tomato", 0), pricing(2, 0));
+
+		assertEquals("Cherry tomato", jdbc.queryForObject("select name from product where id = 1", String.class));
+		assertEquals(1, version("product"));
+		// nothing changed in the pricing, no update was issued for it
+		assertEquals(0, version("pricing"));
+
+		pricingService.updateProductPricing(pricing(5, 0));
+		assertEquals(1, version("pricing"));
+	}
+
+	@Test
+	void refusesAnEditMadeFromAnOlderVersion() {
+		jdbc.update("update pricing set price = 3, version = 1 where id = 10");
+
+		assertThrows(ConcurrentEditException.class, new Executable() {
+			@Override
+			public void execute() {
+				productService.updateProductAndPricing(product("Cherry tomato", 0), pricing(4, 0));
+			}
+		});
+		// rolled back as a whole, the product keeps its name
+		assertEquals("Tomato", jdbc.queryForObject("select name from product where id = 1", String.class));
+		assertEquals(0, version("product"));
+
+		assertThrows(ConcurrentEditException.class, new Executable() {
+			@Override
+			public void execute() {
+				pricingService.updateProductPricing(pricing(4, 0));
+			}
+		});
+		assertEquals(3, jdbc.queryForObject("select price from pricing where id = 10", Float.class), 0);
+	}
+
+	@Test
+	void refusesAnEditOfADeletedRow() {
+		jdbc.execute("delete from pricing");
+
+		assertThrows(ConcurrentEditException.class, new Executable() {
+			@Override
+			public void execute() {
+				pricingService.updateProductPricing(pricing(4, 0));
+			}
+		});
+	}
+
+	@Test
+	void refusesAnEditWithoutAVersion() {
+		final ProductPricing pricing = pricing(4, 0);
+		pricing.setVersion(null);
+		assertThrows(MissingVersionException.class, new Executable() {
+			@Override
+			public void execute() {
+				pricingService.updateProductPricing(pricing);
+			}
+		});
+
+		final Product product = product("Cherry tomato", 0);
+		product.setVersion(null);
+		assertThrows(MissingVersionException.class, new Executable() {
+			@Override
+			public void execute() {
+				productService.updateProductAndPricing(product, pricing(4, 0));
+			}
+		});
+		assertEquals("Tomato", jdbc.queryForObject("select name from product where id = 1", String.class));
+		assertEquals(2, jdbc.queryForObject("select price from pricing where id = 10", Float.class), 0);
+	}
+
+	private static Product product(String name, int version) {
+		Product product = new Product();
+		product.setId(1);
+		product.setFarmId(1);
+		product.setName(name);
+		product.setDescription("Red");
+		product.setVersion(version);
+		return product;
+	}
+
+	private static ProductPricing pricing(float price, int version) {
+		ProductPricing pricing = new ProductPricing();
+		pricing.setId(10);
+		pricing.setWeight(1);
+		pricing.setPrice(price);
+		pricing.setVersion(version);
+		return pricing;
+	}
+
+	private int version(String table) {
+		return jdbc.queryForObject("select version from " + table, Integer.class);
+	}
+}
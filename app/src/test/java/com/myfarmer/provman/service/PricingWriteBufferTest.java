@@ -0,0 +1,171 @@
+package com.myfarmer.provman.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import javax.sql.DataSource;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.function.Executable;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit.jupiter.SpringJUnitConfig;
+
+import com.myfarmer.provman.configuration.TestHibernateConfig;
+import com.myfarmer.provman.model.ProductPricing;
+import com.myfarmer.provman.paging.PageRequest;
+import com.myfarmer.provman.web.DataVersion;
+
+@SpringJUnitConfig(TestHibernateConfig.class)
+// flushed by the tests only
+@TestPropertySource(properties = { "writebehind.enabled=true", "writebehind.flushMs=600000" })
+class PricingWriteBufferTest {
+
+	@Autowired
+	ProductPricingService pricingService;
+
+	@Autowired
+	PricingWriteBuffer buffer;
+
+	@Autowired
+	DataSource dataSource;
+
+	JdbcTemplate jdbc;
+
+	@BeforeEach
+	void setUp() {
+		jdbc = new JdbcTemplate(dataSource);
+		buffer.flush();
+		jdbc.execute("delete from price_history_day");
+		jdbc.execute("delete from price_history");
+		jdbc.execute("delete from pricing");
+		jdbc.execute("delete from product");
+		jdbc.update("insert into product (id, name, farm_id, description) values (1, 'Tomato', 1, 'Red')");
+		jdbc.update("insert into pricing (id, weight, price, product_id) values (10, 1, 2, 1)");
+	}
+
+	@Test
+	void coalescesUpdatesIntoOneWrite() {
+		DataVersion before = pricingService.findPricingsVersion(1);
+		long updates = buffer.getUpdates();
+		long writes = buffer.getWrites();
+		// each made from the version the one before left
+		for (int price = 3; price <= 7; price++) {
+			pricingService.updateProductPricing(pricing(price, price - 3));
+		}
+
+		// nothing written yet, read through the buffer
+		assertEquals(2, price(), 0);
+		assertEquals(7, pricingService.findById(10).getPrice(), 0);
+		assertEquals(Integer.valueOf(5), pricingService.findById(10).getVersion());
+		assertEquals(7, pricingService.findProductPricingsByProductId(1).get(0).getPrice(), 0);
+		assertEquals(7, pricingService.findPricingSummariesByProductId(1, PageRequest.firstPage())
+				.getItems().get(0).getPrice(), 0);
+		assertNotEquals(before, pricingService.findPricingsVersion(1));
+		assertEquals(1, buffer.getPending());
+
+		assertEquals(1, buffer.flush());
+		assertEquals(7, price(), 0);
+		assertEquals(5, version());
+		assertEquals(1, count("price_history"));
+		assertEquals(5, buffer.getUpdates() - updates);
+		assertEquals(1, buffer.getWrites() - writes);
+		assertEquals(0, buffer.getPending());
+
+		// buffered again from the written version
+		pricingService.updateProductPricing(pricing(8, 5));
+		buffer.flush();
+		assertEquals(8, price(), 0);
+		assertEquals(6, version());
+	}
+
+	@Test
+	void refusesAnUpdateFromAnotherVersion() {
+		pricingService.updateProductPricing(pricing(3, 0));
+
+		// a second edit of the form the first was made from, and one from a version not reached yet
+		for (final int version : new int[] { 0, 2 }) {
+			assertThrows(ConcurrentEditException.class, new Executable() {
+				@Override
+				public void execute() {
+					pricingService.updateProductPricing(pricing(4, version));
+				}
+			});
+		}
+		buffer.flush();
+		assertEquals(3, price(), 0);
+		assertEquals(1, version());
+	}
+
+	@Test
+	void leavesTheVersionOfEveryBufferedUpdate() {
+		pricingService.updateProductPricing(pricing(3, 0));
+		pricingService.updateProductPricing(pricing(4, 1));
+		buffer.flush();
+		assertEquals(2, version());
+
+		// the same price again still moves the version
+		pricingService.updateProductPricing(pricing(4, 2));
+		buffer.flush();
+		assertEquals(4, price(), 0);
+		assertEquals(3, version());
+		assertEquals(Integer.valueOf(3), pricingService.findById(10).getVersion());
+	}
+
+	@Test
+	void dropsUpdatesOfAPricingChangedMeanwhile() {
+		long conflicts = buffer.getConflicts();
+		pricingService.updateProductPricing(pricing(3, 0));
+		jdbc.update("update pricing set price = 9, version = 1 where id = 10");
+
+		assertEquals(0, buffer.flush());
+		// the other write wins
+		assertEquals(9, price(), 0);
+		assertEquals(1, buffer.getConflicts() - conflicts);
+		assertEquals(0, buffer.getPending());
+	}
+
+	@Test
+	@DirtiesContext
+	void flushesOnCloseAndWritesThroughAfterwards() {
+		pricingService.updateProductPricing(pricing(3, 0));
+
+		buffer.close();
+		assertEquals(3, price(), 0);
+		assertFalse(buffer.isEnabled());
+
+		pricingService.updateProductPricing(pricing(4, 1));
+		assertEquals(4, price(), 0);
+		assertEquals(2, version());
+		// an update that found the buffer open before it closed is handed back to be written through
+		assertFalse(buffer.coalesce(pricing(5, 2)));
+		assertFalse(buffer.add(pricing(5, 2), pricingService.findById(10)));
+		assertEquals(0, buffer.getPending());
+	}
+
+	private static ProductPricing pricing(float price, int version) {
+		ProductPricing pricing = new ProductPricing();
+		pricing.setId(10);
+		pricing.setWeight(1);
+		pricing.setPrice(price);
+		pricing.setVersion(version);
+		return pricing;
+	}
+
+	private float price() {
+		return jdbc.queryForObject("select price from pricing where id = 10", Float.class);
+	}
+
+	private int version() {
+		return jdbc.queryForObject("select version from pricing where id = 10", Integer.class);
+	}
+
+	private int count(String table) {
+		return jdbc.queryForObject("select count(*) from " + table, Integer.class);
+	}
+}
@@ -0,0 +1,77 @@
+package com.myfarmer.provman.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.test.context.junit.jupiter.SpringJUnitConfig;
+
+import com.myfarmer.provman.configuration.TestHibernateConfig;
+import com.myfarmer.provman.model.Provider;
+
+@SpringJUnitConfig(ProviderServiceImplTest.Config.class)
+class ProviderServiceImplTest {
+
+	@Configuration
+	@Import(TestHibernateConfig.class)
+	static class Config {
+
+		@Bean
+		CountingDataSource dataSource() {
+			return new CountingDataSource();
+		}
+	}
+
+	static class CountingDataSource extends DelegatingDataSource {
+
+		final AtomicInteger connections = new AtomicInteger();
+
+		CountingDataSource() {
+			super(TestHibernateConfig.migratedDatabase());
+		}
+
+		@Override
+		public Connection getConnection() throws SQLException {
+			connections.incrementAndGet();
+			return super.getConnection();
+		}
+	}
+
+	@Autowired
+	ProviderService providerService;
+
+	@Autowired
+	CountingDataSource dataSource;
+
+	@Test
+	void checksCodesTheIndexAnswersWithoutAConnection() {
+		new JdbcTemplate(dataSource).update("delete from provider");
+		Provider provider = new Provider();
+		provider.setName("Green fields");
+		provider.setCode("P-1");
+		provider.setNationality("FR");
+		provider.setEnteringDate(LocalDate.of(2026, 1, 1));
+		providerService.saveProvider(provider);
+		dataSource.connections.set(0);
+
+		assertTrue(providerService.isProviderCodeUnique(null, "P-2"));
+		assertTrue(providerService.isProviderCodeUnique(provider.getId(), "P-1"));
+		assertEquals(0, dataSource.connections.get());
+
+		// a code known as another provider's is looked up
+		assertFalse(providerService.isProviderCodeUnique(null, "P-1"));
+		assertEquals(1, dataSource.connections.get());
+	}
+}
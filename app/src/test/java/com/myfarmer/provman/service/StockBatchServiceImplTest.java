@@ -0,0 +1,123 @@
+package com.myfarmer.provman.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import javax.sql.DataSource;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.orm.hibernate5.HibernateTransactionManager;
+import org.springframework.test.context.junit.jupiter.SpringJUnitConfig;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.myfarmer.provman.configuration.TestHibernateConfig;
+import com.myfarmer.provman.dao.StockBatchDao;
+import com.myfarmer.provman.metrics.StockBatchMetrics;
+import com.myfarmer.provman.stock.StockBatchResult;
+
+@SpringJUnitConfig(TestHibernateConfig.class)
+class StockBatchServiceImplTest {
+
+	@Autowired
+	StockBatchService stockBatchService;
+
+	@Autowired
+	StockBatchDao stockBatchDao;
+
+	@Autowired
+	StockBatchMetrics metrics;
+
+	@Autowired
+	DataSource dataSource;
+
+	@Autowired
+	HibernateTransactionManager transactionManager;
+
+	JdbcTemplate jdbc;
+
+	@BeforeEach
+	void setUp() {
+		jdbc = new JdbcTemplate(dataSource);
+		jdbc.execute("delete from stock_batch_farm");
+		jdbc.execute("delete from stock_batch");
+		jdbc.execute("delete from pricing");
+		jdbc.execute("delete from product");
+		for (int farmId = 1; farmId <= 3; farmId++) {
+			for (int p = 1; p <= 4; p++) {
+				int productId = farmId * 100 + p;
+				jdbc.update("insert into product (id, name, farm_id) values (?, ?, ?)", productId, "p" + productId, farmId);
+				jdbc.update("insert into pricing (weight, price, product_id) values (1, 2, ?)", productId);
+				jdbc.update("insert into pricing (weight, price, product_id) values (2, 3, ?)", productId);
+			}
+		}
+		// left over by a previous run for a farm that no longer has products
+		jdbc.update("insert into stock_batch values (9, 901, 'gone', null, 1, 1)");
+	}
+
+	@Test
+	void fullRunRebuildsEveryFarm() {
+		StockBatchResult result = stockBatchService.run(false);
+
+		assertEquals(4, result.getFarmsRebuilt());
+		assertEquals(24, result.getRowsWritten());
+		assertTrue(result.getFailedFarms().isEmpty());
+		assertEquals(24, count("select count(*) from stock_batch"));
+		assertEquals(0, count("select count(*) from stock_batch where farm_id = 9"));
+		assertEquals(24, metrics.getRowsWritten());
+	}
+
+	@Test
+	void incrementalRunOnlyRebuildsChangedFarms() {
+		stockBatchService.run(false);
+		assertEquals(0, stockBatchService.run(true).getFarmsRebuilt());
+
+		jdbc.update("insert into pricing (weight, price, product_id) values (5, 9, 201)");
+		jdbc.update("delete from pricing where product_id = 302");
+		inTransaction(new Runnable() {
+			@Override
+			public void run() {
+				stockBatchDao.markProductChanged(201);
+				stockBatchDao.markFarmChanged(3);
+			}
+		});
+
+		StockBatchResult result = stockBatchService.run(true);
+
+		assertEquals(2, result.getFarmsRebuilt());
+		assertEquals(9 + 6, result.getRowsWritten());
+		assertEquals(8, count("select count(*) from stock_batch where farm_id = 1"));
+		assertEquals(9, count("select count(*) from stock_batch where farm_id = 2"));
+		assertEquals(6, count("select count(*) from stock_batch where farm_id = 3"));
+		assertEquals(0, stockBatchService.run(true).getFarmsRebuilt());
+	}
+
+	@Test
+	void incrementalRunPicksUpNewFarms() {
+		stockBatchService.run(false);
+		jdbc.update("insert into product (id, name, farm_id) values (401, 'new', 4)");
+		jdbc.update("insert into pricing (weight, price, product_id) values (1, 1, 401)");
+
+		StockBatchResult result = stockBatchService.run(true);
+
+		assertEquals(1, result.getFarmsRebuilt());
+		assertEquals(1, count("select count(*) from stock_batch where farm_id = 4"));
+	}
+
+	private int count(String sql) {
+		return jdbc.queryForObject(sql, Integer.class);
+	}
+
+	private void inTransaction(final Runnable work) {
+		new TransactionTemplate(transactionManager).execute(new TransactionCallbackWithoutResult() {
+			@Override
+			protected void doInTransactionWithoutResult(TransactionStatus status) {
+				work.run();
+			}
+		});
+	}
+}
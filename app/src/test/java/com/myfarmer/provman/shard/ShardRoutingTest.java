@@ -0,0 +1,229 @@
+package com.myfarmer.provman.shard;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.function.Executable;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit.jupiter.SpringJUnitConfig;
+
+import com.myfarmer.provman.configuration.TestHibernateConfig;
+import com.myfarmer.provman.export.CsvCatalogWriter;
+import com.myfarmer.provman.model.Product;
+import com.myfarmer.provman.model.ProductPricing;
+import com.myfarmer.provman.service.CatalogExportService;
+import com.myfarmer.provman.service.ProductPricingService;
+import com.myfarmer.provman.service.ProductService;
+import com.myfarmer.provman.service.StockBatchService;
+
+@SpringJUnitConfig(ShardRoutingTest.Config.class)
+// flips are seen at once, moves do not wait
+@TestPropertySource(properties = { "shard.mapRefreshMs=0", "search.enabled=false" })
+class ShardRoutingTest {
+
+	@Configuration
+	@Import(TestHibernateConfig.class)
+	static class Config {
+
+		@Bean
+		// the home shard and one other, each migrated
+		ShardRoutingDataSource dataSource() {
+			return new ShardRoutingDataSource(Arrays.asList(TestHibernateConfig.migratedDatabase(),
+					TestHibernateConfig.migratedDatabase()));
+		}
+	}
+
+	@Autowired
+	ProductService productService;
+
+	@Autowired
+	ProductPricingService pricingService;
+
+	@Autowired
+	StockBatchService stockBatchService;
+
+	@Autowired
+	CatalogExportService exportService;
+
+	@Autowired
+	ShardRouter router;
+
+	@Autowired
+	FarmMover farmMover;
+
+	JdbcTemplate home;
+	JdbcTemplate other;
+
+	@BeforeEach
+	void setUp() {
+		home = router.jdbc(0);
+		other = router.jdbc(1);
+		for (JdbcTemplate jdbc : Arrays.asList(home, other)) {
+			for (String table : Arrays.asList("farm_shard", "stock_batch_farm", "stock_batch", "price_history_day",
+					"price_history", "pricing", "product")) {
+				jdbc.execute("delete from " + table);
+			}
+		}
+		router.refreshFarmShards();
+		// farm 2 lives on the other shard, farm 1 on the home shard
+		router.assign(2, 1);
+	}
+
+	@Test
+	void writesAndReadsGoToTheFarmsShard() {
+		Product kept = saveProduct(1, "Leek");
+		Product moved = saveProduct(2, "Tomato");
+		ProductPricing pricing = savePricing(moved, 3);
+
+		assertEquals(1, count(home, "select count(*) from product"));
+		assertEquals(1, count(other, "select count(*) from product where farm_id = 2"));
+		assertEquals(1, count(other, "select count(*) from pricing"));
+		assertEquals(1, count(other, "select count(*) from price_history"));
+		// ids are drawn from the home shard only
+		assertEquals(1, count(other, "select next_val from product_seq"));
+		assertEquals(kept.getId() + 1, moved.getId());
+
+		assertEquals("Tomato", productService.findById(moved.getId()).getName());
+		assertEquals(1, productService.getProductsByFarmId(2).size());
+		assertEquals(3, pricingService.findById(pricing.getId()).getPrice(), 0);
+		assertEquals(1, pricingService.findProductPricingsByProductId(moved.getId()).size());
+
+		ProductPricing edit = pricingService.findById(pricing.getId());
+		edit.setPrice(4);
+		pricingService.updateProductPricing(edit);
+		assertEquals(4, other.queryForObject("select price from pricing", Float.class), 0);
+	}
+
+	@Test
+	void stockBatchRebuildsTheFarmsOfEveryShard() {
+		savePricing(saveProduct(1, "Leek"), 1);
+		savePricing(saveProduct(2, "Tomato"), 2);
+
+		assertEquals(2, stockBatchService.run(false).getFarmsRebuilt());
+		assertEquals(1, count(home, "select count(*) from stock_batch where farm_id = 1"));
+		assertEquals(1, count(other, "select count(*) from stock_batch where farm_id = 2"));
+		assertEquals(0, stockBatchService.run(true).getFarmsRebuilt());
+	}
+
+	@Test
+	void exportsEveryShard() throws Exception {
+		savePricing(saveProduct(1, "Leek"), 1);
+		savePricing(saveProduct(2, "Tomato"), 2);
+		CsvCatalogWriter writer = new CsvCatalogWriter(new ByteArrayOutputStream());
+
+		assertEquals(2, exportService.exportCatalog(null, writer));
+		assertEquals(1, exportService.exportCatalog(2, writer));
+	}
+
+	@Test
+	void movesAFarmWithItsRows() {
+		Product product = saveProduct(1, "Leek");
+		ProductPricing pricing = savePricing(product, 5);
+
+		FarmMoveResult result = farmMover.move(1, 1);
+
+		assertEquals(0, result.getFromShard());
+		assertEquals(Integer.valueOf(1), result.getRows().get("product"));
+		assertEquals(Integer.valueOf(1), result.getRows().get("price_history"));
+		assertEquals(0, count(home, "select count(*) from product"));
+		assertEquals(0, count(home, "select count(*) from price_history"));
+		assertEquals(1, count(home, "select shard from farm_shard where farm_id = 1"));
+		// same ids, found on the new shard
+		assertEquals(5, pricingService.findById(pricing.getId()).getPrice(), 0);
+		assertEquals(1, productService.getProductsByFarmId(1).size());
+		assertEquals(0, farmMover.move(1, 1).getRows().size());
+		assertFalse(router.isMoving(1));
+	}
+
+	@Test
+	void refusesWritesToAMovingFarm() {
+		final Product product = saveProduct(1, "Leek");
+		savePricing(product, 5);
+
+		router.setMoving(1, true);
+		assertThrows(FarmMovingException.class, new Executable() {
+			@Override
+			public void execute() {
+				saveProduct(1, "Kale");
+			}
+		});
+		assertThrows(FarmMovingException.class, new Executable() {
+			@Override
+			public void execute() {
+				savePricing(product, 6);
+			}
+		});
+		assertThrows(FarmMovingException.class, new Executable() {
+			@Override
+			public void execute() {
+				productService.retireFarm(1);
+			}
+		});
+		// reads go on, and so do writes to the other farms
+		assertEquals(1, productService.getProductsByFarmId(1).size());
+		assertEquals(1, pricingService.findProductPricingsByProductId(product.getId()).size());
+		saveProduct(2, "Tomato");
+
+		// the flag is read back from farm_shard, and a move to where the farm already is clears it
+		router.refreshFarmShards();
+		assertTrue(router.isMoving(1));
+		farmMover.move(1, 0);
+		assertFalse(router.isMoving(1));
+		saveProduct(1, "Kale");
+	}
+
+	@Test
+	void refusesToMoveAProductToAFarmOfAnotherShard() {
+		final Product product = saveProduct(1, "Leek");
+		product.setFarmId(2);
+
+		assertThrows(CrossShardWriteException.class, new Executable() {
+			@Override
+			public void execute() {
+				productService.updateProduct(product);
+			}
+		});
+		assertThrows(UnknownShardException.class, new Executable() {
+			@Override
+			public void execute() {
+				farmMover.move(1, 2);
+			}
+		});
+	}
+
+	private Product saveProduct(int farmId, String name) {
+		Product product = new Product();
+		product.setFarmId(farmId);
+		product.setName(name);
+		productService.saveProduct(product);
+		return product;
+	}
+
+	private ProductPricing savePricing(Product product, float price) {
+		ProductPricing pricing = new ProductPricing();
+		Product reference = new Product();
+		reference.setId(product.getId());
+		pricing.setProduct(reference);
+		pricing.setWeight(1);
+		pricing.setPrice(price);
+		pricingService.saveProductPricing(pricing);
+		return pricing;
+	}
+
+	private static int count(JdbcTemplate jdbc, String sql) {
+		return jdbc.queryForObject(sql, Integer.class);
+	}
+}
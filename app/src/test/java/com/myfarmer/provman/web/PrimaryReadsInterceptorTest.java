@@ -0,0 +1,147 @@
+package com.myfarmer.provman.web;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Arrays;
+
+import javax.servlet.http.Cookie;
+import javax.sql.DataSource;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.method.HandlerMethod;
+
+import com.myfarmer.provman.configuration.ReadReplicaRoutingDataSource;
+
+/**
+ * A client that wrote reads from the primary for jdbc.replica.maxLagMs, the
+ * others from the replica, except in @PrimaryReads handlers.
+ */
+class PrimaryReadsInterceptorTest {
+
+	static class Pages {
+
+		public String list() {
+			return "list";
+		}
+
+		@PrimaryReads
+		public String edit() {
+			return "edit";
+		}
+	}
+
+	private EmbeddedDatabase primary = database();
+	private EmbeddedDatabase replica = database();
+	private ReadReplicaRoutingDataSource routing;
+	private PrimaryReadsInterceptor interceptor;
+
+	@BeforeEach
+	void setUp() {
+		routing = new ReadReplicaRoutingDataSource(primary, Arrays.<DataSource>asList(replica), 60000);
+		interceptor = new PrimaryReadsInterceptor();
+		interceptor.environment = new MockEnvironment().withProperty("jdbc.replica.maxLagMs", "2000");
+		interceptor.routingDataSource = routing;
+		interceptor.init();
+	}
+
+	@AfterEach
+	void tearDown() {
+		primary.shutdown();
+		replica.shutdown();
+	}
+
+	@Test
+	void clientThatWroteReadsFromThePrimaryForAWhile() throws Exception {
+		MockHttpServletRequest request = new MockHttpServletRequest();
+		MockHttpServletResponse response = request(request, "list", false);
+		assertNotNull(request.getAttribute(PrimaryReadsInterceptor.FROM_REPLICA));
+		assertNull(response.getCookie(PrimaryReadsInterceptor.COOKIE));
+		assertEquals(1, routing.getReplicaConnections());
+
+		response = request(new MockHttpServletRequest(), "list", true);
+		Cookie wrote = response.getCookie(PrimaryReadsInterceptor.COOKIE);
+		assertNotNull(wrote);
+		assertEquals(2, wrote.getMaxAge());
+
+		request = new MockHttpServletRequest();
+		request.setCookies(wrote);
+		request(request, "list", false);
+		assertNull(request.getAttribute(PrimaryReadsInterceptor.FROM_REPLICA));
+		assertEquals(2, routing.getReplicaConnections());
+
+		// once the replicas have caught up
+		request = new MockHttpServletRequest();
+		request.setCookies(new Cookie(PrimaryReadsInterceptor.COOKIE, String.valueOf(System.currentTimeMillis() - 2000)));
+		request(request, "list", false);
+		assertEquals(3, routing.getReplicaConnections());
+	}
+
+	@Test
+	void editFormsReadFromThePrimary() throws Exception {
+		request(new MockHttpServletRequest(), "edit", false);
+		request(new MockHttpServletRequest(), "list", false);
+		assertEquals(1, routing.getReplicaConnections());
+	}
+
+	@Test
+	void pagesReadFromAReplicaRightAfterAWriteAreNotCached() {
+		RenderedResponseCache cache = new RenderedResponseCache();
+		cache.environment = new MockEnvironment().withProperty("responsecache.enabled", "true");
+		cache.init();
+
+		cache.put("/product/1", "text/html", null, null, new byte[0], cache.getGeneration(), true);
+		assertEquals(1, cache.getSize());
+
+		cache.clear();
+		cache.put("/product/1", "text/html", null, null, new byte[0], cache.getGeneration(), true);
+		assertEquals(0, cache.getSize());
+		cache.put("/product/1", "text/html", null, null, new byte[0], cache.getGeneration(), false);
+		assertEquals(1, cache.getSize());
+	}
+
+	/**
+	 * Runs a request that reads in a read-only transaction, and writes first if asked.
+	 */
+	private MockHttpServletResponse request(MockHttpServletRequest request, String method, boolean write)
+			throws Exception {
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		HandlerMethod handler = new HandlerMethod(new Pages(), Pages.class.getMethod(method));
+		interceptor.preHandle(request, response, handler);
+		try {
+			if (write) {
+				routing.getConnection().close();
+			}
+			read();
+			interceptor.postHandle(request, response, handler, null);
+		} finally {
+			interceptor.afterCompletion(request, response, handler, null);
+		}
+		return response;
+	}
+
+	private void read() throws SQLException {
+		TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+		try (Connection connection = routing.getConnection()) {
+			connection.isValid(1);
+		} finally {
+			TransactionSynchronizationManager.setCurrentTransactionReadOnly(false);
+		}
+	}
+
+	private static EmbeddedDatabase database() {
+		return new EmbeddedDatabaseBuilder().setType(EmbeddedDatabaseType.H2).generateUniqueName(true).build();
+	}
+}
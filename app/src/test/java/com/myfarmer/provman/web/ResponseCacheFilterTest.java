@@ -0,0 +1,111 @@
+package com.myfarmer.provman.web;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import javax.servlet.Filter;
+import javax.sql.DataSource;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit.jupiter.web.SpringJUnitWebConfig;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+import com.myfarmer.provman.configuration.MyWebConfig;
+
+/**
+ * The filter in front of the deployed application with the cache on. MockMvc
+ * does not render the JSPs: a rendered page is one forwarded to its view, one
+ * answered from the cache is not.
+ */
+@SpringJUnitWebConfig(MyWebConfig.class)
+@TestPropertySource(properties = { "jdbc.driverClassName=org.h2.Driver",
+		"jdbc.url=jdbc:h2:mem:response-cache;MODE=MySQL;DB_CLOSE_DELAY=-1", "jdbc.username=sa", "jdbc.password=",
+		"hibernate.dialect=org.hibernate.dialect.H2Dialect", "hibernate.show_sql=false",
+		"hibernate.format_sql=false", "responsecache.enabled=true" })
+class ResponseCacheFilterTest {
+
+	@Autowired
+	WebApplicationContext context;
+
+	@Autowired
+	@Qualifier("primaryDataSource")
+	DataSource dataSource;
+
+	@Autowired
+	RenderedResponseCache cache;
+
+	MockMvc mockMvc;
+
+	@BeforeEach
+	void setUp() {
+		mockMvc = MockMvcBuilders.webAppContextSetup(context)
+				.addFilters(context.getBean("responseCacheFilter", Filter.class)).build();
+		JdbcTemplate jdbc = new JdbcTemplate(dataSource);
+		jdbc.update("delete from pricing");
+		jdbc.update("delete from product");
+		jdbc.update("insert into product (id, name, farm_id, description) values (1, 'Leek', 1, 'Green')");
+		jdbc.update("insert into pricing (id, weight, price, product_id) values (1, 1, 2, 1)");
+		jdbc.update("update product_seq set next_val = 2");
+		jdbc.update("update pricing_seq set next_val = 2");
+		cache.clear();
+	}
+
+	@Test
+	void servesARenderedPageFromTheCache() throws Exception {
+		MockHttpServletResponse rendered = mockMvc.perform(get("/pricing/1")).andExpect(status().isOk())
+				.andReturn().getResponse();
+		assertNotNull(rendered.getForwardedUrl());
+		assertEquals(1, cache.getSize());
+
+		MockHttpServletResponse cached = mockMvc.perform(get("/pricing/1")).andExpect(status().isOk())
+				.andReturn().getResponse();
+		assertNull(cached.getForwardedUrl());
+		assertEquals(rendered.getHeader("ETag"), cached.getHeader("ETag"));
+		assertEquals(1, cache.getHits());
+
+		// a revalidation is answered from the entry too
+		mockMvc.perform(get("/pricing/1").header("If-None-Match", rendered.getHeader("ETag")))
+				.andExpect(status().isNotModified());
+		assertEquals(2, cache.getHits());
+	}
+
+	@Test
+	void keysEntriesByQueryString() throws Exception {
+		mockMvc.perform(get("/pricing/1"));
+		MockHttpServletResponse sorted = mockMvc.perform(get("/pricing/1?sort=id")).andReturn()
+				.getResponse();
+		assertNotNull(sorted.getForwardedUrl());
+		assertEquals(2, cache.getSize());
+	}
+
+	@Test
+	void rendersAgainAfterAWrite() throws Exception {
+		mockMvc.perform(get("/pricing/1"));
+		mockMvc.perform(post("/pricing/new/1").param("product.id", "1").param("price", "4").param("weight", "2"))
+				.andExpect(status().isOk());
+		assertEquals(0, cache.getSize());
+
+		MockHttpServletResponse rendered = mockMvc.perform(get("/pricing/1")).andReturn().getResponse();
+		assertNotNull(rendered.getForwardedUrl());
+	}
+
+	@Test
+	void storesOnlyMarkedSuccessfulPages() throws Exception {
+		// an error, and a page whose handler does not mark it cacheable
+		mockMvc.perform(get("/product/edit/2")).andExpect(status().isNotFound());
+		mockMvc.perform(get("/pricing/new/1")).andExpect(status().isOk());
+		assertEquals(0, cache.getSize());
+	}
+}
@@ -13,57 +13,278 @@ limitations under the License.
 
 package com.ilmlf.product.api;
 
-import java.io.File;
-import java.io.FileInputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.IOException;
-import java.io.SequenceInputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
-import java.util.Arrays;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Vector;
-import org.apache.commons.codec.digest.DigestUtils;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.apache.commons.codec.DecoderException;
+import org.apache.commons.codec.binary.Hex;
 
 /**
  * Class for hashing Lambda function code. This is done because certain environment variables passed to the functions
  * can change the hash if they are listed in different orders due to Map implementations, thereby causing unnecessary updates
  * to the Lambdas in an account.
+ *
+ * <p>Each file is hashed on its own, in parallel, opened only while it is read and read through a large buffer. The
+ * file digests are then combined bottom up, directory by directory in name order, so the result does not depend on
+ * which file finished first. With a manifest, files whose size and modification time are unchanged since the last
+ * run reuse the digest recorded then and are not read at all.
  */
 public class Hashing {
+  private static final String ALGORITHM = "MD5";
+  private static final int BUFFER_SIZE = 1024 * 1024;
+  // a file changed again within the same timestamp tick would look unchanged, such recent files are not cached
+  private static final long RACY_MILLIS = 2000;
+
   public static String hashDirectory(String directoryPath, boolean includeHiddenFiles)
       throws IOException {
-    File directory = new File(directoryPath);
+    return hashDirectory(directoryPath, includeHiddenFiles, null);
+  }
+
+  /**
+   * Hashes the directory, reusing and then rewriting the digests cached in the manifest file, if one is given.
+   *
+   * @param manifestPath file keeping path, size, modification time and digest of every file hashed, null for none;
+   *     kept outside the directory, or it would change the hash it caches
+   */
+  public static String hashDirectory(String directoryPath, boolean includeHiddenFiles, Path manifestPath)
+      throws IOException {
+    return hashDirectory(directoryPath, includeHiddenFiles, manifestPath, Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * Hashes the changed files on at most the given number of threads.
+   */
+  static String hashDirectory(String directoryPath, boolean includeHiddenFiles, Path manifestPath, int threads)
+      throws IOException {
+    Path root = Paths.get(directoryPath);
 
-    if (!directory.isDirectory()) {
+    if (!Files.isDirectory(root)) {
       throw new IllegalArgumentException("Not a directory");
     }
 
-    Vector<FileInputStream> fileStreams = new Vector<>();
-    collectFiles(directory, fileStreams, includeHiddenFiles);
+    List<FileNode> files = new ArrayList<>();
+    DirectoryNode tree = collectFiles(root, root, files, includeHiddenFiles);
 
-    try (SequenceInputStream sequenceInputStream =
-        new SequenceInputStream(fileStreams.elements())) {
-      return DigestUtils.md5Hex(sequenceInputStream);
+    Map<String, FileNode> manifest = manifestPath != null && Files.isRegularFile(manifestPath)
+        ? readManifest(manifestPath) : new HashMap<>();
+    List<FileNode> changed = new ArrayList<>();
+    for (FileNode file : files) {
+      FileNode cached = manifest.get(file.key);
+      if (cached != null && cached.size == file.size && cached.modifiedMillis == file.modifiedMillis) {
+        file.digest = cached.digest;
+      } else {
+        changed.add(file);
+      }
+    }
+    digestFiles(changed, threads);
+
+    if (manifestPath != null) {
+      writeManifest(manifestPath, files);
     }
+    return Hex.encodeHexString(tree.digest());
   }
 
-  private static void collectFiles(
-      File directory, List<FileInputStream> fileInputStreams, boolean includeHiddenFiles)
+  private static DirectoryNode collectFiles(
+      Path root, Path directory, List<FileNode> files, boolean includeHiddenFiles)
       throws IOException {
-    File[] files = directory.listFiles();
+    List<Path> children;
+    try (Stream<Path> listing = Files.list(directory)) {
+      children = listing.sorted(Comparator.comparing(path -> path.getFileName().toString()))
+          .collect(Collectors.toList());
+    }
+
+    DirectoryNode node = new DirectoryNode(name(directory));
+    for (Path child : children) {
+      if (includeHiddenFiles || !Files.isHidden(child)) {
+        BasicFileAttributes attributes = Files.readAttributes(child, BasicFileAttributes.class);
+        if (attributes.isDirectory()) {
+          node.children.add(collectFiles(root, child, files, includeHiddenFiles));
+        } else {
+          FileNode file = new FileNode(name(child), child, root.relativize(child).toString().replace('\\', '/'),
+              attributes.size(), attributes.lastModifiedTime().toMillis());
+          node.children.add(file);
+          files.add(file);
+        }
+      }
+    }
+    return node;
+  }
+
+  private static void digestFiles(List<FileNode> files, int maxThreads) throws IOException {
+    if (files.isEmpty()) {
+      return;
+    }
+    int threads = Math.max(1, Math.min(files.size(), maxThreads));
+
+    // one file open per thread at most
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      List<Future<?>> digests = new ArrayList<>(files.size());
+      for (FileNode file : files) {
+        digests.add(executor.submit(() -> {
+          file.digest = digestFile(file.path);
+          return null;
+        }));
+      }
+      for (Future<?> digest : digests) {
+        digest.get();
+      }
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new IllegalStateException(e.getCause());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while hashing files");
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private static byte[] digestFile(Path path) throws IOException {
+    MessageDigest digest = newDigest();
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      ByteBuffer buffer = ByteBuffer.allocate((int) Math.max(1, Math.min(channel.size(), BUFFER_SIZE)));
+      while (channel.read(buffer) >= 0) {
+        buffer.flip();
+        digest.update(buffer);
+        buffer.clear();
+      }
+    }
+    return digest.digest();
+  }
 
-    if (files != null) {
-      Arrays.sort(files, Comparator.comparing(File::getName));
+  private static Map<String, FileNode> readManifest(Path manifestPath) throws IOException {
+    Map<String, FileNode> manifest = new HashMap<>();
+    try (BufferedReader reader = Files.newBufferedReader(manifestPath, StandardCharsets.UTF_8)) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        // size, modification time, digest, then the path, which may contain tabs
+        String[] fields = line.split("\t", 4);
+        if (fields.length == 4) {
+          try {
+            FileNode file = new FileNode(null, null, fields[3], Long.parseLong(fields[0]), Long.parseLong(fields[1]));
+            file.digest = Hex.decodeHex(fields[2]);
+            manifest.put(file.key, file);
+          } catch (NumberFormatException | DecoderException e) {
+            // a damaged line only costs hashing that file again
+          }
+        }
+      }
+    }
+    return manifest;
+  }
 
-      for (File file : files) {
-        if (includeHiddenFiles || !Files.isHidden(file.toPath())) {
-          if (file.isDirectory()) {
-            collectFiles(file, fileInputStreams, includeHiddenFiles);
-          } else {
-            fileInputStreams.add(new FileInputStream(file));
+  private static void writeManifest(Path manifestPath, List<FileNode> files) throws IOException {
+    long racyAfter = System.currentTimeMillis() - RACY_MILLIS;
+    Path parent = manifestPath.toAbsolutePath().getParent();
+    Files.createDirectories(parent);
+    Path temporary = Files.createTempFile(parent, manifestPath.getFileName().toString(), ".tmp");
+    try {
+      try (BufferedWriter writer = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+        for (FileNode file : files) {
+          if (file.modifiedMillis < racyAfter) {
+            writer.write(file.size + "\t" + file.modifiedMillis + "\t" + Hex.encodeHexString(file.digest) + "\t"
+                + file.key);
+            writer.newLine();
           }
         }
       }
+      // readers see the old manifest or the new one, never half of one
+      Files.move(temporary, manifestPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(temporary);
+    }
+  }
+
+  private static MessageDigest newDigest() {
+    try {
+      return MessageDigest.getInstance(ALGORITHM);
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static String name(Path path) {
+    Path fileName = path.getFileName();
+    return fileName == null ? "" : fileName.toString();
+  }
+
+  private abstract static class Node {
+    final String name;
+
+    Node(String name) {
+      this.name = name;
+    }
+
+    abstract byte[] digest();
+  }
+
+  private static class FileNode extends Node {
+    final Path path;
+    final String key;
+    final long size;
+    final long modifiedMillis;
+    byte[] digest;
+
+    FileNode(String name, Path path, String key, long size, long modifiedMillis) {
+      super(name);
+      this.path = path;
+      this.key = key;
+      this.size = size;
+      this.modifiedMillis = modifiedMillis;
+    }
+
+    @Override
+    byte[] digest() {
+      return digest;
+    }
+  }
+
+  private static class DirectoryNode extends Node {
+    final List<Node> children = new ArrayList<>();
+
+    DirectoryNode(String name) {
+      super(name);
+    }
+
+    /**
+     * Digest of the children in name order, each as its kind, its name and its own digest.
+     */
+    @Override
+    byte[] digest() {
+      MessageDigest digest = newDigest();
+      for (Node child : children) {
+        digest.update((byte) (child instanceof DirectoryNode ? 'd' : 'f'));
+        digest.update(child.name.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        digest.update(child.digest());
+      }
+      return digest.digest();
     }
   }
 }
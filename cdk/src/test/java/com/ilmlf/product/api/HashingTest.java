@@ -0,0 +1,162 @@
+/*
+Copyright Amazon.com, Inc. or its affiliates. All Rights Reserved.
+Licensed under the Apache License, Version 2.0 (the "License").
+You may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.ilmlf.product.api;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Hashes a small function directory: files in nested directories, one of them larger than the read buffer. Files
+ * are dated an hour back unless a test says otherwise, old enough to be kept in a manifest.
+ */
+public class HashingTest {
+  private static final long HOUR_AGO = System.currentTimeMillis() - TimeUnit.HOURS.toMillis(1);
+
+  @TempDir
+  Path temp;
+
+  private Path code;
+  private Path manifest;
+
+  @BeforeEach
+  void setUp() throws IOException {
+    code = Files.createDirectory(temp.resolve("code"));
+    manifest = temp.resolve("cache").resolve("hashes.manifest");
+    write("index.js", "exports.handler = async () => ({ statusCode: 200 });");
+    write("lib/db.js", "module.exports = {};");
+    write("lib/util/format.js", "module.exports = (s) => s.trim();");
+    byte[] large = new byte[3 * 1024 * 1024 + 17];
+    for (int i = 0; i < large.length; i++) {
+      large[i] = (byte) (i * 31);
+    }
+    Files.createDirectories(code.resolve("node_modules"));
+    Files.write(code.resolve("node_modules/bundle.bin"), large);
+    touch("node_modules/bundle.bin", HOUR_AGO);
+  }
+
+  @Test
+  void sameHashAcrossRunsAndThreadCounts() throws IOException {
+    String hash = Hashing.hashDirectory(code.toString(), false);
+
+    assertEquals(hash, Hashing.hashDirectory(code.toString(), false));
+    for (int threads : new int[] {1, 2, 3, 16}) {
+      assertEquals(hash, Hashing.hashDirectory(code.toString(), false, null, threads), threads + " threads");
+    }
+
+    // a rename changes the hash, the contents alone do not make it
+    Files.move(code.resolve("lib/db.js"), code.resolve("lib/store.js"));
+    assertNotEquals(hash, Hashing.hashDirectory(code.toString(), false));
+  }
+
+  @Test
+  void reusesTheManifestForUnchangedFilesAndHashesChangedOnesAgain() throws IOException {
+    String hash = Hashing.hashDirectory(code.toString(), false, manifest);
+    assertEquals(4, manifestLines().size());
+
+    // same size and modification time: taken as unchanged, the file is not read
+    write("lib/db.js", "module.exports = [];");
+    assertEquals(hash, Hashing.hashDirectory(code.toString(), false, manifest));
+    String changed = Hashing.hashDirectory(code.toString(), false);
+    assertNotEquals(hash, changed);
+
+    // once its modification time moves, it is read again
+    touch("lib/db.js", HOUR_AGO + 1000);
+    assertEquals(changed, Hashing.hashDirectory(code.toString(), false, manifest));
+
+    // and a size change is seen on its own too
+    write("index.js", "exports.handler = async () => ({ statusCode: 204 }); ");
+    touch("index.js", HOUR_AGO);
+    assertEquals(Hashing.hashDirectory(code.toString(), false),
+        Hashing.hashDirectory(code.toString(), false, manifest));
+  }
+
+  @Test
+  void leavesRecentlyModifiedFilesOutOfTheManifest() throws IOException {
+    Files.write(code.resolve("fresh.js"), "// just saved".getBytes(StandardCharsets.UTF_8));
+
+    Hashing.hashDirectory(code.toString(), false, manifest);
+
+    List<String> paths = new ArrayList<>();
+    for (String line : manifestLines()) {
+      paths.add(line.split("\t", 4)[3]);
+    }
+    assertEquals(Arrays.asList("index.js", "lib/db.js", "lib/util/format.js", "node_modules/bundle.bin"), paths);
+  }
+
+  @Test
+  void includesHiddenFilesOnlyWhenAsked() throws IOException {
+    String visible = Hashing.hashDirectory(code.toString(), false);
+    String all = Hashing.hashDirectory(code.toString(), true);
+    assertEquals(visible, all);
+
+    write(".env", "STAGE=dev");
+    write(".git/HEAD", "ref: refs/heads/main");
+    write("lib/.cache", "x");
+
+    assertEquals(visible, Hashing.hashDirectory(code.toString(), false));
+    assertNotEquals(all, Hashing.hashDirectory(code.toString(), true));
+  }
+
+  @Test
+  void ignoresDamagedManifestLines() throws IOException {
+    String hash = Hashing.hashDirectory(code.toString(), false, manifest);
+    List<String> lines = manifestLines();
+
+    // wrong field counts, a size that is no number, a digest that is no hex, then the line for index.js as written
+    String[] indexJs = lines.get(0).split("\t", 4);
+    Files.write(manifest, Arrays.asList(
+        "",
+        "garbage",
+        "12\t34\tindex.js",
+        "twelve\t" + indexJs[1] + "\t" + indexJs[2] + "\tindex.js",
+        indexJs[0] + "\t" + indexJs[1] + "\tnot hex\tlib/db.js",
+        lines.get(0)), StandardCharsets.UTF_8);
+
+    // lib/db.js is changed like above: read again it gives another hash, reused from the manifest it would not
+    write("lib/db.js", "module.exports = [];");
+    assertEquals(Hashing.hashDirectory(code.toString(), false),
+        Hashing.hashDirectory(code.toString(), false, manifest));
+    assertNotEquals(hash, Hashing.hashDirectory(code.toString(), false, manifest));
+    // rewritten whole
+    assertEquals(4, manifestLines().size());
+  }
+
+  private void write(String path, String content) throws IOException {
+    Path file = code.resolve(path);
+    Files.createDirectories(file.getParent());
+    Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+    touch(path, HOUR_AGO);
+  }
+
+  private void touch(String path, long millis) throws IOException {
+    Files.setLastModifiedTime(code.resolve(path), FileTime.fromMillis(millis));
+  }
+
+  private List<String> manifestLines() throws IOException {
+    return Files.readAllLines(manifest, StandardCharsets.UTF_8);
+  }
+}